@@ -0,0 +1,222 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.MoveParser;
+import engine.Position;
+import game.Board;
+import game.BoardRenderer;
+import game.Chess;
+import game.Piece;
+import game.util.Color;
+import game.util.InputParser;
+import game.util.Point;
+import metrics.Metrics;
+import org.junit.jupiter.api.Test;
+import pieces.King;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation budgets for the rule checks that run on every turn. Each test warms an operation
+ * up until the JIT has compiled it, then measures the bytes the thread allocates per call with
+ * ThreadMXBean and fails if the operation is over its budget. The hot paths have a budget of
+ * zero bytes.
+ */
+public class AllocationTesting {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 50_000;
+
+    // Positions without castling rights, so King validation never moves a Rook as a side effect
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Operation {
+        void run();
+    }
+
+    // Bytes allocated by the current thread per run of the operation, after warming it up
+    private static double bytesPerRun(Operation operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        long after = THREADS.getThreadAllocatedBytes(thread);
+        return (double) (after - before) / ITERATIONS;
+    }
+
+    // Less than one byte per run allows for the measurement itself, but not for any object
+    private static void assertWithinBudget(String name, int budget, Operation operation) {
+        double bytes = bytesPerRun(operation);
+        assertTrue(bytes < budget + 1, name + " allocates " + bytes + " bytes per call, budget " + budget);
+    }
+
+    private static Board[] boards() {
+        Board[] boards = new Board[POSITIONS.length];
+        for (int i = 0; i < POSITIONS.length; i++) {
+            boards[i] = Fen.parse(POSITIONS[i]).toBoard();
+        }
+        return boards;
+    }
+
+    // Check every piece against every target square
+    @Test
+    public void testMoveValidationDoesNotAllocate() {
+        Board[] boards = boards();
+        assertWithinBudget("Piece.isValidMove", 0, () -> {
+            for (Board board : boards) {
+                for (int row = 0; row < 8; row++) {
+                    for (int col = 0; col < 8; col++) {
+                        Piece piece = board.getPieceAt(row, col);
+                        if (piece == null || piece instanceof King) {
+                            continue;  // King moves run attack queries, which are measured below
+                        }
+                        Point from = Point.of(col, row);
+                        for (int target = 0; target < 64; target++) {
+                            piece.isValidMove(from, Point.of(target & 7, target >> 3), board, piece.getColor(), false);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // Ask whether each square is attacked by each side
+    @Test
+    public void testAttackQueriesDoNotAllocate() {
+        Board[] boards = boards();
+        assertWithinBudget("Board.isSquareAttacked", 0, () -> {
+            for (Board board : boards) {
+                for (int square = 0; square < 64; square += 3) {
+                    board.isSquareAttacked(Point.of(square & 7, square >> 3), Color.WHITE, true);
+                    board.isSquareAttacked(Point.of(square & 7, square >> 3), Color.BLACK, true);
+                }
+            }
+        });
+    }
+
+    // Check detection for both kings
+    @Test
+    public void testCheckDetectionDoesNotAllocate() {
+        Board[] boards = boards();
+        assertWithinBudget("King.isInCheck", 0, () -> {
+            for (Board board : boards) {
+                board.getKing(Color.WHITE).isInCheck(board);
+                board.getKing(Color.BLACK).isInCheck(board);
+            }
+        });
+    }
+
+    // The legal moves and the check test, which decide what a game allows and when it is over
+    @Test
+    public void testLegalMoveChecksDoNotAllocate() {
+        Position[] positions = new Position[POSITIONS.length];
+        for (int i = 0; i < POSITIONS.length; i++) {
+            positions[i] = Fen.parse(POSITIONS[i]);
+        }
+        int[] moves = new int[Position.MAX_MOVES];
+        assertWithinBudget("Position.generateMoves", 0, () -> {
+            for (Position position : positions) {
+                position.generateMoves(moves, 0);
+                position.isInCheck();
+            }
+        });
+
+        // Fool's mate, so the checkmate test runs to the end
+        Chess game = new Chess();
+        for (String move : new String[] {"f2f3", "e7e5", "g2g4", "d8h4"}) {
+            game.makeMove(move);
+        }
+        assertWithinBudget("Chess.getWinner", 0, () -> game.getWinner());
+    }
+
+    // Whole turns: parse, validate and apply a move, then test for a winner
+    @Test
+    public void testMoveApplicationDoesNotAllocate() {
+        Chess game = new Chess();
+        String[] moves = {"b1 c3", "g8 f6", "c3 b1", "f6 g8"};  // Knights out and back forever
+        int[] ply = {0};
+        assertWithinBudget("Chess.makeMove", 0, () -> {
+            game.makeMove(moves[ply[0]++ & 3]);
+            game.getWinner();
+        });
+    }
+
+    // The same turns with every game timer recording
+    @Test
+    public void testTimedMoveApplicationDoesNotAllocate() {
+        Chess game = new Chess();
+        String[] moves = {"b1 c3", "g8 f6", "c3 b1", "f6 g8"};
+        int[] ply = {0};
+        Metrics.setEnabled(true);
+        try {
+            assertWithinBudget("Chess.makeMove with metrics", 0, () -> {
+                game.makeMove(moves[ply[0]++ & 3]);
+                game.getWinner();
+            });
+        } finally {
+            Metrics.setEnabled(false);
+        }
+    }
+
+    // Parsing a move returns a new two-element array, and nothing else
+    @Test
+    public void testParsingAllocatesOnlyTheResult() {
+        String[] moves = {"e2 e4", "g8 f6", "a7 a8", "h1 h8"};
+        int[] index = {0};
+        assertWithinBudget("InputParser.parseSquare", 0, () -> {
+            String move = moves[index[0]++ & 3];
+            InputParser.parseSquare(move, 0);
+            InputParser.parseSquare(move, 3);
+        });
+        assertWithinBudget("InputParser.parseMove", 24, () -> InputParser.parseMove(moves[index[0]++ & 3]));
+    }
+
+    // Parsing a legal move in any notation reads the text in place and allocates nothing
+    @Test
+    public void testMoveParsingDoesNotAllocate() {
+        Position position = Fen.parse("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        int[] moves = new int[Position.MAX_MOVES];
+        String[] texts = {"e5f7", "e5-d7", "Nxf7", "O-O", "0-0-0", "Qxf6", "Bd2-c1", "a2a3", "d5xe6"};
+        byte[] bytes = "Nxf7".getBytes(StandardCharsets.US_ASCII);
+        int[] index = {0};
+        assertWithinBudget("MoveParser.parse", 0, () -> {
+            MoveParser.parse(position, texts[index[0]++ % texts.length], moves);
+            MoveParser.parse(position, bytes, 0, bytes.length, moves);
+        });
+    }
+
+    // Rendering into a reused builder builds no intermediate strings
+    @Test
+    public void testRenderingDoesNotAllocate() {
+        Board board = new Board();
+        StringBuilder text = new StringBuilder(BoardRenderer.RENDERED_LENGTH);
+        assertWithinBudget("BoardRenderer.render", 0, () -> {
+            text.setLength(0);
+            try {
+                BoardRenderer.render(board, text);
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        });
+    }
+
+    @Test
+    public void testInvalidSquaresAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> InputParser.parseMove("e9 e4"));
+        assertThrows(IllegalArgumentException.class, () -> InputParser.parseMove("e2"));
+        assertThrows(IllegalArgumentException.class, () -> InputParser.parseMove("e2e4"));
+    }
+}
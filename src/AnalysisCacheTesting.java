@@ -0,0 +1,198 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import analysis.AnalysisCache;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Tests for AnalysisCache. Most use a cache of one bucket, so every key competes for the same
+ * four slots. The file is also mapped directly, as another process would see it: a 64-byte
+ * header, then 16-byte slots of a check word and an entry word in native byte order, where an
+ * entry word of 1 marks a slot another writer has claimed.
+ */
+public class AnalysisCacheTesting {
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final long CLAIMED = 1;
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("analysis", ".cache");
+        Files.delete(file);  // open creates it with the header
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    // The whole file of a one-bucket cache, mapped separately from the cache's own mapping
+    private static MappedByteBuffer raw(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 4 * SLOT_SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    private static long entryWord(MappedByteBuffer raw, int slot) {
+        return raw.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+
+    // A result whose fields all follow from the key, so a torn or misplaced entry shows
+    private static long entry(long key, int depth) {
+        return AnalysisCache.entry((int) (key & 0xFFFF), (int) (key % 1000), depth, (int) (key & 63), (key & 1) != 0);
+    }
+
+    // A result packs and unpacks, negative scores included
+    @Test
+    public void testEntryFields() {
+        long entry = AnalysisCache.entry(0xABCDE, -321, 17, 43, true);
+        assertEquals(0xABCDE, AnalysisCache.move(entry));
+        assertEquals(-321, AnalysisCache.score(entry));
+        assertEquals(17, AnalysisCache.depth(entry));
+        assertEquals(43, AnalysisCache.legalMoves(entry));
+        assertTrue(AnalysisCache.isCheck(entry));
+        assertTrue(entry != AnalysisCache.MISS);
+        assertTrue(AnalysisCache.entry(0, 0, 0, 0, false) != AnalysisCache.MISS);
+    }
+
+    // A shallower result never replaces a deeper one for the same position; an equal or deeper
+    // one does
+    @Test
+    public void testDeeperResultWins() throws IOException {
+        AnalysisCache cache = AnalysisCache.open(tempFile(), 16);
+        long key = 0x1234_5678_9ABC_DEF0L;
+        assertEquals(AnalysisCache.MISS, cache.probe(key));
+        cache.store(key, entry(key, 6));
+        cache.store(key, entry(key, 3));
+        assertEquals(6, AnalysisCache.depth(cache.probe(key)));
+
+        long same = AnalysisCache.entry(7, 50, 6, 20, false);
+        cache.store(key, same);
+        assertEquals(same, cache.probe(key));
+        cache.store(key, entry(key, 9));
+        assertEquals(entry(key, 9), cache.probe(key));
+    }
+
+    // With the bucket full, a new position takes the slot of the shallowest result
+    @Test
+    public void testShallowestIsReplaced() throws IOException {
+        AnalysisCache cache = AnalysisCache.open(tempFile(), 1);
+        int[] depths = {4, 2, 6, 8};
+        for (int i = 0; i < 4; i++) {
+            cache.store(100 + i, entry(100 + i, depths[i]));
+        }
+        cache.store(200, entry(200, 1));
+        assertEquals(entry(200, 1), cache.probe(200));
+        assertEquals(AnalysisCache.MISS, cache.probe(101));
+        for (int i : new int[] {0, 2, 3}) {
+            assertEquals(entry(100 + i, depths[i]), cache.probe(100 + i));
+        }
+    }
+
+    // A slot another writer has claimed is passed over, even while it is empty, and a store
+    // gives up when every slot of the bucket is claimed
+    @Test
+    public void testClaimedSlotsArePassedOver() throws IOException {
+        Path file = tempFile();
+        AnalysisCache cache = AnalysisCache.open(file, 1);
+        MappedByteBuffer raw = raw(file);
+        raw.putLong(HEADER_SIZE + 8, CLAIMED);  // Slot 0, the first empty slot a store would take
+
+        cache.store(300, entry(300, 5));
+        assertEquals(entry(300, 5), cache.probe(300));
+        assertEquals(CLAIMED, entryWord(raw, 0));
+        assertEquals(entry(300, 5), entryWord(raw, 1));
+
+        // Full bucket: the claimed slot, whose depth reads as empty, is still not the target
+        cache.store(301, entry(301, 7));
+        cache.store(302, entry(302, 9));
+        cache.store(303, entry(303, 8));
+        assertEquals(CLAIMED, entryWord(raw, 0));
+        assertEquals(AnalysisCache.MISS, cache.probe(300));  // The shallowest went instead
+        assertEquals(entry(303, 8), cache.probe(303));
+
+        for (int slot = 1; slot < 4; slot++) {
+            raw.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, CLAIMED);
+        }
+        cache.store(304, entry(304, 20));
+        assertEquals(AnalysisCache.MISS, cache.probe(304));
+        for (int slot = 0; slot < 4; slot++) {
+            assertEquals(CLAIMED, entryWord(raw, slot));
+        }
+    }
+
+    // A second cache on the same file, like a second process, sees the first one's results
+    @Test
+    public void testSharedFile() throws IOException {
+        Path file = tempFile();
+        AnalysisCache first = AnalysisCache.open(file, 8);
+        first.store(42, entry(42, 3));
+        AnalysisCache second = AnalysisCache.open(file, 1024);  // Keeps the size it was created with
+        assertEquals(8 * 4, second.capacity());
+        assertEquals(entry(42, 3), second.probe(42));
+        second.store(42, entry(42, 4));
+        assertEquals(entry(42, 4), first.probe(42));
+    }
+
+    // Two writers race on one bucket, some of the time on the same positions, while a reader
+    // probes: every hit is a whole result for its position, and no slot is left claimed
+    @Test
+    public void testTwoWritersOnOneBucket() throws Exception {
+        Path file = tempFile();
+        AnalysisCache cache = AnalysisCache.open(file, 1);
+        int rounds = 200_000;
+        Thread[] writers = new Thread[2];
+        for (int w = 0; w < 2; w++) {
+            long seed = w;
+            writers[w] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                for (int i = 0; i < rounds; i++) {
+                    long key = 1000 + random.nextInt(12);
+                    cache.store(key, entry(key, random.nextInt(64)));
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        long hits = 0;
+        while (writers[0].isAlive() || writers[1].isAlive()) {
+            for (long key = 1000; key < 1012; key++) {
+                long found = cache.probe(key);
+                if (found != AnalysisCache.MISS) {
+                    assertEquals(entry(key, AnalysisCache.depth(found)), found, "key " + key);
+                    hits++;
+                }
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(hits > 0);
+
+        MappedByteBuffer raw = raw(file);
+        for (int slot = 0; slot < 4; slot++) {
+            long entry = entryWord(raw, slot);
+            assertTrue(entry != CLAIMED, "slot " + slot + " left claimed");
+            long key = raw.getLong(HEADER_SIZE + slot * SLOT_SIZE) ^ entry;
+            assertEquals(entry, cache.probe(key));
+            assertEquals(entry(key, AnalysisCache.depth(entry)), entry);
+        }
+
+        // Once the writers are done the depth rule holds again
+        long key = raw.getLong(HEADER_SIZE) ^ entryWord(raw, 0);
+        int depth = AnalysisCache.depth(cache.probe(key));
+        cache.store(key, entry(key, depth + 1));
+        assertEquals(depth + 1, AnalysisCache.depth(cache.probe(key)));
+        if (depth > 0) {
+            cache.store(key, entry(key, depth - 1));
+            assertEquals(depth + 1, AnalysisCache.depth(cache.probe(key)));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import analysis.AsyncAnalyzer;
+import engine.Fen;
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests for AsyncAnalyzer, with one search thread so the tests decide what is queued and what is
+ * running. A deep search of the starting position with a long deadline keeps the thread busy
+ * until it is cancelled or the analyzer is closed.
+ */
+public class AsyncAnalyzerTesting {
+    private static final Position START = Fen.parse(Fen.START);
+    private static final int DEEP = 40;  // Deeper than any test waits for
+    private static final long LONG = 60_000;  // A deadline no test reaches, in milliseconds
+
+    private static AsyncAnalyzer analyzer(int queueCapacity, int degradedDepth) {
+        return new AsyncAnalyzer(MaterialEvaluator::new, 1, queueCapacity, degradedDepth);
+    }
+
+    // Queue a search that holds the only thread, and wait until the thread has taken it
+    private static CompletableFuture<AsyncAnalyzer.Result> occupy(AsyncAnalyzer analyzer) throws InterruptedException {
+        CompletableFuture<AsyncAnalyzer.Result> busy = analyzer.analyze("busy", START, DEEP, 0, LONG);
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (analyzer.getQueued() > 0) {
+            assertTrue(System.nanoTime() < giveUp, "the search thread never took the request");
+            Thread.sleep(1);
+        }
+        return busy;
+    }
+
+    // The exception a future failed with
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        return ex.getCause();
+    }
+
+    // A request is searched to its depth and its times recorded
+    @Test
+    public void testCompletesRequest() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(8, 2)) {
+            AsyncAnalyzer.Result result = analyzer.analyze("a", START, 3, 0, LONG).get(10, TimeUnit.SECONDS);
+            assertEquals(3, result.getDepth());
+            assertFalse(result.isDegraded());
+            assertTrue(result.getNodes() > 0);
+            int[] moves = new int[Position.MAX_MOVES];
+            int count = START.generateMoves(moves, 0);
+            boolean legal = false;
+            for (int i = 0; i < count; i++) {
+                legal |= moves[i] == result.getMove();
+            }
+            assertTrue(legal, Move.toString(result.getMove()));
+            assertEquals(1, analyzer.getComputeTimes().getCount());
+        }
+    }
+
+    // Cancelling a queued request takes it out of the queue; cancelling the running one stops its
+    // search, so the next request starts at once
+    @Test
+    public void testCancelQueuedAndRunning() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(8, 20)) {
+            CompletableFuture<AsyncAnalyzer.Result> running = occupy(analyzer);
+            CompletableFuture<AsyncAnalyzer.Result> queued = analyzer.analyze("a", START, DEEP, 0, LONG);
+            assertEquals(1, analyzer.getQueued());
+            assertTrue(queued.cancel(false));
+            assertEquals(0, analyzer.getQueued());
+            assertFalse(running.isDone());
+
+            assertTrue(running.cancel(false));
+            AsyncAnalyzer.Result next = analyzer.analyze("a", START, 2, 0, LONG).get(10, TimeUnit.SECONDS);
+            assertEquals(2, next.getDepth());
+            assertThrows(CancellationException.class, () -> queued.get());
+        }
+    }
+
+    // A deadline ends a running search with the best move so far, and fails a request still
+    // queued when it passes
+    @Test
+    public void testDeadlines() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(8, 20)) {
+            CompletableFuture<AsyncAnalyzer.Result> running = analyzer.analyze("a", START, DEEP, 0, 300);
+            CompletableFuture<AsyncAnalyzer.Result> late = analyzer.analyze("b", START, 2, 0, 50);
+
+            AsyncAnalyzer.Result result = running.get(10, TimeUnit.SECONDS);
+            assertTrue(result.getDepth() > 0 && result.getDepth() < DEEP);
+            assertTrue(result.getMove() != Move.NONE);
+            assertTrue(failure(late) instanceof TimeoutException);
+            assertEquals(1, analyzer.getExpired());
+        }
+    }
+
+    // Once the queue is half full new requests are searched shallower, and once it is full they
+    // are rejected
+    @Test
+    public void testDegradationAndRejection() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(4, 2)) {
+            occupy(analyzer);
+            List<CompletableFuture<AsyncAnalyzer.Result>> waiting = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                waiting.add(analyzer.analyze("a", START, 5, 0, LONG));
+            }
+            assertEquals(2, analyzer.getDegraded());
+            CompletableFuture<AsyncAnalyzer.Result> full = analyzer.analyze("b", START, 5, 0, LONG);
+            assertTrue(failure(full) instanceof RejectedExecutionException);
+            assertEquals(1, analyzer.getRejected());
+            assertEquals(4, analyzer.getQueued());
+
+            // A shallow request is not counted as degraded even when the queue is busy
+            waiting.get(3).cancel(false);
+            analyzer.analyze("a", START, 2, 0, LONG);
+            assertEquals(2, analyzer.getDegraded());
+        }
+    }
+
+    // Degraded requests run to the degraded depth and say so
+    @Test
+    public void testDegradedResult() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(2, 2)) {
+            CompletableFuture<AsyncAnalyzer.Result> busy = occupy(analyzer);
+            CompletableFuture<AsyncAnalyzer.Result> normal = analyzer.analyze("a", START, 4, 0, LONG);
+            CompletableFuture<AsyncAnalyzer.Result> degraded = analyzer.analyze("a", START, 4, 0, LONG);
+            busy.cancel(false);
+            assertFalse(normal.get(30, TimeUnit.SECONDS).isDegraded());
+            assertEquals(4, normal.get().getDepth());
+            assertTrue(degraded.get(30, TimeUnit.SECONDS).isDegraded());
+            assertEquals(2, degraded.get().getDepth());
+        }
+    }
+
+    // Sessions take turns: a session's later requests wait for the other sessions' first ones
+    @Test
+    public void testSessionsTakeTurns() throws Exception {
+        try (AsyncAnalyzer analyzer = analyzer(8, 20)) {
+            CompletableFuture<AsyncAnalyzer.Result> busy = occupy(analyzer);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<?>> all = new ArrayList<>();
+            String[] sessions = {"a", "a", "a", "b", "c"};
+            for (int i = 0; i < sessions.length; i++) {
+                String name = sessions[i] + i;
+                all.add(analyzer.analyze(sessions[i], START, 1, 0, LONG).thenRun(() -> order.add(name)));
+            }
+            busy.cancel(false);
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("a0", "b3", "c4", "a1", "a2"), order);
+        }
+    }
+
+    // Closing cancels queued requests, stops the running search with its best move so far and
+    // rejects anything asked for afterwards
+    @Test
+    public void testClose() throws Exception {
+        AsyncAnalyzer analyzer = analyzer(8, 20);
+        CompletableFuture<AsyncAnalyzer.Result> running = occupy(analyzer);
+        CompletableFuture<AsyncAnalyzer.Result> queued = analyzer.analyze("a", START, DEEP, 0, LONG);
+        analyzer.close();
+
+        assertTrue(queued.isCancelled());
+        AsyncAnalyzer.Result result = running.get(10, TimeUnit.SECONDS);
+        assertTrue(result.getDepth() < DEEP);
+        assertEquals(0, analyzer.getQueued());
+        assertTrue(failure(analyzer.analyze("a", START, 2, 0, LONG)) instanceof RejectedExecutionException);
+    }
+}
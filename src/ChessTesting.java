@@ -0,0 +1,197 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.Position;
+import game.Chess;
+import game.Piece;
+import game.util.Color;
+import org.junit.jupiter.api.Test;
+import pieces.Knight;
+import pieces.Queen;
+
+/**
+ * Tests for whole games played through Chess.makeMove, where the Board and the engine position
+ * must stay in step move after move.
+ */
+public class ChessTesting {
+    // Both knights out and back, which brings the position back with the same player to move
+    private static final String[] KNIGHT_SHUFFLE = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+    // White wins the h8 rook with a pawn that marched up the h-file
+    private static final String[] PROMOTION_GAME = {
+            "h2h4", "g7g5", "h4g5", "h7h6", "g5h6", "f8g7", "h6g7", "g8f6",
+    };
+
+    private static Chess play(String... moves) {
+        return play(new Chess(), moves);
+    }
+
+    private static Chess play(Chess game, String... moves) {
+        for (String move : moves) {
+            game.makeMove(move);
+        }
+        return game;
+    }
+
+    // The engine's moves must be those of the board, as if the position were set up from it
+    private static void assertInStep(Chess game) {
+        Position position = new Position();
+        position.setFrom(game.getBoard(), game.getNextPlayer() == 1 ? Color.WHITE : Color.BLACK);
+        int[] expected = new int[Position.MAX_MOVES];
+        int[] actual = new int[Position.MAX_MOVES];
+        assertEquals(position.generateMoves(expected, 0), game.generateMoves(actual, 0));
+        assertEquals(position.getKey(), game.getKey());
+    }
+
+    // A pawn taking onto the last rank becomes a queen on the board, and the game goes on
+    @Test
+    public void testPromotionKeepsBoardAndEngineInStep() {
+        Chess game = play(PROMOTION_GAME);
+        game.makeMove("g7h8q");
+        Piece promoted = game.getBoard().getPieceAt(0, 7);
+        assertTrue(promoted instanceof Queen);
+        assertEquals(Color.WHITE, promoted.getColor());
+
+        game.makeMove("f6g8");  // The queen checks along the back rank
+        game.makeMove("a2a3");
+        assertInStep(game);
+    }
+
+    // A promotion without a piece letter makes a queen, in coordinates with a separator too
+    @Test
+    public void testPromotionDefaultsToQueen() {
+        Chess game = play(PROMOTION_GAME);
+        game.makeMove("g7 h8");
+        assertTrue(game.getBoard().getPieceAt(0, 7) instanceof Queen);
+        assertInStep(game);
+    }
+
+    // An underpromotion puts the chosen piece on the board
+    @Test
+    public void testUnderpromotion() {
+        Chess game = play(PROMOTION_GAME);
+        game.makeMove("g7-h8n");
+        assertTrue(game.getBoard().getPieceAt(0, 7) instanceof Knight);
+        assertInStep(game);
+
+        game.makeMove("e7e6");
+        game.makeMove("h8g6");  // The new knight moves like one
+        assertInStep(game);
+    }
+
+    // A check that can be answered does not end the game
+    @Test
+    public void testCheckIsNotCheckmate() {
+        Chess game = play("e2e4", "f7f6", "d1h5");
+        assertEquals(-1, game.getWinner());
+    }
+
+    // Fool's mate: White is checkmated, so Black wins
+    @Test
+    public void testCheckmate() {
+        Chess game = play("f2f3", "e7e5", "g2g4", "d8h4");
+        assertEquals(2, game.getWinner());
+    }
+
+    // Loyd's ten-move stalemate: Black has no moves but is not in check, so the game is drawn
+    @Test
+    public void testStalemateIsDraw() {
+        Chess game = play("e2e3", "a7a5", "d1h5", "a8a6", "h5a5", "h7h5", "h2h4", "a6h6", "a5c7", "f7f6",
+                "c7d7", "e8f7", "d7b7", "d8d3", "b7b8", "d3h7", "b8c8", "f7g6");
+        assertEquals(-1, game.getWinner());
+        game.makeMove("c8e6");
+        assertEquals(0, game.getWinner());
+    }
+
+    // A coordinate move the legal moves do not list is rejected and leaves the game as it was
+    @Test
+    public void testIllegalCoordinateMoveIsRejected() {
+        Chess game = play("e2e4", "e7e5");
+        long key = game.getKey();
+        assertThrows(IllegalArgumentException.class, () -> game.makeMove("e4 e5"));
+        assertThrows(IllegalArgumentException.class, () -> game.makeMove("d1-d3"));  // Through its own pawn
+        assertEquals(key, game.getKey());
+        assertEquals(1, game.getNextPlayer());
+    }
+
+    // A copy of the game's position keeps what the board does not: the en passant square and clock
+    @Test
+    public void testCopyPositionKeepsEnPassantAndClock() {
+        Chess game = play("e2e4", "g8f6", "e4e5", "f6g8", "g1f3", "d7d5");
+        Position copy = new Position();
+        game.copyPositionTo(copy);
+        assertEquals("rnbqkbnr/ppp1pppp/8/3pP3/8/5N2/PPPP1PPP/RNBQKB1R w KQkq d6 0 1", Fen.format(copy));
+
+        play(game, "f3g1", "g8f6");
+        game.copyPositionTo(copy);
+        assertEquals(2, copy.getHalfmoveClock());
+        assertEquals(-1, copy.getEnPassantSquare());
+    }
+
+    // The starting position a third time is a draw; the second time is not
+    @Test
+    public void testKnightShuffleRepetition() {
+        Chess game = play(KNIGHT_SHUFFLE);
+        assertFalse(game.isDrawByRepetition());
+        play(game, KNIGHT_SHUFFLE);
+        assertTrue(game.isDrawByRepetition());
+        assertEquals(0, game.getWinner());
+    }
+
+    // Positions before a pawn move can never come back, so only those after it are counted
+    @Test
+    public void testPawnMoveBreaksRepetition() {
+        Chess game = play(KNIGHT_SHUFFLE);
+        play(game, "e2e3", "e7e6");
+        play(game, KNIGHT_SHUFFLE);
+        assertFalse(game.isDrawByRepetition());
+        assertEquals(-1, game.getWinner());
+        play(game, KNIGHT_SHUFFLE);
+        assertTrue(game.isDrawByRepetition());
+    }
+
+    // Rooks that go out and back leave the pieces where they were, but without the right to
+    // castle, so it is not the same position
+    @Test
+    public void testLostCastlingRightsBreakRepetition() {
+        Chess game = play("g1f3", "g8f6");
+        play(game, "h1g1", "h8g8", "g1h1", "g8h8");
+        play(game, "f3g1", "f6g8", "g1f3", "g8f6");
+        assertFalse(game.isDrawByRepetition());  // Third time for the pieces, second for the position
+        play(game, "f3g1", "f6g8", "g1f3", "g8f6");
+        assertTrue(game.isDrawByRepetition());
+    }
+
+    // The clock counts plies without a pawn move or capture and the game is drawn at 100
+    @Test
+    public void testFiftyMoveRule() {
+        String[] shuffle = {"g8f6", "g1f3", "f6g8", "f3g1"};  // Black first
+        Chess game = play("e2e4");
+        assertEquals(0, game.getHalfmoveClock());
+        for (int ply = 1; ply < 100; ply++) {
+            play(game, shuffle[(ply - 1) & 3]);
+            assertEquals(ply, game.getHalfmoveClock());
+        }
+        assertFalse(game.isDrawByFiftyMoveRule());
+        assertTrue(game.generateMoves(new int[Position.MAX_MOVES], 0) > 0);
+
+        play(game, shuffle[99 & 3]);
+        assertEquals(100, game.getHalfmoveClock());
+        assertTrue(game.isDrawByFiftyMoveRule());
+        assertEquals(0, game.getWinner());
+        assertEquals(0, game.generateMoves(new int[Position.MAX_MOVES], 0));
+    }
+
+    // A pawn move or a capture starts the count again
+    @Test
+    public void testFiftyMoveClockResets() {
+        Chess game = play("g1f3", "g8f6", "f3g1");
+        assertEquals(3, game.getHalfmoveClock());
+        play(game, "e7e5");
+        assertEquals(0, game.getHalfmoveClock());
+        play(game, "g1f3", "b8c6");
+        assertEquals(2, game.getHalfmoveClock());
+        play(game, "f3e5");
+        assertEquals(0, game.getHalfmoveClock());
+    }
+}
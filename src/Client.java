@@ -1,11 +1,21 @@
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.MoveParser;
+import engine.Ponderer;
+import engine.Position;
 import game.AbstractStrategyGame;
 import game.Chess;
+import game.util.Color;
 
 import java.util.*;
 
 public class Client {
     public static void main(String[] args) {
         Scanner console = new Scanner(System.in);
+        if (args.length > 0 && args[0].equals("--engine")) {
+            playEngine(console, args.length > 1 ? Integer.parseInt(args[1]) : 5);
+            return;
+        }
         AbstractStrategyGame game = new Chess();
 
         System.out.println(game.instructions());
@@ -14,6 +24,9 @@ public class Client {
         while (!game.isGameOver()) {
             System.out.println(game);
             System.out.printf("Player %d's turn.\n", game.getNextPlayer());
+            if (!console.hasNextLine()) {
+                return;  // The moves were piped in and have run out
+            }
             try {
                 game.makeMove(console);
             } catch (IllegalArgumentException ex) {
@@ -36,4 +49,52 @@ public class Client {
             System.out.println("It's a tie!");
         }
     }
+
+    // Plays White against the engine, which ponders on the expected reply while you type
+    private static void playEngine(Scanner console, int depth) {
+        Chess game = new Chess();
+        Position position = new Position();  // The engine's copy of the game
+        position.setFrom(game.getBoard(), Color.WHITE);
+        int[] moves = new int[Position.MAX_MOVES];
+
+        System.out.println(game.instructions());
+        System.out.println();
+        try (Ponderer engine = new Ponderer(new MaterialEvaluator(), depth)) {
+            while (!game.isGameOver()) {
+                System.out.println(game);
+                if (game.getNextPlayer() == 1) {
+                    System.out.println("Player 1's turn.");
+                    int move;
+                    try {
+                        move = MoveParser.parse(position, console.nextLine(), moves);
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("**Illegal move: " + ex.getMessage());
+                        continue;
+                    }
+                    game.makeMove(Move.toString(move));
+                    position.makeMove(move);
+                } else {
+                    long start = System.nanoTime();
+                    int move = engine.think(position);
+                    if (move == Move.NONE) {
+                        System.out.println("The engine has no legal moves.");
+                        break;
+                    }
+                    game.makeMove(Move.toString(move));
+                    position.makeMove(move);
+                    engine.ponder(position);
+                    System.out.printf("The engine plays %s after %.0f ms (%d replies predicted, %d missed).\n",
+                            Move.toString(move), (System.nanoTime() - start) / 1e6, engine.getPonderHits(),
+                            engine.getPonderMisses());
+                }
+            }
+        }
+        System.out.println(game);
+        int winner = game.getWinner();
+        if (winner > 0) {
+            System.out.printf("Player %d wins!\n", winner);
+        } else {
+            System.out.println("It's a tie!");
+        }
+    }
 }
@@ -0,0 +1,156 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import dataset.PackedPosition;
+import dataset.PositionStore;
+import engine.Fen;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Tests for PackedPosition and PositionStore. The store tests hold more than CHUNK_RECORDS
+ * records, so sorting and deduplicating move records between chunks; they need 64 MB of direct
+ * memory.
+ */
+public class DatasetTesting {
+    // Distinct positions of random games, with castling rights and en passant squares among them
+    private static List<Position> randomPositions(int count, long seed) {
+        List<Position> positions = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] moves = new int[Position.MAX_MOVES];
+        Position position = Fen.parse(Fen.START);
+        while (positions.size() < count) {
+            int n = position.generateMoves(moves, 0);
+            if (n == 0 || random.nextInt(80) == 0) {
+                position = Fen.parse(Fen.START);
+                continue;
+            }
+            position.makeMove(moves[random.nextInt(n)]);
+            position.clearHistory();
+            if (seen.add(identity(position))) {
+                Position copy = new Position();
+                copy.copyFrom(position);
+                positions.add(copy);
+            }
+        }
+        return positions;
+    }
+
+    // The FEN of a position without its halfmove clock, which is what a record's identity covers
+    private static String identity(Position position) {
+        String fen = Fen.format(position);
+        return fen.substring(0, fen.lastIndexOf(' ', fen.lastIndexOf(' ') - 1));
+    }
+
+    // Every part of a position survives packing, at any offset in a buffer
+    @Test
+    public void testRoundTrip() {
+        SplittableRandom random = new SplittableRandom(11);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PackedPosition.SIZE * 4);
+        Position decoded = new Position();
+        boolean enPassant = false;
+        for (Position position : randomPositions(5000, 1)) {
+            position.setHalfmoveClock(random.nextInt(256));
+            int offset = random.nextInt(4) * PackedPosition.SIZE;
+            PackedPosition.encode(position, buffer, offset);
+            PackedPosition.decode(buffer, offset, decoded);
+            assertEquals(Fen.format(position), Fen.format(decoded));
+            assertEquals(position.getKey(), decoded.getKey());
+            enPassant |= position.getEnPassantSquare() >= 0;
+        }
+        assertTrue(enPassant, "some position had an en passant square");
+
+        // Castling rights and both sides to move, which the games above rarely mix
+        for (String fen : new String[] {
+                "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1",
+                "r3k2r/8/8/8/8/8/8/R3K2R b Kq - 17 1",
+                "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1",
+                "4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1"}) {
+            PackedPosition.encode(Fen.parse(fen), buffer, 0);
+            PackedPosition.decode(buffer, 0, decoded);
+            assertEquals(fen, Fen.format(decoded));
+        }
+    }
+
+    // The clock is not part of the identity, so it does not change the hash
+    @Test
+    public void testHashIgnoresClock() {
+        ByteBuffer buffer = ByteBuffer.allocate(PackedPosition.SIZE * 2);
+        Position position = Fen.parse(Fen.START);
+        PackedPosition.encode(position, buffer, 0);
+        position.setHalfmoveClock(42);
+        PackedPosition.encode(position, buffer, PackedPosition.SIZE);
+        assertEquals(PackedPosition.hash(buffer, 0), PackedPosition.hash(buffer, PackedPosition.SIZE));
+        assertNotEquals(buffer.getLong(24), buffer.getLong(PackedPosition.SIZE + 24));
+    }
+
+    // Fills a store past its first chunk with a few thousand positions, each many times over at
+    // random clocks, and returns the lowest clock appended for each identity
+    private static Map<String, Integer> fill(PositionStore store, List<Position> positions, long seed) {
+        Map<String, Integer> lowest = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        while (store.size() < PositionStore.CHUNK_RECORDS + 50_000) {
+            Position position = positions.get(random.nextInt(positions.size()));
+            int clock = 1 + random.nextInt(255);
+            position.setHalfmoveClock(clock);
+            store.append(position);
+            lowest.merge(identity(position), clock, Math::min);
+        }
+        return lowest;
+    }
+
+    // Sorting orders every record by unsigned hash, across the chunk boundary, with the lowest
+    // clock first among equal positions
+    @Test
+    public void testSortAcrossChunks() {
+        PositionStore store = new PositionStore();
+        fill(store, randomPositions(3000, 2), 3);
+        assertEquals(2 * (long) PositionStore.CHUNK_RECORDS * PackedPosition.SIZE, store.getMemoryUsage());
+        store.sortByHash();
+
+        Position previous = new Position();
+        Position current = new Position();
+        store.get(0, previous);
+        for (long i = 1; i < store.size(); i++) {
+            assertTrue(Long.compareUnsigned(store.hash(i - 1), store.hash(i)) <= 0, "record " + i);
+            if (store.hash(i - 1) == store.hash(i)) {
+                store.get(i, current);
+                if (identity(previous).equals(identity(current))) {
+                    assertTrue(previous.getHalfmoveClock() <= current.getHalfmoveClock(), "record " + i);
+                }
+            }
+            store.get(i, previous);
+        }
+    }
+
+    // Deduplicating keeps one record per position, the one with the lowest clock, and frees the
+    // chunks it no longer needs
+    @Test
+    public void testDeduplicateKeepsLowestClock() {
+        PositionStore store = new PositionStore();
+        Map<String, Integer> lowest = fill(store, randomPositions(3000, 4), 5);
+        long appended = store.size();
+        assertEquals(appended - lowest.size(), store.deduplicate());
+        assertEquals(lowest.size(), store.size());
+        assertEquals((long) PositionStore.CHUNK_RECORDS * PackedPosition.SIZE, store.getMemoryUsage());
+
+        Position position = new Position();
+        Set<String> kept = new HashSet<>();
+        for (long i = 0; i < store.size(); i++) {
+            store.get(i, position);
+            String identity = identity(position);
+            assertTrue(kept.add(identity), "one record per position");
+            assertEquals((int) lowest.get(identity), position.getHalfmoveClock());
+        }
+        assertEquals(0, store.deduplicate());
+    }
+}
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for Fen: positions round-trip through format and parse, and text that describes no
+ * position the engine can play is rejected with an IllegalArgumentException.
+ */
+public class FenTesting {
+    // Formatting a parsed position gives back the same text
+    @Test
+    public void testRoundTrip() {
+        String[] fens = {
+                Fen.START,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 1",
+                "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+                "8/8/8/8/8/8/8/K6k b - - 37 1",
+        };
+        for (String fen : fens) {
+            assertEquals(fen, Fen.format(Fen.parse(fen)));
+        }
+    }
+
+    // An en passant square a pawn has just passed over is kept
+    @Test
+    public void testEnPassantSquare() {
+        Position position = Fen.parse("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+        assertEquals(Fen.parseSquare("d6"), position.getEnPassantSquare());
+        position = Fen.parse("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1");
+        assertEquals(Fen.parseSquare("e3"), position.getEnPassantSquare());
+    }
+
+    // The square must be on the sixth rank with White to move or the third with Black to move,
+    // behind a pawn of the side that just moved, with the pawn's path empty
+    @Test
+    public void testImpossibleEnPassantSquare() {
+        String[] fens = {
+                "4k3/8/8/3pP3/8/8/8/4K3 w - d5 0 1",  // The pawn's own square
+                "4k3/8/8/3pP3/8/8/8/4K3 w - d3 0 1",  // Third rank with White to move
+                "4k3/8/8/8/3pP3/8/8/4K3 b - e6 0 1",  // Sixth rank with Black to move
+                "4k3/8/8/4P3/8/8/8/4K3 w - d6 0 1",  // No pawn in front of the square
+                "4k3/8/8/3PP3/8/8/8/4K3 w - d6 0 1",  // A pawn of the side to move in front of it
+                "4k3/3p4/8/3pP3/8/8/8/4K3 w - d6 0 1",  // Something on the square it came from
+                "4k3/8/3n4/3pP3/8/8/8/4K3 w - d6 0 1",  // Something on the square it passed over
+        };
+        for (String fen : fens) {
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> Fen.parse(fen), fen);
+            assertTrue(ex.getMessage().startsWith("Impossible en passant square"), fen);
+        }
+    }
+
+    // Placements the engine can not play
+    @Test
+    public void testImpossiblePlacements() {
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k2P/8/8/8/8/8/8/4K3 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/8/p3K3 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("8/8/8/8/8/8/8/4K3 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/8/4K2R w Q - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/8/3K3R w K - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/8/4K3 x - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/8/4K3 w - - x 1"));
+        assertThrows(IllegalArgumentException.class, () -> Fen.parse("4k3/8/8/8/8/8/4K3 w - -"));
+    }
+}
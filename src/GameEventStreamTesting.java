@@ -0,0 +1,197 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Position;
+import game.Chess;
+import game.GameEvent;
+import game.GameEventStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for GameEventStream, fed by the moves of a Chess game. A game's stream holds 1024 events
+ * and waits a second for a lagging subscriber, so the tests shuffle knights back and forth to
+ * publish more events than that: one for each move, and once the position has repeated three
+ * times another for the drawn game.
+ */
+public class GameEventStreamTesting {
+    private static final String[] SHUFFLE = {"Nf3", "Nf6", "Ng1", "Ng8"};
+    private static final int CAPACITY = 1024;
+
+    // Make knight moves, each the next of the shuffle; as no pawn moves or captures, the halfmove
+    // clock counts every move of the game
+    private static void shuffle(Chess game, int moves) {
+        for (int i = 0; i < moves; i++) {
+            game.makeMove(SHUFFLE[game.getHalfmoveClock() & 3]);
+        }
+    }
+
+    // A subscriber thread polling until told to stop, checking the events arrive in order
+    private static class Poller extends Thread {
+        private final GameEventStream.Subscription subscription;
+        private final AtomicBoolean stop = new AtomicBoolean();
+        private final AtomicLong handled = new AtomicLong();
+        private volatile String error;
+        private long expected;
+
+        Poller(GameEventStream.Subscription subscription) {
+            this.subscription = subscription;
+            start();
+        }
+
+        @Override
+        public void run() {
+            while (!stop.get() || subscription.getLag() > 0) {
+                int polled = subscription.poll(event -> {
+                    if (event.getSequence() != expected && error == null) {
+                        error = "expected event " + expected + ", got " + event.getSequence();
+                    }
+                    expected++;
+                });
+                handled.addAndGet(polled);
+                if (polled == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            stop.set(true);
+            join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(isAlive(), "the poller did not finish");
+            assertNull(error, error);
+            return handled.get();
+        }
+    }
+
+    // A move's events carry what the move did, and the game's end follows the move that ends it
+    @Test
+    public void testEventsOfMoves() {
+        Chess game = new Chess();
+        GameEventStream.Subscription subscription = game.getEvents().subscribe();
+        for (String move : new String[] {"f3", "e5", "g4", "Qh4"}) {
+            game.makeMove(move);
+        }
+        List<String> events = new ArrayList<>();
+        assertEquals(6, subscription.poll(event -> events.add(event.getType() + " " + event.getPly() + " "
+                + event.getPlayer() + " " + event.getPiece() + " " + event.getWinner())));
+        int whitePawn = Position.piece(Position.WHITE, Position.PAWN);
+        int blackPawn = Position.piece(Position.BLACK, Position.PAWN);
+        int blackQueen = Position.piece(Position.BLACK, Position.QUEEN);
+        assertEquals(List.of(
+                GameEvent.MOVE + " 1 1 " + whitePawn + " -1",
+                GameEvent.MOVE + " 2 2 " + blackPawn + " -1",
+                GameEvent.MOVE + " 3 1 " + whitePawn + " -1",
+                GameEvent.MOVE + " 4 2 " + blackQueen + " -1",
+                GameEvent.CHECK + " 4 2 " + blackQueen + " -1",
+                GameEvent.GAME_OVER + " 4 2 " + blackQueen + " 2"), events);
+        assertEquals(0, subscription.poll(event -> fail("no new events")));
+    }
+
+    // Nothing is published while no one is subscribed, and a subscriber only sees what follows
+    @Test
+    public void testSubscribersSeeLaterEvents() {
+        Chess game = new Chess();
+        GameEventStream stream = game.getEvents();
+        shuffle(game, 4);
+        assertEquals(0, stream.getPublished());
+        GameEventStream.Subscription subscription = stream.subscribe();
+        shuffle(game, 2);
+        assertEquals(2, subscription.getLag());
+        long[] first = {-1};
+        assertEquals(2, subscription.poll(event -> {
+            if (first[0] < 0) {
+                first[0] = event.getPly();
+            }
+        }));
+        assertEquals(5, first[0]);
+        assertEquals(0, subscription.getLag());
+    }
+
+    // A subscriber keeping up receives every event, in order, as the ring wraps around many times
+    @Test
+    public void testWrapAround() throws InterruptedException {
+        Chess game = new Chess();
+        GameEventStream stream = game.getEvents();
+        Poller poller = new Poller(stream.subscribe());
+        shuffle(game, 3 * CAPACITY);
+        long published = stream.getPublished();
+        assertTrue(published > 4 * CAPACITY);
+        assertEquals(published, poller.finish());
+        assertFalse(poller.subscription.isDropped());
+    }
+
+    // The producer waits for a subscriber a full ring behind, and carries on once it polls
+    @Test
+    public void testProducerWaitsForLaggingSubscriber() throws InterruptedException {
+        Chess game = new Chess();
+        GameEventStream stream = game.getEvents();
+        GameEventStream.Subscription subscription = stream.subscribe();
+        Thread player = new Thread(() -> shuffle(game, CAPACITY + 100));
+        player.start();
+
+        long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscription.getLag() < CAPACITY) {
+            assertTrue(System.nanoTime() < giveUp, "the producer never filled the ring");
+            Thread.yield();
+        }
+        Thread.sleep(200);  // Well inside the second the producer waits
+        assertTrue(player.isAlive());
+        assertEquals(CAPACITY, subscription.getLag());
+        assertEquals(CAPACITY, stream.getPublished());
+
+        long handled = 0;
+        while (player.isAlive() || subscription.getLag() > 0) {
+            handled += subscription.poll(event -> { });
+        }
+        player.join();
+        assertFalse(subscription.isDropped());
+        assertEquals(stream.getPublished(), handled);
+    }
+
+    // A subscriber that stops polling is dropped after the maximum wait, once, and the others
+    // keep every event
+    @Test
+    public void testStalledSubscriberIsDropped() throws InterruptedException {
+        Chess game = new Chess();
+        GameEventStream stream = game.getEvents();
+        Poller poller = new Poller(stream.subscribe());
+        GameEventStream.Subscription stalled = stream.subscribe();
+
+        long start = System.nanoTime();
+        shuffle(game, CAPACITY + 100);
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(900), waited / 1_000_000 + " ms");
+        assertTrue(stalled.isDropped());
+        assertEquals(1, stream.getSubscriberCount());
+        assertEquals(0, stalled.poll(event -> fail("a dropped subscription gets no events")));
+
+        start = System.nanoTime();
+        shuffle(game, 2 * CAPACITY);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900), "waited again");
+        assertEquals(stream.getPublished(), poller.finish());
+        assertFalse(poller.subscription.isDropped());
+    }
+
+    // A cancelled subscription never holds the producer up
+    @Test
+    public void testCancel() throws InterruptedException {
+        Chess game = new Chess();
+        GameEventStream stream = game.getEvents();
+        Poller poller = new Poller(stream.subscribe());
+        GameEventStream.Subscription cancelled = stream.subscribe();
+        shuffle(game, 4);
+        cancelled.cancel();
+        assertEquals(1, stream.getSubscriberCount());
+
+        long start = System.nanoTime();
+        shuffle(game, 2 * CAPACITY);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(900), "waited for it");
+        assertFalse(cancelled.isDropped());
+        assertEquals(stream.getPublished(), poller.finish());
+    }
+}
@@ -0,0 +1,212 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.LegalMoveCache;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Tests for LegalMoveCache. The smallest cache the constructor allows has 64 segments of 16
+ * slots, picked by the top six bits of a position's key, and a slot's home is the low four bits;
+ * a segment evicts once it holds 12 entries or its move arrays pass 1536 bytes. The tests find
+ * positions whose keys land where they need them, so they exercise particular table layouts
+ * through the public methods alone.
+ */
+public class LegalMoveCacheTesting {
+    private static final long SMALLEST = 64 * 16 * (13 + 96);
+    private static final int SLOTS = 16;
+    private static final long TABLE_BYTES = 64 * SLOTS * 13;  // Every segment's slots, without arrays
+
+    private final int[] scratch = new int[Position.MAX_MOVES];
+
+    private static int segment(Position position) {
+        return (int) (position.getKey() >>> 58);
+    }
+
+    private static int home(Position position) {
+        return (int) position.getKey() & (SLOTS - 1);
+    }
+
+    // Positions of random games whose keys fall in segment 0, two for each home slot
+    private static Position[][] positionsBySlot() {
+        Position[][] bySlot = new Position[SLOTS][2];
+        Set<Long> seen = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(3);
+        int[] moves = new int[Position.MAX_MOVES];
+        int missing = SLOTS * 2;
+        while (missing > 0) {
+            Position position = Fen.parse(Fen.START);
+            for (int ply = 0; ply < 80 && missing > 0; ply++) {
+                int count = position.generateMoves(moves, 0);
+                if (count == 0) {
+                    break;
+                }
+                position.makeMove(moves[random.nextInt(count)]);
+                position.clearHistory();
+                if (segment(position) != 0 || !seen.add(position.getKey())) {
+                    continue;
+                }
+                Position[] found = bySlot[home(position)];
+                int free = found[0] == null ? 0 : found[1] == null ? 1 : -1;
+                if (free >= 0) {
+                    found[free] = new Position();
+                    found[free].copyFrom(position);
+                    missing--;
+                }
+            }
+        }
+        return bySlot;
+    }
+
+    // Looks a position up and returns whether it was already cached
+    private boolean hit(LegalMoveCache cache, Position position) {
+        long hits = cache.getHits();
+        cache.get(position, scratch);
+        return cache.getHits() == hits + 1;
+    }
+
+    // Evicting the entry in the last slot moves the entries that wrapped round to the first
+    // slots back along their probe runs, where lookups still find them
+    @Test
+    public void testRemoveAcrossWraparound() {
+        Position[][] bySlot = positionsBySlot();
+        LegalMoveCache cache = new LegalMoveCache(SMALLEST);
+        Position last = bySlot[15][0];  // Sits in slot 15
+        Position wrapped = bySlot[15][1];  // Home 15, wraps round to slot 0
+        Position displaced = bySlot[0][0];  // Home 0, pushed on to slot 1
+        cache.get(last, scratch);
+        cache.get(wrapped, scratch);
+        cache.get(displaced, scratch);
+        for (int slot = 2; slot <= 10; slot++) {
+            cache.get(bySlot[slot][0], scratch);  // Each at home, to fill the segment to 12
+        }
+        assertEquals(12, cache.getSize());
+
+        // Mark everything but the last slot's entry as used, then make room for one more
+        assertTrue(hit(cache, wrapped));
+        assertTrue(hit(cache, displaced));
+        for (int slot = 2; slot <= 10; slot++) {
+            assertTrue(hit(cache, bySlot[slot][0]));
+        }
+        cache.get(bySlot[11][0], scratch);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(12, cache.getSize());
+
+        assertTrue(hit(cache, wrapped));
+        assertTrue(hit(cache, displaced));
+        for (int slot = 2; slot <= 11; slot++) {
+            assertTrue(hit(cache, bySlot[slot][0]), "slot " + slot);
+        }
+        assertFalse(hit(cache, last));
+    }
+
+    // A long run of lookups through tiny tables, checking every answer against the position
+    @Test
+    public void testEvictionKeepsAnswersRight() {
+        LegalMoveCache cache = new LegalMoveCache(SMALLEST);
+        SplittableRandom random = new SplittableRandom(5);
+        int[] moves = new int[Position.MAX_MOVES];
+        Position position = Fen.parse(Fen.START);
+        for (int i = 0; i < 20_000; i++) {
+            int count = position.generateMoves(moves, 0);
+            short[] cached = cache.get(position, scratch);
+            assertEquals(count, cached.length);
+            for (int j = 0; j < count; j++) {
+                assertTrue(contains(cached, moves[j]));
+            }
+            if (count == 0 || random.nextInt(60) == 0) {
+                position = Fen.parse(Fen.START);
+            } else {
+                position.makeMove(moves[random.nextInt(count)]);
+                position.clearHistory();
+            }
+        }
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getSize() <= 64 * 12);
+        assertTrue(cache.getMemoryUsage() <= SMALLEST);
+    }
+
+    // Positions with many moves fill a segment's share of the memory cap before its table: CLOCK
+    // then evicts entries not looked up since they were added, and keeps one that was
+    @Test
+    public void testClockEvictionUnderByteCap() {
+        LegalMoveCache cache = new LegalMoveCache(SMALLEST);
+        SplittableRandom random = new SplittableRandom(7);
+        Position used = null;
+        int added = 0;
+        while (cache.getEvictions() == 0) {
+            Position position = queens(random);
+            if (segment(position) != 0 || hit(cache, position)) {
+                continue;
+            }
+            added++;
+            if (used == null) {
+                used = position;
+            } else {
+                assertTrue(hit(cache, used));  // Keep its mark set
+            }
+            assertTrue(cache.getMemoryUsage() - TABLE_BYTES <= 1536);
+        }
+        assertTrue(added < 12, "the byte cap, not the table, made room");
+        assertTrue(cache.getMemoryUsage() - TABLE_BYTES <= 1536);
+        assertTrue(hit(cache, used));
+    }
+
+    // A random position of two kings and seven white queens, which has well over a hundred moves
+    private static Position queens(SplittableRandom random) {
+        while (true) {
+            char[] squares = new char[64];
+            Arrays.fill(squares, '1');
+            String pieces = "KkQQQQQQQ";
+            for (int i = 0; i < pieces.length(); i++) {
+                int square;
+                do {
+                    square = random.nextInt(64);
+                } while (squares[square] != '1');
+                squares[square] = pieces.charAt(i);
+            }
+            StringBuilder fen = new StringBuilder();
+            for (int row = 0; row < 8; row++) {
+                fen.append(squares, row * 8, 8).append(row < 7 ? "/" : "");
+            }
+            // Black, not to move, must not be in check
+            Position check = Fen.parse(fen + " b - - 0 1");
+            if (!check.isInCheck()) {
+                return Fen.parse(fen + " w - - 0 1");
+            }
+        }
+    }
+
+    // Promotions are told apart by the piece, and castling is a king move of two squares
+    @Test
+    public void testContainsPromotionsAndCastling() {
+        short[] promotion = new LegalMoveCache(SMALLEST).get(Fen.parse("4k3/P7/8/8/8/8/8/4K3 w - - 0 1"), scratch);
+        int a7 = Fen.parseSquare("a7");
+        int a8 = Fen.parseSquare("a8");
+        assertTrue(LegalMoveCache.contains(promotion, a7, a8, Position.QUEEN));
+        assertTrue(LegalMoveCache.contains(promotion, a7, a8, Position.ROOK));
+        assertTrue(LegalMoveCache.contains(promotion, a7, a8, Position.BISHOP));
+        assertTrue(LegalMoveCache.contains(promotion, a7, a8, Position.KNIGHT));
+        assertFalse(LegalMoveCache.contains(promotion, a7, a8, 0));
+
+        LegalMoveCache cache = new LegalMoveCache(SMALLEST);
+        short[] castling = cache.get(Fen.parse("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1"), scratch);
+        int e1 = Fen.parseSquare("e1");
+        assertTrue(LegalMoveCache.contains(castling, e1, Fen.parseSquare("g1"), 0));
+        assertTrue(LegalMoveCache.contains(castling, e1, Fen.parseSquare("c1"), 0));
+        assertFalse(LegalMoveCache.contains(castling, e1, Fen.parseSquare("h1"), 0));
+
+        short[] noRights = cache.get(Fen.parse("r3k2r/8/8/8/8/8/8/R3K2R w - - 0 1"), scratch);
+        assertFalse(LegalMoveCache.contains(noRights, e1, Fen.parseSquare("g1"), 0));
+        assertFalse(LegalMoveCache.contains(noRights, e1, Fen.parseSquare("c1"), 0));
+    }
+
+    private static boolean contains(short[] cached, int move) {
+        return Arrays.binarySearch(cached, LegalMoveCache.compact(move)) >= 0;
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.Move;
+import engine.MoveParser;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for MoveParser: every notation it reads must name the same legal move, and text that
+ * names no legal move, or more than one, must be rejected.
+ */
+public class MoveParserTesting {
+    private static final String PROMOTION = "4k3/P7/8/8/8/8/8/4K3 w - - 0 1";
+    private static final String CASTLING = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+    private static final String TWO_KNIGHTS = "4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1";  // Both reach d2
+    private static final String TWO_ROOKS = "4k3/8/8/4R3/8/8/8/R5K1 w - - 0 1";  // Both reach e1
+
+    private final int[] moves = new int[Position.MAX_MOVES];
+
+    // The coordinate notation of the move the text names in the position
+    private String parse(String fen, String text) {
+        return Move.toString(MoveParser.parse(Fen.parse(fen), text, moves));
+    }
+
+    // Coordinates with no separator, a dash or a space all name the double pawn push
+    @Test
+    public void testCoordinateNotation() {
+        Position position = Fen.parse(Fen.START);
+        int move = MoveParser.parse(position, "e2e4", moves);
+        assertEquals("e2e4", Move.toString(move));
+        assertTrue((move & Move.DOUBLE_PUSH) != 0);
+        assertEquals(move, MoveParser.parse(position, "e2-e4", moves));
+        assertEquals(move, MoveParser.parse(position, "e2 e4", moves));
+        assertEquals(move, MoveParser.parse(position, "e4", moves));
+        assertEquals(Fen.START, Fen.format(position));  // The position is not changed
+    }
+
+    // A promotion piece may follow directly, after "=", or be left out for a queen
+    @Test
+    public void testPromotionSuffixes() {
+        assertEquals("a7a8q", parse(PROMOTION, "a7a8q"));
+        assertEquals("a7a8q", parse(PROMOTION, "a7a8"));
+        assertEquals("a7a8n", parse(PROMOTION, "a7a8n"));
+        assertEquals("a7a8r", parse(PROMOTION, "a7-a8=R"));
+        assertEquals("a7a8b", parse(PROMOTION, "a8=B"));
+        assertEquals("a7a8q", parse(PROMOTION, "a8"));
+        assertEquals("a7a8n", parse(PROMOTION, "a8=N+"));
+    }
+
+    // Castling with letters or zeros, on either side
+    @Test
+    public void testCastling() {
+        Position position = Fen.parse(CASTLING);
+        int kingside = MoveParser.parse(position, "O-O", moves);
+        assertEquals("e1g1", Move.toString(kingside));
+        assertTrue((kingside & Move.CASTLE) != 0);
+        assertEquals(kingside, MoveParser.parse(position, "0-0", moves));
+        int queenside = MoveParser.parse(position, "O-O-O", moves);
+        assertEquals("e1c1", Move.toString(queenside));
+        assertTrue((queenside & Move.CASTLE) != 0);
+        assertEquals(queenside, MoveParser.parse(position, "0-0-0", moves));
+    }
+
+    // Two pieces that can reach a square are told apart by file or rank, and not at all is an error
+    @Test
+    public void testDisambiguation() {
+        assertEquals("b1d2", parse(TWO_KNIGHTS, "Nbd2"));
+        assertEquals("f3d2", parse(TWO_KNIGHTS, "Nfd2"));
+        assertEquals("f3d2", parse(TWO_KNIGHTS, "N3d2"));
+        assertEquals("f3e5", parse(TWO_KNIGHTS, "Ne5"));  // Only one knight reaches e5
+
+        assertEquals("a1e1", parse(TWO_ROOKS, "R1e1"));
+        assertEquals("e5e1", parse(TWO_ROOKS, "R5e1"));
+        assertEquals("a1e1", parse(TWO_ROOKS, "Rae1"));
+        assertEquals("e5e1", parse(TWO_ROOKS, "Ree1"));
+    }
+
+    // Naming a square both pieces can reach without telling them apart is ambiguous
+    @Test
+    public void testAmbiguousMoves() {
+        IllegalArgumentException knights = assertThrows(IllegalArgumentException.class,
+                () -> parse(TWO_KNIGHTS, "Nd2"));
+        assertTrue(knights.getMessage().startsWith("Ambiguous move"));
+        assertThrows(IllegalArgumentException.class, () -> parse(TWO_ROOKS, "Re1"));
+    }
+
+    // Text that is no move, or no legal one, is rejected
+    @Test
+    public void testIllegalMoves() {
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "e2e5"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "Ke2"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "O-O"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "Nf6"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "e9e4"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, "hello"));
+        assertThrows(IllegalArgumentException.class, () -> parse(Fen.START, ""));
+        assertThrows(IllegalArgumentException.class, () -> parse(PROMOTION, "a7a8k"));
+    }
+
+    // Captures, with or without the x, and en passant
+    @Test
+    public void testCaptures() {
+        String fen = "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1";
+        int move = MoveParser.parse(Fen.parse(fen), "exd6", moves);
+        assertEquals("e5d6", Move.toString(move));
+        assertTrue((move & Move.EN_PASSANT) != 0);
+        assertEquals(move, MoveParser.parse(Fen.parse(fen), "e5d6", moves));
+        assertEquals(move, MoveParser.parse(Fen.parse(fen), "e5xd6", moves));
+    }
+
+    // A token inside a longer text or byte buffer parses the same as on its own
+    @Test
+    public void testRanges() {
+        Position position = Fen.parse(Fen.START);
+        int move = MoveParser.parse(position, "Nf3", moves);
+        String line = "1. Nf3 d5";
+        assertEquals(move, MoveParser.parse(position, line, 3, 6, moves));
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(move, MoveParser.parse(position, bytes, 3, 6, moves));
+    }
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import engine.Fen;
+import engine.MoveParser;
+import engine.Network;
+import engine.NnueEvaluator;
+import engine.Position;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Tests for NnueEvaluator's incremental accumulators. Every score is compared with the score of
+ * the same position with both accumulators built from scratch, over random networks, so a piece
+ * left in or out of an update shows as a different score.
+ */
+public class NnueTesting {
+    private static final Network NETWORK = Network.random(1, 64, 16, 16);
+
+    // Positions where castling, en passant, promotion and capturing promotion are legal
+    private static final String[] SPECIAL = {
+            "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1",
+            "r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1",
+            "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1",
+            "4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1",
+            "1n2k3/P7/8/8/8/8/8/4K3 w - - 0 1",
+            "4k3/8/8/8/8/8/p7/1N2K3 b - - 0 1"};
+
+    // Random games, going back some of the time as a search does: every position scores the same
+    // incrementally as from scratch
+    @Test
+    public void testIncrementalMatchesFromScratch() {
+        for (long seed = 1; seed <= 3; seed++) {
+            Network network = Network.random(seed, 64, 16, 16);
+            NnueEvaluator incremental = new NnueEvaluator(network);
+            NnueEvaluator full = new NnueEvaluator(network);
+            SplittableRandom random = new SplittableRandom(seed);
+            int[] moves = new int[Position.MAX_MOVES];
+            int[] played = new int[120];
+            for (int game = 0; game < 40; game++) {
+                Position position = Fen.parse(Fen.START);
+                int ply = 0;
+                while (ply < played.length) {
+                    int count = position.generateMoves(moves, 0);
+                    if (count == 0 || ply > 0 && random.nextInt(4) == 0) {
+                        if (ply == 0) {
+                            break;
+                        }
+                        position.unmakeMove(played[--ply]);
+                    } else {
+                        played[ply] = moves[random.nextInt(count)];
+                        position.makeMove(played[ply++]);
+                    }
+                    assertEquals(full.evaluateFromScratch(position), incremental.evaluate(position), Fen.format(position));
+                }
+            }
+            assertTrue(incremental.getUpdates() > 4 * incremental.getRefreshes(),
+                    incremental.getUpdates() + " updates, " + incremental.getRefreshes() + " refreshes");
+        }
+    }
+
+    // Every legal move of positions with castling, en passant and promotions, and taking it back
+    @Test
+    public void testSpecialMoves() {
+        NnueEvaluator incremental = new NnueEvaluator(NETWORK);
+        NnueEvaluator full = new NnueEvaluator(NETWORK);
+        int[] moves = new int[Position.MAX_MOVES];
+        for (String fen : SPECIAL) {
+            Position position = Fen.parse(fen);
+            assertEquals(full.evaluateFromScratch(position), incremental.evaluate(position), fen);
+            int count = position.generateMoves(moves, 0);
+            for (int i = 0; i < count; i++) {
+                position.makeMove(moves[i]);
+                assertEquals(full.evaluateFromScratch(position), incremental.evaluate(position), Fen.format(position));
+                position.unmakeMove(moves[i]);
+                assertEquals(full.evaluateFromScratch(position), incremental.evaluate(position), fen);
+            }
+        }
+    }
+
+    // Only a king move rebuilds an accumulator, and only its own side's
+    @Test
+    public void testKingMoveRefreshesItsSide() {
+        NnueEvaluator evaluator = new NnueEvaluator(NETWORK);
+        int[] moves = new int[Position.MAX_MOVES];
+        Position position = Fen.parse(Fen.START);
+        evaluator.evaluate(position);
+        assertEquals(2, evaluator.getRefreshes());
+        assertEquals(0, evaluator.getUpdates());
+
+        for (String move : new String[] {"e4", "e5", "Nf3"}) {
+            position.makeMove(MoveParser.parse(position, move, moves));
+            evaluator.evaluate(position);
+        }
+        assertEquals(2, evaluator.getRefreshes());
+        assertEquals(6, evaluator.getUpdates());
+
+        position.makeMove(MoveParser.parse(position, "Ke7", moves));
+        evaluator.evaluate(position);
+        assertEquals(3, evaluator.getRefreshes());
+        assertEquals(7, evaluator.getUpdates());
+
+        evaluator.evaluateFromScratch(position);
+        assertEquals(5, evaluator.getRefreshes());
+    }
+
+    // A network saved and loaded again scores every position the same
+    @Test
+    public void testSavedNetworkScoresTheSame() throws IOException {
+        Path file = Files.createTempFile("network", ".nnue");
+        file.toFile().deleteOnExit();
+        NETWORK.save(file);
+        NnueEvaluator original = new NnueEvaluator(NETWORK);
+        NnueEvaluator loaded = new NnueEvaluator(Network.load(file));
+        for (String fen : SPECIAL) {
+            Position position = Fen.parse(fen);
+            assertEquals(original.evaluate(position), loaded.evaluate(position), fen);
+        }
+    }
+}
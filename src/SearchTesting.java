@@ -0,0 +1,167 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import game.SearchableGame;
+import org.junit.jupiter.api.Test;
+import search.AlphaBetaSearch;
+import search.MonteCarloTreeSearch;
+
+/**
+ * Tests for the game-independent searches, on a game small enough to know the answers to. In
+ * Nim as played here there is one pile, each player takes one to three stones, and whoever takes
+ * the last stone wins. A pile that is a multiple of four is lost for the player to move, and
+ * otherwise the winning move leaves a multiple of four.
+ */
+public class SearchTesting {
+    // One-pile Nim; a move is the number of stones taken
+    private static class Nim implements SearchableGame {
+        private int stones;
+        private int made;  // Moves on the board, to check that searches take back what they make
+
+        Nim(int stones) {
+            this.stones = stones;
+        }
+
+        @Override
+        public int getMaxMoves() {
+            return 3;
+        }
+
+        @Override
+        public int generateMoves(int[] moves, int offset) {
+            int count = Math.min(3, stones);
+            for (int take = 1; take <= count; take++) {
+                moves[offset + take - 1] = take;
+            }
+            return count;
+        }
+
+        @Override
+        public void makeMove(int move) {
+            stones -= move;
+            made++;
+        }
+
+        @Override
+        public void unmakeMove(int move) {
+            stones += move;
+            made--;
+        }
+
+        @Override
+        public long getKey() {
+            return stones * 0x9E3779B97F4A7C15L;
+        }
+
+        @Override
+        public boolean isTerminal() {
+            return stones == 0;
+        }
+
+        @Override
+        public int getResult() {
+            return -WIN;  // The other player took the last stone
+        }
+
+        @Override
+        public int evaluate() {
+            return 0;
+        }
+
+        @Override
+        public String moveToString(int move) {
+            return Integer.toString(move);
+        }
+    }
+
+    // The winning move from every pile that has one, and the game left as it was
+    @Test
+    public void testAlphaBetaFindsWinningMoves() {
+        for (int stones = 1; stones <= 21; stones++) {
+            if (stones % 4 == 0) {
+                continue;
+            }
+            Nim nim = new Nim(stones);
+            AlphaBetaSearch search = new AlphaBetaSearch(nim);
+            assertEquals(stones % 4, search.search(AlphaBetaSearch.MAX_PLY, 0), "pile of " + stones);
+            assertEquals(stones, nim.stones);
+            assertEquals(0, nim.made);
+        }
+    }
+
+    // A win scores WIN less the plies to the last stone; a loss the opposite
+    @Test
+    public void testAlphaBetaScoresDistanceToResult() {
+        AlphaBetaSearch search = new AlphaBetaSearch(new Nim(3));
+        search.search(10, 0);
+        assertEquals(SearchableGame.WIN - 1, search.getScore());
+
+        search = new AlphaBetaSearch(new Nim(5));
+        search.search(10, 0);
+        assertEquals(SearchableGame.WIN - 3, search.getScore());
+
+        search = new AlphaBetaSearch(new Nim(4));
+        search.search(10, 0);
+        assertEquals(-SearchableGame.WIN + 2, search.getScore());
+    }
+
+    // Once the result is proven the search stops deepening: from six stones the win takes three
+    // plies, taking two, any reply, then the rest
+    @Test
+    public void testAlphaBetaStopsAtProvenResult() {
+        AlphaBetaSearch search = new AlphaBetaSearch(new Nim(6));
+        search.search(AlphaBetaSearch.MAX_PLY, 0);
+        assertEquals(3, search.getDepth());
+    }
+
+    // A search of a finished game has no move to return
+    @Test
+    public void testAlphaBetaGameOver() {
+        AlphaBetaSearch search = new AlphaBetaSearch(new Nim(0));
+        assertEquals(-1, search.search(10, 0));
+    }
+
+    // A node limit ends the search with the best move of a completed iteration, never nothing
+    @Test
+    public void testAlphaBetaNodeLimit() {
+        Nim nim = new Nim(40);
+        AlphaBetaSearch search = new AlphaBetaSearch(nim);
+        int move = search.search(AlphaBetaSearch.MAX_PLY, 50);
+        assertTrue(move >= 1 && move <= 3);
+        assertTrue(search.getNodes() <= 50);
+        assertEquals(40, nim.stones);
+        assertEquals(0, nim.made);
+    }
+
+    // Enough playouts find the winning move and expect to win with it
+    @Test
+    public void testMonteCarloFindsWinningMoves() {
+        for (int stones = 5; stones <= 7; stones++) {
+            Nim nim = new Nim(stones);
+            MonteCarloTreeSearch search = new MonteCarloTreeSearch(nim, 10_000, 1);
+            assertEquals(stones % 4, search.search(5000), "pile of " + stones);
+            assertTrue(search.getWinRate() > 0.5);
+            assertEquals(5000, search.getIterations());
+            assertEquals(stones, nim.stones);
+            assertEquals(0, nim.made);
+        }
+    }
+
+    // A full tree stops growing but the search still returns a legal move
+    @Test
+    public void testMonteCarloFullTree() {
+        Nim nim = new Nim(30);
+        MonteCarloTreeSearch search = new MonteCarloTreeSearch(nim, 16, 7);
+        int move = search.search(1000);
+        assertTrue(move >= 1 && move <= 3);
+        assertTrue(search.getSize() <= 16);
+        assertEquals(30, nim.stones);
+        assertEquals(0, nim.made);
+    }
+
+    // A search of a finished game has no move to return
+    @Test
+    public void testMonteCarloGameOver() {
+        MonteCarloTreeSearch search = new MonteCarloTreeSearch(new Nim(0), 100, 1);
+        assertEquals(-1, search.search(100));
+    }
+}
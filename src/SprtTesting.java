@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import tournament.Sprt;
+
+/**
+ * Tests for Sprt, mostly with the common test of 0 against 5 Elo at 5% error rates, whose bounds
+ * are ln(0.05 / 0.95) and ln(0.95 / 0.05), about -2.944 and 2.944.
+ */
+public class SprtTesting {
+    private static final Sprt SPRT = new Sprt(0, 5, 0.05, 0.05);
+
+    // The bounds follow from the error rates alone
+    @Test
+    public void testBounds() {
+        assertEquals(Math.log(0.05 / 0.95), SPRT.getLowerBound(), 1e-12);
+        assertEquals(Math.log(0.95 / 0.05), SPRT.getUpperBound(), 1e-12);
+        assertEquals(-2.944, SPRT.getLowerBound(), 1e-3);
+        Sprt uneven = new Sprt(0, 5, 0.01, 0.1);
+        assertEquals(Math.log(0.1 / 0.99), uneven.getLowerBound(), 1e-12);
+        assertEquals(Math.log(0.9 / 0.01), uneven.getUpperBound(), 1e-12);
+    }
+
+    // No games is no evidence either way
+    @Test
+    public void testNoGames() {
+        assertEquals(0, SPRT.llr(0, 0, 0), 0);
+        assertEquals(Sprt.CONTINUE, SPRT.decide(0, 0, 0));
+    }
+
+    // A run of identical results takes many games to decide, rather than leaping to a decision
+    // as it would with no variance
+    @Test
+    public void testStraightRuns() {
+        assertEquals(Sprt.CONTINUE, SPRT.decide(1, 0, 0));
+        assertEquals(Sprt.CONTINUE, SPRT.decide(19, 0, 0));
+        assertEquals(Sprt.ACCEPT_H1, SPRT.decide(20, 0, 0));
+        assertEquals(Sprt.CONTINUE, SPRT.decide(0, 0, 19));
+        assertEquals(Sprt.ACCEPT_H0, SPRT.decide(0, 0, 20));
+        assertEquals(Sprt.CONTINUE, SPRT.decide(0, 167, 0));
+        assertEquals(Sprt.ACCEPT_H0, SPRT.decide(0, 168, 0));
+    }
+
+    // Even results lean towards H0 without deciding; a lead decides for H1 once the games are
+    // enough, and more wins never lower the ratio
+    @Test
+    public void testMixedResults() {
+        assertEquals(Sprt.CONTINUE, SPRT.decide(100, 100, 100));
+        assertTrue(SPRT.llr(100, 100, 100) < 0);
+        assertTrue(SPRT.llr(60, 0, 40) > 0);
+        assertEquals(Sprt.CONTINUE, SPRT.decide(60, 0, 40));
+        assertEquals(Sprt.ACCEPT_H1, SPRT.decide(1200, 0, 800));
+        assertEquals(Sprt.ACCEPT_H0, SPRT.decide(800, 0, 1200));
+        for (int wins = 300; wins < 500; wins++) {
+            assertTrue(SPRT.llr(wins + 1, 400, 300) > SPRT.llr(wins, 400, 300), "wins " + wins);
+        }
+    }
+
+    // Scores and Elo differences convert both ways
+    @Test
+    public void testEloConversion() {
+        assertEquals(0.5, Sprt.expectedScore(0), 1e-12);
+        assertEquals(1 / 1.1, Sprt.expectedScore(400), 1e-12);
+        for (double elo = -800; elo <= 800; elo += 50) {
+            assertEquals(elo, Sprt.eloFromScore(Sprt.expectedScore(elo)), 1e-9);
+        }
+        assertEquals(Double.POSITIVE_INFINITY, Sprt.eloFromScore(1), 0);
+    }
+
+    // Hypotheses in the wrong order and error rates outside (0, 1) are rejected
+    @Test
+    public void testInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(5, 0, 0.05, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(5, 5, 0.05, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(0, 5, 0, 0.05));
+        assertThrows(IllegalArgumentException.class, () -> new Sprt(0, 5, 0.05, 1));
+    }
+}
@@ -0,0 +1,227 @@
+package analysis;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The AnalysisCache class keeps analysis results on disk in a memory-mapped file, so results
+ * survive restarts and opening the cache costs nothing: pages are read from disk as they are
+ * probed. Several processes on one host may use the same file at once.
+ *
+ * <p>The file is a 64-byte header followed by buckets of four 16-byte slots. A position's 64-bit
+ * hash picks its bucket, and a new result replaces, in order of preference, the result for the
+ * same position if it is not deeper, an empty slot, or the shallowest result in the bucket.
+ *
+ * <p>A slot holds the entry and the entry XORed with the key, and a probe only trusts a slot
+ * whose two words agree with its key, so a half-written slot reads as a miss. Writers claim a
+ * slot by a compare-and-set of its entry word to CLAIMED, which no entry equals, and give the
+ * store up if another writer changed the slot first; a claimed slot is passed over by other
+ * writers until its new entry is in. The header is written under a file lock by whichever
+ * process creates the file.
+ *
+ * <p>An entry packs a result into a long, like Move packs a move into an int: use the static
+ * accessors to unpack it.
+ */
+public class AnalysisCache {
+    /** The entry returned by probe when the position is not in the cache. */
+    public static final long MISS = 0;
+
+    static final long MAGIC = 0x4348455353414331L;  // "CHESSAC1"
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 16;
+    static final int BUCKET_SLOTS = 4;
+    static final int BUCKET_SIZE = SLOT_SIZE * BUCKET_SLOTS;
+
+    // Entry layout: move in bits 0-19, legal move count 20-27, depth 28-35, the check flag in bit
+    // 36, the stored flag in bit 40 so no entry is MISS, and the signed score in bits 48-63
+    private static final long MOVE_MASK = 0xFFFFF;
+    private static final int LEGAL_SHIFT = 20;
+    private static final int DEPTH_SHIFT = 28;
+    private static final long CHECK = 1L << 36;
+    private static final long STORED = 1L << 40;
+    private static final long CLAIMED = 1;  // The entry word of a slot being written; not STORED
+    private static final int SCORE_SHIFT = 48;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer data;
+    private final long bucketMask;
+
+    private AnalysisCache(MappedByteBuffer data, long buckets) {
+        this.data = data;
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Opens a cache file, creating it with the given number of buckets if it does not exist. An
+     * existing file keeps the size it was created with.
+     *
+     * @param file the cache file
+     * @param buckets the number of buckets for a new file, a power of two
+     * @return the opened cache
+     * @throws IOException if the file cannot be opened or is not a cache file
+     * @throws IllegalArgumentException if buckets is not a power of two
+     */
+    public static AnalysisCache open(Path file, long buckets) throws IOException {
+        if (buckets <= 0 || Long.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two: " + buckets);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Whoever takes the lock first writes the header; everyone else reads it
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_SIZE) {
+                    header.clear();
+                    header.putLong(MAGIC).putLong(buckets).flip();
+                    channel.write(header, 0);
+                    channel.write(ByteBuffer.allocate(1), HEADER_SIZE + buckets * BUCKET_SIZE - 1);
+                } else if (header.getLong(0) != MAGIC) {
+                    throw new IOException("Not a cache file: " + file);
+                } else {
+                    buckets = header.getLong(8);
+                }
+            } finally {
+                lock.release();
+            }
+
+            long size = HEADER_SIZE + buckets * BUCKET_SIZE;
+            if (Long.bitCount(buckets) != 1 || channel.size() < size || size > Integer.MAX_VALUE) {
+                throw new IOException("Cache file is damaged or too large: " + file);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            data.order(ByteOrder.nativeOrder());
+            return new AnalysisCache(data, buckets);
+        }
+    }
+
+    /**
+     * Returns the number of results the cache can hold.
+     *
+     * @return the number of slots
+     */
+    public long capacity() {
+        return (bucketMask + 1) * BUCKET_SLOTS;
+    }
+
+    /**
+     * Looks a position up.
+     *
+     * @param key the position's 64-bit hash
+     * @return the entry for the position, or MISS
+     */
+    public long probe(long key) {
+        int bucket = bucketOffset(key);
+        for (int slot = bucket; slot < bucket + BUCKET_SIZE; slot += SLOT_SIZE) {
+            long check = (long) LONGS.getAcquire(data, slot);
+            long entry = (long) LONGS.getAcquire(data, slot + 8);
+            if ((check ^ entry) == key && (entry & STORED) != 0) {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores the result for a position, unless the cache already holds a deeper one for it or
+     * another writer is storing into the chosen slot at the same moment or every slot of the
+     * bucket is being written.
+     *
+     * @param key the position's 64-bit hash
+     * @param entry the result, as built by entry
+     */
+    public void store(long key, long entry) {
+        int bucket = bucketOffset(key);
+        int target = -1;
+        long targetStored = 0;
+        int targetDepth = Integer.MAX_VALUE;
+        for (int slot = bucket; slot < bucket + BUCKET_SIZE; slot += SLOT_SIZE) {
+            long check = (long) LONGS.getAcquire(data, slot);
+            long stored = (long) LONGS.getAcquire(data, slot + 8);
+            if ((check ^ stored) == key && (stored & STORED) != 0) {
+                if (depth(stored) > depth(entry)) {
+                    return;  // Keep the deeper result
+                }
+                target = slot;
+                targetStored = stored;
+                break;
+            }
+            if (stored == CLAIMED) {
+                continue;  // Another writer is filling this slot
+            }
+            int depth = (stored & STORED) == 0 ? -1 : depth(stored);  // Empty slots go first
+            if (depth < targetDepth) {
+                target = slot;
+                targetStored = stored;
+                targetDepth = depth;
+            }
+        }
+
+        // Mark the entry word claimed, which only one writer can do for what it read, so probes
+        // miss until the new entry is complete
+        if (target >= 0 && LONGS.compareAndSet(data, target + 8, targetStored, CLAIMED)) {
+            LONGS.setRelease(data, target, key ^ entry);
+            LONGS.setRelease(data, target + 8, entry);
+        }
+    }
+
+    /**
+     * Writes changed pages back to the file. The operating system does this on its own, so this
+     * is only needed to make results durable against a machine crash.
+     */
+    public void flush() {
+        data.force();
+    }
+
+    // Byte offset of the bucket a key falls in
+    private int bucketOffset(long key) {
+        return HEADER_SIZE + (int) (key & bucketMask) * BUCKET_SIZE;
+    }
+
+    /**
+     * Packs a result into an entry.
+     *
+     * @param move the best move, or Move.NONE
+     * @param score the score for the side to move
+     * @param depth the search depth the result came from, 0 for a static evaluation
+     * @param legalMoves the number of legal moves
+     * @param check whether the side to move is in check
+     * @return the entry
+     */
+    public static long entry(int move, int score, int depth, int legalMoves, boolean check) {
+        return (move & MOVE_MASK) | (long) legalMoves << LEGAL_SHIFT | (long) depth << DEPTH_SHIFT
+                | (check ? CHECK : 0) | STORED | (long) score << SCORE_SHIFT;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & MOVE_MASK);
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int legalMoves(long entry) {
+        return (int) (entry >>> LEGAL_SHIFT) & 0xFF;
+    }
+
+    public static boolean isCheck(long entry) {
+        return (entry & CHECK) != 0;
+    }
+}
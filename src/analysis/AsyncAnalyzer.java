@@ -0,0 +1,479 @@
+package analysis;
+
+import engine.Evaluator;
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.Position;
+import engine.Search;
+import game.Chess;
+import metrics.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The AsyncAnalyzer class finds moves for many callers without blocking any of them: analyze
+ * copies the position, queues the request and returns a CompletableFuture that a fixed pool of
+ * search threads completes later. Each thread keeps one Search for every request it runs.
+ *
+ * <p>Requests are queued per session and the threads take them round-robin across sessions, so
+ * a session that sends many requests at once delays only itself. Every request has a depth, a
+ * node budget and a deadline; the deadline covers the time spent queued as well, and a request
+ * whose deadline passes before a thread is free fails with a TimeoutException instead of being
+ * searched. A search that reaches its deadline or node budget returns the best move of its last
+ * completed depth. Cancelling the future removes a queued request, or stops a running search.
+ *
+ * <p>The queue is bounded. Once it is half full, new requests are searched no deeper than the
+ * degraded depth, and once it is full they fail at once with a RejectedExecutionException, so a
+ * burst of requests costs depth rather than unbounded waiting. Queue wait and search time are
+ * recorded separately in each Result and in the analyzer's histograms.
+ */
+public class AsyncAnalyzer implements AutoCloseable {
+    private final int queueCapacity;
+    private final int degradedDepth;
+    private final Map<String, ArrayDeque<Request>> queues;  // Waiting requests by session, guarded by this
+    private final ArrayDeque<ArrayDeque<Request>> ready;  // Non-empty queues in turn order, guarded by this
+    private int queued;  // Requests waiting, guarded by this
+    private boolean closed;  // Guarded by this
+    private final List<Request> running;  // Requests being searched, guarded by this
+    private final List<Thread> threads;
+    private final LatencyHistogram queueTimes;
+    private final LatencyHistogram computeTimes;
+    private final LongAdder rejected;
+    private final LongAdder degraded;
+    private final LongAdder expired;
+
+    // One queued or running request
+    private static class Request {
+        private final String session;
+        private final Position position;
+        private final int depth;
+        private final long maxNodes;
+        private final long deadline;  // System.nanoTime() to finish by
+        private final boolean degraded;
+        private final long queuedAt;
+        private final CompletableFuture<Result> future;
+        private Search search;  // The search running it, guarded by the request
+        private long searchNumber;  // Which of that Search's searches runs it, guarded by the request
+
+        Request(String session, Position position, int depth, long maxNodes, long deadline, boolean degraded) {
+            this.session = session;
+            this.position = position;
+            this.depth = depth;
+            this.maxNodes = maxNodes;
+            this.deadline = deadline;
+            this.degraded = degraded;
+            this.queuedAt = System.nanoTime();
+            this.future = new CompletableFuture<>();
+        }
+
+        synchronized void stop() {
+            if (search != null) {
+                search.stop(searchNumber);
+            }
+        }
+    }
+
+    /**
+     * The outcome of one request.
+     */
+    public static class Result {
+        private final int move;
+        private final int score;
+        private final int depth;
+        private final long nodes;
+        private final boolean degraded;
+        private final long queueNanos;
+        private final long computeNanos;
+
+        Result(int move, int score, int depth, long nodes, boolean degraded, long queueNanos, long computeNanos) {
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.degraded = degraded;
+            this.queueNanos = queueNanos;
+            this.computeNanos = computeNanos;
+        }
+
+        /**
+         * Returns the best move found.
+         *
+         * @return the packed move, or Move.NONE if the side to move had no legal moves or no depth
+         *         was completed in time
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the depth of the last completed iteration, which is less than requested if the
+         * deadline or node budget ran out or the request was degraded.
+         *
+         * @return the depth in plies
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns whether the request arrived while the queue was busy and had its depth lowered.
+         *
+         * @return true if the depth was lowered
+         */
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        /**
+         * Returns how long the request waited for a search thread.
+         *
+         * @return the queue wait in nanoseconds
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+
+        /**
+         * Returns how long the search took.
+         *
+         * @return the search time in nanoseconds
+         */
+        public long getComputeNanos() {
+            return computeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s score %d depth %d%s, %d nodes, queued %.1f ms, computed %.1f ms",
+                    Move.toString(move), score, depth, degraded ? " (degraded)" : "", nodes, queueNanos / 1e6,
+                    computeNanos / 1e6);
+        }
+    }
+
+    /**
+     * Creates an analyzer and starts its search threads.
+     *
+     * @param evaluators makes the evaluator of each search thread
+     * @param threads the number of search threads
+     * @param queueCapacity the most requests that may wait at once
+     * @param degradedDepth the depth limit of requests made while the queue is half full or more
+     */
+    public AsyncAnalyzer(Supplier<Evaluator> evaluators, int threads, int queueCapacity, int degradedDepth) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Need at least one thread and one queue slot");
+        }
+        this.queueCapacity = queueCapacity;
+        this.degradedDepth = degradedDepth;
+        this.queues = new HashMap<>();
+        this.ready = new ArrayDeque<>();
+        this.running = new ArrayList<>(threads);
+        this.threads = new ArrayList<>(threads);
+        this.queueTimes = new LatencyHistogram();
+        this.computeTimes = new LatencyHistogram();
+        this.rejected = new LongAdder();
+        this.degraded = new LongAdder();
+        this.expired = new LongAdder();
+        for (int i = 0; i < threads; i++) {
+            Search search = new Search(evaluators.get());
+            Thread thread = new Thread(() -> work(search), "analyzer-" + i);
+            thread.setDaemon(true);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a request for the best move of a game's position. The position is copied, so the
+     * game may go on while the request waits.
+     *
+     * @param session the caller the request counts against for fairness
+     * @param game the game, with the side to find a move for to move
+     * @param depth the depth in plies to search to
+     * @param maxNodes the node budget, or 0 for none
+     * @param timeoutMillis the time from now the result is needed by, queueing included
+     * @return the future result; it fails with a RejectedExecutionException if the queue is full,
+     *         a TimeoutException if the deadline passes before the search starts, and is cancelled
+     *         if the analyzer is closed first
+     */
+    public CompletableFuture<Result> analyze(String session, Chess game, int depth, long maxNodes, long timeoutMillis) {
+        Position position = new Position();
+        game.copyPositionTo(position);
+        return analyze(session, position, depth, maxNodes, timeoutMillis);
+    }
+
+    /**
+     * Queues a request for the best move of an engine position.
+     *
+     * @param session the caller the request counts against for fairness
+     * @param position the position; it is copied
+     * @param depth the depth in plies to search to
+     * @param maxNodes the node budget, or 0 for none
+     * @param timeoutMillis the time from now the result is needed by, queueing included
+     * @return the future result, as for the Chess version
+     */
+    public CompletableFuture<Result> analyze(String session, Position position, int depth, long maxNodes,
+                                             long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        Position copy = new Position();
+        copy.copyFrom(position);
+        Request request;
+        synchronized (this) {
+            if (closed || queued >= queueCapacity) {
+                rejected.increment();
+                CompletableFuture<Result> future = new CompletableFuture<>();
+                future.completeExceptionally(new RejectedExecutionException(closed ? "Analyzer closed"
+                        : "Analysis queue full: " + queued + " requests waiting"));
+                return future;
+            }
+            boolean busy = queued >= queueCapacity / 2 && depth > degradedDepth;
+            if (busy) {
+                degraded.increment();
+            }
+            request = new Request(session, copy, busy ? degradedDepth : depth, maxNodes, deadline, busy);
+            ArrayDeque<Request> queue = queues.computeIfAbsent(session, key -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                ready.addLast(queue);
+            }
+            queue.addLast(request);
+            queued++;
+            notify();
+        }
+        request.future.whenComplete((result, ex) -> {
+            if (request.future.isCancelled()) {
+                cancel(request);
+            }
+        });
+        return request.future;
+    }
+
+    /**
+     * Returns how long requests waited for a search thread.
+     *
+     * @return the histogram of queue waits in nanoseconds
+     */
+    public LatencyHistogram getQueueTimes() {
+        return queueTimes;
+    }
+
+    /**
+     * Returns how long searches took.
+     *
+     * @return the histogram of search times in nanoseconds
+     */
+    public LatencyHistogram getComputeTimes() {
+        return computeTimes;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDegraded() {
+        return degraded.sum();
+    }
+
+    /**
+     * Returns how many requests reached their deadline while still queued.
+     *
+     * @return the number of requests that timed out unsearched
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Stops the search threads. Queued requests are cancelled and running searches stopped.
+     */
+    @Override
+    public void close() {
+        List<Request> waiting = new ArrayList<>();
+        List<Request> searching;
+        synchronized (this) {
+            closed = true;
+            for (ArrayDeque<Request> queue : ready) {
+                waiting.addAll(queue);
+            }
+            queues.clear();
+            ready.clear();
+            queued = 0;
+            searching = new ArrayList<>(running);
+            notifyAll();
+        }
+        for (Request request : waiting) {
+            request.future.cancel(false);
+        }
+        for (Request request : searching) {
+            request.stop();  // The search returns its best move so far
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    // Take the next session's oldest request, waiting for one
+    private synchronized Request take() throws InterruptedException {
+        while (ready.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+        ArrayDeque<Request> queue = ready.pollFirst();
+        Request request = queue.pollFirst();
+        if (queue.isEmpty()) {
+            queues.remove(request.session);
+        } else {
+            ready.addLast(queue);  // The session's next request waits for the other sessions' turns
+        }
+        queued--;
+        return request;
+    }
+
+    // Drop a cancelled request from its queue, or stop its search
+    private void cancel(Request request) {
+        synchronized (this) {
+            ArrayDeque<Request> queue = queues.get(request.session);
+            if (queue != null && queue.remove(request)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    queues.remove(request.session);
+                    ready.remove(queue);
+                }
+                return;
+            }
+        }
+        request.stop();
+    }
+
+    private void work(Search search) {
+        while (true) {
+            Request request;
+            try {
+                request = take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (request == null) {
+                return;
+            }
+            run(search, request);
+        }
+    }
+
+    private void run(Search search, Request request) {
+        long start = System.nanoTime();
+        long queueNanos = start - request.queuedAt;
+        queueTimes.record(queueNanos);
+        long millisLeft = (request.deadline - start) / 1_000_000;
+        if (millisLeft <= 0) {
+            expired.increment();
+            request.future.completeExceptionally(new TimeoutException(
+                    String.format("Deadline passed after %.1f ms in the queue", queueNanos / 1e6)));
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                request.future.cancel(false);  // Taken just as the analyzer closed
+                return;
+            }
+            running.add(request);
+        }
+
+        // From here a cancel stops the search, even one that has not started yet; a cancel that
+        // came before had nothing to stop, so look again
+        synchronized (request) {
+            request.search = search;
+            request.searchNumber = search.getSearchCount() + 1;
+        }
+        try {
+            if (request.future.isDone()) {
+                return;  // Cancelled as it was taken
+            }
+            int move = search.search(request.position, request.depth, request.maxNodes, millisLeft);
+            long computeNanos = System.nanoTime() - start;
+            computeTimes.record(computeNanos);
+            request.future.complete(new Result(move, search.getScore(), search.getDepth(), search.getNodes(),
+                    request.degraded, queueNanos, computeNanos));
+        } catch (RuntimeException ex) {
+            request.future.completeExceptionally(ex);
+        } finally {
+            synchronized (request) {
+                request.search = null;
+            }
+            synchronized (this) {
+                running.remove(request);
+            }
+        }
+    }
+
+    /**
+     * Simulates a burst of move requests. Usage: java analysis.AsyncAnalyzer [requests [sessions
+     * [depth]]], by default 200 requests from 20 sessions at depth 5, all sent at once with a two
+     * second deadline to an analyzer with one thread per core and room for 64 waiting requests,
+     * degrading to depth 3. Prints how many requests were served, degraded, rejected and timed
+     * out, and the queue wait and compute time percentiles.
+     *
+     * @param args the request count, session count and depth
+     * @throws InterruptedException if interrupted while waiting for the results
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        try (AsyncAnalyzer analyzer = new AsyncAnalyzer(MaterialEvaluator::new,
+                Runtime.getRuntime().availableProcessors(), 64, 3)) {
+            Chess game = new Chess();
+            List<CompletableFuture<Result>> results = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                results.add(analyzer.analyze("session-" + i % sessions, game, depth, 0, 2000));
+            }
+            int served = 0;
+            int cancelled = 0;
+            for (CompletableFuture<Result> result : results) {
+                try {
+                    result.join();
+                    served++;
+                } catch (CancellationException ex) {
+                    cancelled++;
+                } catch (RuntimeException ex) {
+                    // Rejected or expired, counted by the analyzer
+                }
+            }
+
+            LatencyHistogram queueTimes = analyzer.getQueueTimes();
+            LatencyHistogram computeTimes = analyzer.getComputeTimes();
+            System.out.printf("%d requests: %d served (%d degraded), %d rejected, %d timed out in the queue, "
+                    + "%d cancelled\n", requests, served, analyzer.getDegraded(), analyzer.getRejected(),
+                    analyzer.getExpired(), cancelled);
+            System.out.printf("Queue wait: median %.1f ms, 99%% %.1f ms, max %.1f ms\n",
+                    queueTimes.getPercentile(0.5) / 1e6, queueTimes.getPercentile(0.99) / 1e6,
+                    queueTimes.getMax() / 1e6);
+            System.out.printf("Compute:    median %.1f ms, 99%% %.1f ms, max %.1f ms\n",
+                    computeTimes.getPercentile(0.5) / 1e6, computeTimes.getPercentile(0.99) / 1e6,
+                    computeTimes.getMax() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package analysis;
+
+import engine.Evaluator;
+import engine.Fen;
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.Position;
+import engine.Search;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The BatchAnalyzer class analyzes a file of positions, one FEN per line, and writes one result
+ * line per position in the same order: the FEN, the number of legal moves, the check status
+ * (check, checkmate, stalemate or "-") and the static evaluation for the side to move, separated
+ * by tabs. Lines that are not valid FEN are answered with "ERR" and the reason.
+ *
+ * <p>With a search depth, positions are also searched and the score is the search score, followed
+ * by the best move. With an AnalysisCache, results are looked up by position hash before any work
+ * is done and stored afterwards, so positions analyzed in earlier runs cost only the FEN parse. A
+ * cached result from a deeper search than asked for is used as it is.
+ *
+ * <p>Input is read in blocks of BLOCK lines. While one block is analyzed on the fork/join pool,
+ * the next is read and the previous one written, so memory stays bounded at three blocks no
+ * matter how long the file is. Each worker thread reuses one Position and move buffer.
+ */
+public class BatchAnalyzer {
+    private static final int BLOCK = 16384;  // Lines read, analyzed and written together
+    private static final int CHUNK = 256;  // Lines analyzed by one fork/join leaf task
+    private static final long CACHE_BUCKETS = 1 << 18;  // Size of a new cache file: 16 MB, a million results
+
+    private final ForkJoinPool pool;
+    private final Evaluator evaluator;
+    private final int depth;  // Search depth, or 0 to only evaluate statically
+    private final AnalysisCache cache;  // Results kept between runs, or null
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * Creates an analyzer with the given number of worker threads that evaluates positions
+     * statically and keeps no cache.
+     *
+     * @param threads the number of worker threads
+     * @param evaluator the evaluator used to score positions
+     */
+    public BatchAnalyzer(int threads, Evaluator evaluator) {
+        this(threads, evaluator, 0, null);
+    }
+
+    /**
+     * Creates an analyzer with the given number of worker threads.
+     *
+     * @param threads the number of worker threads
+     * @param evaluator the evaluator used to score positions
+     * @param depth the depth to search each position to, or 0 to only evaluate statically
+     * @param cache the cache to look results up in and store them to, or null for none
+     */
+    public BatchAnalyzer(int threads, Evaluator evaluator, int depth, AnalysisCache cache) {
+        this.pool = new ForkJoinPool(threads);
+        this.evaluator = evaluator;
+        this.depth = depth;
+        this.cache = cache;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(depth > 0 ? new Search(evaluator) : null));
+    }
+
+    // Scratch state reused by every position a worker thread analyzes
+    private static class Worker {
+        private final Position position = new Position();
+        private final int[] moves = new int[Position.MAX_MOVES];
+        private final StringBuilder line = new StringBuilder(128);
+        private final Search search;
+
+        Worker(Search search) {
+            this.search = search;
+        }
+    }
+
+    /**
+     * Analyzes every line of the input and writes the results to the output.
+     *
+     * @param input the positions, one FEN per line
+     * @param output where to write the results, or null to only count them
+     * @return the number of positions analyzed
+     * @throws IOException if reading or writing fails
+     */
+    public long analyze(BufferedReader input, Writer output) throws IOException {
+        long count = 0;
+        Block pending = null;
+        while (true) {
+            Block next = Block.read(input);
+            if (pending != null) {
+                pending.task.join();
+                pending.write(output);
+                count += pending.size;
+            }
+            if (next == null) {
+                return count;
+            }
+            next.task = pool.submit(new RangeTask(next, 0, next.size));
+            pending = next;
+        }
+    }
+
+    /**
+     * Analyzes one position.
+     *
+     * @param fen the position as FEN
+     * @return the result line, without a trailing newline
+     */
+    public String analyze(String fen) {
+        Worker worker = workers.get();
+        worker.line.setLength(0);
+        analyze(worker, fen);
+        return worker.line.toString();
+    }
+
+    // Append the result for one line to the worker's line buffer
+    private void analyze(Worker worker, String fen) {
+        StringBuilder sb = worker.line;
+        sb.append(fen).append('\t');
+        int start = sb.length();
+        try {
+            Fen.parse(fen, worker.position);
+            analyze(worker);
+        } catch (IllegalArgumentException ex) {
+            sb.setLength(start);
+            sb.append("ERR ").append(ex.getMessage());
+        }
+    }
+
+    // Append the results for the worker's position, already set up, to its line
+    private void analyze(Worker worker) {
+        StringBuilder sb = worker.line;
+        Position position = worker.position;
+        long key = position.getKey();
+        long entry = cache == null ? AnalysisCache.MISS : cache.probe(key);
+        if (entry == AnalysisCache.MISS || AnalysisCache.depth(entry) < depth) {
+            entry = compute(worker);
+            if (cache != null) {
+                cache.store(key, entry);
+            }
+        }
+
+        int legal = AnalysisCache.legalMoves(entry);
+        boolean check = AnalysisCache.isCheck(entry);
+        sb.append(legal).append('\t');
+        if (legal == 0) {
+            sb.append(check ? "checkmate" : "stalemate");
+        } else {
+            sb.append(check ? "check" : "-");
+        }
+        sb.append('\t').append(AnalysisCache.score(entry));
+        if (depth > 0) {
+            int move = AnalysisCache.move(entry);
+            sb.append('\t').append(move == Move.NONE ? "-" : Move.toString(move));
+        }
+    }
+
+    // Analyze the worker's position from scratch
+    private long compute(Worker worker) {
+        Position position = worker.position;
+        int legal = position.generateMoves(worker.moves, 0);
+        boolean check = position.isInCheck();
+        if (depth == 0 || legal == 0) {
+            return AnalysisCache.entry(Move.NONE, evaluator.evaluate(position), depth, legal, check);
+        }
+        int move = worker.search.search(position, depth);
+        return AnalysisCache.entry(move, worker.search.getScore(), worker.search.getDepth(), legal, check);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // A block of input lines and the results computed for them
+    private static class Block {
+        private final String[] lines = new String[BLOCK];
+        private final String[] results = new String[BLOCK];
+        private int size;
+        private ForkJoinTask<?> task;
+
+        // Read the next block, or return null at the end of the input
+        static Block read(BufferedReader input) throws IOException {
+            Block block = new Block();
+            String line;
+            while (block.size < BLOCK && (line = input.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    block.lines[block.size++] = line.trim();
+                }
+            }
+            return block.size == 0 ? null : block;
+        }
+
+        void write(Writer output) throws IOException {
+            if (output == null) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                output.write(results[i]);
+                output.write('\n');
+            }
+        }
+    }
+
+    // Splits a range of a block in halves until it is small enough to run directly
+    private class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Block block;
+        private final int start;
+        private final int end;
+
+        RangeTask(Block block, int start, int end) {
+            this.block = block;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK) {
+                Worker worker = workers.get();
+                for (int i = start; i < end; i++) {
+                    worker.line.setLength(0);
+                    analyze(worker, block.lines[i]);
+                    block.results[i] = worker.line.toString();
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RangeTask(block, start, middle), new RangeTask(block, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Analyzes a position file. Usage: java analysis.BatchAnalyzer [options] input output [threads],
+     * or java analysis.BatchAnalyzer [options] --scale input to measure throughput at 1, 2, 4...
+     * threads. Options are "--depth n" to search every position n plies deep and "--cache file"
+     * to keep results in a cache file between runs.
+     *
+     * @param args the options, the input and output files and an optional thread count
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        int depth = 0;
+        AnalysisCache cache = null;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--depth")) {
+                depth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache")) {
+                cache = AnalysisCache.open(Paths.get(args[++i]), CACHE_BUCKETS);
+            } else {
+                rest.add(args[i]);
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (rest.get(0).equals("--scale")) {
+            Path input = Paths.get(rest.get(1));
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                run(input, null, threads, depth, cache);
+                if (threads == cores) {
+                    break;
+                }
+            }
+            return;
+        }
+        run(Paths.get(rest.get(0)), Paths.get(rest.get(1)), rest.size() > 2 ? Integer.parseInt(rest.get(2)) : cores,
+                depth, cache);
+    }
+
+    private static void run(Path input, Path output, int threads, int depth, AnalysisCache cache) throws IOException {
+        BatchAnalyzer analyzer = new BatchAnalyzer(threads, new MaterialEvaluator(), depth, cache);
+        long start = System.nanoTime();
+        long count;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = output == null ? null : Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            count = analyzer.analyze(reader, writer);
+        } finally {
+            analyzer.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d threads: %d positions in %.2f s (%.0f positions/s)\n", threads, count,
+                seconds, count / seconds);
+    }
+}
@@ -0,0 +1,350 @@
+package analysis;
+
+import engine.Evaluator;
+import engine.Fen;
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.Position;
+import engine.Search;
+import game.Board;
+import game.Chess;
+import game.util.Color;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * The MultiPvAnalysis class ranks the best few moves of a game position and publishes the
+ * ranking after every completed depth, so a user sees candidate moves at once and watches them
+ * firm up as the search deepens.
+ *
+ * <p>Updates are published through a SubmissionPublisher, which hands them to each subscriber on
+ * its own executor thread, buffering up to Flow.defaultBufferSize updates per subscriber. A
+ * subscriber that falls behind misses intermediate depths rather than holding up the search: an
+ * update that finds a full buffer is dropped for that subscriber. Only the update for the final
+ * depth waits for buffer space. If the search is stopped early and a subscriber had dropped its
+ * last update, that update is published again, so every subscriber ends with the final ranking.
+ */
+public class MultiPvAnalysis implements Flow.Publisher<MultiPvAnalysis.Update>, AutoCloseable {
+    private final Position position;
+    private final Search search;
+    private final int lines;
+    private final int maxDepth;
+    private final SubmissionPublisher<Update> publisher;
+    private long startTime;
+    private Update last;  // The last update published
+    private boolean lastDropped;  // Whether any subscriber dropped the last update
+
+    /**
+     * Prepares an analysis of the position in a game, for the player whose turn it is.
+     *
+     * @param game the game; its position is copied, so the game may go on during the analysis
+     * @param evaluator the evaluator used to score positions
+     * @param lines the number of moves to rank
+     * @param maxDepth the depth in plies to stop at
+     * @throws IllegalArgumentException if lines is not between 1 and Search.MAX_LINES
+     */
+    public MultiPvAnalysis(Chess game, Evaluator evaluator, int lines, int maxDepth) {
+        this(positionOf(game), evaluator, lines, maxDepth);
+    }
+
+    /**
+     * Prepares an analysis of a board.
+     *
+     * @param board the board; it is copied, so it may change during the analysis
+     * @param sideToMove the player to find moves for
+     * @param evaluator the evaluator used to score positions
+     * @param lines the number of moves to rank
+     * @param maxDepth the depth in plies to stop at
+     * @throws IllegalArgumentException if lines is not between 1 and Search.MAX_LINES
+     */
+    public MultiPvAnalysis(Board board, Color sideToMove, Evaluator evaluator, int lines, int maxDepth) {
+        this(positionOf(board, sideToMove), evaluator, lines, maxDepth);
+    }
+
+    private MultiPvAnalysis(Position position, Evaluator evaluator, int lines, int maxDepth) {
+        if (lines < 1 || lines > Search.MAX_LINES) {
+            throw new IllegalArgumentException("Line count must be between 1 and " + Search.MAX_LINES + ": " + lines);
+        }
+        this.position = position;
+        this.search = new Search(evaluator);
+        this.lines = lines;
+        this.maxDepth = maxDepth;
+        this.publisher = new SubmissionPublisher<>();
+    }
+
+    private static Position positionOf(Chess game) {
+        Position position = new Position();
+        game.copyPositionTo(position);
+        return position;
+    }
+
+    private static Position positionOf(Board board, Color sideToMove) {
+        Position position = new Position();
+        position.setFrom(board, sideToMove);
+        return position;
+    }
+
+    /**
+     * Subscribes to the updates. Subscribe before starting the analysis to see every depth.
+     *
+     * @param subscriber the subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Update> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Runs the analysis on the given executor. Subscribers receive one update per completed
+     * depth and are completed when the search ends.
+     *
+     * @param executor runs the search
+     */
+    public void start(Executor executor) {
+        executor.execute(this::run);
+    }
+
+    /**
+     * Runs the analysis on the calling thread and returns when it has finished.
+     *
+     * @return the final update, or null if the side to move has no legal moves
+     */
+    public Update run() {
+        startTime = System.nanoTime();
+        try {
+            search.searchLines(position, lines, maxDepth, 0, 0, this::publish);
+            if (lastDropped) {
+                publisher.submit(last);  // Stopped early, and someone missed the final ranking
+            }
+            publisher.close();
+            return last;
+        } catch (RuntimeException ex) {
+            publisher.closeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    // Runs on the search thread after each completed depth
+    private void publish() {
+        last = snapshot();
+        lastDropped = false;
+        if (search.getDepth() >= Math.min(maxDepth, Search.MAX_PLY)) {
+            publisher.submit(last);  // The final result is worth waiting for
+        } else {
+            publisher.offer(last, (subscriber, dropped) -> {
+                lastDropped = true;
+                return false;  // Drop it rather than wait
+            });
+        }
+    }
+
+    /**
+     * Asks the search to finish early; subscribers still receive the last completed depth.
+     */
+    public void stop() {
+        search.stop();
+    }
+
+    /**
+     * Stops the search.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    // Copy the search's current ranking into an update
+    private Update snapshot() {
+        int count = search.getLineCount();
+        int[][] moves = new int[count][];
+        int[] scores = new int[count];
+        for (int i = 0; i < count; i++) {
+            moves[i] = search.getLine(i);
+            scores[i] = search.getLineScore(i);
+        }
+        return new Update(search.getDepth(), search.getNodes(), System.nanoTime() - startTime, moves, scores);
+    }
+
+    /**
+     * One published ranking: the best moves at one depth, best first, each with its line and
+     * score for the side to move.
+     */
+    public static class Update {
+        private final int depth;
+        private final long nodes;
+        private final long nanos;
+        private final int[][] lines;
+        private final int[] scores;
+
+        Update(int depth, long nodes, long nanos, int[][] lines, int[] scores) {
+            this.depth = depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.lines = lines;
+            this.scores = scores;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the time from the start of the analysis until this depth was completed.
+         *
+         * @return the elapsed time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getLineCount() {
+            return lines.length;
+        }
+
+        /**
+         * Returns the move ranked at the given place.
+         *
+         * @param index the rank, 0 for the best
+         * @return the packed move
+         */
+        public int getMove(int index) {
+            return lines[index][0];
+        }
+
+        /**
+         * Returns the line starting with the move ranked at the given place.
+         *
+         * @param index the rank, 0 for the best
+         * @return a copy of the line's packed moves
+         */
+        public int[] getLine(int index) {
+            return lines[index].clone();
+        }
+
+        public int getScore(int index) {
+            return scores[index];
+        }
+
+        /**
+         * Returns the update as text, one line per move: the rank, score and line.
+         *
+         * @return the text
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("depth ").append(depth).append(", ").append(nodes).append(" nodes, ")
+                    .append(nanos / 1_000_000).append(" ms\n");
+            for (int i = 0; i < lines.length; i++) {
+                sb.append(i + 1).append(". ").append(scores[i]);
+                for (int move : lines[i]) {
+                    sb.append(' ').append(Move.toString(move));
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Prints the ranking of a position at every depth. Usage: java analysis.MultiPvAnalysis
+     * [fen] [lines] [depth], or java analysis.MultiPvAnalysis --bench file depth to time how long
+     * ranking 1, 2, 4 and 8 moves takes to reach each depth on the positions in a file, one FEN
+     * per line.
+     *
+     * @param args the position, line count and depth, or the benchmark arguments
+     * @throws IOException if the benchmark file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the last update
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            bench(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+        Position position = Fen.parse(args.length > 0 ? args[0] : Fen.START);
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+
+        MultiPvAnalysis analysis = new MultiPvAnalysis(position, new MaterialEvaluator(), lines, depth);
+        CountDownLatch done = new CountDownLatch(1);
+        analysis.subscribe(new Flow.Subscriber<Update>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Update update) {
+                System.out.println(update);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                error.printStackTrace();
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        analysis.run();
+        done.await();
+    }
+
+    // Time to each depth, averaged over the positions, for several line counts
+    private static void bench(String file, int depth) throws IOException {
+        List<Position> positions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    positions.add(Fen.parse(line.trim()));
+                }
+            }
+        }
+
+        for (Position position : positions) {
+            new Search(new MaterialEvaluator()).searchLines(position, 8, depth, 0, 0, null);  // Warm up the JIT
+        }
+
+        System.out.printf("%d positions, mean ms to reach each depth\n%5s", positions.size(), "lines");
+        for (int d = 1; d <= depth; d++) {
+            System.out.printf(" %9s", "depth " + d);
+        }
+        System.out.println();
+        for (int lines = 1; lines <= 8; lines *= 2) {
+            long[] total = new long[depth + 1];
+            for (Position position : positions) {
+                Search search = new Search(new MaterialEvaluator());
+                long start = System.nanoTime();
+                search.searchLines(position, lines, depth, 0, 0,
+                        () -> total[search.getDepth()] += System.nanoTime() - start);
+            }
+            System.out.printf("%5d", lines);
+            for (int d = 1; d <= depth; d++) {
+                System.out.printf(" %9.1f", total[d] / 1e6 / positions.size());
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package cluster;
+
+import engine.Fen;
+import engine.Move;
+import engine.Position;
+import engine.Search;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Coordinator class spreads a perft count or a search over several Worker processes on this
+ * machine, each with its own heap and JIT. The move tree is split at the root or at ply 2, and
+ * every position at the split ply becomes a task sent to a worker as a FEN and the depth left.
+ * Counts are added up; scores are combined by minimax over the split plies, with the first ply's
+ * best move as the result.
+ *
+ * <p>Workers take the next task as soon as they finish one, so slow subtrees do not hold the
+ * others up. A worker whose process dies or whose connection breaks is dropped and its task goes
+ * back on the queue for the others; the job fails only when no worker is left.
+ *
+ * <p>The workers are started by the constructor and stay up for any number of jobs until close.
+ * A coordinator runs one job at a time.
+ */
+public class Coordinator implements Closeable {
+    private static final int CONNECT_TIMEOUT = 30000;  // Milliseconds for every worker to connect
+
+    private final ServerSocket server;
+    private final List<Process> processes;
+    private final List<Socket> sockets;
+    private final ArrayDeque<Task> pending;  // Tasks no worker is working on, guarded by this
+    private int remaining;  // Tasks not yet finished, guarded by this
+    private int alive;  // Workers still connected, guarded by this
+    private String error;  // Why the job failed, guarded by this
+    private long busyNanos;  // Time workers spent on tasks this job, guarded by this
+    private int requeued;  // Tasks handed out again after a worker was lost, guarded by this
+    private int job;  // Number of the job running, guarded by this
+
+    private final Position position;
+    private final int[] moves;
+    private List<Task> tasks;
+    private int nextTask;  // The task the merge reaches next
+    private int bestMove;
+    private long nodes;
+    private long wallNanos;
+
+    // A position at the split ply and what its worker found
+    private static class Task {
+        private final int job;
+        private final String request;
+        private long result;  // Leaf count or score
+        private long nodes;
+
+        Task(int job, String request) {
+            this.job = job;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Starts the worker processes and waits until they have all connected.
+     *
+     * @param workers the number of worker processes
+     * @throws IOException if a worker cannot be started or does not connect in time
+     */
+    public Coordinator(int workers) throws IOException {
+        this.server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+        this.processes = new ArrayList<>(workers);
+        this.sockets = new ArrayList<>(workers);
+        this.pending = new ArrayDeque<>();
+        this.position = new Position();
+        this.moves = new int[(Search.MAX_PLY + 1) * Position.MAX_MOVES];
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int i = 0; i < workers; i++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        Worker.class.getName(), server.getInetAddress().getHostAddress(),
+                        Integer.toString(server.getLocalPort()))
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+            server.setSoTimeout(CONNECT_TIMEOUT);
+            for (int i = 0; i < workers; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+            }
+        } catch (SocketTimeoutException ex) {
+            close();
+            throw new IOException("Only " + sockets.size() + " of " + workers + " workers connected");
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+        this.alive = workers;
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(new Link(sockets.get(i)), "worker-link-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Counts the leaves of the legal move tree in parallel. The position is left as it was.
+     *
+     * @param position the position
+     * @param depth the number of plies
+     * @param splitPlies the ply to split the tree at, 1 or 2
+     * @return the number of leaf positions
+     * @throws IOException if every worker has been lost or a worker reported an error
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long perft(Position position, int depth, int splitPlies) throws IOException, InterruptedException {
+        run("PERFT", position, depth, splitPlies);
+        long leaves = 0;
+        for (Task task : tasks) {
+            leaves += task.result;
+        }
+        return leaves;
+    }
+
+    /**
+     * Searches a position in parallel: each position at the split ply is searched to the depth
+     * left by its worker, and the scores are combined by minimax. The position is left as it was.
+     *
+     * @param position the position
+     * @param depth the search depth in plies
+     * @param splitPlies the ply to split the tree at, 1 or 2
+     * @return the score for the side to move
+     * @throws IOException if every worker has been lost or a worker reported an error
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public int search(Position position, int depth, int splitPlies) throws IOException, InterruptedException {
+        run("SEARCH", position, depth, splitPlies);
+        this.position.copyFrom(position);
+        nextTask = 0;
+        bestMove = Move.NONE;
+        return merge(0, splitPlies);
+    }
+
+    /**
+     * Returns the best move of the last search.
+     *
+     * @return the move, or Move.NONE if the side to move had none
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the nodes the workers searched in the last search.
+     *
+     * @return the total of the workers' node counts
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public int getWorkerCount() {
+        return processes.size();
+    }
+
+    /**
+     * Returns how long the last job took from handing out the first task to the last result.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Returns how long the workers spent on the last job's tasks, counted from sending a task to
+     * receiving its result.
+     *
+     * @return the total over all workers in nanoseconds
+     */
+    public synchronized long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * Returns how many tasks of the last job had to be handed out again because their worker
+     * was lost.
+     *
+     * @return the number of re-queued tasks
+     */
+    public synchronized int getRequeued() {
+        return requeued;
+    }
+
+    /**
+     * Kills a worker process without warning, as a crash would. Its task is re-queued.
+     *
+     * @param index the worker's number, from 0
+     */
+    public void killWorker(int index) {
+        processes.get(index).destroyForcibly();
+    }
+
+    /**
+     * Tells the workers to quit and stops their processes.
+     */
+    @Override
+    public void close() {
+        for (Socket socket : sockets) {
+            try {
+                socket.getOutputStream().write("QUIT\n".getBytes(StandardCharsets.UTF_8));
+                socket.close();
+            } catch (IOException ex) {
+                // The worker is gone already
+            }
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+        try {
+            server.close();
+        } catch (IOException ex) {
+            // Nothing is listening any more either way
+        }
+    }
+
+    // Split the tree into tasks, hand them to the workers and wait for all of them
+    private void run(String command, Position root, int depth, int splitPlies)
+            throws IOException, InterruptedException {
+        if (splitPlies < 1 || splitPlies > 2) {
+            throw new IllegalArgumentException("Split ply must be 1 or 2: " + splitPlies);
+        }
+        if (depth <= splitPlies || depth > Search.MAX_PLY) {
+            throw new IllegalArgumentException("Depth must be between " + (splitPlies + 1) + " and " + Search.MAX_PLY
+                    + ": " + depth);
+        }
+        position.copyFrom(root);
+        synchronized (this) {
+            job++;
+        }
+        tasks = new ArrayList<>();
+        split(command, depth, 0, splitPlies);
+        nodes = 0;
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            if (alive == 0) {
+                throw new IOException("No workers left");
+            }
+            error = null;
+            busyNanos = 0;
+            requeued = 0;
+            remaining = tasks.size();
+            pending.addAll(tasks);
+            notifyAll();
+            while (remaining > 0 && alive > 0 && error == null) {
+                wait();
+            }
+            pending.clear();
+            if (error != null) {
+                throw new IOException(error);
+            }
+            if (remaining > 0) {
+                throw new IOException("Every worker was lost with " + remaining + " tasks left");
+            }
+        }
+        wallNanos = System.nanoTime() - start;
+        for (Task task : tasks) {
+            nodes += task.nodes;
+        }
+    }
+
+    // Make a task of every position at the split ply, in move generation order
+    private void split(String command, int depth, int ply, int splitPlies) {
+        if (ply == splitPlies) {
+            tasks.add(new Task(job, command + " " + (depth - ply) + " " + Fen.format(position)));
+            return;
+        }
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        for (int i = offset; i < offset + count; i++) {
+            position.makeMove(moves[i]);
+            split(command, depth, ply + 1, splitPlies);
+            position.unmakeMove(moves[i]);
+        }
+    }
+
+    // Minimax over the split plies, walking the tree in the order split made the tasks
+    private int merge(int ply, int splitPlies) {
+        if (ply == splitPlies) {
+            return (int) tasks.get(nextTask++).result;
+        }
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if (count == 0) {
+            return position.isInCheck() ? -Search.MATE : 0;
+        }
+        int best = -Search.INFINITE;
+        for (int i = offset; i < offset + count; i++) {
+            position.makeMove(moves[i]);
+            int score = -merge(ply + 1, splitPlies);
+            position.unmakeMove(moves[i]);
+            if (score > Search.MATE - Search.MAX_PLY) {
+                score--;  // A mate found below is one ply further away from here
+            } else if (score < -Search.MATE + Search.MAX_PLY) {
+                score++;
+            }
+            if (score > best) {
+                best = score;
+                if (ply == 0) {
+                    bestMove = moves[i];
+                }
+            }
+        }
+        return best;
+    }
+
+    // The next task for a worker, waiting for one if there is none
+    private synchronized Task take() throws InterruptedException {
+        while (pending.isEmpty()) {
+            wait();
+        }
+        return pending.poll();
+    }
+
+    private synchronized void finish(Task task, String reply, long nanos) {
+        if (task.job != job) {
+            return;  // Left over from a job that failed
+        }
+        busyNanos += nanos;
+        String[] parts = reply.split(" ");
+        if (parts[0].equals("COUNT") && parts.length == 2) {
+            task.result = Long.parseLong(parts[1]);
+        } else if (parts[0].equals("SCORE") && parts.length == 3) {
+            task.result = Integer.parseInt(parts[1]);
+            task.nodes = Long.parseLong(parts[2]);
+        } else {
+            error = "Worker failed on " + task.request + ": " + reply;
+        }
+        remaining--;
+        notifyAll();
+    }
+
+    private synchronized void lose(Task task) {
+        alive--;
+        if (task != null && task.job == job) {
+            pending.addFirst(task);
+            requeued++;
+        }
+        notifyAll();
+    }
+
+    // Feeds one worker tasks until its connection fails
+    private class Link implements Runnable {
+        private final Socket socket;
+
+        Link(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            Task task = null;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+                 Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                         StandardCharsets.UTF_8))) {
+                while (true) {
+                    task = take();
+                    long start = System.nanoTime();
+                    out.write(task.request);
+                    out.write('\n');
+                    out.flush();
+                    String reply = in.readLine();
+                    if (reply == null) {
+                        break;  // The worker closed the connection
+                    }
+                    finish(task, reply, System.nanoTime() - start);
+                    task = null;
+                }
+            } catch (IOException ex) {
+                // The worker is lost; its task is handed out again below
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            lose(task);
+        }
+    }
+
+    /**
+     * Runs a distributed perft or search. Usage: java cluster.Coordinator [options] depth [fen],
+     * where the FEN defaults to the starting position. Options are "--workers n" for the number
+     * of worker processes (one per core by default), "--split n" to split at ply 1 or 2 (2 by
+     * default), "--search" to search instead of counting, "--kill ms" to kill a worker that long
+     * after the start to show its work being re-queued, and "--scaling" to also run with a single
+     * worker and report the speedup and scaling efficiency.
+     *
+     * @param args the options, depth and position
+     * @throws IOException if the workers cannot be started or are all lost
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int split = 2;
+        boolean search = false;
+        long kill = -1;
+        boolean scaling = false;
+        List<String> rest = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers")) {
+                workers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--split")) {
+                split = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--search")) {
+                search = true;
+            } else if (args[i].equals("--kill")) {
+                kill = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--scaling")) {
+                scaling = true;
+            } else {
+                rest.add(args[i]);
+            }
+        }
+        int depth = Integer.parseInt(rest.get(0));
+        Position position = Fen.parse(rest.size() > 1 ? String.join(" ", rest.subList(1, rest.size())) : Fen.START);
+
+        long single = scaling ? run(1, position, depth, split, search, -1) : 0;
+        long parallel = run(workers, position, depth, split, search, kill);
+        if (scaling) {
+            double speedup = (double) single / parallel;
+            System.out.printf("Speedup with %d workers: %.2f, scaling efficiency %.0f%%\n", workers, speedup,
+                    100 * speedup / workers);
+        }
+    }
+
+    // Run one job with a new set of workers, after a shallower one to warm up their JIT, and
+    // return its wall time
+    private static long run(int workers, Position position, int depth, int split, boolean search, long kill)
+            throws IOException, InterruptedException {
+        try (Coordinator coordinator = new Coordinator(workers)) {
+            if (depth > split + 1 && search) {
+                coordinator.search(position, depth - 1, split);
+            } else if (depth > split + 1) {
+                coordinator.perft(position, depth - 1, split);
+            }
+            if (kill >= 0) {
+                Thread killer = new Thread(() -> {
+                    try {
+                        Thread.sleep(kill);
+                        coordinator.killWorker(0);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                killer.setDaemon(true);
+                killer.start();
+            }
+            String result;
+            if (search) {
+                int score = coordinator.search(position, depth, split);
+                result = String.format("best move %s, score %d, %d nodes", Move.toString(coordinator.getBestMove()),
+                        score, coordinator.getNodes());
+            } else {
+                result = coordinator.perft(position, depth, split) + " leaves";
+            }
+            long wall = coordinator.getWallNanos();
+            System.out.printf("%d workers, %d tasks: %s in %.2f s; workers busy %.0f%% of the time, %d tasks re-queued\n",
+                    workers, coordinator.getTaskCount(), result, wall / 1e9,
+                    100.0 * coordinator.getBusyNanos() / wall / workers, coordinator.getRequeued());
+            return wall;
+        }
+    }
+}
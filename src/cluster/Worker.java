@@ -0,0 +1,102 @@
+package cluster;
+
+import engine.Fen;
+import engine.MaterialEvaluator;
+import engine.Perft;
+import engine.Position;
+import engine.Search;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Worker class is one process of a distributed perft or analysis. It connects to a
+ * Coordinator and answers its requests one at a time over a line-based protocol:
+ *
+ * <pre>
+ * PERFT depth fen     answered with  COUNT leaves
+ * SEARCH depth fen    answered with  SCORE score nodes
+ * QUIT                closes the connection
+ * </pre>
+ *
+ * The score is from the point of view of the side to move in the FEN. A request that cannot be
+ * carried out is answered with ERR and the reason.
+ */
+public class Worker {
+    private final Position position;
+    private final Perft perft;
+    private final Search search;
+
+    /**
+     * Creates a worker.
+     */
+    public Worker() {
+        this.position = new Position();
+        this.perft = new Perft();
+        this.search = new Search(new MaterialEvaluator());
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param request the request line
+     * @return the reply line, without a trailing newline
+     */
+    public String handle(String request) {
+        String[] parts = request.split(" ", 3);
+        try {
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Expected a command, a depth and a FEN");
+            }
+            int depth = Integer.parseInt(parts[1]);
+            Fen.parse(parts[2], position);
+            if (parts[0].equals("PERFT")) {
+                return "COUNT " + perft.count(position, depth);
+            } else if (parts[0].equals("SEARCH")) {
+                search.search(position, depth);
+                return "SCORE " + search.getScore() + " " + search.getNodes();
+            }
+            throw new IllegalArgumentException("Unknown command: " + parts[0]);
+        } catch (IllegalArgumentException ex) {
+            return "ERR " + ex.getMessage();
+        }
+    }
+
+    /**
+     * Serves a coordinator until it sends QUIT or closes the connection.
+     *
+     * @param socket the connection to the coordinator
+     * @throws IOException if the connection fails
+     */
+    public void serve(Socket socket) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("QUIT")) {
+                out.write(handle(line));
+                out.write('\n');
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs a worker. Usage: java cluster.Worker host port. Coordinator starts its workers this
+     * way, so this is only needed to add workers by hand.
+     *
+     * @param args the coordinator's host and port
+     * @throws IOException if the coordinator cannot be reached
+     */
+    public static void main(String[] args) throws IOException {
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            socket.setTcpNoDelay(true);
+            new Worker().serve(socket);
+        }
+    }
+}
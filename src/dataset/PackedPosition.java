@@ -0,0 +1,165 @@
+package dataset;
+
+import engine.Position;
+import game.Board;
+import game.util.Color;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The PackedPosition class packs a position into 32 bytes, for keeping millions of them in a
+ * PositionStore. A record is four longs, read and written at absolute offsets in a ByteBuffer so
+ * packing allocates nothing:
+ *
+ * <ul>
+ *   <li>the occupancy bitboard, bit i set if engine square i holds a piece;</li>
+ *   <li>two longs of piece codes, one per 4-bit nibble, for the occupied squares in square order
+ *       starting at the low nibble of the first long, the unused nibbles zero;</li>
+ *   <li>the state: the side to move in bit 0, the castling rights in bits 1-4, the en passant
+ *       file plus one in bits 5-8 (0 for none), and the halfmove clock, at most 255, in bits
+ *       16-23.</li>
+ * </ul>
+ *
+ * <p>A position has one packing, so two records are the same position exactly when their bytes
+ * are equal. The identity of a record, which hash and PositionStore.deduplicate look at, leaves
+ * the halfmove clock out: a position reached with different clocks is still the same position.
+ */
+public final class PackedPosition {
+    /** The size of a record in bytes. */
+    public static final int SIZE = 32;
+
+    static final long IDENTITY_MASK = 0xFFFF;  // State bits that are part of the identity
+    private static final int CASTLING_SHIFT = 1;
+    private static final int EN_PASSANT_SHIFT = 5;
+    private static final int CLOCK_SHIFT = 16;
+    private static final int MAX_PIECES = 32;
+
+    private PackedPosition() {
+    }
+
+    /**
+     * Packs a position into a buffer.
+     *
+     * @param position the position
+     * @param buffer the buffer
+     * @param offset the index of the record's first byte
+     * @throws IllegalArgumentException if the position has more than 32 pieces
+     */
+    public static void encode(Position position, ByteBuffer buffer, int offset) {
+        long occupancy = 0;
+        long low = 0;
+        long high = 0;
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            int piece = position.pieceAt(square);
+            if (piece == Position.EMPTY) {
+                continue;
+            }
+            if (count == MAX_PIECES) {
+                throw new IllegalArgumentException("A packed position holds at most 32 pieces");
+            }
+            occupancy |= 1L << square;
+            if (count < 16) {
+                low |= (long) piece << (count * 4);
+            } else {
+                high |= (long) piece << ((count - 16) * 4);
+            }
+            count++;
+        }
+        int epSquare = position.getEnPassantSquare();
+        long state = position.getSideToMove()
+                | (long) position.getCastling() << CASTLING_SHIFT
+                | (long) (epSquare < 0 ? 0 : (epSquare & 7) + 1) << EN_PASSANT_SHIFT
+                | (long) Math.min(position.getHalfmoveClock(), 255) << CLOCK_SHIFT;
+        buffer.putLong(offset, occupancy);
+        buffer.putLong(offset + 8, low);
+        buffer.putLong(offset + 16, high);
+        buffer.putLong(offset + 24, state);
+    }
+
+    /**
+     * Packs a board into a new array.
+     *
+     * @param board the board; castling rights are derived from the kings and rooks that have not
+     *              moved, as Position.setFrom does
+     * @param sideToMove the color of the player whose turn it is
+     * @return the 32-byte record
+     */
+    public static byte[] encode(Board board, Color sideToMove) {
+        Position position = new Position();
+        position.setFrom(board, sideToMove);
+        byte[] record = new byte[SIZE];
+        encode(position, ByteBuffer.wrap(record), 0);
+        return record;
+    }
+
+    /**
+     * Unpacks a record into a position, replacing what it held.
+     *
+     * @param buffer the buffer
+     * @param offset the index of the record's first byte
+     * @param position the position to fill in
+     */
+    public static void decode(ByteBuffer buffer, int offset, Position position) {
+        long occupancy = buffer.getLong(offset);
+        long low = buffer.getLong(offset + 8);
+        long high = buffer.getLong(offset + 16);
+        long state = buffer.getLong(offset + 24);
+        position.clear();
+        for (int count = 0; occupancy != 0; count++, occupancy &= occupancy - 1) {
+            long pieces = count < 16 ? low >>> (count * 4) : high >>> ((count - 16) * 4);
+            position.setPiece(Long.numberOfTrailingZeros(occupancy), (int) (pieces & 15));
+        }
+        int side = (int) (state & 1);
+        int epFile = (int) (state >>> EN_PASSANT_SHIFT & 15);
+        position.setSideToMove(side);
+        position.setCastling((int) (state >>> CASTLING_SHIFT & 15));
+        // The square passed over is on the sixth rank of the side to move
+        position.setEnPassantSquare(epFile == 0 ? -1 : (side == Position.WHITE ? 16 : 40) + epFile - 1);
+        position.setHalfmoveClock((int) (state >>> CLOCK_SHIFT & 255));
+    }
+
+    /**
+     * Unpacks a record into a new board. The side to move is not part of a board; read it with
+     * sideToMove.
+     *
+     * @param record the 32-byte record
+     * @return the board
+     */
+    public static Board decode(byte[] record) {
+        Position position = new Position();
+        decode(ByteBuffer.wrap(record), 0, position);
+        return position.toBoard();
+    }
+
+    /**
+     * Returns the side to move of a record.
+     *
+     * @param record the 32-byte record
+     * @return Color.WHITE or Color.BLACK
+     */
+    public static Color sideToMove(byte[] record) {
+        return (ByteBuffer.wrap(record).getLong(24) & 1) == Position.WHITE ? Color.WHITE : Color.BLACK;
+    }
+
+    /**
+     * Returns a 64-bit hash of a record's identity, computed from its bytes without unpacking it.
+     *
+     * @param buffer the buffer
+     * @param offset the index of the record's first byte
+     * @return the hash
+     */
+    public static long hash(ByteBuffer buffer, int offset) {
+        long hash = mix(buffer.getLong(offset + 24) & IDENTITY_MASK);
+        hash = mix(hash ^ buffer.getLong(offset));
+        hash = mix(hash ^ buffer.getLong(offset + 8));
+        return mix(hash ^ buffer.getLong(offset + 16));
+    }
+
+    // The SplitMix64 finalizer, which spreads every input bit over the whole result
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
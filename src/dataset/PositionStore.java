@@ -0,0 +1,336 @@
+package dataset;
+
+import engine.Fen;
+import engine.Position;
+import game.Board;
+import game.util.Color;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The PositionStore class holds a large number of positions outside the Java heap, as
+ * PackedPosition records in direct ByteBuffers. A hundred million positions take 3.2 GB and no
+ * objects at all, so the garbage collector never looks at them; the JVM must be allowed that much
+ * direct memory with -XX:MaxDirectMemorySize.
+ *
+ * <p>Records live in chunks of CHUNK_RECORDS, allocated as the store grows, since one buffer
+ * holds at most 2 GB. Records are addressed by a long index. Appending, reading and sorting
+ * allocate nothing on the heap beyond the chunks. A store is not safe for use by several threads
+ * at once.
+ */
+public class PositionStore {
+    /** The number of records in each chunk, 32 MB of them. */
+    public static final int CHUNK_RECORDS = 1 << 20;
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final int INSERTION_SORT_SIZE = 16;  // Ranges this short are insertion sorted
+
+    private final List<ByteBuffer> chunks;
+    private final Position scratch;  // For appending boards
+    private long size;
+    private boolean sorted;  // Whether the records are in sortByHash order
+
+    /**
+     * Creates an empty store.
+     */
+    public PositionStore() {
+        this.chunks = new ArrayList<>();
+        this.scratch = new Position();
+        this.sorted = true;  // An empty store is in order
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory the store's chunks take up.
+     *
+     * @return the memory usage
+     */
+    public long getMemoryUsage() {
+        return (long) chunks.size() * CHUNK_RECORDS * PackedPosition.SIZE;
+    }
+
+    /**
+     * Adds a position at the end of the store.
+     *
+     * @param position the position
+     * @return the index of its record
+     * @throws IllegalArgumentException if the position has more than 32 pieces
+     */
+    public long append(Position position) {
+        if (size == (long) chunks.size() * CHUNK_RECORDS) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * PackedPosition.SIZE));
+        }
+        PackedPosition.encode(position, chunk(size), offset(size));
+        sorted = false;
+        return size++;
+    }
+
+    /**
+     * Adds a board at the end of the store.
+     *
+     * @param board the board
+     * @param sideToMove the color of the player whose turn it is
+     * @return the index of its record
+     */
+    public long append(Board board, Color sideToMove) {
+        scratch.setFrom(board, sideToMove);
+        return append(scratch);
+    }
+
+    /**
+     * Reads a record into a position.
+     *
+     * @param index the index of the record
+     * @param position the position to fill in
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public void get(long index, Position position) {
+        checkIndex(index);
+        PackedPosition.decode(chunk(index), offset(index), position);
+    }
+
+    /**
+     * Returns the hash of a record's identity, as PackedPosition.hash computes it.
+     *
+     * @param index the index of the record
+     * @return the hash
+     * @throws IndexOutOfBoundsException if there is no such record
+     */
+    public long hash(long index) {
+        checkIndex(index);
+        return PackedPosition.hash(chunk(index), offset(index));
+    }
+
+    /**
+     * Sorts the records in place by the unsigned hash of their identity. Records with the same
+     * identity end up next to each other, the one with the lowest halfmove clock first.
+     */
+    public void sortByHash() {
+        if (sorted) {
+            return;
+        }
+        // Quicksort, putting the larger part of each range on the stack so it stays shallow
+        long[] stack = new long[128];
+        int top = 0;
+        long low = 0;
+        long high = size - 1;
+        while (true) {
+            if (high - low < INSERTION_SORT_SIZE) {
+                insertionSort(low, high);
+                if (top == 0) {
+                    break;
+                }
+                high = stack[--top];
+                low = stack[--top];
+                continue;
+            }
+            long split = partition(low, high);
+            if (split - low < high - split) {
+                stack[top++] = split + 1;
+                stack[top++] = high;
+                high = split;
+            } else {
+                stack[top++] = low;
+                stack[top++] = split;
+                low = split + 1;
+            }
+        }
+        sorted = true;
+    }
+
+    /**
+     * Removes every record whose identity equals that of an earlier record, sorting the store
+     * first. Of each set of equal positions the one with the lowest halfmove clock is kept.
+     *
+     * @return the number of records removed
+     */
+    public long deduplicate() {
+        sortByHash();
+        long kept = 0;
+        for (long i = 0; i < size; i++) {
+            if (kept > 0 && compare(i, kept - 1, true) == 0) {
+                continue;
+            }
+            if (kept != i) {
+                copy(i, kept);
+            }
+            kept++;
+        }
+        long removed = size - kept;
+        size = kept;
+        while (chunks.size() > (size + CHUNK_RECORDS - 1) / CHUNK_RECORDS) {
+            chunks.remove(chunks.size() - 1);  // Let the empty chunks be freed
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every record and gives up the chunks.
+     */
+    public void clear() {
+        chunks.clear();
+        size = 0;
+        sorted = true;
+    }
+
+    // Hoare partition around the middle record: on return every record up to the split sorts no
+    // later than every record after it
+    private long partition(long low, long high) {
+        long pivot = low + (high - low) / 2;
+        ByteBuffer buffer = chunk(pivot);
+        int offset = offset(pivot);
+        long hash = PackedPosition.hash(buffer, offset);
+        long occupancy = buffer.getLong(offset);
+        long pieces = buffer.getLong(offset + 8);
+        long morePieces = buffer.getLong(offset + 16);
+        long state = buffer.getLong(offset + 24);
+        long i = low - 1;
+        long j = high + 1;
+        while (true) {
+            do {
+                i++;
+            } while (compare(i, hash, occupancy, pieces, morePieces, state) < 0);
+            do {
+                j--;
+            } while (compare(j, hash, occupancy, pieces, morePieces, state) > 0);
+            if (i >= j) {
+                return j;
+            }
+            swap(i, j);
+        }
+    }
+
+    private void insertionSort(long low, long high) {
+        for (long i = low + 1; i <= high; i++) {
+            for (long j = i; j > low && compare(j - 1, j, false) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    // Compare two records by hash, then identity, then, unless only identity counts, the clock
+    private int compare(long a, long b, boolean identityOnly) {
+        ByteBuffer buffer = chunk(b);
+        int offset = offset(b);
+        return compare(a, PackedPosition.hash(buffer, offset), buffer.getLong(offset), buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16), buffer.getLong(offset + 24), identityOnly);
+    }
+
+    private int compare(long a, long hash, long occupancy, long pieces, long morePieces, long state) {
+        return compare(a, hash, occupancy, pieces, morePieces, state, false);
+    }
+
+    // Compare a record with one given by its hash and words
+    private int compare(long a, long hash, long occupancy, long pieces, long morePieces, long state,
+                        boolean identityOnly) {
+        ByteBuffer buffer = chunk(a);
+        int offset = offset(a);
+        int result = Long.compareUnsigned(PackedPosition.hash(buffer, offset), hash);
+        if (result == 0) {
+            result = Long.compareUnsigned(buffer.getLong(offset), occupancy);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(buffer.getLong(offset + 8), pieces);
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(buffer.getLong(offset + 16), morePieces);
+        }
+        long own = buffer.getLong(offset + 24);
+        if (result == 0) {
+            result = Long.compare(own & PackedPosition.IDENTITY_MASK, state & PackedPosition.IDENTITY_MASK);
+        }
+        if (result == 0 && !identityOnly) {
+            result = Long.compare(own, state);  // The identities are equal, so this compares clocks
+        }
+        return result;
+    }
+
+    private void swap(long a, long b) {
+        ByteBuffer first = chunk(a);
+        ByteBuffer second = chunk(b);
+        int firstOffset = offset(a);
+        int secondOffset = offset(b);
+        for (int word = 0; word < PackedPosition.SIZE; word += 8) {
+            long value = first.getLong(firstOffset + word);
+            first.putLong(firstOffset + word, second.getLong(secondOffset + word));
+            second.putLong(secondOffset + word, value);
+        }
+    }
+
+    private void copy(long from, long to) {
+        ByteBuffer source = chunk(from);
+        ByteBuffer target = chunk(to);
+        int sourceOffset = offset(from);
+        int targetOffset = offset(to);
+        for (int word = 0; word < PackedPosition.SIZE; word += 8) {
+            target.putLong(targetOffset + word, source.getLong(sourceOffset + word));
+        }
+    }
+
+    private ByteBuffer chunk(long index) {
+        return chunks.get((int) (index >>> CHUNK_SHIFT));
+    }
+
+    private static int offset(long index) {
+        return (int) (index & (CHUNK_RECORDS - 1)) * PackedPosition.SIZE;
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No position " + index + " in a store of " + size);
+        }
+    }
+
+    /**
+     * Measures the store. Usage: java -XX:MaxDirectMemorySize=4g dataset.PositionStore [positions],
+     * by default 2000000. Appends the positions of random games, then sorts and deduplicates
+     * them, printing the time each step took, the direct memory used and the heap in use after a
+     * garbage collection.
+     *
+     * @param args the number of positions
+     */
+    public static void main(String[] args) {
+        long count = args.length > 0 ? Long.parseLong(args[0]) : 2_000_000;
+        PositionStore store = new PositionStore();
+        Position start = Fen.parse(Fen.START);
+        Position position = new Position();
+        position.copyFrom(start);
+        int[] moves = new int[Position.MAX_MOVES];
+        SplittableRandom random = new SplittableRandom(1);
+
+        long time = System.nanoTime();
+        for (int ply = 0; store.size() < count; ply++) {
+            int n = position.generateMoves(moves, 0);
+            if (n == 0 || ply == 120) {
+                position.copyFrom(start);
+                ply = 0;
+                continue;
+            }
+            store.append(position);
+            position.makeMove(moves[random.nextInt(n)]);
+            position.clearHistory();
+        }
+        System.out.printf("append %,d positions: %,d ms%n", store.size(), (System.nanoTime() - time) / 1_000_000);
+
+        time = System.nanoTime();
+        store.sortByHash();
+        System.out.printf("sort: %,d ms%n", (System.nanoTime() - time) / 1_000_000);
+
+        time = System.nanoTime();
+        long removed = store.deduplicate();
+        System.out.printf("deduplicate: %,d removed, %,d left, %,d ms%n", removed, store.size(),
+                (System.nanoTime() - time) / 1_000_000);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.printf("direct memory %,d bytes (%.1f per position), heap in use %,d bytes%n",
+                store.getMemoryUsage(), (double) store.getMemoryUsage() / store.size(),
+                runtime.totalMemory() - runtime.freeMemory());
+    }
+}
@@ -0,0 +1,194 @@
+package engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The Attacks class holds the lookup tables used by the fast rules core. Squares are numbered
+ * row * 8 + col using the same orientation as Board, so square 0 is a8 and square 63 is h1.
+ *
+ * <p>The tables are generated at build time by main into the attacks.bin resource, which is
+ * loaded when the class is; the file is a build output and is not kept with the sources. It is
+ * little-endian: the int MAGIC, the int VERSION, the CRC-32 of the rest as an int, then for each
+ * square its knight, king, white pawn and black pawn attacks and its eight rays, each as a byte
+ * count followed by one byte per square. A resource with another version or a bad checksum, such
+ * as one left over from an older build, is ignored and the tables are computed instead.
+ */
+public class Attacks {
+    public static final int NORTH = 0;
+    public static final int SOUTH = 1;
+    public static final int EAST = 2;
+    public static final int WEST = 3;
+    public static final int NORTH_EAST = 4;
+    public static final int NORTH_WEST = 5;
+    public static final int SOUTH_EAST = 6;
+    public static final int SOUTH_WEST = 7;
+
+    static final String RESOURCE = "attacks.bin";  // Next to this class on the class path
+    private static final int MAGIC = 0x314B5441;  // "ATK1"
+    private static final int VERSION = 2;  // Raise whenever the tables or their layout change
+    private static final int HEADER_SIZE = 12;
+
+    // Row and column steps for each of the eight directions above
+    private static final int[] ROW_STEP = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] COL_STEP = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /** Squares a knight on the given square attacks. */
+    public static final int[][] KNIGHT = new int[64][];
+
+    /** Squares a king on the given square attacks. */
+    public static final int[][] KING = new int[64][];
+
+    /** Squares a pawn of the given color (0 white, 1 black) on the given square attacks. */
+    public static final int[][][] PAWN = new int[2][64][];
+
+    /** Squares along each direction from the given square, nearest first. */
+    public static final int[][][] RAYS = new int[64][8][];
+
+    static {
+        // Read the tables generated at build time; computing them is the fallback for a class
+        // path without the resource, such as a bare javac output directory
+        try (InputStream in = Attacks.class.getResourceAsStream(RESOURCE)) {
+            if (in == null || !read(ByteBuffer.wrap(in.readAllBytes()).order(ByteOrder.LITTLE_ENDIAN))) {
+                compute();
+            }
+        } catch (IOException ex) {
+            compute();
+        }
+    }
+
+    // Build every table from the piece movement rules
+    private static void compute() {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            int col = sq & 7;
+
+            KNIGHT[sq] = steps(row, col, knightSteps);
+
+            int[][] kingSteps = new int[8][];
+            for (int dir = 0; dir < 8; dir++) {
+                kingSteps[dir] = new int[]{ROW_STEP[dir], COL_STEP[dir]};
+            }
+            KING[sq] = steps(row, col, kingSteps);
+
+            // White pawns move towards row 0, black pawns towards row 7
+            PAWN[0][sq] = steps(row, col, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN[1][sq] = steps(row, col, new int[][]{{1, -1}, {1, 1}});
+
+            for (int dir = 0; dir < 8; dir++) {
+                int length = 0;
+                int[] ray = new int[7];
+                int r = row + ROW_STEP[dir];
+                int c = col + COL_STEP[dir];
+                while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                    ray[length++] = r * 8 + c;
+                    r += ROW_STEP[dir];
+                    c += COL_STEP[dir];
+                }
+                RAYS[sq][dir] = Arrays.copyOf(ray, length);
+            }
+        }
+    }
+
+    // Fill the tables from the resource's bytes, returning false if they are not a table file of
+    // this version or are damaged
+    private static boolean read(ByteBuffer data) {
+        if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            return false;
+        }
+        int checksum = data.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        try {
+            for (int sq = 0; sq < 64; sq++) {
+                KNIGHT[sq] = squares(data);
+                KING[sq] = squares(data);
+                PAWN[0][sq] = squares(data);
+                PAWN[1][sq] = squares(data);
+                for (int dir = 0; dir < 8; dir++) {
+                    RAYS[sq][dir] = squares(data);
+                }
+            }
+        } catch (BufferUnderflowException ex) {
+            return false;
+        }
+        return !data.hasRemaining();
+    }
+
+    private static int[] squares(ByteBuffer data) {
+        int[] squares = new int[data.get()];
+        for (int i = 0; i < squares.length; i++) {
+            squares[i] = data.get();
+        }
+        return squares;
+    }
+
+    /**
+     * Returns true if the direction index is one of the four diagonal directions.
+     *
+     * @param dir the direction index
+     * @return true if the direction is diagonal, false otherwise
+     */
+    public static boolean isDiagonal(int dir) {
+        return dir >= NORTH_EAST;
+    }
+
+    // Collect the on-board squares reached from (row, col) by each step
+    private static int[] steps(int row, int col, int[][] steps) {
+        int length = 0;
+        int[] result = new int[steps.length];
+        for (int[] step : steps) {
+            int r = row + step[0];
+            int c = col + step[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                result[length++] = r * 8 + c;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Writes the tables to a file, to be shipped as the attacks.bin resource next to this class.
+     * Usage: java engine.Attacks file. The tables are computed afresh rather than read from any
+     * existing resource.
+     *
+     * @param args the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        compute();
+        ByteBuffer data = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(VERSION).putInt(0);
+        for (int sq = 0; sq < 64; sq++) {
+            putSquares(data, KNIGHT[sq]);
+            putSquares(data, KING[sq]);
+            putSquares(data, PAWN[0][sq]);
+            putSquares(data, PAWN[1][sq]);
+            for (int dir = 0; dir < 8; dir++) {
+                putSquares(data, RAYS[sq][dir]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), HEADER_SIZE, data.position() - HEADER_SIZE);
+        data.putInt(8, (int) crc.getValue());
+        Files.write(Paths.get(args[0]), Arrays.copyOf(data.array(), data.position()));
+    }
+
+    private static void putSquares(ByteBuffer data, int[] squares) {
+        data.put((byte) squares.length);
+        for (int square : squares) {
+            data.put((byte) square);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package engine;
+
+/**
+ * The Evaluator interface scores a position statically, without searching. Scores are in
+ * centipawns from the point of view of the side to move, so a positive score means the side to
+ * move stands better.
+ */
+public interface Evaluator {
+    /**
+     * Scores a position.
+     *
+     * @param position the position to score
+     * @return the score in centipawns for the side to move
+     */
+    int evaluate(Position position);
+}
@@ -0,0 +1,198 @@
+package engine;
+
+/**
+ * The Fen class reads and writes positions in Forsyth-Edwards Notation, the one-line text form
+ * used by position files and test suites, such as
+ * "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1".
+ */
+public class Fen {
+    /** The standard starting position. */
+    public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // The squares the king and rook of each castling right, in "KQkq" order, must stand on
+    private static final int[] KING_SQUARES = {60, 60, 4, 4};
+    private static final int[] ROOK_SQUARES = {63, 56, 7, 0};
+
+    private Fen() {
+    }
+
+    /**
+     * Sets up a position from a FEN string. The halfmove clock and move number may be left out.
+     *
+     * @param fen the FEN string
+     * @param position the position to overwrite
+     * @throws IllegalArgumentException if the string is not valid FEN or not a position the
+     *         engine can play: a side has no single king, a pawn is on the first or last rank, a
+     *         castling right has no king and rook on their starting squares, or the en passant
+     *         square is not one a pawn has just passed over
+     */
+    public static void parse(String fen, Position position) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        }
+        position.clear();
+
+        // Piece placement, rank 8 first, which matches square order
+        int square = 0;
+        int kings = 0;
+        for (int i = 0; i < fields[0].length(); i++) {
+            char c = fields[0].charAt(i);
+            if (c == '/') {
+                if (square % 8 != 0 || square == 0) {
+                    throw new IllegalArgumentException("Bad rank length in FEN: " + fen);
+                }
+            } else if (c >= '1' && c <= '8') {
+                square += c - '0';
+            } else {
+                int type = Position.TYPE_CHARS.indexOf(Character.toUpperCase(c));
+                if (type <= 0 || square >= 64) {
+                    throw new IllegalArgumentException("Bad piece placement in FEN: " + fen);
+                }
+                int color = Character.isUpperCase(c) ? Position.WHITE : Position.BLACK;
+                if (type == Position.PAWN && (square < 8 || square >= 56)) {
+                    throw new IllegalArgumentException("Pawn on the first or last rank in FEN: " + fen);
+                }
+                if (type == Position.KING) {
+                    kings += color == Position.WHITE ? 1 : 16;
+                }
+                position.setPiece(square++, Position.piece(color, type));
+            }
+        }
+        if (square != 64) {
+            throw new IllegalArgumentException("Bad piece placement in FEN: " + fen);
+        }
+        if (kings != 17) {
+            throw new IllegalArgumentException("Each side needs exactly one king: " + fen);
+        }
+
+        if (fields[1].equals("w")) {
+            position.setSideToMove(Position.WHITE);
+        } else if (fields[1].equals("b")) {
+            position.setSideToMove(Position.BLACK);
+        } else {
+            throw new IllegalArgumentException("Bad side to move in FEN: " + fen);
+        }
+
+        int rights = 0;
+        if (!fields[2].equals("-")) {
+            for (int i = 0; i < fields[2].length(); i++) {
+                int right = "KQkq".indexOf(fields[2].charAt(i));
+                if (right < 0) {
+                    throw new IllegalArgumentException("Bad castling rights in FEN: " + fen);
+                }
+                // Castling needs the king and the rook on their starting squares
+                int color = right < 2 ? Position.WHITE : Position.BLACK;
+                if (position.pieceAt(KING_SQUARES[right]) != Position.piece(color, Position.KING)
+                        || position.pieceAt(ROOK_SQUARES[right]) != Position.piece(color, Position.ROOK)) {
+                    throw new IllegalArgumentException("Castling right without its king and rook in FEN: " + fen);
+                }
+                rights |= 1 << right;
+            }
+        }
+        position.setCastling(rights);
+
+        if (!fields[3].equals("-")) {
+            // The square a pawn of the side that just moved passed over: on the sixth rank with
+            // White to move or the third with Black to move, with the pawn in front of it and
+            // both it and the square the pawn came from empty
+            int epSquare = parseSquare(fields[3]);
+            int mover = position.getSideToMove() ^ 1;
+            int pawn = mover == Position.BLACK ? epSquare + 8 : epSquare - 8;
+            int origin = mover == Position.BLACK ? epSquare - 8 : epSquare + 8;
+            if (epSquare >> 3 != (mover == Position.BLACK ? 2 : 5)
+                    || position.pieceAt(pawn) != Position.piece(mover, Position.PAWN)
+                    || position.pieceAt(epSquare) != Position.EMPTY || position.pieceAt(origin) != Position.EMPTY) {
+                throw new IllegalArgumentException("Impossible en passant square in FEN: " + fen);
+            }
+            position.setEnPassantSquare(epSquare);
+        }
+
+        if (fields.length > 4) {
+            try {
+                position.setHalfmoveClock(Integer.parseInt(fields[4]));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad halfmove clock in FEN: " + fen);
+            }
+        }
+    }
+
+    /**
+     * Creates a new position from a FEN string.
+     *
+     * @param fen the FEN string
+     * @return the position
+     * @throws IllegalArgumentException if the string is not valid FEN
+     */
+    public static Position parse(String fen) {
+        Position position = new Position();
+        parse(fen, position);
+        return position;
+    }
+
+    /**
+     * Writes a position as FEN. Positions do not track the move number, so it is written as 1.
+     *
+     * @param position the position
+     * @return the FEN string
+     */
+    public static String format(Position position) {
+        StringBuilder sb = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = position.pieceAt(row * 8 + col);
+                if (piece == Position.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char c = Position.TYPE_CHARS.charAt(Position.typeOf(piece));
+                sb.append(Position.colorOf(piece) == Position.WHITE ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) {
+                sb.append(empty);
+            }
+            if (row < 7) {
+                sb.append('/');
+            }
+        }
+
+        sb.append(position.getSideToMove() == Position.WHITE ? " w " : " b ");
+        int rights = position.getCastling();
+        if (rights == 0) {
+            sb.append('-');
+        }
+        for (int i = 0; i < 4; i++) {
+            if ((rights & (1 << i)) != 0) {
+                sb.append("KQkq".charAt(i));
+            }
+        }
+        sb.append(' ');
+        if (position.getEnPassantSquare() < 0) {
+            sb.append('-');
+        } else {
+            Move.appendSquare(sb, position.getEnPassantSquare());
+        }
+        sb.append(' ').append(position.getHalfmoveClock()).append(" 1");
+        return sb.toString();
+    }
+
+    /**
+     * Parses a square name such as "e4".
+     *
+     * @param name the square name
+     * @return the square index
+     * @throws IllegalArgumentException if the name is not a square
+     */
+    public static int parseSquare(String name) {
+        if (name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h'
+                || name.charAt(1) < '1' || name.charAt(1) > '8') {
+            throw new IllegalArgumentException("Bad square: " + name);
+        }
+        return (name.charAt(0) - 'a') + 8 * ('8' - name.charAt(1));
+    }
+}
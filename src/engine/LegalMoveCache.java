@@ -0,0 +1,250 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LegalMoveCache class remembers the legal moves of positions by their hash key, so a move
+ * in a position seen before, in this game or any other, is checked by a binary search instead of
+ * generating moves. Each position's moves are kept as a sorted short[] of from, to and promotion
+ * in the low 15 bits of the packed move; Position.moveOf restores the flags.
+ *
+ * <p>The cache is split into segments by key, each an open-addressing table guarded by its own
+ * lock, so threads looking up different positions seldom wait for each other. A lookup that finds
+ * its position allocates nothing. Entries are evicted with the CLOCK algorithm: a lookup marks its
+ * entry as used, and a segment that is out of room sweeps its clock hand over the table, clearing
+ * marks until it finds an entry not used since the last sweep. A segment runs out of room when
+ * its table is three quarters full or its move arrays pass its share of the memory cap.
+ */
+public class LegalMoveCache implements LegalMoveCacheMXBean {
+    private static final int SEGMENTS = 64;  // A power of two
+    private static final int ENTRY_ESTIMATE = 96;  // Bytes of a typical entry, for sizing tables
+    private static final int SLOT_BYTES = 8 + 4 + 1;  // Key, array reference and mark of a slot
+
+    private final Segment[] segments;
+    private final long maxBytes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    // One lock's share of the cache
+    private final class Segment {
+        private final long[] keys;
+        private final short[][] moves;  // Sorted moves of each slot, or null for an empty slot
+        private final boolean[] used;  // Looked up since the clock hand last passed
+        private final int mask;
+        private final long maxArrayBytes;
+        private long arrayBytes;
+        private int size;
+        private int hand;
+
+        Segment(int capacity, long maxArrayBytes) {
+            this.keys = new long[capacity];
+            this.moves = new short[capacity][];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+            this.maxArrayBytes = maxArrayBytes;
+        }
+
+        synchronized short[] get(long key) {
+            for (int slot = (int) key & mask; moves[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    used[slot] = true;
+                    return moves[slot];
+                }
+            }
+            return null;
+        }
+
+        synchronized short[] put(long key, short[] list) {
+            short[] existing = get(key);
+            if (existing != null) {
+                return existing;  // Another thread got here first
+            }
+            long bytes = arrayBytes(list);
+            while (size > 0 && (size >= keys.length / 4 * 3 || arrayBytes + bytes > maxArrayBytes)) {
+                evict();
+            }
+            int slot = (int) key & mask;
+            while (moves[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            moves[slot] = list;
+            used[slot] = false;
+            arrayBytes += bytes;
+            size++;
+            return list;
+        }
+
+        // Advance the clock hand to an entry not used since its last pass and remove it
+        private void evict() {
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) & mask;
+                if (moves[slot] == null) {
+                    continue;
+                }
+                if (used[slot]) {
+                    used[slot] = false;  // A second chance
+                    continue;
+                }
+                arrayBytes -= arrayBytes(moves[slot]);
+                size--;
+                remove(slot);
+                evictions.increment();
+                return;
+            }
+        }
+
+        // Empty a slot, moving later entries of the same probe run back so lookups still find them
+        private void remove(int slot) {
+            moves[slot] = null;
+            for (int next = (slot + 1) & mask; moves[next] != null; next = (next + 1) & mask) {
+                int home = (int) keys[next] & mask;
+                boolean movable = slot <= next ? home <= slot || home > next : home <= slot && home > next;
+                if (movable) {
+                    keys[slot] = keys[next];
+                    moves[slot] = moves[next];
+                    used[slot] = used[next];
+                    moves[next] = null;
+                    slot = next;
+                }
+            }
+        }
+
+        synchronized long bytes() {
+            return (long) keys.length * SLOT_BYTES + arrayBytes;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Creates a cache that keeps its tables and move arrays within about the given number of
+     * bytes.
+     *
+     * @param maxBytes the memory cap
+     * @throws IllegalArgumentException if the cap is too small for a useful cache
+     */
+    public LegalMoveCache(long maxBytes) {
+        if (maxBytes < SEGMENTS * 16L * (SLOT_BYTES + ENTRY_ESTIMATE)) {
+            throw new IllegalArgumentException("Legal move cache needs at least "
+                    + SEGMENTS * 16L * (SLOT_BYTES + ENTRY_ESTIMATE) + " bytes: " + maxBytes);
+        }
+        long segmentBytes = maxBytes / SEGMENTS;
+        int capacity = 16;
+        while ((long) capacity * 2 * (SLOT_BYTES + ENTRY_ESTIMATE) <= segmentBytes && capacity < 1 << 24) {
+            capacity *= 2;
+        }
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity, segmentBytes - (long) capacity * SLOT_BYTES);
+        }
+        this.maxBytes = maxBytes;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the legal moves of a position, generating and caching them the first time.
+     *
+     * @param position the position; it is not changed
+     * @param scratch space for Position.MAX_MOVES moves, used when the moves must be generated
+     * @return the moves, sorted, each the low 15 bits of a packed move; the array is shared and
+     *         must not be changed
+     */
+    public short[] get(Position position, int[] scratch) {
+        long key = position.getKey();
+        Segment segment = segments[(int) (key >>> 58) & (SEGMENTS - 1)];
+        short[] list = segment.get(key);
+        if (list != null) {
+            hits.increment();
+            return list;
+        }
+        misses.increment();
+        int count = position.generateMoves(scratch, 0);
+        list = new short[count];
+        for (int i = 0; i < count; i++) {
+            list[i] = compact(scratch[i]);
+        }
+        Arrays.sort(list);
+        return segment.put(key, list);
+    }
+
+    /**
+     * Returns the cached form of a move: its from square, to square and promotion.
+     *
+     * @param move the packed move
+     * @return the low 15 bits of the move
+     */
+    public static short compact(int move) {
+        return (short) (move & 0x7FFF);
+    }
+
+    /**
+     * Checks whether a move is in a list get returned.
+     *
+     * @param moves the sorted moves
+     * @param from the square the piece moves from
+     * @param to the square it moves to
+     * @param promotion the piece type a pawn promotes to, or 0
+     * @return true if the move is legal
+     */
+    public static boolean contains(short[] moves, int from, int to, int promotion) {
+        return Arrays.binarySearch(moves, compact(Move.of(from, to, promotion, 0))) >= 0;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long lookups = hits + misses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getMaxMemory() {
+        return maxBytes;
+    }
+
+    // Array header plus two bytes per move, rounded up to eight bytes
+    private static long arrayBytes(short[] list) {
+        return (16 + 2L * list.length + 7) & ~7L;
+    }
+}
@@ -0,0 +1,36 @@
+package engine;
+
+/**
+ * The LegalMoveCacheMXBean interface is the JMX view of a LegalMoveCache, registered as
+ * "chess:type=LegalMoveCache".
+ */
+public interface LegalMoveCacheMXBean {
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * Returns the share of lookups that found their position in the cache.
+     *
+     * @return the hit rate, from 0 to 1
+     */
+    double getHitRate();
+
+    long getEvictions();
+
+    /**
+     * Returns the number of positions cached.
+     *
+     * @return the size
+     */
+    int getSize();
+
+    /**
+     * Returns an estimate of the bytes the cache's tables and move arrays take up.
+     *
+     * @return the memory usage
+     */
+    long getMemoryUsage();
+
+    long getMaxMemory();
+}
@@ -0,0 +1,71 @@
+package engine;
+
+/**
+ * The Move class packs a chess move into a single int so that move lists can be kept in
+ * primitive arrays. Bits 0-5 hold the from square, bits 6-11 the to square, bits 12-14 the
+ * promotion piece type and the remaining bits flag special moves.
+ */
+public class Move {
+    public static final int NONE = 0;
+
+    public static final int CAPTURE = 1 << 15;
+    public static final int EN_PASSANT = 1 << 16;
+    public static final int CASTLE = 1 << 17;
+    public static final int DOUBLE_PUSH = 1 << 18;
+
+    /**
+     * Packs a move into an int.
+     *
+     * @param from the from square (0 to 63)
+     * @param to the to square (0 to 63)
+     * @param promotion the promotion piece type, or 0 if the move is not a promotion
+     * @param flags any combination of the flag constants
+     * @return the packed move
+     */
+    public static int of(int from, int to, int promotion, int flags) {
+        return from | (to << 6) | (promotion << 12) | flags;
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    /**
+     * Returns the move in coordinate notation (e.g. "e2e4" or "e7e8q").
+     *
+     * @param move the packed move
+     * @return the coordinate notation of the move
+     */
+    public static String toString(int move) {
+        StringBuilder result = new StringBuilder(5);
+        appendSquare(result, from(move));
+        appendSquare(result, to(move));
+        if (promotion(move) != 0) {
+            result.append(Character.toLowerCase(Position.TYPE_CHARS.charAt(promotion(move))));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Appends a square name such as "e4" to the given builder.
+     *
+     * @param result the builder to append to
+     * @param square the square index (0 to 63)
+     */
+    public static void appendSquare(StringBuilder result, int square) {
+        result.append((char) ('a' + (square & 7)));
+        result.append((char) ('8' - (square >> 3)));
+    }
+}
@@ -0,0 +1,207 @@
+package engine;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The MoveParser class reads a move typed by a person or taken from a PGN file and finds the
+ * legal move it names in a Position. It accepts coordinate notation ("e2e4", "e2 e4", "e2-e4",
+ * "e7e8q"), long algebraic notation ("Ng1-f3", "e4xd5", "e7-e8=Q"), castling as "O-O" or "O-O-O"
+ * (with zeros too), and standard algebraic notation ("Nf3", "exd5", "Rad1", "N5xe4", "e8=Q+").
+ * Check, mate and annotation marks at the end are ignored.
+ *
+ * <p>The text is matched against the legal moves rather than checked against the rules on its
+ * own, which resolves SAN disambiguation and tells castling, en passant and double pawn pushes
+ * apart. A promotion without a piece promotes to a queen. Parsing a valid move reads the text in
+ * place, from a CharSequence or a byte range, and allocates nothing; only a failure builds an
+ * exception.
+ */
+public class MoveParser {
+    private static final String PIECE_LETTERS = "NBRQK";  // Piece letters that start a SAN move
+
+    /**
+     * Parses a move in the given position.
+     *
+     * @param position the position the move is played in; it is not changed
+     * @param text the move
+     * @param moves scratch space for Position.MAX_MOVES moves
+     * @return the packed legal move
+     * @throws IllegalArgumentException if the text is not a move, or not a legal one
+     */
+    public static int parse(Position position, CharSequence text, int[] moves) {
+        return parse(position, text, 0, text.length(), moves);
+    }
+
+    /**
+     * Parses the move in part of a CharSequence, such as one token of a PGN move list.
+     *
+     * @param position the position the move is played in; it is not changed
+     * @param text the text
+     * @param start the index of the move's first character
+     * @param end the index just past its last character
+     * @param moves scratch space for Position.MAX_MOVES moves
+     * @return the packed legal move
+     * @throws IllegalArgumentException if the text is not a move, or not a legal one
+     */
+    public static int parse(Position position, CharSequence text, int start, int end, int[] moves) {
+        return parse(position, text, null, start, end, moves);
+    }
+
+    /**
+     * Parses the move in a range of ASCII bytes, such as a command read from a network buffer.
+     *
+     * @param position the position the move is played in; it is not changed
+     * @param bytes the bytes
+     * @param start the index of the move's first byte
+     * @param end the index just past its last byte
+     * @param moves scratch space for Position.MAX_MOVES moves
+     * @return the packed legal move
+     * @throws IllegalArgumentException if the bytes are not a move, or not a legal one
+     */
+    public static int parse(Position position, byte[] bytes, int start, int end, int[] moves) {
+        return parse(position, null, bytes, start, end, moves);
+    }
+
+    // Reads the move from whichever of text and bytes is not null
+    private static int parse(Position position, CharSequence text, byte[] bytes, int start, int end, int[] moves) {
+        // Trim spaces, then check, mate and annotation marks
+        while (start < end && charAt(text, bytes, start) == ' ') {
+            start++;
+        }
+        while (end > start && "+#!? ".indexOf(charAt(text, bytes, end - 1)) >= 0) {
+            end--;
+        }
+
+        int castle = castleSide(text, bytes, start, end);
+        if (castle != 0) {
+            return find(position, moves, Position.KING, -1, -1, -1, 0, castle, text, bytes, start, end);
+        }
+
+        // A leading capital names the piece; without one, a SAN move is a pawn move
+        int type = -1;
+        int i = start;
+        if (i < end && PIECE_LETTERS.indexOf(charAt(text, bytes, i)) >= 0) {
+            type = Position.TYPE_CHARS.indexOf(charAt(text, bytes, i));
+            i++;
+        }
+
+        // A promotion piece follows the destination, with or without '='
+        int promotion = 0;
+        int last = end;
+        if (last - i >= 3 && isRank(charAt(text, bytes, last - 2))
+                || last - i >= 4 && charAt(text, bytes, last - 2) == '=') {
+            char c = Character.toUpperCase(charAt(text, bytes, last - 1));
+            if (c == 'N' || c == 'B' || c == 'R' || c == 'Q') {
+                promotion = Position.TYPE_CHARS.indexOf(c);
+                last--;
+                if (charAt(text, bytes, last - 1) == '=') {
+                    last--;
+                }
+            }
+        }
+
+        // The destination square ends what is left
+        if (last - i < 2 || !isFile(charAt(text, bytes, last - 2)) || !isRank(charAt(text, bytes, last - 1))) {
+            throw notAMove(text, bytes, start, end);
+        }
+        int to = square(charAt(text, bytes, last - 2), charAt(text, bytes, last - 1));
+        last -= 2;
+
+        // Then an optional capture mark or separator, and whatever part of the from square is given
+        if (last > i && "x- ".indexOf(charAt(text, bytes, last - 1)) >= 0) {
+            last--;
+        }
+        int fromFile = -1;
+        int fromRank = -1;
+        if (i < last && isFile(charAt(text, bytes, i))) {
+            fromFile = charAt(text, bytes, i++) - 'a';
+        }
+        if (i < last && isRank(charAt(text, bytes, i))) {
+            fromRank = '8' - charAt(text, bytes, i++);
+        }
+        if (i != last) {
+            throw notAMove(text, bytes, start, end);
+        }
+
+        // Coordinates name both squares and leave the piece open; anything shorter is SAN
+        if (type < 0 && (fromFile < 0 || fromRank < 0)) {
+            type = Position.PAWN;
+        }
+        return find(position, moves, type, fromFile, fromRank, to, promotion, 0, text, bytes, start, end);
+    }
+
+    // The only legal move that fits, or an exception if none or several do
+    private static int find(Position position, int[] moves, int type, int fromFile, int fromRank, int to,
+                            int promotion, int castle, CharSequence text, byte[] bytes, int start, int end) {
+        int count = position.generateMoves(moves, 0);
+        int found = Move.NONE;
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Move.from(move);
+            if (castle != 0) {
+                if ((move & Move.CASTLE) == 0 || Integer.signum(Move.to(move) - from) != castle) {
+                    continue;
+                }
+            } else {
+                int wanted = promotion != 0 || Move.promotion(move) == 0 ? promotion : Position.QUEEN;
+                if (Move.to(move) != to
+                        || type >= 0 && Position.typeOf(position.pieceAt(from)) != type
+                        || fromFile >= 0 && (from & 7) != fromFile
+                        || fromRank >= 0 && (from >> 3) != fromRank
+                        || Move.promotion(move) != wanted) {
+                    continue;
+                }
+            }
+            found = move;
+            matches++;
+        }
+        if (matches == 1) {
+            return found;
+        }
+        throw new IllegalArgumentException((matches == 0 ? "Illegal move: " : "Ambiguous move: ")
+                + toString(text, bytes, start, end));
+    }
+
+    // 1 for kingside castling, -1 for queenside, 0 if the text is not castling
+    private static int castleSide(CharSequence text, byte[] bytes, int start, int end) {
+        int length = end - start;
+        if (length != 3 && length != 5) {
+            return 0;
+        }
+        char o = charAt(text, bytes, start);
+        if (o != 'O' && o != '0') {
+            return 0;
+        }
+        for (int i = start + 1; i < end; i += 2) {
+            if (charAt(text, bytes, i) != '-' || charAt(text, bytes, i + 1) != o) {
+                return 0;
+            }
+        }
+        return length == 3 ? 1 : -1;
+    }
+
+    private static IllegalArgumentException notAMove(CharSequence text, byte[] bytes, int start, int end) {
+        return new IllegalArgumentException("Not a move: " + toString(text, bytes, start, end));
+    }
+
+    private static String toString(CharSequence text, byte[] bytes, int start, int end) {
+        return text != null ? text.subSequence(start, end).toString() : new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    private static char charAt(CharSequence text, byte[] bytes, int index) {
+        return text != null ? text.charAt(index) : (char) (bytes[index] & 0xFF);
+    }
+
+    private static boolean isFile(char c) {
+        return c >= 'a' && c <= 'h';
+    }
+
+    private static boolean isRank(char c) {
+        return c >= '1' && c <= '8';
+    }
+
+    // The square index of a file and rank, with rank 8 in row 0 like Position
+    private static int square(char file, char rank) {
+        return (file - 'a') + 8 * ('8' - rank);
+    }
+}
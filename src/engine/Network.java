@@ -0,0 +1,190 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * The Network class holds the quantized weights of the neural network NnueEvaluator runs. The
+ * first layer has one input per feature: a piece other than a king on a square, seen from one
+ * side with that side's king on a given square, which gives 64 * 10 * 64 features per side. Each
+ * side's active features are summed into an accumulator of hiddenSize values. The two
+ * accumulators, the side to move's first, are clipped to 0..127 and fed through two dense layers
+ * with clipped outputs and a final layer that gives the score.
+ *
+ * <p>All weights are int16. First-layer weights and accumulators use 127 for 1.0; dense-layer
+ * weights use 64 for 1.0, so each dense sum is shifted right by WEIGHT_SHIFT before clipping.
+ * Dense biases are int32 in the scale of the sums they are added to. The output divided by
+ * OUTPUT_DIVISOR is the score in centipawns.
+ *
+ * <p>A network file is little-endian: the int MAGIC, the hidden, first dense and second dense
+ * layer sizes as ints, then the feature weights (feature-major), feature biases, first dense
+ * weights (output-major) and biases, second dense weights and biases, output weights and output
+ * bias. A Network is immutable once built, so one can be shared by the evaluators of any number
+ * of threads.
+ */
+public class Network {
+    /** Features per side: king square, piece kind (five types of either color) and square. */
+    public static final int FEATURES = 64 * 10 * 64;
+
+    static final int MAGIC = 0x434E4E31;  // "CNN1"
+    static final int WEIGHT_SHIFT = 6;  // Dense weights are in 64ths
+    static final int OUTPUT_DIVISOR = 16;
+
+    final int hiddenSize;
+    final int denseSize1;
+    final int denseSize2;
+    final short[] featureWeights;  // FEATURES rows of hiddenSize
+    final short[] featureBias;
+    final short[] denseWeights1;  // denseSize1 rows of 2 * hiddenSize
+    final int[] denseBias1;
+    final short[] denseWeights2;  // denseSize2 rows of denseSize1
+    final int[] denseBias2;
+    final short[] outputWeights;
+    final int outputBias;
+    final int[] denseColumns1;  // denseWeights1 as ints, one row of denseSize1 per input
+    final int[] denseColumns2;  // denseWeights2 likewise
+
+    private Network(int hiddenSize, int denseSize1, int denseSize2, short[] featureWeights, short[] featureBias,
+                    short[] denseWeights1, int[] denseBias1, short[] denseWeights2, int[] denseBias2,
+                    short[] outputWeights, int outputBias) {
+        this.hiddenSize = hiddenSize;
+        this.denseSize1 = denseSize1;
+        this.denseSize2 = denseSize2;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.denseWeights1 = denseWeights1;
+        this.denseBias1 = denseBias1;
+        this.denseWeights2 = denseWeights2;
+        this.denseBias2 = denseBias2;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        this.denseColumns1 = columns(denseWeights1, denseSize1, 2 * hiddenSize);
+        this.denseColumns2 = columns(denseWeights2, denseSize2, denseSize1);
+    }
+
+    // Transpose output-major weights, so the weights of one input to every output are adjacent
+    private static int[] columns(short[] weights, int outputs, int inputs) {
+        int[] columns = new int[weights.length];
+        for (int o = 0; o < outputs; o++) {
+            for (int i = 0; i < inputs; i++) {
+                columns[i * outputs + o] = weights[o * inputs + i];
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Loads a network file.
+     *
+     * @param file the file
+     * @return the network
+     * @throws IOException if the file cannot be read, is not a network file or is cut short
+     */
+    public static Network load(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < 16 || data.getInt() != MAGIC) {
+            throw new IOException("Not a network file: " + file);
+        }
+        int hidden = data.getInt();
+        int dense1 = data.getInt();
+        int dense2 = data.getInt();
+        if (hidden <= 0 || dense1 <= 0 || dense2 <= 0 || hidden > 4096 || dense1 > 4096 || dense2 > 4096
+                || data.remaining() != fileSize(hidden, dense1, dense2) - 16) {
+            throw new IOException("Network file is damaged: " + file);
+        }
+        return new Network(hidden, dense1, dense2, shorts(data, FEATURES * hidden), shorts(data, hidden),
+                shorts(data, dense1 * 2 * hidden), ints(data, dense1), shorts(data, dense2 * dense1),
+                ints(data, dense2), shorts(data, dense2), data.getInt());
+    }
+
+    /**
+     * Writes the network to a file in the format load reads.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) fileSize(hiddenSize, denseSize1, denseSize2))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(hiddenSize).putInt(denseSize1).putInt(denseSize2);
+        data.asShortBuffer().put(featureWeights).put(featureBias);
+        data.position(data.position() + 2 * (featureWeights.length + featureBias.length));
+        data.asShortBuffer().put(denseWeights1);
+        data.position(data.position() + 2 * denseWeights1.length);
+        data.asIntBuffer().put(denseBias1);
+        data.position(data.position() + 4 * denseBias1.length);
+        data.asShortBuffer().put(denseWeights2);
+        data.position(data.position() + 2 * denseWeights2.length);
+        data.asIntBuffer().put(denseBias2);
+        data.position(data.position() + 4 * denseBias2.length);
+        data.asShortBuffer().put(outputWeights);
+        data.position(data.position() + 2 * outputWeights.length);
+        data.putInt(outputBias);
+        Files.write(file, data.array());
+    }
+
+    /**
+     * Creates a network with random weights, for benchmarks and tests of the evaluator rather
+     * than for play.
+     *
+     * @param seed the random seed
+     * @param hiddenSize the accumulator size of each side
+     * @param denseSize1 the size of the first dense layer
+     * @param denseSize2 the size of the second dense layer
+     * @return the network
+     */
+    public static Network random(long seed, int hiddenSize, int denseSize1, int denseSize2) {
+        SplittableRandom random = new SplittableRandom(seed);
+        return new Network(hiddenSize, denseSize1, denseSize2, randomShorts(random, FEATURES * hiddenSize, 16),
+                randomShorts(random, hiddenSize, 32), randomShorts(random, denseSize1 * 2 * hiddenSize, 8),
+                random.ints(denseSize1, -2048, 2048).toArray(), randomShorts(random, denseSize2 * denseSize1, 16),
+                random.ints(denseSize2, -2048, 2048).toArray(), randomShorts(random, denseSize2, 64), 0);
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    // The first feature weight of a side's feature, whose hiddenSize weights follow it; a side
+    // without a king counts it on a8
+    int featureOffset(int perspective, int kingSquare, int piece, int square) {
+        kingSquare = Math.max(kingSquare, 0);
+        if (perspective == Position.BLACK) {
+            kingSquare ^= 56;  // Black sees the board upside down
+            square ^= 56;
+        }
+        int kind = Position.typeOf(piece) - 1 + (Position.colorOf(piece) == perspective ? 0 : 5);
+        return ((kingSquare * 10 + kind) * 64 + square) * hiddenSize;
+    }
+
+    private static long fileSize(int hidden, int dense1, int dense2) {
+        return 16 + 2L * FEATURES * hidden + 2L * hidden + 2L * dense1 * 2 * hidden + 4L * dense1
+                + 2L * dense2 * dense1 + 4L * dense2 + 2L * dense2 + 4;
+    }
+
+    private static short[] shorts(ByteBuffer data, int count) {
+        short[] values = new short[count];
+        data.asShortBuffer().get(values);
+        data.position(data.position() + 2 * count);
+        return values;
+    }
+
+    private static int[] ints(ByteBuffer data, int count) {
+        int[] values = new int[count];
+        data.asIntBuffer().get(values);
+        data.position(data.position() + 4 * count);
+        return values;
+    }
+
+    private static short[] randomShorts(SplittableRandom random, int count, int bound) {
+        short[] values = new short[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (short) random.nextInt(-bound, bound + 1);
+        }
+        return values;
+    }
+}
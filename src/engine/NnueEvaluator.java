@@ -0,0 +1,302 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The NnueEvaluator class scores positions with an efficiently updatable neural network (see
+ * Network). The first layer, by far the largest, is kept as one accumulator per side holding the
+ * sum of the weights of that side's active features. Consecutive positions in a search differ by
+ * a few pieces, so instead of summing every feature again, evaluate compares the position with the
+ * one it last saw and only subtracts the weights of pieces that left a square and adds those of
+ * pieces that arrived. A side's accumulator is rebuilt from scratch only when its king moves,
+ * since every one of its features depends on the king's square.
+ *
+ * <p>The dense layers skip inputs that clipping has set to zero, and add each remaining input's
+ * weights to all outputs in one simple loop over adjacent ints, which the JIT compiles to SIMD
+ * instructions where the CPU has them.
+ *
+ * <p>An evaluator keeps the accumulators and the last position, so it must not be shared between
+ * threads; give each Search its own, built on one shared Network.
+ */
+public class NnueEvaluator implements Evaluator {
+    private final Network network;
+    private final short[][] accumulators;  // Sum of active feature weights for each side
+    private final int[] kingSquares;  // King square each side's accumulator was built for
+    private final int[] pieces;  // The piece on each square when the accumulators were last updated
+    private boolean valid;  // Whether the accumulators match pieces
+    private final int[] input;  // Clipped accumulators, the side to move's first
+    private final int[] dense1;
+    private final int[] dense2;
+    private long refreshes;
+    private long updates;
+
+    /**
+     * Creates an evaluator for a network.
+     *
+     * @param network the network, which may be shared with other evaluators
+     */
+    public NnueEvaluator(Network network) {
+        this.network = network;
+        this.accumulators = new short[2][network.hiddenSize];
+        this.kingSquares = new int[2];
+        this.pieces = new int[64];
+        this.input = new int[2 * network.hiddenSize];
+        this.dense1 = new int[network.denseSize1];
+        this.dense2 = new int[network.denseSize2];
+    }
+
+    @Override
+    public int evaluate(Position position) {
+        update(position);
+        return forward(position.getSideToMove());
+    }
+
+    /**
+     * Scores a position with both accumulators built from scratch, as a reference for the
+     * incremental updates. Later evaluations update from this position.
+     *
+     * @param position the position to score
+     * @return the score in centipawns for the side to move
+     */
+    public int evaluateFromScratch(Position position) {
+        valid = false;
+        return evaluate(position);
+    }
+
+    /**
+     * Returns how often an accumulator has been rebuilt from scratch.
+     *
+     * @return the number of rebuilt accumulators
+     */
+    public long getRefreshes() {
+        return refreshes;
+    }
+
+    /**
+     * Returns how often an accumulator has been brought up to date by adding and removing pieces.
+     *
+     * @return the number of incremental updates
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    // Bring both accumulators up to date with the position
+    private void update(Position position) {
+        boolean whiteRefresh = !valid || kingSquares[Position.WHITE] != position.getKingSquare(Position.WHITE);
+        boolean blackRefresh = !valid || kingSquares[Position.BLACK] != position.getKingSquare(Position.BLACK);
+
+        for (int square = 0; square < 64; square++) {
+            int piece = position.pieceAt(square);
+            int old = pieces[square];
+            if (piece == old) {
+                continue;
+            }
+            pieces[square] = piece;
+            if (valid && !whiteRefresh) {
+                move(Position.WHITE, old, piece, square);
+            }
+            if (valid && !blackRefresh) {
+                move(Position.BLACK, old, piece, square);
+            }
+        }
+
+        if (whiteRefresh) {
+            refresh(Position.WHITE, position.getKingSquare(Position.WHITE));
+        } else {
+            updates++;
+        }
+        if (blackRefresh) {
+            refresh(Position.BLACK, position.getKingSquare(Position.BLACK));
+        } else {
+            updates++;
+        }
+        valid = true;
+    }
+
+    // Replace one piece on a square with another in a side's accumulator
+    private void move(int side, int removed, int added, int square) {
+        short[] accumulator = accumulators[side];
+        if (removed != Position.EMPTY && Position.typeOf(removed) != Position.KING) {
+            subtract(accumulator, network.featureOffset(side, kingSquares[side], removed, square));
+        }
+        if (added != Position.EMPTY && Position.typeOf(added) != Position.KING) {
+            add(accumulator, network.featureOffset(side, kingSquares[side], added, square));
+        }
+    }
+
+    // Rebuild a side's accumulator from the pieces
+    private void refresh(int side, int kingSquare) {
+        refreshes++;
+        kingSquares[side] = kingSquare;
+        short[] accumulator = accumulators[side];
+        System.arraycopy(network.featureBias, 0, accumulator, 0, accumulator.length);
+        for (int square = 0; square < 64; square++) {
+            int piece = pieces[square];
+            if (piece != Position.EMPTY && Position.typeOf(piece) != Position.KING) {
+                add(accumulator, network.featureOffset(side, kingSquare, piece, square));
+            }
+        }
+    }
+
+    private void add(short[] accumulator, int offset) {
+        short[] weights = network.featureWeights;
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    private void subtract(short[] accumulator, int offset) {
+        short[] weights = network.featureWeights;
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    // Run the layers after the accumulators
+    private int forward(int sideToMove) {
+        short[] us = accumulators[sideToMove];
+        short[] them = accumulators[sideToMove ^ 1];
+        int hidden = network.hiddenSize;
+        for (int i = 0; i < hidden; i++) {
+            input[i] = Math.min(Math.max(us[i], 0), 127);
+            input[hidden + i] = Math.min(Math.max(them[i], 0), 127);
+        }
+        dense(input, network.denseColumns1, network.denseBias1, dense1);
+        dense(dense1, network.denseColumns2, network.denseBias2, dense2);
+
+        int output = network.outputBias;
+        short[] weights = network.outputWeights;
+        for (int i = 0; i < dense2.length; i++) {
+            output += weights[i] * dense2[i];
+        }
+        return output / Network.OUTPUT_DIVISOR;
+    }
+
+    // One dense layer with clipped outputs. Clipping leaves many inputs at zero, so the layer is
+    // computed input by input, adding each non-zero input's weights to every output at once
+    private static void dense(int[] in, int[] columns, int[] bias, int[] out) {
+        int outputs = out.length;
+        System.arraycopy(bias, 0, out, 0, outputs);
+        for (int i = 0; i < in.length; i++) {
+            int x = in[i];
+            if (x == 0) {
+                continue;
+            }
+            int column = i * outputs;
+            for (int o = 0; o < outputs; o++) {
+                out[o] += columns[column + o] * x;
+            }
+        }
+        for (int o = 0; o < outputs; o++) {
+            out[o] = Math.min(Math.max(out[o] >> Network.WEIGHT_SHIFT, 0), 127);
+        }
+    }
+
+    /**
+     * Checks and times the evaluator. Usage: java engine.NnueEvaluator [--check | --bench | --random
+     * file] [network], where the network file defaults to random weights. --check plays random
+     * games, evaluating every position both incrementally and from scratch, and reports any
+     * difference; --bench reports evaluations per second both ways; --random writes a network
+     * with random weights.
+     *
+     * @param args the mode and network file
+     * @throws IOException if the network file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "--check";
+        if (mode.equals("--random")) {
+            Network.random(1, 256, 32, 32).save(Paths.get(args[1]));
+            return;
+        }
+        Network network = args.length > 1 ? Network.load(Paths.get(args[1])) : Network.random(1, 256, 32, 32);
+        if (mode.equals("--bench")) {
+            bench(network);
+        } else {
+            check(network);
+        }
+    }
+
+    // Play random moves, taking some back, and compare every incremental result with a full one
+    private static void check(Network network) {
+        NnueEvaluator incremental = new NnueEvaluator(network);
+        NnueEvaluator full = new NnueEvaluator(network);
+        SplittableRandom random = new SplittableRandom(42);
+        int[] moves = new int[Position.MAX_MOVES];
+        int[] played = new int[200];
+        long positions = 0;
+        long mismatches = 0;
+        for (int game = 0; game < 500; game++) {
+            Position position = Fen.parse(Fen.START);
+            int ply = 0;
+            while (ply < played.length) {
+                int count = position.generateMoves(moves, 0);
+                if (count == 0 || ply > 0 && random.nextInt(4) == 0) {
+                    if (ply == 0) {
+                        break;
+                    }
+                    position.unmakeMove(played[--ply]);  // Go back, as a search does
+                } else {
+                    played[ply] = moves[random.nextInt(count)];
+                    position.makeMove(played[ply++]);
+                }
+                positions++;
+                int score = incremental.evaluate(position);
+                int expected = full.evaluateFromScratch(position);
+                if (score != expected || !Arrays.equals(incremental.accumulators[0], full.accumulators[0])
+                        || !Arrays.equals(incremental.accumulators[1], full.accumulators[1])) {
+                    mismatches++;
+                    if (mismatches <= 10) {
+                        System.out.printf("Mismatch at %s: %d incrementally, %d from scratch\n", Fen.format(position),
+                                score, expected);
+                    }
+                }
+            }
+        }
+        System.out.printf("%d positions, %d mismatches; %d incremental updates, %d refreshes\n", positions,
+                mismatches, incremental.getUpdates(), incremental.getRefreshes());
+    }
+
+    // Evaluations per second over positions a search would visit, incrementally and from scratch
+    private static void bench(Network network) {
+        String[] fens = {
+                Fen.START,
+                "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        };
+        NnueEvaluator evaluator = new NnueEvaluator(network);
+        int[] moves = new int[2 * Position.MAX_MOVES];
+        for (int round = 0; round < 5; round++) {  // The first rounds warm up the JIT
+            for (int fromScratch = 0; fromScratch < 2; fromScratch++) {
+                long evaluations = 0;
+                long sum = 0;
+                long start = System.nanoTime();
+                for (int n = 0; n < 20 * fens.length; n++) {
+                    Position position = Fen.parse(fens[n % fens.length]);
+                    int count = position.generateMoves(moves, 0);
+                    for (int i = 0; i < count; i++) {
+                        position.makeMove(moves[i]);
+                        int replies = position.generateMoves(moves, Position.MAX_MOVES);
+                        for (int j = 0; j < replies; j++) {
+                            int reply = moves[Position.MAX_MOVES + j];
+                            position.makeMove(reply);
+                            sum += fromScratch == 1 ? evaluator.evaluateFromScratch(position) : evaluator.evaluate(position);
+                            evaluations++;
+                            position.unmakeMove(reply);
+                        }
+                        position.unmakeMove(moves[i]);
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round == 4) {
+                    System.out.printf("%-12s %9.0f evaluations/s (%d evaluations, checksum %d)\n",
+                            fromScratch == 1 ? "from scratch" : "incremental", evaluations / seconds, evaluations, sum);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package engine;
+
+/**
+ * The Perft class counts the leaf nodes of the legal move tree to a fixed depth. The counts are
+ * known for many positions, so they validate move generation, and counting is a simple
+ * benchmark of generating and making moves.
+ *
+ * <p>A Perft reuses its move buffer, so one instance per thread can count any number of
+ * positions without allocating. It is not thread-safe.
+ */
+public class Perft {
+    private final int[] moves;  // Move lists for every ply, MAX_MOVES apart
+
+    /**
+     * Creates a counter for trees up to Search.MAX_PLY plies deep.
+     */
+    public Perft() {
+        this.moves = new int[(Search.MAX_PLY + 1) * Position.MAX_MOVES];
+    }
+
+    /**
+     * Counts the positions reached by every sequence of legal moves of the given length. The
+     * position is left as it was.
+     *
+     * @param position the position
+     * @param depth the number of plies
+     * @return the number of leaf positions
+     * @throws IllegalArgumentException if the depth is negative or more than Search.MAX_PLY
+     */
+    public long count(Position position, int depth) {
+        if (depth < 0 || depth > Search.MAX_PLY) {
+            throw new IllegalArgumentException("Perft depth must be between 0 and " + Search.MAX_PLY + ": " + depth);
+        }
+        return count(position, depth, 0);
+    }
+
+    private long count(Position position, int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if (depth == 1) {
+            return count;  // Moves are legal, so the last ply needs no makeMove
+        }
+        long leaves = 0;
+        for (int i = offset; i < offset + count; i++) {
+            position.makeMove(moves[i]);
+            leaves += count(position, depth - 1, ply + 1);
+            position.unmakeMove(moves[i]);
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,161 @@
+package engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The Ponderer class plays moves for an engine and keeps thinking while the opponent is to move.
+ * After each of its moves it takes the reply its search expected, plays it on a copy of the
+ * position and searches the result in the background. If the opponent then plays that reply, the
+ * search already under way is the answer and the engine only waits for whatever depth is left.
+ * Any other reply stops the background search, which returns within a few nodes, and the new
+ * position is searched from scratch.
+ *
+ * <p>Every search runs on one daemon thread, so the Ponderer can be driven from a thread that
+ * blocks on user input. It is not thread-safe: think, ponder and close must be called from one
+ * thread.
+ */
+public class Ponderer implements AutoCloseable {
+    private final Search search;
+    private final int depth;
+    private final ExecutorService thread;
+    private final Position ponderPosition;  // The position the background search is working on
+    private final int[] moves;
+    private Future<Integer> pondering;  // The background search, or null when not pondering
+    private long ponderKey;  // Hash of ponderPosition while pondering
+    private int expectedReply;  // The opponent's reply in the last search's best line
+    private int ponderHits;
+    private int ponderMisses;
+
+    /**
+     * Creates a ponderer that searches every position to a fixed depth.
+     *
+     * @param evaluator the static evaluator
+     * @param depth the depth in plies to search to
+     */
+    public Ponderer(Evaluator evaluator, int depth) {
+        this.search = new Search(evaluator);
+        this.depth = depth;
+        this.thread = Executors.newSingleThreadExecutor(task -> {
+            Thread daemon = new Thread(task, "ponderer");
+            daemon.setDaemon(true);
+            return daemon;
+        });
+        this.ponderPosition = new Position();
+        this.moves = new int[Position.MAX_MOVES];
+        this.expectedReply = Move.NONE;
+    }
+
+    /**
+     * Finds the engine's move. If the engine has been pondering this very position, the answer
+     * comes from that search.
+     *
+     * @param position the position with the engine to move; it is not changed
+     * @return the best move, or Move.NONE if the engine has no legal moves
+     */
+    public int think(Position position) {
+        if (pondering != null) {
+            if (ponderKey == position.getKey()) {
+                ponderHits++;
+                return finish(pondering);
+            }
+            ponderMisses++;
+            cancel();
+        }
+        return finish(thread.submit(() -> searchAndPredict(position)));
+    }
+
+    /**
+     * Starts thinking about the opponent's expected reply in the background. Does nothing if the
+     * last search did not expect a reply or the reply is not legal in this position.
+     *
+     * @param position the position with the opponent to move; it is copied, not kept
+     */
+    public void ponder(Position position) {
+        cancel();
+        if (expectedReply == Move.NONE || !isLegal(position, expectedReply)) {
+            return;
+        }
+        ponderPosition.copyFrom(position);
+        ponderPosition.makeMove(expectedReply);
+        ponderKey = ponderPosition.getKey();
+        pondering = thread.submit(() -> searchAndPredict(ponderPosition));
+    }
+
+    /**
+     * Stops any background search and waits for it to return.
+     */
+    public void cancel() {
+        Future<Integer> running = pondering;
+        pondering = null;
+        if (running == null) {
+            return;
+        }
+
+        // Repeat the request in case the search had not started yet and cleared it when it did
+        while (!running.isDone()) {
+            search.stop();
+            try {
+                running.get(1, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ex) {
+                // Still stopping, or stopped with an error nobody is waiting for
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+    public int getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Stops any background search and the search thread.
+     */
+    @Override
+    public void close() {
+        cancel();
+        thread.shutdown();
+    }
+
+    // Runs on the search thread: searches and remembers the reply the best line expects
+    private int searchAndPredict(Position position) {
+        int best = search.search(position, depth);
+        int[] line = search.getPrincipalVariation();
+        expectedReply = line.length > 1 ? line[1] : Move.NONE;
+        return best;
+    }
+
+    // Waits for a search to finish; Future.get also publishes expectedReply to this thread
+    private int finish(Future<Integer> result) {
+        pondering = null;
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            search.stop();
+            return Move.NONE;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Search failed", ex.getCause());
+        }
+    }
+
+    private boolean isLegal(Position position, int move) {
+        int count = position.generateMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
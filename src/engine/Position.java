@@ -0,0 +1,757 @@
+package engine;
+
+import game.Board;
+import game.Piece;
+import game.util.Color;
+import game.util.Point;
+import pieces.*;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The Position class is a compact, square-indexed copy of a Board that follows the same movement
+ * rules as the piece classes but supports fast legal move generation and make/unmake. It is the
+ * shared rules core for the analysis tools, which need to visit far more positions than is
+ * practical with Board and Point objects.
+ */
+public class Position {
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int EMPTY = 0;
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    /** The largest number of legal moves any chess position can have. */
+    public static final int MAX_MOVES = 256;
+
+    /** Piece type letters indexed by piece type. */
+    public static final String TYPE_CHARS = " PNBRQK";
+
+    // Zobrist keys, seeded with a constant so that keys are stable between runs
+    private static final long[][] PIECE_KEYS = new long[16][64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long SIDE_KEY;
+
+    // Castling rights that survive a move touching the given square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+        for (long[] keys : PIECE_KEYS) {
+            for (int sq = 0; sq < 64; sq++) {
+                keys[sq] = random.nextLong();
+            }
+        }
+        for (int i = 1; i < 16; i++) {
+            CASTLING_KEYS[i] = random.nextLong();  // No rights hashes to zero, like an empty board
+        }
+        for (int i = 0; i < 8; i++) {
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        }
+        SIDE_KEY = random.nextLong();
+
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[60] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[63] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[56] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[4] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[7] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[0] &= ~BLACK_QUEENSIDE;
+    }
+
+    private final int[] squares;  // Piece code on each square, or EMPTY
+    private final int[] kingSquare;  // Square of each side's king, or -1 if it has none
+    private int sideToMove;
+    private int castling;
+    private int epSquare;  // Square a pawn may capture onto en passant, or -1
+    private int halfmoveClock;
+    private long key;
+
+    // Undo information, one entry per move made
+    private int ply;
+    private int[] undoCaptured;
+    private int[] undoCastling;
+    private int[] undoEpSquare;
+    private int[] undoHalfmove;
+    private long[] undoKey;
+
+    /**
+     * Creates an empty position with White to move.
+     */
+    public Position() {
+        this.squares = new int[64];
+        this.kingSquare = new int[]{-1, -1};
+        this.epSquare = -1;
+        this.undoCaptured = new int[64];
+        this.undoCastling = new int[64];
+        this.undoEpSquare = new int[64];
+        this.undoHalfmove = new int[64];
+        this.undoKey = new long[64];
+    }
+
+    /**
+     * Returns the piece code for a piece of the given color and type.
+     *
+     * @param color WHITE or BLACK
+     * @param type the piece type (PAWN to KING)
+     * @return the piece code
+     */
+    public static int piece(int color, int type) {
+        return (color << 3) | type;
+    }
+
+    public static int colorOf(int piece) {
+        return piece >> 3;
+    }
+
+    public static int typeOf(int piece) {
+        return piece & 7;
+    }
+
+    /**
+     * Removes every piece and resets the side to move, castling rights and move history.
+     */
+    public void clear() {
+        Arrays.fill(squares, EMPTY);
+        kingSquare[WHITE] = -1;
+        kingSquare[BLACK] = -1;
+        sideToMove = WHITE;
+        castling = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        ply = 0;
+        key = 0;
+    }
+
+    /**
+     * Makes this position an exact copy of another position, without its move history.
+     *
+     * @param other the position to copy
+     */
+    public void copyFrom(Position other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        kingSquare[WHITE] = other.kingSquare[WHITE];
+        kingSquare[BLACK] = other.kingSquare[BLACK];
+        sideToMove = other.sideToMove;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        key = other.key;
+        ply = 0;
+    }
+
+    /**
+     * Forgets the moves made so far, which can then no longer be taken back. A position that
+     * follows a game move by move calls this after each one, so its history does not grow with
+     * the game.
+     */
+    public void clearHistory() {
+        ply = 0;
+    }
+
+    public int pieceAt(int square) {
+        return squares[square];
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public int getEnPassantSquare() {
+        return epSquare;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getKingSquare(int color) {
+        return kingSquare[color];
+    }
+
+    /**
+     * Returns the Zobrist hash of the position, covering pieces, side to move, castling rights
+     * and the en passant square.
+     *
+     * @return the 64-bit position key
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Places a piece on a square, replacing whatever was there.
+     *
+     * @param square the square index (0 to 63)
+     * @param piece the piece code, or EMPTY to clear the square
+     */
+    public void setPiece(int square, int piece) {
+        if (squares[square] != EMPTY) {
+            remove(square);
+        }
+        if (piece != EMPTY) {
+            put(square, piece);
+        }
+    }
+
+    public void setSideToMove(int color) {
+        if (color != sideToMove) {
+            key ^= SIDE_KEY;
+            sideToMove = color;
+        }
+    }
+
+    public void setCastling(int rights) {
+        key ^= CASTLING_KEYS[castling] ^ CASTLING_KEYS[rights];
+        castling = rights;
+    }
+
+    public void setEnPassantSquare(int square) {
+        if (epSquare >= 0) {
+            key ^= EN_PASSANT_KEYS[epSquare & 7];
+        }
+        epSquare = square;
+        if (epSquare >= 0) {
+            key ^= EN_PASSANT_KEYS[epSquare & 7];
+        }
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    /**
+     * Returns true if the given square is attacked by any piece of the given color.
+     *
+     * @param square the square index (0 to 63)
+     * @param byColor the color of the attacking side
+     * @return true if the square is attacked, false otherwise
+     */
+    public boolean isAttacked(int square, int byColor) {
+        int knight = piece(byColor, KNIGHT);
+        for (int from : Attacks.KNIGHT[square]) {
+            if (squares[from] == knight) {
+                return true;
+            }
+        }
+
+        int king = piece(byColor, KING);
+        for (int from : Attacks.KING[square]) {
+            if (squares[from] == king) {
+                return true;
+            }
+        }
+
+        // A pawn attacks this square if it stands where an opposite-colored pawn here would attack
+        int pawn = piece(byColor, PAWN);
+        for (int from : Attacks.PAWN[byColor ^ 1][square]) {
+            if (squares[from] == pawn) {
+                return true;
+            }
+        }
+
+        for (int dir = 0; dir < 8; dir++) {
+            int slider = piece(byColor, Attacks.isDiagonal(dir) ? BISHOP : ROOK);
+            int queen = piece(byColor, QUEEN);
+            for (int from : Attacks.RAYS[square][dir]) {
+                int piece = squares[from];
+                if (piece != EMPTY) {
+                    if (piece == slider || piece == queen) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the side to move is in check.
+     *
+     * @return true if the side to move's king is attacked, false otherwise
+     */
+    public boolean isInCheck() {
+        int square = kingSquare[sideToMove];
+        return square >= 0 && isAttacked(square, sideToMove ^ 1);
+    }
+
+    /**
+     * Generates every legal move for the side to move.
+     *
+     * @param moves the array to write moves into, which needs MAX_MOVES free slots after offset
+     * @param offset the index of the first slot to write
+     * @return the number of moves written
+     */
+    public int generateMoves(int[] moves, int offset) {
+        int end = generatePseudoMoves(moves, offset);
+        int mover = sideToMove;
+        int count = offset;
+        for (int i = offset; i < end; i++) {
+            int move = moves[i];
+            makeMove(move);
+            if (kingSquare[mover] < 0 || !isAttacked(kingSquare[mover], mover ^ 1)) {
+                moves[count++] = move;
+            }
+            unmakeMove(move);
+        }
+        return count - offset;
+    }
+
+    /**
+     * Generates every move for the side to move that follows the piece movement rules, including
+     * moves that leave the mover's own king in check.
+     *
+     * @param moves the array to write moves into, which needs MAX_MOVES free slots after offset
+     * @param offset the index of the first slot to write
+     * @return the index one past the last move written
+     */
+    public int generatePseudoMoves(int[] moves, int offset) {
+        int count = offset;
+        for (int from = 0; from < 64; from++) {
+            int piece = squares[from];
+            if (piece == EMPTY || colorOf(piece) != sideToMove) {
+                continue;
+            }
+
+            switch (typeOf(piece)) {
+                case PAWN:
+                    count = generatePawnMoves(from, moves, count);
+                    break;
+                case KNIGHT:
+                    count = generateSteps(from, Attacks.KNIGHT[from], moves, count);
+                    break;
+                case BISHOP:
+                    count = generateSlides(from, Attacks.NORTH_EAST, 8, moves, count);
+                    break;
+                case ROOK:
+                    count = generateSlides(from, Attacks.NORTH, Attacks.NORTH_EAST, moves, count);
+                    break;
+                case QUEEN:
+                    count = generateSlides(from, Attacks.NORTH, 8, moves, count);
+                    break;
+                default:
+                    count = generateSteps(from, Attacks.KING[from], moves, count);
+                    count = generateCastling(from, moves, count);
+                    break;
+            }
+        }
+        return count;
+    }
+
+    // Pawns push one square, two from their starting row, and capture diagonally or en passant
+    private int generatePawnMoves(int from, int[] moves, int count) {
+        int direction = sideToMove == WHITE ? -8 : 8;
+        int startRow = sideToMove == WHITE ? 6 : 1;
+
+        int to = from + direction;
+        if (squares[to] == EMPTY) {
+            count = addPawnMove(from, to, 0, moves, count);
+            if ((from >> 3) == startRow && squares[to + direction] == EMPTY) {
+                moves[count++] = Move.of(from, to + direction, 0, Move.DOUBLE_PUSH);
+            }
+        }
+
+        for (int target : Attacks.PAWN[sideToMove][from]) {
+            int piece = squares[target];
+            if (piece != EMPTY && colorOf(piece) != sideToMove) {
+                count = addPawnMove(from, target, Move.CAPTURE, moves, count);
+            } else if (target == epSquare) {
+                moves[count++] = Move.of(from, target, 0, Move.CAPTURE | Move.EN_PASSANT);
+            }
+        }
+        return count;
+    }
+
+    // Add a pawn move, expanding it into the four promotions when it reaches the last row
+    private int addPawnMove(int from, int to, int flags, int[] moves, int count) {
+        int row = to >> 3;
+        if (row == 0 || row == 7) {
+            for (int type = QUEEN; type >= KNIGHT; type--) {
+                moves[count++] = Move.of(from, to, type, flags);
+            }
+        } else {
+            moves[count++] = Move.of(from, to, 0, flags);
+        }
+        return count;
+    }
+
+    private int generateSteps(int from, int[] targets, int[] moves, int count) {
+        for (int to : targets) {
+            int piece = squares[to];
+            if (piece == EMPTY) {
+                moves[count++] = Move.of(from, to, 0, 0);
+            } else if (colorOf(piece) != sideToMove) {
+                moves[count++] = Move.of(from, to, 0, Move.CAPTURE);
+            }
+        }
+        return count;
+    }
+
+    private int generateSlides(int from, int firstDir, int endDir, int[] moves, int count) {
+        for (int dir = firstDir; dir < endDir; dir++) {
+            for (int to : Attacks.RAYS[from][dir]) {
+                int piece = squares[to];
+                if (piece == EMPTY) {
+                    moves[count++] = Move.of(from, to, 0, 0);
+                } else {
+                    if (colorOf(piece) != sideToMove) {
+                        moves[count++] = Move.of(from, to, 0, Move.CAPTURE);
+                    }
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Castling needs the rights, empty squares between king and rook, and no attacked king squares
+    private int generateCastling(int from, int[] moves, int count) {
+        int kingside = sideToMove == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = sideToMove == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        int home = sideToMove == WHITE ? 60 : 4;
+        if (from != home || (castling & (kingside | queenside)) == 0) {
+            return count;
+        }
+
+        int enemy = sideToMove ^ 1;
+        if (isAttacked(from, enemy)) {
+            return count;
+        }
+        if ((castling & kingside) != 0 && squares[from + 1] == EMPTY && squares[from + 2] == EMPTY
+                && !isAttacked(from + 1, enemy) && !isAttacked(from + 2, enemy)) {
+            moves[count++] = Move.of(from, from + 2, 0, Move.CASTLE);
+        }
+        if ((castling & queenside) != 0 && squares[from - 1] == EMPTY && squares[from - 2] == EMPTY
+                && squares[from - 3] == EMPTY && !isAttacked(from - 1, enemy) && !isAttacked(from - 2, enemy)) {
+            moves[count++] = Move.of(from, from - 2, 0, Move.CASTLE);
+        }
+        return count;
+    }
+
+    /**
+     * Builds the packed move that takes the piece on one square to another in this position, with
+     * the capture, en passant, castling and double push flags makeMove needs. The move is not
+     * checked for legality.
+     *
+     * @param from the square the piece moves from
+     * @param to the square it moves to
+     * @param promotion the piece type a pawn promotes to, or 0
+     * @return the packed move
+     */
+    public int moveOf(int from, int to, int promotion) {
+        int type = typeOf(squares[from]);
+        int flags = squares[to] != EMPTY ? Move.CAPTURE : 0;
+        if (type == PAWN && to == epSquare) {
+            flags |= Move.CAPTURE | Move.EN_PASSANT;
+        } else if (type == PAWN && Math.abs(to - from) == 16) {
+            flags |= Move.DOUBLE_PUSH;
+        } else if (type == KING && Math.abs(to - from) == 2) {
+            flags |= Move.CASTLE;
+        }
+        return Move.of(from, to, promotion, flags);
+    }
+
+    /**
+     * Plays a move generated for this position. The move can be taken back with unmakeMove.
+     *
+     * @param move the packed move
+     */
+    public void makeMove(int move) {
+        if (ply == undoKey.length) {
+            growHistory();
+        }
+
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int piece = squares[from];
+        int color = colorOf(piece);
+
+        undoCastling[ply] = castling;
+        undoEpSquare[ply] = epSquare;
+        undoHalfmove[ply] = halfmoveClock;
+        undoKey[ply] = key;
+
+        int captured = EMPTY;
+        if ((move & Move.EN_PASSANT) != 0) {
+            int square = to + (color == WHITE ? 8 : -8);
+            captured = squares[square];
+            remove(square);
+        } else if (squares[to] != EMPTY) {
+            captured = squares[to];
+            remove(to);
+        }
+        undoCaptured[ply] = captured;
+        ply++;
+
+        remove(from);
+        put(to, Move.promotion(move) != 0 ? piece(color, Move.promotion(move)) : piece);
+
+        if ((move & Move.CASTLE) != 0) {
+            boolean kingside = to > from;
+            int rookFrom = kingside ? from + 3 : from - 4;
+            int rookTo = kingside ? from + 1 : from - 1;
+            int rook = squares[rookFrom];
+            remove(rookFrom);
+            put(rookTo, rook);
+        }
+
+        halfmoveClock = (typeOf(piece) == PAWN || captured != EMPTY) ? 0 : halfmoveClock + 1;
+        setCastling(castling & CASTLING_MASK[from] & CASTLING_MASK[to]);
+        setEnPassantSquare((move & Move.DOUBLE_PUSH) != 0 ? (from + to) >> 1 : -1);
+        key ^= SIDE_KEY;
+        sideToMove ^= 1;
+    }
+
+    /**
+     * Takes back a move previously played with makeMove.
+     *
+     * @param move the packed move, which must be the last move made
+     */
+    public void unmakeMove(int move) {
+        ply--;
+        sideToMove ^= 1;
+
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int piece = squares[to];
+        if (Move.promotion(move) != 0) {
+            piece = piece(sideToMove, PAWN);
+        }
+
+        remove(to);
+        put(from, piece);
+
+        int captured = undoCaptured[ply];
+        if (captured != EMPTY) {
+            int square = (move & Move.EN_PASSANT) != 0 ? to + (sideToMove == WHITE ? 8 : -8) : to;
+            put(square, captured);
+        }
+
+        if ((move & Move.CASTLE) != 0) {
+            boolean kingside = to > from;
+            int rookFrom = kingside ? from + 3 : from - 4;
+            int rookTo = kingside ? from + 1 : from - 1;
+            int rook = squares[rookTo];
+            remove(rookTo);
+            put(rookFrom, rook);
+        }
+
+        castling = undoCastling[ply];
+        epSquare = undoEpSquare[ply];
+        halfmoveClock = undoHalfmove[ply];
+        key = undoKey[ply];
+    }
+
+    /**
+     * Passes the turn to the other side without moving a piece, as null-move pruning does. The
+     * pass can be taken back with unmakeNullMove.
+     */
+    public void makeNullMove() {
+        if (ply == undoKey.length) {
+            growHistory();
+        }
+        undoCastling[ply] = castling;
+        undoEpSquare[ply] = epSquare;
+        undoHalfmove[ply] = halfmoveClock;
+        undoKey[ply] = key;
+        undoCaptured[ply] = EMPTY;
+        ply++;
+
+        halfmoveClock++;
+        setEnPassantSquare(-1);
+        key ^= SIDE_KEY;
+        sideToMove ^= 1;
+    }
+
+    /**
+     * Takes back a pass made with makeNullMove, which must be the last move made.
+     */
+    public void unmakeNullMove() {
+        ply--;
+        sideToMove ^= 1;
+        castling = undoCastling[ply];
+        epSquare = undoEpSquare[ply];
+        halfmoveClock = undoHalfmove[ply];
+        key = undoKey[ply];
+    }
+
+    /**
+     * Checks whether a side has any piece besides its king and pawns. Without one, passing would
+     * often be its best move, so null-move pruning is unsafe.
+     *
+     * @param color the side
+     * @return true if the side has a knight, bishop, rook or queen
+     */
+    public boolean hasPieces(int color) {
+        for (int square = 0; square < 64; square++) {
+            int piece = squares[square];
+            if (piece != EMPTY && colorOf(piece) == color && typeOf(piece) != PAWN && typeOf(piece) != KING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(int square, int piece) {
+        squares[square] = piece;
+        key ^= PIECE_KEYS[piece][square];
+        if (typeOf(piece) == KING) {
+            kingSquare[colorOf(piece)] = square;
+        }
+    }
+
+    private void remove(int square) {
+        int piece = squares[square];
+        squares[square] = EMPTY;
+        key ^= PIECE_KEYS[piece][square];
+        if (typeOf(piece) == KING && kingSquare[colorOf(piece)] == square) {
+            kingSquare[colorOf(piece)] = -1;
+        }
+    }
+
+    private void growHistory() {
+        int length = undoKey.length * 2;
+        undoCaptured = Arrays.copyOf(undoCaptured, length);
+        undoCastling = Arrays.copyOf(undoCastling, length);
+        undoEpSquare = Arrays.copyOf(undoEpSquare, length);
+        undoHalfmove = Arrays.copyOf(undoHalfmove, length);
+        undoKey = Arrays.copyOf(undoKey, length);
+    }
+
+    /**
+     * Copies the pieces of a Board into this position. Castling rights are derived from the
+     * kings and rooks that have not moved yet.
+     *
+     * @param board the board to copy
+     * @param sideToMove the color of the player whose turn it is
+     */
+    public void setFrom(Board board, Color sideToMove) {
+        clear();
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board.getPieceAt(row, col);
+                if (piece != null) {
+                    put(row * 8 + col, pieceCode(piece));
+                }
+            }
+        }
+        setSideToMove(sideToMove == Color.WHITE ? WHITE : BLACK);
+
+        int rights = 0;
+        if (isUnmoved(board, 7, 4, King.class)) {
+            rights |= isUnmoved(board, 7, 7, Rook.class) ? WHITE_KINGSIDE : 0;
+            rights |= isUnmoved(board, 7, 0, Rook.class) ? WHITE_QUEENSIDE : 0;
+        }
+        if (isUnmoved(board, 0, 4, King.class)) {
+            rights |= isUnmoved(board, 0, 7, Rook.class) ? BLACK_KINGSIDE : 0;
+            rights |= isUnmoved(board, 0, 0, Rook.class) ? BLACK_QUEENSIDE : 0;
+        }
+        setCastling(rights);
+    }
+
+    /**
+     * Builds a new Board holding the pieces of this position.
+     *
+     * @return a Board with the same pieces as this position
+     */
+    public Board toBoard() {
+        Board board = new Board();
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Point square = new Point(col, row);
+                board.clearSquare(square);
+                int piece = squares[row * 8 + col];
+                if (piece != EMPTY) {
+                    board.placePiece(newPiece(piece, row * 8 + col), square);
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Returns the piece code for a Piece object.
+     *
+     * @param piece the piece
+     * @return the piece code
+     */
+    public static int pieceCode(Piece piece) {
+        int color = piece.getColor() == Color.WHITE ? WHITE : BLACK;
+        if (piece instanceof Pawn) {
+            return piece(color, PAWN);
+        } else if (piece instanceof Knight) {
+            return piece(color, KNIGHT);
+        } else if (piece instanceof Bishop) {
+            return piece(color, BISHOP);
+        } else if (piece instanceof Rook) {
+            return piece(color, ROOK);
+        } else if (piece instanceof Queen) {
+            return piece(color, QUEEN);
+        }
+        return piece(color, KING);
+    }
+
+    // Create the Piece object for a piece code, marking it as moved if it left its home square
+    private Piece newPiece(int code, int square) {
+        Color color = colorOf(code) == WHITE ? Color.WHITE : Color.BLACK;
+        int homeRow = colorOf(code) == WHITE ? 7 : 0;
+        switch (typeOf(code)) {
+            case PAWN:
+                Pawn pawn = new Pawn(color);
+                if ((square >> 3) != (colorOf(code) == WHITE ? 6 : 1)) {
+                    pawn.setHasMoved();
+                }
+                return pawn;
+            case KNIGHT:
+                return new Knight(color);
+            case BISHOP:
+                return new Bishop(color);
+            case ROOK:
+                Rook rook = new Rook(color);
+                int side = (square & 7) == 7 ? (WHITE_KINGSIDE | BLACK_KINGSIDE) : (WHITE_QUEENSIDE | BLACK_QUEENSIDE);
+                if ((square >> 3) != homeRow || (castling & side & (colorOf(code) == WHITE ? 3 : 12)) == 0) {
+                    rook.setHasMoved();
+                }
+                return rook;
+            case QUEEN:
+                return new Queen(color);
+            default:
+                King king = new King(color);
+                if (square != homeRow * 8 + 4 || (castling & (colorOf(code) == WHITE ? 3 : 12)) == 0) {
+                    king.setHasMoved();
+                }
+                return king;
+        }
+    }
+
+    private static boolean isUnmoved(Board board, int row, int col, Class<? extends Piece> type) {
+        Piece piece = board.getPieceAt(row, col);
+        if (piece == null || piece.getColor() != (row == 7 ? Color.WHITE : Color.BLACK)) {
+            return false;
+        }
+        if (piece instanceof King) {
+            return type == King.class && !((King) piece).hasMoved();
+        } else if (piece instanceof Rook) {
+            return type == Rook.class && !((Rook) piece).hasMoved();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,581 @@
+package engine;
+
+import metrics.Metrics;
+import metrics.SearchIterationEvent;
+
+/**
+ * The Search class finds the best move in a position with an iterative deepening alpha-beta
+ * search followed by a capture-only quiescence search. Moves are tried in order of the previous
+ * iteration's best line, captures by most valuable victim, and killer moves.
+ *
+ * <p>The search is full-width unless selective techniques are switched on, each with its own
+ * flag. NULL_MOVE lets the opponent move twice with a reduced depth and cuts off when the side to
+ * move is still above beta; it is skipped in check and when the side to move has only pawns,
+ * where passing may really be best. LATE_MOVE_REDUCTIONS searches quiet moves ordered late one or
+ * two plies shallower, and again at full depth only if they beat alpha. FUTILITY skips quiet moves
+ * near the horizon when the static evaluation is too far below alpha for one move to make up, and
+ * RAZORING drops straight into the quiescence search there.
+ *
+ * <p>Each iteration is reported to the flight recorder as a SearchIterationEvent.
+ *
+ * <p>A Search reuses all of its buffers between calls, so one instance per thread can play any
+ * number of games without allocating. It is not thread-safe, except for stop().
+ */
+public class Search {
+    /** A score larger than any evaluation. */
+    public static final int INFINITE = 32000;
+
+    /** The score for giving mate now; mate in n plies scores MATE - n. */
+    public static final int MATE = 31000;
+
+    /** The deepest line the search can follow. */
+    public static final int MAX_PLY = 64;
+
+    /** The most root moves searchLines can rank. */
+    public static final int MAX_LINES = 32;
+
+    /** Selective search flag: null-move pruning. */
+    public static final int NULL_MOVE = 1;
+
+    /** Selective search flag: late move reductions. */
+    public static final int LATE_MOVE_REDUCTIONS = 2;
+
+    /** Selective search flag: futility pruning of quiet moves at frontier nodes. */
+    public static final int FUTILITY = 4;
+
+    /** Selective search flag: razoring at frontier nodes. */
+    public static final int RAZORING = 8;
+
+    /** All the selective search flags. */
+    public static final int SELECTIVE = NULL_MOVE | LATE_MOVE_REDUCTIONS | FUTILITY | RAZORING;
+
+    private static final int NULL_MOVE_REDUCTION = 2;  // Extra plies taken off the null-move search
+    private static final int[] FUTILITY_MARGIN = {0, 200, 350, 500};  // By depth left
+    private static final int[] RAZOR_MARGIN = {0, 300, 500};  // By depth left
+    private static final int LATE_MOVE = 3;  // Moves tried before later quiet ones are reduced
+
+    private static final int PV_BONUS = 1 << 30;
+    private static final int CAPTURE_BONUS = 1 << 20;
+    private static final int KILLER_BONUS = 1 << 19;
+
+    private final Evaluator evaluator;
+    private final int selectivity;  // The selective search flags in use
+    private final int[] moves;  // Move lists for every ply, MAX_MOVES apart
+    private final int[] orderKeys;  // Ordering score of each move in moves
+    private final int[][] killers;  // Two quiet moves per ply that recently caused a cutoff
+    private final int[][] pv;  // Triangular table of principal variations
+    private final int[] pvLength;
+    private final int[] rootPv;  // Best line of the last completed iteration
+    private int rootPvLength;
+    private int[][] lines;  // Best line for each ranked root move, best first
+    private int[][] nextLines;  // The lines of the iteration in progress
+    private final int[] lineLengths;
+    private final int[] nextLineLengths;
+    private final int[] lineScores;
+    private final int[] nextLineScores;
+    private int lineCount;
+    private int excludedRootMoves;  // Root moves to skip: the first moves of the first nextLines
+
+    private Position position;
+    private long nodes;
+    private long interiorNodes;  // Nodes of the main search that tried at least one move
+    private long cutoffs;  // Interior nodes that ended in a beta cutoff
+    private long firstMoveCutoffs;  // Cutoffs caused by the first move tried
+    private long nodeLimit;
+    private long deadline;  // System.nanoTime() at which to stop, or 0 for no time limit
+    private volatile boolean stopped;
+    private long searchCount;  // Searches started, guarded by this
+    private long stopPending;  // The number of a search stopped before it started, guarded by this
+    private int bestScore;
+    private int completedDepth;
+
+    /**
+     * Creates a full-width search that scores leaf positions with the given evaluator.
+     *
+     * @param evaluator the static evaluator
+     */
+    public Search(Evaluator evaluator) {
+        this(evaluator, 0);
+    }
+
+    /**
+     * Creates a search with the given selective search techniques.
+     *
+     * @param evaluator the static evaluator
+     * @param selectivity any combination of NULL_MOVE, LATE_MOVE_REDUCTIONS, FUTILITY and
+     *                    RAZORING, or 0 for a full-width search
+     */
+    public Search(Evaluator evaluator, int selectivity) {
+        this.evaluator = evaluator;
+        this.selectivity = selectivity;
+        this.moves = new int[(MAX_PLY + 1) * Position.MAX_MOVES];
+        this.orderKeys = new int[moves.length];
+        this.killers = new int[MAX_PLY + 1][2];
+        this.pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+        this.pvLength = new int[MAX_PLY + 1];
+        this.rootPv = new int[MAX_PLY + 1];
+        this.lines = new int[MAX_LINES][MAX_PLY + 1];
+        this.nextLines = new int[MAX_LINES][MAX_PLY + 1];
+        this.lineLengths = new int[MAX_LINES];
+        this.nextLineLengths = new int[MAX_LINES];
+        this.lineScores = new int[MAX_LINES];
+        this.nextLineScores = new int[MAX_LINES];
+    }
+
+    /**
+     * Searches a position to the given depth, or until a node or time limit runs out, and returns
+     * the best move found by the last completed iteration. The position is left as it was.
+     *
+     * @param position the position to search
+     * @param maxDepth the depth in plies to stop at
+     * @param maxNodes the number of nodes to stop after, or 0 for no limit
+     * @param maxMillis the time to stop after in milliseconds, or 0 for no limit
+     * @return the best move, or Move.NONE if the side to move has no legal moves
+     */
+    public int search(Position position, int maxDepth, long maxNodes, long maxMillis) {
+        start(position, maxNodes, maxMillis);
+
+        long previousNodes = 0;
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            SearchIterationEvent event = Metrics.isRecorderRunning() && SearchIterationEvent.isTypeEnabled()
+                    ? new SearchIterationEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            long startNodes = nodes;
+            interiorNodes = 0;
+            cutoffs = 0;
+            firstMoveCutoffs = 0;
+
+            int score = alphaBeta(depth, 0, -INFINITE, INFINITE, false);
+
+            long iterationNodes = nodes - startNodes;
+            if (event != null && event.shouldCommit()) {
+                event.depth = depth;
+                event.nodes = iterationNodes;
+                event.score = score;
+                event.bestMove = pvLength[0] > 0 ? Move.toString(pv[0][0]) : null;
+                event.branchingFactor = previousNodes > 0 ? (double) iterationNodes / previousNodes : 0;
+                event.cutoffRate = interiorNodes > 0 ? (double) cutoffs / interiorNodes : 0;
+                event.firstMoveCutoffRate = cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0;
+                event.completed = !stopped;
+                event.commit();
+            }
+            previousNodes = iterationNodes;
+
+            if (stopped && completedDepth > 0) {
+                break;  // An interrupted iteration is only trusted when there is nothing better
+            }
+            bestScore = score;
+            completedDepth = depth;
+            rootPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, rootPv, 0, rootPvLength);
+            if (stopped || Math.abs(score) >= MATE - MAX_PLY) {
+                break;
+            }
+        }
+        return rootPvLength > 0 ? rootPv[0] : Move.NONE;
+    }
+
+    /**
+     * Ranks the best few moves in a position, each with its own best line and score, deepening
+     * one ply at a time until the given depth or until a node or time limit runs out. At each
+     * depth the best move is searched first, then the best move other than that one, and so on,
+     * so ranking n moves costs roughly n searches. After each completed depth the listener is
+     * called on the searching thread and can read the lines with getLineCount, getLine and
+     * getLineScore; an interrupted depth is thrown away. The position is left as it was.
+     *
+     * @param position the position to search
+     * @param count the number of moves to rank, at most MAX_LINES
+     * @param maxDepth the depth in plies to stop at
+     * @param maxNodes the number of nodes to stop after, or 0 for no limit
+     * @param maxMillis the time to stop after in milliseconds, or 0 for no limit
+     * @param listener called after each completed depth, or null
+     * @return the best move, or Move.NONE if the side to move has no legal moves
+     * @throws IllegalArgumentException if count is not between 1 and MAX_LINES
+     */
+    public int searchLines(Position position, int count, int maxDepth, long maxNodes, long maxMillis,
+                           Runnable listener) {
+        if (count < 1 || count > MAX_LINES) {
+            throw new IllegalArgumentException("Line count must be between 1 and " + MAX_LINES + ": " + count);
+        }
+        start(position, maxNodes, maxMillis);
+        lineCount = 0;
+
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            int found = 0;
+            for (int line = 0; line < count; line++) {
+                // Try this line's move from the last depth first, and skip the moves ranked above it
+                rootPvLength = line < lineCount ? lineLengths[line] : 0;
+                System.arraycopy(lines[line], 0, rootPv, 0, rootPvLength);
+                excludedRootMoves = line;
+
+                int score = alphaBeta(depth, 0, -INFINITE, INFINITE, false);
+                if (stopped || pvLength[0] == 0) {
+                    break;  // Interrupted, or no moves left to rank
+                }
+                nextLineScores[line] = score;
+                nextLineLengths[line] = pvLength[0];
+                System.arraycopy(pv[0], 0, nextLines[line], 0, pvLength[0]);
+                found++;
+            }
+            excludedRootMoves = 0;
+            if (stopped || found == 0) {
+                break;
+            }
+
+            int[][] swap = lines;
+            lines = nextLines;
+            nextLines = swap;
+            System.arraycopy(nextLineLengths, 0, lineLengths, 0, found);
+            System.arraycopy(nextLineScores, 0, lineScores, 0, found);
+            lineCount = found;
+            completedDepth = depth;
+            bestScore = lineScores[0];
+            if (listener != null) {
+                listener.run();
+            }
+        }
+
+        rootPvLength = lineCount > 0 ? lineLengths[0] : 0;
+        System.arraycopy(lines[0], 0, rootPv, 0, rootPvLength);
+        return rootPvLength > 0 ? rootPv[0] : Move.NONE;
+    }
+
+    // Reset the counters and limits before a new search
+    private void start(Position position, long maxNodes, long maxMillis) {
+        this.position = position;
+        this.nodes = 0;
+        this.nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.deadline = maxMillis > 0 ? System.nanoTime() + maxMillis * 1_000_000 : 0;
+        synchronized (this) {
+            searchCount++;
+            this.stopped = stopPending == searchCount;
+        }
+        this.rootPvLength = 0;
+        this.completedDepth = 0;
+        this.bestScore = 0;
+        this.excludedRootMoves = 0;
+        for (int[] killer : killers) {
+            killer[0] = Move.NONE;
+            killer[1] = Move.NONE;
+        }
+    }
+
+    /**
+     * Searches a position to a fixed depth.
+     *
+     * @param position the position to search
+     * @param depth the depth in plies
+     * @return the best move, or Move.NONE if the side to move has no legal moves
+     */
+    public int search(Position position, int depth) {
+        return search(position, depth, 0, 0);
+    }
+
+    /**
+     * Asks a running search to return as soon as possible. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Asks one search to return as soon as possible, whether it is running or not started yet,
+     * so a stop sent just before the search starts is not lost. A search that has already
+     * returned is not affected. Safe to call from any thread.
+     *
+     * @param search the number of the search, getSearchCount() + 1 before it starts
+     */
+    public synchronized void stop(long search) {
+        if (search == searchCount) {
+            stopped = true;  // Running, or finished, in which case the next start clears it
+        } else if (search > searchCount) {
+            stopPending = search;
+        }
+    }
+
+    /**
+     * Returns the number of searches started, so a caller can name the next one to stop.
+     *
+     * @return the number of calls to search and searchLines so far
+     */
+    public synchronized long getSearchCount() {
+        return searchCount;
+    }
+
+    public int getScore() {
+        return bestScore;
+    }
+
+    public int getDepth() {
+        return completedDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of moves searchLines ranked at its last completed depth.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns one of the lines ranked by searchLines.
+     *
+     * @param index the line's rank, 0 for the best
+     * @return a new array holding the moves of the line
+     */
+    public int[] getLine(int index) {
+        int[] line = new int[lineLengths[index]];
+        System.arraycopy(lines[index], 0, line, 0, line.length);
+        return line;
+    }
+
+    /**
+     * Returns the score of one of the lines ranked by searchLines.
+     *
+     * @param index the line's rank, 0 for the best
+     * @return the score for the side to move
+     */
+    public int getLineScore(int index) {
+        return lineScores[index];
+    }
+
+    /**
+     * Returns the best line found by the last completed iteration.
+     *
+     * @return a new array holding the moves of the line
+     */
+    public int[] getPrincipalVariation() {
+        int[] line = new int[rootPvLength];
+        System.arraycopy(rootPv, 0, line, 0, rootPvLength);
+        return line;
+    }
+
+    // afterNull is true right after a null move, which must not be followed by another
+    private int alphaBeta(int depth, int ply, int alpha, int beta, boolean afterNull) {
+        pvLength[ply] = ply;
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiescence(ply, alpha, beta);
+        }
+        if (checkLimits()) {
+            return 0;
+        }
+        nodes++;
+        if (ply > 0 && position.getHalfmoveClock() >= 100) {
+            return 0;
+        }
+
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if (count == 0) {
+            return position.isInCheck() ? -MATE + ply : 0;
+        }
+        if (ply == 0 && excludedRootMoves > 0) {
+            count = removeExcluded(offset, count);
+            if (count == 0) {
+                return -INFINITE;
+            }
+        }
+
+        // Selective techniques judge the node by its static evaluation, away from the root and
+        // from mate scores, and never in check
+        boolean inCheck = selectivity != 0 && ply > 0 && position.isInCheck();
+        boolean selective = (selectivity & ~LATE_MOVE_REDUCTIONS) != 0 && ply > 0 && !inCheck
+                && Math.abs(beta) < MATE - MAX_PLY && Math.abs(alpha) < MATE - MAX_PLY;
+        int staticScore = selective ? evaluator.evaluate(position) : 0;
+
+        if (selective && (selectivity & RAZORING) != 0 && depth < RAZOR_MARGIN.length
+                && staticScore + RAZOR_MARGIN[depth] <= alpha) {
+            int score = quiescence(ply, alpha, alpha + 1);
+            if (score <= alpha) {
+                return score;  // Not even the captures get back above alpha
+            }
+        }
+
+        if (selective && (selectivity & NULL_MOVE) != 0 && !afterNull && depth > NULL_MOVE_REDUCTION
+                && staticScore >= beta && position.hasPieces(position.getSideToMove())) {
+            position.makeNullMove();
+            int score = -alphaBeta(depth - 1 - NULL_MOVE_REDUCTION, ply + 1, -beta, -beta + 1, true);
+            position.unmakeNullMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return beta;  // Even passing holds beta, so a real move would too
+            }
+        }
+
+        boolean futile = selective && (selectivity & FUTILITY) != 0 && depth < FUTILITY_MARGIN.length
+                && staticScore + FUTILITY_MARGIN[depth] <= alpha;
+        boolean reduce = (selectivity & LATE_MOVE_REDUCTIONS) != 0 && ply > 0 && !inCheck && depth >= 3;
+
+        orderMoves(offset, count, ply);
+        interiorNodes++;
+
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(offset + i, offset + count);
+            boolean late = futile && i > 0 || reduce && i >= LATE_MOVE;
+            boolean quiet = late && !Move.isCapture(move) && Move.promotion(move) == 0
+                    && move != killers[ply][0] && move != killers[ply][1];
+            position.makeMove(move);
+            quiet = quiet && !position.isInCheck();  // Checks are never pruned or reduced
+            if (futile && i > 0 && quiet) {
+                position.unmakeMove(move);
+                continue;  // Too far below alpha for a quiet move to matter
+            }
+
+            int score;
+            if (reduce && i >= LATE_MOVE && quiet) {
+                int reduction = i >= 2 * LATE_MOVE && depth >= 5 ? 2 : 1;
+                score = -alphaBeta(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, false);
+                if (score > alpha && !stopped) {
+                    score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha, false);  // It may be good after all
+                }
+            } else {
+                score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha, false);
+            }
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > alpha) {
+                alpha = score;
+                updatePv(ply, move);
+                if (score >= beta) {
+                    cutoffs++;
+                    if (i == 0) {
+                        firstMoveCutoffs++;
+                    }
+                    if (!Move.isCapture(move) && killers[ply][0] != move) {
+                        killers[ply][1] = killers[ply][0];
+                        killers[ply][0] = move;
+                    }
+                    return score;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    private int quiescence(int ply, int alpha, int beta) {
+        if (checkLimits()) {
+            return 0;
+        }
+        nodes++;
+
+        int standPat = evaluator.evaluate(position);
+        if (standPat >= beta || ply >= MAX_PLY) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if (count == 0) {
+            return position.isInCheck() ? -MATE + ply : 0;
+        }
+
+        // Keep only captures and promotions
+        int captures = offset;
+        for (int i = offset; i < offset + count; i++) {
+            if (Move.isCapture(moves[i]) || Move.promotion(moves[i]) != 0) {
+                moves[captures++] = moves[i];
+            }
+        }
+        orderMoves(offset, captures - offset, ply);
+
+        for (int i = offset; i < captures; i++) {
+            int move = nextMove(i, captures);
+            position.makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            position.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score;
+            }
+            alpha = Math.max(alpha, score);
+        }
+        return alpha;
+    }
+
+    // Drop the root moves already ranked by searchLines, returning how many moves are left
+    private int removeExcluded(int offset, int count) {
+        int kept = offset;
+        for (int i = offset; i < offset + count; i++) {
+            boolean excluded = false;
+            for (int line = 0; line < excludedRootMoves; line++) {
+                excluded |= moves[i] == nextLines[line][0];
+            }
+            if (!excluded) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept - offset;
+    }
+
+    // Check the node and time limits every few thousand nodes
+    private boolean checkLimits() {
+        if (nodes >= nodeLimit) {
+            stopped = true;
+        } else if ((nodes & 4095) == 0 && deadline != 0 && System.nanoTime() - deadline >= 0) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    // Give each move an ordering score; nextMove picks them best first
+    private void orderMoves(int offset, int count, int ply) {
+        int pvMove = ply < rootPvLength ? rootPv[ply] : Move.NONE;
+        for (int i = offset; i < offset + count; i++) {
+            int move = moves[i];
+            int key = 0;
+            if (move == pvMove) {
+                key = PV_BONUS;
+            } else if (Move.isCapture(move) || Move.promotion(move) != 0) {
+                int victim = (move & Move.EN_PASSANT) != 0 ? Position.PAWN
+                        : Position.typeOf(position.pieceAt(Move.to(move)));
+                int attacker = Position.typeOf(position.pieceAt(Move.from(move)));
+                key = CAPTURE_BONUS + MaterialEvaluator.VALUES[victim] * 8 - attacker
+                        + MaterialEvaluator.VALUES[Move.promotion(move)];
+            } else if (move == killers[ply][0]) {
+                key = KILLER_BONUS + 1;
+            } else if (move == killers[ply][1]) {
+                key = KILLER_BONUS;
+            }
+            orderKeys[i] = key;
+        }
+    }
+
+    // Swap the best remaining move into slot i and return it
+    private int nextMove(int i, int end) {
+        int best = i;
+        for (int j = i + 1; j < end; j++) {
+            if (orderKeys[j] > orderKeys[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best];
+        int key = orderKeys[best];
+        moves[best] = moves[i];
+        orderKeys[best] = orderKeys[i];
+        moves[i] = move;
+        orderKeys[i] = key;
+        return move;
+    }
+}
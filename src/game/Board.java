@@ -4,11 +4,26 @@ import game.util.Color;
 import game.util.Point;
 import pieces.*;
 
+import java.io.IOException;
+import java.util.SplittableRandom;
+
 /**
  * The Board class represents a chess board, containing an 8x8 grid of pieces.
  * It handles the initialization of the chess board, moving pieces, and checking game conditions.
  */
 public class Board {
+    // Zobrist keys for each piece kind on each square, seeded with a constant so keys are stable
+    private static final long[][] PIECE_KEYS = new long[12][64];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0xB0A4D_5EEDL);
+        for (long[] keys : PIECE_KEYS) {
+            for (int square = 0; square < 64; square++) {
+                keys[square] = random.nextLong();
+            }
+        }
+    }
+
     private final Piece[][] board;  // 2D array to represent the chess board
 
     /**
@@ -74,7 +89,8 @@ public class Board {
     }
 
     /**
-     * Moves a piece from one square to another if the move is valid.
+     * Moves a piece from one square to another if the move is valid. A Pawn reaching the last row
+     * becomes a Queen.
      *
      * @param from the starting point of the piece
      * @param to the destination point of the piece
@@ -85,7 +101,7 @@ public class Board {
         Piece piece = getPieceAt(from.getY(), from.getX());
 
         if (piece.isValidMove(from, to, this, color, false)) {
-            this.board[to.getY()][to.getX()] = piece;
+            this.board[to.getY()][to.getX()] = promote(piece, to, null);
 
             // Track if the piece has moved for future logic (e.g., castling)
             if (piece instanceof Pawn) {
@@ -103,6 +119,50 @@ public class Board {
         this.board[from.getY()][from.getX()] = null;
     }
 
+    /**
+     * Makes a move already known to be legal, such as one found in the legal move cache, without
+     * asking the piece. A King moving two squares castles, taking its Rook along, a Pawn
+     * moving diagonally to an empty square captures en passant, and a Pawn reaching the last row
+     * is promoted.
+     *
+     * @param from the starting point of the piece
+     * @param to the destination point of the piece
+     * @param promotion the piece a Pawn reaching the last row becomes, or null for a Queen
+     */
+    public void applyMove(Point from, Point to, Piece promotion) {
+        Piece piece = getPieceAt(from.getY(), from.getX());
+        int row = from.getY();
+        if (piece instanceof King && Math.abs(to.getX() - from.getX()) == 2) {
+            int direction = Integer.signum(to.getX() - from.getX());
+            int rookCol = direction > 0 ? 7 : 0;
+            Piece rook = this.board[row][rookCol];
+            this.board[row][to.getX() - direction] = rook;
+            this.board[row][rookCol] = null;
+            ((Rook) rook).setHasMoved();
+        } else if (piece instanceof Pawn && from.getX() != to.getX() && getPieceAt(to.getY(), to.getX()) == null) {
+            this.board[row][to.getX()] = null;  // The pawn taken en passant
+        }
+        this.board[to.getY()][to.getX()] = promote(piece, to, promotion);
+
+        // Track if the piece has moved for future logic (e.g., castling)
+        if (piece instanceof Pawn) {
+            ((Pawn) piece).setHasMoved();
+        } else if (piece instanceof Rook) {
+            ((Rook) piece).setHasMoved();
+        } else if (piece instanceof King) {
+            ((King) piece).setHasMoved();
+        }
+        this.board[from.getY()][from.getX()] = null;
+    }
+
+    // The piece that ends up on the destination: a Pawn on the last row is replaced
+    private static Piece promote(Piece piece, Point to, Piece promotion) {
+        if (!(piece instanceof Pawn) || to.getY() != 0 && to.getY() != 7) {
+            return piece;
+        }
+        return promotion != null ? promotion : new Queen(piece.getColor());
+    }
+
     /**
      * Retrieves both kings on the board.
      *
@@ -127,6 +187,24 @@ public class Board {
         return kings;
     }
 
+    /**
+     * Finds the king of the given color without allocating.
+     *
+     * @param color the king's color
+     * @return the king, or null if that side has none
+     */
+    public King getKing(Color color) {
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board[row][col];
+                if (piece instanceof King && piece.getColor() == color) {
+                    return (King) piece;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Checks if a given square is under attack by any opponent piece.
      *
@@ -141,7 +219,7 @@ public class Board {
 
                 // Check only opponent's pieces
                 if (piece != null && piece.getColor() != defendingColor) {
-                    Point from = new Point(col, row);
+                    Point from = Point.of(col, row);
                     Color attackingColor = piece.getColor();
 
                     // If an opponent's piece can move to this square, it is under attack
@@ -156,41 +234,99 @@ public class Board {
     }
 
     /**
-     * Returns the 2D array of pieces representing the board.
+     * Computes the Zobrist hash of the piece placement. Two boards with the same pieces on the
+     * same squares have the same key, so positions can be compared by key alone. Side to move and
+     * castling rights are not part of the key.
      *
-     * @return the 2D array of pieces
+     * @return the hash of the piece placement
      */
-    public Piece[][] getPieces() {
-        return this.board;
+    public long getKey() {
+        long key = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board[row][col];
+                if (piece != null) {
+                    key ^= PIECE_KEYS[keyIndex(piece)][row * 8 + col];
+                }
+            }
+        }
+        return key;
+    }
+
+    // Index of the piece's kind into PIECE_KEYS: six kinds for White, then six for Black
+    private static int keyIndex(Piece piece) {
+        int kind;
+        if (piece instanceof Pawn) {
+            kind = 0;
+        } else if (piece instanceof Knight) {
+            kind = 1;
+        } else if (piece instanceof Bishop) {
+            kind = 2;
+        } else if (piece instanceof Rook) {
+            kind = 3;
+        } else if (piece instanceof Queen) {
+            kind = 4;
+        } else {
+            kind = 5;
+        }
+        return piece.getColor() == Color.WHITE ? kind : kind + 6;
     }
 
     /**
-     * Converts the board to a human-readable string format, useful for displaying the board state.
+     * Checks whether neither side has enough material left to deliver checkmate: bare kings, a
+     * single knight or bishop, or only bishops that all stand on squares of the same color.
      *
-     * @return the string representation of the board
+     * @return true if no checkmate is possible, false otherwise
      */
-    @Override
-    public String toString() {
-        String result = "    a  b  c  d  e  f  g  h\n";
-        result += "  ------------------------\n";
-
+    public boolean hasInsufficientMaterial() {
+        int knights = 0;
+        int bishops = 0;
+        int bishopSquareColors = 0;  // Bit 0 for a bishop on a light square, bit 1 for a dark one
         for (int row = 0; row < 8; row++) {
-            result += (8 - row) + " |";  // Row label
             for (int col = 0; col < 8; col++) {
                 Piece piece = board[row][col];
-                if (piece == null) {
-                    result += " □ ";  // Empty square
+                if (piece == null || piece instanceof King) {
+                    continue;
+                }
+                if (piece instanceof Knight) {
+                    knights++;
+                } else if (piece instanceof Bishop) {
+                    bishops++;
+                    bishopSquareColors |= 1 << ((row + col) & 1);
                 } else {
-                    result += " " + piece.getSymbol() + " ";  // Chess piece symbol
+                    return false;  // A pawn, rook or queen can always force or allow a mate
                 }
             }
-            result += "| " + (8 - row) + "\n";  // Row label on the right
         }
+        if (knights + bishops <= 1) {
+            return true;
+        }
+        return knights == 0 && bishopSquareColors != 3;
+    }
 
-        result += "  ------------------------\n";
-        result += "    a  b  c  d  e  f  g  h\n";
+    /**
+     * Returns the 2D array of pieces representing the board.
+     *
+     * @return the 2D array of pieces
+     */
+    public Piece[][] getPieces() {
+        return this.board;
+    }
 
-        return result;
+    /**
+     * Converts the board to a human-readable string format, useful for displaying the board state.
+     *
+     * @return the string representation of the board
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(BoardRenderer.RENDERED_LENGTH);
+        try {
+            BoardRenderer.render(this, result);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);  // A StringBuilder never throws IOException
+        }
+        return result.toString();
     }
 
     /**
@@ -0,0 +1,156 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The BoardRenderer class draws a Board as text straight into a caller's Appendable or
+ * ByteBuffer, without building intermediate strings. A renderer instance also remembers what it
+ * last drew, so that after a move it can send only the squares that changed, such as
+ * " e2□ e4♙". This keeps the cost of updating spectators independent of the board size.
+ */
+public class BoardRenderer {
+    /** The symbol drawn for an empty square. */
+    public static final char EMPTY_SQUARE = '□';
+
+    private static final String FILES = "    a  b  c  d  e  f  g  h\n";
+    private static final String RULE = "  ------------------------\n";
+
+    /** The length in chars of a full rendering: the file and rule lines twice, and eight ranks. */
+    public static final int RENDERED_LENGTH = 2 * FILES.length() + 2 * RULE.length() + 8 * 31;
+
+    private final char[] shown;  // The symbol last rendered on each square, 0 if never rendered
+
+    /**
+     * Creates a renderer that has not drawn anything yet, so its first update covers every square.
+     */
+    public BoardRenderer() {
+        this.shown = new char[64];
+    }
+
+    /**
+     * Draws the whole board in the same layout as Board.toString.
+     *
+     * @param board the board to draw
+     * @param out where to write the text
+     * @throws IOException if out throws
+     */
+    public static void render(Board board, Appendable out) throws IOException {
+        out.append(FILES).append(RULE);
+        for (int row = 0; row < 8; row++) {
+            char rank = (char) ('8' - row);
+            out.append(rank).append(" |");
+            for (int col = 0; col < 8; col++) {
+                out.append(' ').append(symbolAt(board, row, col)).append(' ');
+            }
+            out.append("| ").append(rank).append('\n');
+        }
+        out.append(RULE).append(FILES);
+    }
+
+    /**
+     * Draws the whole board into a buffer as UTF-8.
+     *
+     * @param board the board to draw
+     * @param out the buffer to write into
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static void render(Board board, ByteBuffer out) {
+        try {
+            render(board, new Utf8Appendable(out));
+        } catch (IOException ex) {
+            throw new AssertionError(ex);  // Utf8Appendable never throws IOException
+        }
+    }
+
+    /**
+     * Writes the squares whose contents changed since this renderer's last update, each as a
+     * space, the square name and the new symbol, and remembers the board as it is now.
+     *
+     * @param board the board to compare
+     * @param out where to write the changes
+     * @return the number of squares written
+     * @throws IOException if out throws
+     */
+    public int renderChanges(Board board, Appendable out) throws IOException {
+        int changed = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                char symbol = symbolAt(board, row, col);
+                int square = row * 8 + col;
+                if (shown[square] != symbol) {
+                    shown[square] = symbol;
+                    out.append(' ').append((char) ('a' + col)).append((char) ('8' - row)).append(symbol);
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Draws the changed squares into a buffer as UTF-8.
+     *
+     * @param board the board to compare
+     * @param out the buffer to write into
+     * @return the number of squares written
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public int renderChanges(Board board, ByteBuffer out) {
+        try {
+            return renderChanges(board, new Utf8Appendable(out));
+        } catch (IOException ex) {
+            throw new AssertionError(ex);  // Utf8Appendable never throws IOException
+        }
+    }
+
+    /**
+     * Forgets the last update, so that the next one covers every square.
+     */
+    public void reset() {
+        Arrays.fill(shown, (char) 0);
+    }
+
+    private static char symbolAt(Board board, int row, int col) {
+        Piece piece = board.getPieceAt(row, col);
+        return piece == null ? EMPTY_SQUARE : piece.getSymbol();
+    }
+
+    // Encodes chars as UTF-8 into a ByteBuffer; the board only uses chars from the basic plane
+    private static class Utf8Appendable implements Appendable {
+        private final ByteBuffer out;
+
+        Utf8Appendable(ByteBuffer out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(text.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            return this;
+        }
+    }
+}
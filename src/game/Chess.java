@@ -1,19 +1,60 @@
 package game;
 
+import engine.Evaluator;
+import engine.LegalMoveCache;
+import engine.MaterialEvaluator;
+import engine.Move;
+import engine.MoveParser;
+import engine.Position;
 import game.util.Color;
-import game.util.InputParser;
 import game.util.Point;
+import metrics.CheckmateEvent;
+import metrics.Metrics;
+import metrics.MoveEvent;
+import pieces.Bishop;
 import pieces.King;
+import pieces.Knight;
+import pieces.Pawn;
+import pieces.Queen;
+import pieces.Rook;
 
 import java.util.Scanner;
 
 /**
  * The Chess class represents the game logic for a chess match. It extends the AbstractStrategyGame class
  * and implements the required methods to provide instructions, make moves, and determine the winner.
+ *
+ * <p>Observers follow a game through its GameEventStream, which is created on the first call to
+ * getEvents. Until then, and while no one is subscribed, moves publish nothing.
+ *
+ * <p>A move in coordinates, such as "e2-e4", is checked against the legal moves of the position,
+ * which are kept in a LegalMoveCache shared by all games; its size is set in bytes by the
+ * chess.movecache.bytes system property. A move the cache finds is made on the board without
+ * asking the pieces again. Other notations are parsed by MoveParser.
+ *
+ * <p>As a SearchableGame, a Chess game is searched on an engine Position that follows every move
+ * made on the board. Moves made through the int methods only change that Position.
  */
-public class Chess extends AbstractStrategyGame {
+public class Chess extends AbstractStrategyGame implements SearchableGame {
+    private static final Evaluator EVALUATOR = new MaterialEvaluator();
+    private static final int FIFTY_MOVE_PLIES = 100;  // Fifty moves by each player
+    private static final int HISTORY_SIZE = 128;  // A power of two longer than the fifty-move window
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+    private static final int EVENT_CAPACITY = 1024;  // Events observers may fall behind by
+
+    // Legal moves of positions reached in any game, shared by all games in this JVM
+    private static final LegalMoveCache LEGAL_MOVES =
+            new LegalMoveCache(Long.getLong("chess.movecache.bytes", 16L << 20));
+
     private final Board board;  // The chess board where the game takes place
     private Color currentPlayer;  // The color of the player whose turn it is
+    private final long[] history;  // Ring of position keys, indexed by ply
+    private int ply;  // Number of moves made so far
+    private int reversiblePlies;  // Moves since the last one that no later position can undo
+    private int halfmoveClock;  // Moves since the last pawn move or capture
+    private final Position position;  // The game as the engine sees it, for searching
+    private final int[] moves;  // Scratch buffer for isTerminal and keeping position in step
+    private GameEventStream events;  // Created when first asked for
 
     /**
      * Initializes a new Chess game with the board set up and White set to move first.
@@ -21,6 +62,11 @@ public class Chess extends AbstractStrategyGame {
     public Chess() {
         this.board = new Board();
         this.currentPlayer = Color.WHITE;  // White always starts the game
+        this.history = new long[HISTORY_SIZE];
+        this.history[0] = board.getKey();
+        this.position = new Position();
+        this.position.setFrom(board, currentPlayer);
+        this.moves = new int[Position.MAX_MOVES];
     }
 
     /**
@@ -30,7 +76,7 @@ public class Chess extends AbstractStrategyGame {
      */
     @Override
     public String instructions() {
-        return "Enter a move in the form \"e2-e4\". For example, e2-e4 would be a valid move.";
+        return "Enter a move in the form \"e2-e4\". For example, e2-e4 would be a valid move. Algebraic notation such as Nf3 or O-O works too.";
     }
 
     /**
@@ -44,21 +90,154 @@ public class Chess extends AbstractStrategyGame {
     }
 
     /**
-     * Checks the current state of the game to determine if either player has won by checkmate.
+     * Returns the board the game is played on.
      *
-     * @return 1 if White has won, 2 if Black has won, or -1 if no winner has been determined yet
+     * @return the board
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Copies the game's engine position, with its castling rights, en passant square and halfmove
+     * clock, which the board does not keep.
+     *
+     * @param target the position to overwrite
+     */
+    public void copyPositionTo(Position target) {
+        target.copyFrom(position);
+    }
+
+    /**
+     * Returns the stream of this game's events, creating it on the first call. Subscribe to it to
+     * be told of every move made from then on.
+     *
+     * @return the event stream
+     */
+    public synchronized GameEventStream getEvents() {
+        if (events == null) {
+            events = new GameEventStream(EVENT_CAPACITY);
+        }
+        return events;
+    }
+
+    /**
+     * Returns the legal move cache all games check their moves against, for its statistics.
+     *
+     * @return the cache
+     */
+    public static LegalMoveCache getLegalMoveCache() {
+        return LEGAL_MOVES;
+    }
+
+    /**
+     * Returns the number of moves made since the last pawn move or capture.
+     *
+     * @return the halfmove clock
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Checks the current state of the game to determine if either player has won by checkmate,
+     * or if the game is drawn by stalemate, threefold repetition, the fifty-move rule or
+     * insufficient material. A checkmate on the move that reaches the fifty-move limit still wins.
+     *
+     * @return 1 if White has won, 2 if Black has won, 0 if the game is drawn, or -1 if the game
+     *         is not over yet
      */
     @Override
     public int getWinner() {
-        // Retrieve both kings from the board
-        King[] kings = board.getKings();
-        for (King king : kings) {
-            if (king.isInCheckmate(board)) {
-                // Return 2 if White's king is checkmated, 1 if Black's king is checkmated
-                return king.getColor() == Color.WHITE ? 2 : 1;
+        long start = GameMetrics.GET_WINNER.start();
+        try {
+            int result = mateOrStalemate();
+            if (result != -1) {
+                return result;
+            }
+            if (isDrawByRepetition() || isDrawByFiftyMoveRule() || board.hasInsufficientMaterial()) {
+                return 0;
             }
+            return -1;  // No winner yet
+        } finally {
+            GameMetrics.GET_WINNER.stop(start);
         }
-        return -1;  // No winner yet
+    }
+
+    // Only the player to move can be out of moves: checkmated if in check, else stalemated.
+    // Returns the winner as getWinner does, or -1 while the player has a legal move.
+    private int mateOrStalemate() {
+        // Only create the event while it is being recorded, so the test allocates nothing otherwise
+        CheckmateEvent event = Metrics.isRecorderRunning() && CheckmateEvent.isTypeEnabled()
+                ? new CheckmateEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = GameMetrics.MATE_OR_STALEMATE.start();
+        try {
+            long checkStart = event != null ? System.nanoTime() : 0;
+            boolean inCheck = isInCheck();
+            if (event != null) {
+                event.checkTime = System.nanoTime() - checkStart;
+                event.inCheck = inCheck;
+            }
+            if (position.generateMoves(moves, 0) != 0) {
+                return -1;
+            }
+            if (!inCheck) {
+                return 0;
+            }
+            if (event != null) {
+                event.checkmate = true;
+            }
+            return currentPlayer == Color.WHITE ? 2 : 1;
+        } finally {
+            GameMetrics.MATE_OR_STALEMATE.stop(start);
+            if (event != null && event.shouldCommit()) {
+                event.color = currentPlayer.name();
+                event.commit();
+            }
+        }
+    }
+
+    // Whether the player to move is in check, timed for the metrics
+    private boolean isInCheck() {
+        long start = GameMetrics.IS_IN_CHECK.start();
+        try {
+            return position.isInCheck();
+        } finally {
+            GameMetrics.IS_IN_CHECK.stop(start);
+        }
+    }
+
+    /**
+     * Checks whether the current position has occurred three times with the same player to move.
+     * Only positions since the last pawn move, capture or loss of castling rights can repeat, and
+     * only every second one has the same player to move, so just those keys are compared.
+     *
+     * @return true if the position has occurred three times
+     */
+    public boolean isDrawByRepetition() {
+        long key = history[ply & HISTORY_MASK];
+        int window = Math.min(reversiblePlies, HISTORY_MASK);
+        int occurrences = 1;
+
+        // Two moves back is never the same position, as each player has moved one piece
+        for (int back = 4; back <= window; back += 2) {
+            if (history[(ply - back) & HISTORY_MASK] == key && ++occurrences == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether fifty moves by each player have passed without a pawn move or capture.
+     *
+     * @return true if the fifty-move rule applies
+     */
+    public boolean isDrawByFiftyMoveRule() {
+        return halfmoveClock >= FIFTY_MOVE_PLIES;
     }
 
     /**
@@ -80,14 +259,250 @@ public class Chess extends AbstractStrategyGame {
     @Override
     public void makeMove(Scanner input) throws IllegalArgumentException {
         // Get the move from the player (e.g., "e2-e4")
-        String move = input.nextLine();
-        // Parse the move into a starting and ending point
-        Point[] points = InputParser.parseMove(move);
+        makeMove(input.nextLine());
+    }
+
+    /**
+     * Parses a move such as "e2-e4", "e2 e4", "Nf3" or "O-O" and makes it on the board for the
+     * current player. Any notation MoveParser reads is accepted.
+     *
+     * @param move the move text
+     * @throws IllegalArgumentException if the move is invalid
+     */
+    public void makeMove(String move) throws IllegalArgumentException {
+        // Only create the event while it is being recorded, so a move allocates nothing otherwise
+        MoveEvent event = Metrics.isRecorderRunning() && MoveEvent.isTypeEnabled() ? new MoveEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Color player = currentPlayer;
+        long start = GameMetrics.MAKE_MOVE.start();
+        try {
+            // Find the engine's move before the board changes: the legal moves decide what is
+            // allowed, so a move the engine does not list is rejected
+            long validationStart = event != null ? System.nanoTime() : 0;
+            long timerStart = Metrics.start();
+            int engineMove;
+            try {
+                engineMove = cachedMove(move);
+                if (engineMove == Move.NONE) {
+                    engineMove = MoveParser.parse(position, move, moves);
+                }
+            } catch (IllegalArgumentException ex) {
+                GameMetrics.REJECTED_MOVE.stop(timerStart);
+                throw ex;
+            } finally {
+                if (event != null) {
+                    event.validationTime = System.nanoTime() - validationStart;
+                }
+            }
+            GameMetrics.stopValidateMove(Position.typeOf(position.pieceAt(Move.from(engineMove))), timerStart);
+            Point from = Point.of(Move.from(engineMove) & 7, Move.from(engineMove) >> 3);
+            Point to = Point.of(Move.to(engineMove) & 7, Move.to(engineMove) >> 3);
+
+            // Pawn moves and captures can never be undone; neither can moving a King or Rook that
+            // could still castle, so positions before any of these can not repeat
+            Piece piece = board.getPieceAt(from.getY(), from.getX());
+            boolean capture = board.getPieceAt(to.getY(), to.getX()) != null;
+            boolean resetsClock = capture || piece instanceof Pawn;
+            boolean irreversible = resetsClock
+                    || piece instanceof King && !((King) piece).hasMoved()
+                    || piece instanceof Rook && !((Rook) piece).hasMoved();
+
+            // What the move takes and makes, read off the engine position before it changes
+            int fromSquare = Move.from(engineMove);
+            int toSquare = Move.to(engineMove);
+            int moved = position.pieceAt(fromSquare);
+            int captured = (engineMove & Move.EN_PASSANT) != 0 ? position.pieceAt(fromSquare & 56 | toSquare & 7)
+                    : position.pieceAt(toSquare);
+
+            board.applyMove(from, to, promotionPiece(Move.promotion(engineMove), player));
+            if (event != null) {
+                event.legal = true;
+            }
 
-        // Make the move on the board
-        board.movePiece(points[0], points[1], currentPlayer);
+            // Switch to the next player after the move
+            currentPlayer = getNextPlayer() == 1 ? Color.BLACK : Color.WHITE;
+            recordPosition(resetsClock, irreversible);
+            follow(engineMove);
+            if (event != null) {
+                long checkStart = System.nanoTime();
+                event.check = isInCheck();
+                event.checkTime = System.nanoTime() - checkStart;
+            }
+            publish(player, engineMove, fromSquare, toSquare, moved, captured);
+        } finally {
+            GameMetrics.MAKE_MOVE.stop(start);
+            if (event != null && event.shouldCommit()) {
+                event.move = move;
+                event.player = player.name();
+                event.commit();
+            }
+        }
+    }
 
-        // Switch to the next player after the move
-        currentPlayer = getNextPlayer() == 1 ? Color.BLACK : Color.WHITE;
+    // Adds the position after a move to the history and advances the draw counters
+    private void recordPosition(boolean resetsClock, boolean irreversible) {
+        ply++;
+        history[ply & HISTORY_MASK] = board.getKey();
+        halfmoveClock = resetsClock ? 0 : halfmoveClock + 1;
+        reversiblePlies = irreversible ? 0 : reversiblePlies + 1;
+    }
+
+    // Tell the observers, if there are any, about a move that has just been made
+    private void publish(Color player, int move, int from, int to, int moved, int captured) {
+        GameEventStream stream = events;
+        if (stream == null || stream.getSubscriberCount() == 0) {
+            return;
+        }
+        int mover = player == Color.WHITE ? 1 : 2;
+        int promotion = Move.promotion(move);
+        stream.publish(GameEvent.MOVE, ply, mover, move, from, to, moved, captured, promotion, -1);
+        if (captured != Position.EMPTY) {
+            stream.publish(GameEvent.CAPTURE, ply, mover, move, from, to, moved, captured, promotion, -1);
+        }
+        if (promotion != 0) {
+            stream.publish(GameEvent.PROMOTION, ply, mover, move, from, to, moved, captured, promotion, -1);
+        }
+        if (Position.typeOf(moved) == Position.KING && Math.abs(to - from) == 2) {
+            stream.publish(GameEvent.CASTLE, ply, mover, move, from, to, moved, captured, promotion, -1);
+        }
+        if (isInCheck()) {
+            stream.publish(GameEvent.CHECK, ply, mover, move, from, to, moved, captured, promotion, -1);
+        }
+        int winner = getWinner();
+        if (winner != -1) {
+            stream.publish(GameEvent.GAME_OVER, ply, mover, move, from, to, moved, captured, promotion, winner);
+        }
+    }
+
+    // Look a coordinate move such as "e2-e4" or "e7 e8q" up in the cached legal moves, returning
+    // Move.NONE for any other notation
+    private int cachedMove(String move) throws IllegalArgumentException {
+        int length = move.length();
+        if (length < 5 || length > 6 || move.charAt(2) != ' ' && move.charAt(2) != '-') {
+            return Move.NONE;
+        }
+        int from = square(move, 0);
+        int to = square(move, 3);
+        if (from < 0 || to < 0) {
+            return Move.NONE;
+        }
+        int promotion = 0;
+        if (length == 6) {
+            promotion = Position.TYPE_CHARS.indexOf(Character.toUpperCase(move.charAt(5)));
+            if (promotion < Position.KNIGHT || promotion > Position.QUEEN) {
+                return Move.NONE;
+            }
+        } else if (Position.typeOf(position.pieceAt(from)) == Position.PAWN && (to < 8 || to >= 56)) {
+            promotion = Position.QUEEN;  // As MoveParser, a promotion without a piece makes a queen
+        }
+        short[] legal = LEGAL_MOVES.get(position, moves);
+        if (!LegalMoveCache.contains(legal, from, to, promotion)) {
+            throw new IllegalArgumentException("Illegal move: " + move);
+        }
+        return position.moveOf(from, to, promotion);
+    }
+
+    // The engine square named at an index of the text, or -1 if there is none
+    private static int square(String text, int index) {
+        int col = text.charAt(index) - 'a';
+        int rank = text.charAt(index + 1) - '1';
+        return col < 0 || col > 7 || rank < 0 || rank > 7 ? -1 : (7 - rank) * 8 + col;
+    }
+
+    // The board piece for an engine promotion type, or null for a move that does not promote
+    private static Piece promotionPiece(int type, Color color) {
+        switch (type) {
+            case Position.KNIGHT:
+                return new Knight(color);
+            case Position.BISHOP:
+                return new Bishop(color);
+            case Position.ROOK:
+                Rook rook = new Rook(color);
+                rook.setHasMoved();  // A promoted Rook can never castle
+                return rook;
+            case Position.QUEEN:
+                return new Queen(color);
+            default:
+                return null;
+        }
+    }
+
+    // Play a move the board has made on the engine position too
+    private void follow(int move) {
+        position.makeMove(move);
+        position.clearHistory();  // Game moves are never taken back
+    }
+
+    @Override
+    public int getMaxMoves() {
+        return Position.MAX_MOVES;
+    }
+
+    /**
+     * Writes the legal moves into an array. A game drawn by the fifty-move rule has no moves.
+     *
+     * @param moves the array to write to
+     * @param offset where in the array to start writing
+     * @return the number of moves written
+     */
+    @Override
+    public int generateMoves(int[] moves, int offset) {
+        if (position.getHalfmoveClock() >= FIFTY_MOVE_PLIES) {
+            return 0;
+        }
+        return position.generateMoves(moves, offset);
+    }
+
+    @Override
+    public void makeMove(int move) {
+        position.makeMove(move);
+    }
+
+    @Override
+    public void unmakeMove(int move) {
+        position.unmakeMove(move);
+    }
+
+    @Override
+    public long getKey() {
+        return position.getKey();
+    }
+
+    @Override
+    public boolean isTerminal() {
+        return generateMoves(moves, 0) == 0;
+    }
+
+    /**
+     * Returns the result once no moves are left: a loss if the player to move is checkmated,
+     * otherwise a draw.
+     *
+     * @return -WIN or 0
+     */
+    @Override
+    public int getResult() {
+        if (position.isInCheck() && position.generateMoves(moves, 0) == 0) {
+            return -WIN;
+        }
+        return 0;
+    }
+
+    @Override
+    public int evaluate() {
+        return EVALUATOR.evaluate(position);
+    }
+
+    /**
+     * Formats a move as makeMove reads it, such as "e2 e4".
+     *
+     * @param move the move
+     * @return the move as text
+     */
+    @Override
+    public String moveToString(int move) {
+        String text = Move.toString(move);
+        return text.substring(0, 2) + " " + text.substring(2, 4);
     }
 }
@@ -0,0 +1,150 @@
+package game;
+
+import engine.Move;
+import engine.Position;
+import game.util.Point;
+
+/**
+ * The GameEvent class is one entry of a GameEventStream: something that happened in a Chess game.
+ * A move is published as a MOVE event, followed by a CAPTURE, PROMOTION, CASTLE and CHECK event for
+ * each of those it also was, and a GAME_OVER event if it ended the game. All events of one move
+ * carry the same ply and squares.
+ *
+ * <p>Events are slots of the stream's ring buffer, filled in again for every new event, so a
+ * subscriber must copy whatever it needs before its handler returns.
+ */
+public class GameEvent {
+    /** A move was made. */
+    public static final int MOVE = 0;
+
+    /** The move captured a piece. */
+    public static final int CAPTURE = 1;
+
+    /** The move promoted a pawn. */
+    public static final int PROMOTION = 2;
+
+    /** The move castled. */
+    public static final int CASTLE = 3;
+
+    /** The move put the opponent in check. */
+    public static final int CHECK = 4;
+
+    /** The move ended the game; see getWinner. */
+    public static final int GAME_OVER = 5;
+
+    private static final String[] TYPE_NAMES = {"MOVE", "CAPTURE", "PROMOTION", "CASTLE", "CHECK", "GAME_OVER"};
+
+    int type;
+    long sequence;  // Position in the stream, from 0
+    int ply;  // Number of moves made in the game, this one included
+    int player;  // 1 for White, 2 for Black
+    int move;  // The engine move, or Move.NONE if the board made a move the engine does not know
+    int from;  // Engine squares: row * 8 + column, row 0 being rank 8
+    int to;
+    int piece;  // Engine piece codes, or Position.EMPTY
+    int captured;
+    int promotion;  // Piece type, or 0
+    int winner;  // As Chess.getWinner, for GAME_OVER
+
+    GameEvent() {
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the event's place in its stream, counting from 0.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of moves made in the game, including the one the event is about.
+     *
+     * @return the ply
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns the player who made the move.
+     *
+     * @return 1 for White, 2 for Black
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the move in the engine's packing.
+     *
+     * @return the move, or Move.NONE if the engine position did not allow it
+     */
+    public int getMove() {
+        return move;
+    }
+
+    public Point getFrom() {
+        return Point.of(from & 7, from >> 3);
+    }
+
+    public Point getTo() {
+        return Point.of(to & 7, to >> 3);
+    }
+
+    /**
+     * Returns the piece that moved.
+     *
+     * @return the engine piece code
+     */
+    public int getPiece() {
+        return piece;
+    }
+
+    /**
+     * Returns the piece the move captured.
+     *
+     * @return the engine piece code, or Position.EMPTY
+     */
+    public int getCaptured() {
+        return captured;
+    }
+
+    /**
+     * Returns the piece type a pawn was promoted to.
+     *
+     * @return the engine piece type, or 0
+     */
+    public int getPromotion() {
+        return promotion;
+    }
+
+    /**
+     * Returns the result of a finished game.
+     *
+     * @return 1 if White won, 2 if Black won, 0 for a draw, or -1 if the event is not GAME_OVER
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(32);
+        sb.append(TYPE_NAMES[type]).append(' ').append(ply).append(' ');
+        Move.appendSquare(sb, from);
+        Move.appendSquare(sb, to);
+        if (captured != Position.EMPTY) {
+            sb.append(" x").append(Position.TYPE_CHARS.charAt(Position.typeOf(captured)));
+        }
+        if (type == GAME_OVER) {
+            sb.append(" winner ").append(winner);
+        }
+        return sb.toString();
+    }
+}
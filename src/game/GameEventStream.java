@@ -0,0 +1,321 @@
+package game;
+
+import engine.Position;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The GameEventStream class delivers a game's events to any number of subscribers through a
+ * lock-free ring buffer with one producer, the thread making the moves. Every slot holds a
+ * GameEvent allocated up front, so publishing fills in an existing object and allocates nothing.
+ * The producer makes an event visible by advancing the cursor with a release write; each
+ * subscriber reads up to the cursor and then records how far it has got the same way.
+ *
+ * <p>Subscribers are never skipped: before reusing a slot the producer waits until every
+ * subscriber has read the event in it, so a slow subscriber slows the game down rather than
+ * missing events. The wait is bounded, though: a subscriber still holding the producer up after
+ * the maximum wait is dropped, so one that stops polling without cancelling stalls the game for
+ * that long once rather than forever. A dropped subscription gets no more events; isDropped tells
+ * its subscriber to subscribe again and catch up some other way. The producer remembers the
+ * slowest subscriber's position and only scans them all again when it catches up with it, so
+ * publishing costs the same with a thousand subscribers as with one.
+ *
+ * <p>A subscriber dropped in the middle of a poll may be reading slots the producer is already
+ * writing over, so the events that poll handed over may be torn. A subscriber that finds
+ * isDropped true after a poll must discard that poll's events along with the subscription.
+ * Checking each event instead would mean copying it out of its slot, which costs several times
+ * the delivery rate with many subscribers, for a case that only arises once a subscriber has
+ * already stalled the game.
+ *
+ * <p>Subscriptions are polled by the subscriber's own threads, and one thread may poll any number
+ * of them. A single subscription must not be polled by two threads at once.
+ */
+public class GameEventStream {
+    /** The handler a subscription hands its events to. */
+    public interface Handler {
+        /**
+         * Handles one event. The event is reused once the handler returns.
+         *
+         * @param event the event
+         */
+        void onEvent(GameEvent event);
+    }
+
+    private static final VarHandle CURSOR;
+    private static final VarHandle READ;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CURSOR = lookup.findVarHandle(GameEventStream.class, "cursor", long.class);
+            READ = lookup.findVarHandle(Subscription.class, "read", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final GameEvent[] slots;
+    private final int mask;
+    private final long maxWaitNanos;
+    private long cursor;  // The last published sequence, written with release semantics
+    private long gate;  // The slowest subscriber's read position when the producer last looked
+    private volatile Subscription[] subscriptions;  // Copied on every change
+
+    /**
+     * A subscriber's position in the stream.
+     */
+    public class Subscription {
+        private long read;  // The last sequence handled, written with release semantics
+        private volatile boolean dropped;  // Set by the producer when it gave up waiting
+
+        private Subscription(long read) {
+            this.read = read;
+        }
+
+        /**
+         * Hands every event published since the last poll to the handler, oldest first, and
+         * returns without waiting for more. A dropped subscription hands over nothing. If the
+         * subscription is dropped during the poll, the events it handed over may have been
+         * overwritten while the handler read them: the poll then returns 0 and isDropped is
+         * true, and the subscriber must discard them.
+         *
+         * @param handler the handler
+         * @return the number of events handled, or 0 if the subscription was dropped
+         */
+        public int poll(Handler handler) {
+            if (dropped) {
+                return 0;
+            }
+            long next = read + 1;
+            long last = (long) CURSOR.getAcquire(GameEventStream.this);
+            for (long sequence = next; sequence <= last; sequence++) {
+                handler.onEvent(slots[(int) sequence & mask]);
+            }
+            if (dropped) {
+                return 0;  // The producer may have overwritten what the handler read
+            }
+            READ.setRelease(this, last);
+            return (int) (last - next + 1);
+        }
+
+        /**
+         * Returns how many published events this subscriber has not handled yet.
+         *
+         * @return the backlog
+         */
+        public long getLag() {
+            return (long) CURSOR.getAcquire(GameEventStream.this) - (long) READ.getAcquire(this);
+        }
+
+        /**
+         * Returns whether the producer dropped this subscription for falling too far behind.
+         *
+         * @return true if the subscription gets no more events
+         */
+        public boolean isDropped() {
+            return dropped;
+        }
+
+        /**
+         * Ends the subscription, so the producer no longer waits for it.
+         */
+        public void cancel() {
+            unsubscribe(this);
+        }
+    }
+
+    /**
+     * Creates a stream whose producer waits at most a second for a lagging subscriber.
+     *
+     * @param capacity the number of events subscribers may fall behind by before the producer
+     *                 waits, rounded up to a power of two
+     */
+    public GameEventStream(int capacity) {
+        this(capacity, 1000);
+    }
+
+    /**
+     * Creates a stream.
+     *
+     * @param capacity the number of events subscribers may fall behind by before the producer
+     *                 waits, rounded up to a power of two
+     * @param maxWaitMillis how long the producer waits for a lagging subscriber before dropping it
+     */
+    public GameEventStream(int capacity, long maxWaitMillis) {
+        int size = 1;
+        while (size < capacity) {
+            size *= 2;
+        }
+        this.slots = new GameEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new GameEvent();
+        }
+        this.mask = size - 1;
+        this.maxWaitNanos = maxWaitMillis * 1_000_000;
+        this.cursor = -1;
+        this.gate = -1;
+        this.subscriptions = new Subscription[0];
+    }
+
+    /**
+     * Subscribes to the events published from now on.
+     *
+     * @return the subscription to poll
+     */
+    public synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription((long) CURSOR.getAcquire(this));
+        Subscription[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        grown[grown.length - 1] = subscription;
+        subscriptions = grown;
+        return subscription;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    /**
+     * Returns the number of events published so far.
+     *
+     * @return the count
+     */
+    public long getPublished() {
+        return (long) CURSOR.getAcquire(this) + 1;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        List<Subscription> kept = new ArrayList<>(Arrays.asList(subscriptions));
+        kept.remove(subscription);
+        subscriptions = kept.toArray(new Subscription[0]);
+    }
+
+    // Drop the subscribers that have not yet read up to a sequence
+    private synchronized void drop(long sequence) {
+        List<Subscription> kept = new ArrayList<>(subscriptions.length);
+        for (Subscription subscription : subscriptions) {
+            if ((long) READ.getAcquire(subscription) < sequence) {
+                subscription.dropped = true;
+            } else {
+                kept.add(subscription);
+            }
+        }
+        subscriptions = kept.toArray(new Subscription[0]);
+    }
+
+    // Producer side: fill in the next slot, once every subscriber is done with the event in it or
+    // has been dropped for taking too long, and make it visible
+    void publish(int type, int ply, int player, int move, int from, int to, int piece, int captured, int promotion,
+                 int winner) {
+        long sequence = cursor + 1;
+        long wrap = sequence - slots.length;
+        if (wrap > gate) {
+            long waitStart = 0;
+            for (int spins = 0; (gate = slowest(sequence - 1)) < wrap; spins++) {
+                if (spins < 100) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (spins == 100) {
+                    waitStart = System.nanoTime();
+                } else if (System.nanoTime() - waitStart >= maxWaitNanos) {
+                    drop(wrap);
+                }
+                Thread.yield();
+            }
+        }
+        GameEvent event = slots[(int) sequence & mask];
+        event.sequence = sequence;
+        event.type = type;
+        event.ply = ply;
+        event.player = player;
+        event.move = move;
+        event.from = from;
+        event.to = to;
+        event.piece = piece;
+        event.captured = captured;
+        event.promotion = promotion;
+        event.winner = winner;
+        CURSOR.setRelease(this, sequence);
+    }
+
+    private long slowest(long published) {
+        long slowest = published;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, (long) READ.getAcquire(subscription));
+        }
+        return slowest;
+    }
+
+    /**
+     * Measures publishing and delivery. Usage: java game.GameEventStream [events], by default
+     * 200000. For 1, 10, 100 and 1000 subscribers, one thread publishes the events while
+     * subscriber threads, at most one per core, poll their share of the subscriptions. Prints
+     * the events published per second and the deliveries per second, which count each event once
+     * for every subscriber that handled it.
+     *
+     * @param args the number of events to publish per run
+     * @throws InterruptedException if interrupted while waiting for the subscriber threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long events = args.length > 0 ? Long.parseLong(args[0]) : 200_000;
+        for (int round = 0; round < 2; round++) {  // The first round warms up the JIT
+            for (int subscribers = 1; subscribers <= 1000; subscribers *= 10) {
+                double seconds = bench(subscribers, events);
+                if (round == 1) {
+                    System.out.printf("%4d subscribers: %,12.0f events/s published, %,14.0f deliveries/s "
+                            + "(events x subscribers)\n",
+                            subscribers, events / seconds, events * subscribers / seconds);
+                }
+            }
+        }
+    }
+
+    // Publish events to the subscribers and return the seconds until all of them had every event
+    private static double bench(int subscribers, long events) throws InterruptedException {
+        GameEventStream stream = new GameEventStream(4096);
+        Subscription[] subscriptions = new Subscription[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions[i] = stream.subscribe();
+        }
+        long[] checksums = new long[subscribers];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), subscribers);
+        Thread[] pollers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;  // Each thread polls every threads-th subscription from here
+            pollers[t] = new Thread(() -> {
+                Handler[] handlers = new Handler[subscribers];
+                long expected = 0;
+                for (int s = first; s < subscribers; s += threads) {
+                    int index = s;
+                    handlers[s] = event -> checksums[index] += event.to;
+                    expected += events;
+                }
+                for (long handled = 0; handled < expected; ) {
+                    int polled = 0;
+                    for (int s = first; s < subscribers; s += threads) {
+                        polled += subscriptions[s].poll(handlers[s]);
+                    }
+                    handled += polled;
+                    if (polled == 0) {
+                        Thread.yield();
+                    }
+                }
+            });
+            pollers[t].start();
+        }
+
+        long start = System.nanoTime();
+        for (long i = 0; i < events; i++) {
+            stream.publish(GameEvent.MOVE, (int) i, 1 + (int) (i & 1), 0, 52, (int) (i & 63), Position.PAWN,
+                    Position.EMPTY, 0, -1);
+        }
+        for (Thread poller : pollers) {
+            poller.join();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
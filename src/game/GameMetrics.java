@@ -0,0 +1,69 @@
+package game;
+
+import engine.Position;
+import metrics.Metrics;
+import metrics.Timer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The GameMetrics class holds the timers for the rule checks that make up each turn. They record
+ * nothing until metrics are switched on (see metrics.Metrics).
+ *
+ * <p>A Chess game decides what is legal and whether the game is over on its engine Position, so
+ * the timers measure those calls: finding a move among the legal moves, charged to the type of
+ * the piece moved, the check test, and the search for a legal move that tells checkmate and
+ * stalemate apart from a game that goes on.
+ */
+public final class GameMetrics {
+    public static final Timer IS_IN_CHECK = Metrics.timer("Position.isInCheck");
+    public static final Timer MATE_OR_STALEMATE = Metrics.timer("Chess.mateOrStalemate");
+    public static final Timer REJECTED_MOVE = Metrics.timer("Chess.validateMove.Rejected");
+    public static final Timer GET_WINNER = Metrics.timer("Chess.getWinner");
+    public static final Timer MAKE_MOVE = Metrics.timer("Chess.makeMove");
+
+    // One validation timer per engine piece type, such as "Chess.validateMove.Knight"
+    private static final Timer[] VALIDATE_MOVE = new Timer[Position.KING + 1];
+
+    static {
+        // Create the piece timers up front so they are there when the beans are registered
+        String[] names = {null, "Pawn", "Knight", "Bishop", "Rook", "Queen", "King"};
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            VALIDATE_MOVE[type] = Metrics.timer("Chess.validateMove." + names[type]);
+        }
+    }
+
+    private GameMetrics() {
+    }
+
+    /**
+     * Registers every game timer, the metrics switch and the legal move cache as JMX beans.
+     */
+    public static void registerMBeans() {
+        Metrics.registerMBeans();  // Calling through this class creates its timers first
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("chess:type=LegalMoveCache");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(Chess.getLegalMoveCache(), name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register the legal move cache bean", ex);
+        }
+    }
+
+    /**
+     * Finishes timing the validation of a legal move, charging it to the type of piece moved.
+     *
+     * @param type the engine piece type, Position.PAWN to Position.KING
+     * @param start the value Metrics.start returned before the validation
+     */
+    public static void stopValidateMove(int type, long start) {
+        if (start != Timer.OFF) {
+            VALIDATE_MOVE[type].stop(start);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package game;
+
+/**
+ * The SearchableGame interface lets a game be searched by the drivers in the search package. Moves
+ * are non-negative ints whose meaning only the game knows, generated into caller-owned arrays, so
+ * a search can run without allocating. Scores are always for the player to move.
+ *
+ * <p>A search makes and unmakes moves in last-in, first-out order and leaves the game as it found
+ * it. Moves made through this interface are for looking ahead only; a chosen move is played for
+ * real through the game's own makeMove, using the text from moveToString.
+ */
+public interface SearchableGame {
+    /** The score of a won game; a lost game scores -WIN. Evaluations stay strictly between. */
+    int WIN = 1_000_000;
+
+    /**
+     * Returns the most moves generateMoves can produce for any position.
+     *
+     * @return the size a move buffer must have past its offset
+     */
+    int getMaxMoves();
+
+    /**
+     * Writes the legal moves of the player to move into an array.
+     *
+     * @param moves the array to write to
+     * @param offset where in the array to start writing
+     * @return the number of moves written, which is 0 if and only if the game is over
+     */
+    int generateMoves(int[] moves, int offset);
+
+    /**
+     * Plays a move returned by generateMoves for the current position.
+     *
+     * @param move the move
+     */
+    void makeMove(int move);
+
+    /**
+     * Takes back the last move made with makeMove.
+     *
+     * @param move the move, as passed to makeMove
+     */
+    void unmakeMove(int move);
+
+    /**
+     * Returns a 64-bit hash of the current position, equal for equal positions.
+     *
+     * @return the position's key
+     */
+    long getKey();
+
+    /**
+     * Checks whether the game is over.
+     *
+     * @return true if the player to move has no moves
+     */
+    boolean isTerminal();
+
+    /**
+     * Returns the result of a finished game for the player to move.
+     *
+     * @return WIN, -WIN or 0 for a draw
+     */
+    int getResult();
+
+    /**
+     * Estimates how good the position of an unfinished game is for the player to move.
+     *
+     * @return a score strictly between -WIN and WIN
+     */
+    int evaluate();
+
+    /**
+     * Formats a move the way the game's makeMove(Scanner) reads it.
+     *
+     * @param move the move
+     * @return the move as text
+     */
+    String moveToString(int move);
+}
@@ -2,29 +2,38 @@ package game.util;
 
 public class InputParser {
 
-    // Given a string that looks like "e2 e4", return the row and column
+    // Given a string that looks like "e2 e4" or "e2-e4", return the row and column
     // Return the from row and column as well as the to row and column like (2, 4) (4, 2)
     public static Point[] parseMove(String input) {
-        String[] moves = input.split(" ");
-
-        Point[] points = new Point[2]; // from and to
-
-        for (int i = 0; i < 2; i++) {
-            String move = moves[i];
-
-            // Get the row and column
-            int row = Integer.parseInt(move.substring(1, 2)) - 1;
-            int col = charToInt(move.charAt(0));
-
-            // The board is flipped from it's representation, which means that black starts at (0, 0) and white starts at (7, 7)
-            // So we need to make sure that when someone enters e2 e4 that translates not to (4, 1) like it would if the board wasn't flipped
-            // But rather to (4, 6) which is the correct representation
-            row = 7 - row;
+        return new Point[] {parseSquare(input, 0), parseSquare(input, 3)};
+    }
 
-            points[i] = new Point(col, row);
+    /**
+     * Parses the square name, such as "e2", that starts at the given index of a move like "e2 e4"
+     * or "e2-e4".
+     * The returned point is a shared instance, so parsing does not allocate.
+     *
+     * @param input the move text
+     * @param index 0 for the from square or 3 for the to square
+     * @return the square as a point
+     * @throws IllegalArgumentException if the text there is not a square name
+     */
+    public static Point parseSquare(String input, int index) {
+        if (input.length() < index + 2 || (input.length() > index + 2 && input.charAt(index + 2) != ' ' && input.charAt(index + 2) != '-')) {
+            throw new IllegalArgumentException("Moves look like \"e2-e4\"");
+        }
+        int col = charToInt(input.charAt(index));
+        int row = input.charAt(index + 1) - '1';
+        if (col < 0 || col > 7 || row < 0 || row > 7) {
+            throw new IllegalArgumentException("Not a square: " + input.substring(index, index + 2));
         }
 
-        return points;
+        // The board is flipped from it's representation, which means that black starts at (0, 0) and white starts at (7, 7)
+        // So we need to make sure that when someone enters e2 e4 that translates not to (4, 1) like it would if the board wasn't flipped
+        // But rather to (4, 6) which is the correct representation
+        row = 7 - row;
+
+        return Point.of(col, row);
     }
 
     private static int charToInt(char c) {
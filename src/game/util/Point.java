@@ -1,6 +1,15 @@
 package game.util;
 
 public class Point {
+    // One shared instance per board square, indexed by y * 8 + x
+    private static final Point[] SQUARES = new Point[64];
+
+    static {
+        for (int i = 0; i < 64; i++) {
+            SQUARES[i] = new Point(i & 7, i >> 3);
+        }
+    }
+
     private final int x;
     private final int y;
 
@@ -9,6 +18,21 @@ public class Point {
         this.y = y;
     }
 
+    /**
+     * Returns a point for the given coordinates. Points on the board are shared instances, so
+     * hot paths that look up squares do not allocate.
+     *
+     * @param x the column
+     * @param y the row
+     * @return the point
+     */
+    public static Point of(int x, int y) {
+        if (x >= 0 && x < 8 && y >= 0 && y < 8) {
+            return SQUARES[y * 8 + x];
+        }
+        return new Point(x, y);
+    }
+
     public int getX() {
         return x;
     }
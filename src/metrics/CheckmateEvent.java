@@ -0,0 +1,47 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The CheckmateEvent class is the flight recorder event for one checkmate test in
+ * Chess.getWinner, split into the check test and the search for a legal move.
+ */
+@Name("chess.Checkmate")
+@Label("Checkmate Detection")
+@Category("Chess")
+@Description("A checkmate test of the player to move")
+@Threshold("1 ms")
+public class CheckmateEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(CheckmateEvent.class);
+
+    @Label("King")
+    public String color;
+
+    @Label("In Check")
+    public boolean inCheck;
+
+    @Label("Checkmate")
+    public boolean checkmate;
+
+    @Label("Check Detection Time")
+    @Description("Time spent deciding whether the King is in check")
+    @Timespan(Timespan.NANOSECONDS)
+    public long checkTime;
+
+    /**
+     * Returns true if a recording has this event type switched on. Callers check this before
+     * creating an event, so no event object is allocated while nothing is recording.
+     *
+     * @return true if events of this type are being recorded
+     */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
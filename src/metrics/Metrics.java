@@ -0,0 +1,171 @@
+package metrics;
+
+import jdk.jfr.FlightRecorder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Metrics class holds every Timer by name and the switch that turns recording on and off at
+ * runtime. Recording starts switched off unless the system property "chess.metrics" is true.
+ * The timers can be read through JMX (see registerMBeans) or as a text snapshot, which can also
+ * be printed periodically (see startReporter).
+ */
+public class Metrics {
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static volatile boolean enabled = Boolean.getBoolean("chess.metrics");
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true once the flight recorder is running, and with it any chance that the chess
+     * events are being recorded. Callers check this before touching an event class, because
+     * loading one sets the recorder's machinery going, which costs more than the rest of a
+     * command-line tool's startup.
+     *
+     * @return true if the flight recorder has been started
+     */
+    public static boolean isRecorderRunning() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Switches recording on or off for every timer.
+     *
+     * @param on true to record, false to make timers free
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Reads the clock for a call about to be timed, or returns Timer.OFF while metrics are off.
+     *
+     * @return the start time to pass to Timer.stop
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : Timer.OFF;
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use. Callers keep the timer in
+     * a field rather than looking it up on every call.
+     *
+     * @param name the timer's name, such as "Chess.makeMove"
+     * @return the timer
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Clears every timer's counts.
+     */
+    public static void reset() {
+        for (Timer timer : TIMERS.values()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * Renders every timer that has recorded a call as a table, one line per timer, with times in
+     * microseconds.
+     *
+     * @return the snapshot
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %12s %10s %10s %10s %10s\n", "timer", "count", "mean us", "p50 us",
+                "p99 us", "max us"));
+        for (Timer timer : TIMERS.values()) {
+            long count = timer.getCount();
+            if (count == 0) {
+                continue;
+            }
+            sb.append(String.format("%-28s %12d %10.2f %10.2f %10.2f %10.2f\n", timer.getName(), count,
+                    timer.getMeanNanos() / 1e3, timer.getP50Nanos() / 1e3, timer.getP99Nanos() / 1e3,
+                    timer.getMaxNanos() / 1e3));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints the snapshot to a stream at a fixed period on a daemon thread.
+     *
+     * @param period the time between snapshots
+     * @param unit the unit of period
+     * @param out the stream to print to
+     * @return the scheduled task, which can be cancelled to stop reporting
+     */
+    public static ScheduledFuture<?> startReporter(long period, TimeUnit unit, PrintStream out) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return executor.scheduleAtFixedRate(() -> {
+            if (enabled) {
+                out.print(snapshot());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Registers the control bean and one bean per existing timer with the platform MBean server.
+     * Timers created later are registered by calling this again.
+     */
+    public static synchronized void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName control = new ObjectName("chess:type=Metrics");
+            if (!server.isRegistered(control)) {
+                server.registerMBean(new Control(), control);
+            }
+            for (Timer timer : TIMERS.values()) {
+                ObjectName name = new ObjectName("chess:type=Timer,name=" + ObjectName.quote(timer.getName()));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(timer, name);
+                }
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register metrics beans", ex);
+        }
+    }
+
+    // The JMX face of the static switch and snapshot
+    private static class Control implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public String snapshot() {
+            return Metrics.snapshot();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
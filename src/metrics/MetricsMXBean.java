@@ -0,0 +1,23 @@
+package metrics;
+
+/**
+ * The MetricsMXBean interface is the JMX control for all timers, registered as
+ * "chess:type=Metrics". It switches recording on and off and renders the text snapshot.
+ */
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the text snapshot of every timer.
+     *
+     * @return the snapshot
+     */
+    String snapshot();
+
+    /**
+     * Clears every timer's counts.
+     */
+    void reset();
+}
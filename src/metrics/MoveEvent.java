@@ -0,0 +1,56 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The MoveEvent class is the flight recorder event for one call to Chess.makeMove. By default
+ * only moves slower than the threshold are recorded, so recording can stay on in production.
+ */
+@Name("chess.Move")
+@Label("Move")
+@Category("Chess")
+@Description("A move made in a Chess game, with the time spent validating it and detecting check")
+@Threshold("5 ms")
+public class MoveEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(MoveEvent.class);
+
+    @Label("Move")
+    public String move;
+
+    @Label("Player")
+    public String player;
+
+    @Label("Legal")
+    public boolean legal;
+
+    @Label("Validation Time")
+    @Description("Time spent finding the move among the legal moves")
+    @Timespan(Timespan.NANOSECONDS)
+    public long validationTime;
+
+    @Label("Check")
+    @Description("Whether the move gives check")
+    public boolean check;
+
+    @Label("Check Detection Time")
+    @Description("Time spent finding out whether the move gives check")
+    @Timespan(Timespan.NANOSECONDS)
+    public long checkTime;
+
+    /**
+     * Returns true if a recording has this event type switched on. Callers check this before
+     * creating an event, so no event object is allocated while nothing is recording.
+     *
+     * @return true if events of this type are being recorded
+     */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,62 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The SearchIterationEvent class is the flight recorder event for one iteration of the engine's
+ * iterative deepening search.
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Search"})
+@Description("One depth of an iterative deepening search")
+@Threshold("10 ms")
+public class SearchIterationEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(SearchIterationEvent.class);
+
+    @Label("Depth")
+    public int depth;
+
+    @Label("Nodes")
+    @Description("Nodes searched in this iteration")
+    public long nodes;
+
+    @Label("Score")
+    @Description("Score in centipawns for the side to move")
+    public int score;
+
+    @Label("Best Move")
+    public String bestMove;
+
+    @Label("Branching Factor")
+    @Description("Nodes of this iteration divided by nodes of the previous one")
+    public double branchingFactor;
+
+    @Label("Cutoff Rate")
+    @Description("Fraction of interior nodes that ended in a beta cutoff")
+    public double cutoffRate;
+
+    @Label("First Move Cutoff Rate")
+    @Description("Fraction of beta cutoffs caused by the first move tried, a measure of move ordering")
+    public double firstMoveCutoffRate;
+
+    @Label("Completed")
+    @Description("False if a node or time limit stopped the iteration early")
+    public boolean completed;
+
+    /**
+     * Returns true if a recording has this event type switched on. Callers check this before
+     * creating an event, so no event object is allocated while nothing is recording.
+     *
+     * @return true if events of this type are being recorded
+     */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
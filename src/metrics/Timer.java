@@ -0,0 +1,98 @@
+package metrics;
+
+/**
+ * The Timer class measures one kind of call: how often it happens and how long it takes. Calls
+ * are timed with a start/stop pair around the code being measured:
+ *
+ * <pre>
+ *     long start = timer.start();
+ *     ... work ...
+ *     timer.stop(start);
+ * </pre>
+ *
+ * While metrics are switched off, start returns OFF without reading the clock and stop ignores
+ * it, so an idle timer costs one field read per call.
+ */
+public class Timer implements TimerMXBean {
+    /** The value start returns while metrics are off. */
+    public static final long OFF = Long.MIN_VALUE;
+
+    private final String name;
+    private final LatencyHistogram histogram;
+
+    /**
+     * Creates a timer. Timers are normally obtained from Metrics.timer so they are registered.
+     *
+     * @param name the timer's name
+     */
+    public Timer(String name) {
+        this.name = name;
+        this.histogram = new LatencyHistogram();
+    }
+
+    /**
+     * Starts timing a call.
+     *
+     * @return the start time to pass to stop, or OFF if metrics are switched off
+     */
+    public long start() {
+        return Metrics.start();
+    }
+
+    /**
+     * Finishes timing a call started with start.
+     *
+     * @param start the value start returned
+     */
+    public void stop(long start) {
+        if (start != OFF) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a call whose duration was measured elsewhere, if metrics are switched on.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (Metrics.isEnabled()) {
+            histogram.record(nanos);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public double getMeanNanos() {
+        return histogram.getMean();
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return histogram.getPercentile(0.50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return histogram.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return histogram.getMax();
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+    }
+}
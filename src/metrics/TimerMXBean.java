@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * The TimerMXBean interface is the JMX view of one Timer, registered as
+ * "chess:type=Timer,name=...".
+ */
+public interface TimerMXBean {
+    String getName();
+
+    long getCount();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getMaxNanos();
+
+    /**
+     * Clears the timer's counts.
+     */
+    void reset();
+}
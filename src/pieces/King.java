@@ -7,7 +7,8 @@ import game.util.Point;
 
 /**
  * The King class represents a King chess piece. It handles basic movement rules,
- * castling, and checks if the King is in check or checkmate.
+ * castling, and checks if the King is in check. Whether a game has ended in checkmate is
+ * decided from the legal moves, by Chess.getWinner.
  */
 public class King extends Piece {
     private boolean hasMoved;
@@ -35,44 +36,13 @@ public class King extends Piece {
             for (int j = 0; j < 8; j++) {
                 Piece piece = board.getPieceAt(i, j);
                 if (piece == this) {
-                    return board.isSquareAttacked(new Point(j, i), getColor(), true);
+                    return board.isSquareAttacked(Point.of(j, i), getColor(), true);
                 }
             }
         }
         return false; // This should never happen
     }
 
-    /**
-     * Determines if the King is in checkmate, where no valid moves can save the King.
-     *
-     * @param board the current state of the chess board
-     * @return true if the King is in checkmate, false otherwise
-     */
-    public boolean isInCheckmate(Board board) {
-        // Check if the King is in check
-        if (!isInCheck(board)) {
-            return false;
-        }
-
-        // Check if the King can move to a square that would save it
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = board.getPieceAt(i, j);
-                if (piece != null && piece.getColor() != getColor()) {
-                    Point from = new Point(j, i);
-                    Color attackingColor = piece.getColor();
-
-                    // If an opponent's piece can move to this square, it is under attack
-                    if (piece.isValidMove(from, new Point(j, i), board, attackingColor, true)) {
-                        return false;
-                    }
-                }
-            }
-        }
-
-        return true;
-    }
-
     /**
      * Validates whether a move is legal for the King. The King can move one square
      * in any direction or perform castling if certain conditions are met.
@@ -100,14 +70,20 @@ public class King extends Piece {
 
         // Basic move: King can move one square in any direction
         if (rowDiff <= 1 && colDiff <= 1) {
-            Piece destinationPiece = board.getPieceAt(toCol, toRow);
+            // In check mode the question is only whether the King attacks the square, and asking
+            // the other King in check mode stops the two Kings from validating each other forever
+            if (checkMode) {
+                return true;
+            }
+            Piece destinationPiece = board.getPieceAt(toRow, toCol);
             if (destinationPiece == null || destinationPiece.getColor() != getColor()) {
-                return !board.isSquareAttacked(to, getColor(), false);
+                return !board.isSquareAttacked(to, getColor(), true);
             }
         }
 
-        // Castling: Check if the move is a castling move
-        if (!hasMoved && rowDiff == 0 && Math.abs(toCol - fromCol) == 2) {
+        // Castling: Check if the move is a castling move. A King never attacks two squares away,
+        // and validating a castle moves the Rook, so it is not asked in check mode
+        if (!checkMode && !hasMoved && rowDiff == 0 && Math.abs(toCol - fromCol) == 2) {
             return isCastlingValid(from, to, board);
         }
 
@@ -132,7 +108,7 @@ public class King extends Piece {
         int rookCol = isKingside ? 7 : 0;
 
         // Get the Rook
-        Piece rook = board.getPieceAt(rookCol, row);
+        Piece rook = board.getPieceAt(row, rookCol);
         if (!(rook instanceof Rook) || ((Rook) rook).hasMoved()) {
             return false; // Invalid if the Rook has moved or is missing
         }
@@ -147,13 +123,13 @@ public class King extends Piece {
 
         // Ensure the King is not in check, doesn't pass through check, and doesn't land in check
         for (int col = fromCol; col != toCol + direction; col += direction) {
-            if (board.isSquareAttacked(new Point(col, row), getColor(), false)) {
+            if (board.isSquareAttacked(Point.of(col, row), getColor(), false)) {
                 return false; // Castling fails if any square is under attack
             }
         }
 
         // Move the Rook to the appropriate position for castling
-        board.movePiece(new Point(rookCol, row), new Point(toCol - direction, row), getColor());
+        board.movePiece(Point.of(rookCol, row), Point.of(toCol - direction, row), getColor());
         ((Rook) rook).setHasMoved();
 
         return true;
@@ -166,6 +142,15 @@ public class King extends Piece {
         this.hasMoved = true;
     }
 
+    /**
+     * Checks if the King has moved at least once.
+     *
+     * @return true if the King has moved, false otherwise
+     */
+    public boolean hasMoved() {
+        return this.hasMoved;
+    }
+
     /**
      * Returns the symbol representing the King piece.
      *
@@ -40,7 +40,7 @@ public class Knight extends Piece {
 
         // Knights move in an "L" shape: two squares in one direction and one in the other
         if ((rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2)) {
-            Piece destinationPiece = board.getPieceAt(toCol, toRow);
+            Piece destinationPiece = board.getPieceAt(toRow, toCol);
             // Allow move if destination is empty or contains an opponent's piece
             return destinationPiece == null || destinationPiece.getColor() != getColor();
         }
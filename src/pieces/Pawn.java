@@ -64,7 +64,7 @@ public class Pawn extends Piece {
         }
 
         // En passant (additional logic required to track the previous move)
-        return Math.abs(toCol - fromCol) == 1 && toRow == fromRow + direction && board.getPieceAt(fromRow, toCol) != null
+        return Math.abs(toCol - fromCol) == 1 && toRow == fromRow + direction && board.getPieceAt(fromRow, toCol) instanceof Pawn
                 && ((Pawn) board.getPieceAt(fromRow, toCol)).canBeCapturedEnPassant(fromRow, fromCol);
     }
 
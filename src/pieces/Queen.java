@@ -41,8 +41,11 @@ public class Queen extends Piece {
         if (MoveUtils.isDiagonalMove(from, to)) {
             return MoveUtils.isDiagonalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
         }
-        return MoveUtils.isHorizontalClear(from.getY(), from.getX(), to.getY(), to.getX(), board) ||
-                MoveUtils.isVerticalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
+        // Only scan along the line of the move; scanning the other way would run off the board
+        if (from.getY() == to.getY()) {
+            return MoveUtils.isHorizontalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
+        }
+        return MoveUtils.isVerticalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
     }
 
     /**
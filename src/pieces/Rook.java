@@ -38,8 +38,11 @@ public class Rook extends Piece {
         }
 
         // Check for clear path horizontally or vertically
-        return MoveUtils.isHorizontalClear(from.getY(), from.getX(), to.getY(), to.getX(), board) ||
-                MoveUtils.isVerticalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
+        // Only scan along the line of the move; scanning the other way would run off the board
+        if (from.getY() == to.getY()) {
+            return MoveUtils.isHorizontalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
+        }
+        return MoveUtils.isVerticalClear(from.getY(), from.getX(), to.getY(), to.getX(), board);
     }
 
     /**
@@ -0,0 +1,325 @@
+package puzzle;
+
+import engine.Move;
+import engine.Position;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The MateSolver class proves or disproves that the side to move can force mate within a given
+ * number of moves, using depth-first proof-number search (df-pn). Every position carries a proof
+ * number, the fewest leaves that still have to be shown to be mates to prove it, and a disproof
+ * number, the fewest that have to be shown not to be. The search always expands the most proving
+ * node, going deeper only while the node's numbers stay under thresholds passed down from its
+ * parent, so a single forcing line is followed to the end while quiet alternatives are left alone.
+ *
+ * <p>Proof and disproof numbers are kept in a hash table with a fixed number of entries, allocated
+ * by the constructor. Positions are stored together with the number of plies left, so a position
+ * reached with a different number of moves to spare is a different entry and the search has no
+ * cycles. Each entry also records the nodes spent below it. When the table is three quarters
+ * full, entries that cost the fewest nodes are removed until it is half full, since they are the
+ * cheapest to find again; a full bucket likewise replaces its cheapest entry.
+ *
+ * <p>A solver reuses all of its buffers, so one instance per thread can check any number of
+ * puzzles without allocating. It is not thread-safe, except for stop().
+ */
+public class MateSolver {
+    /** The result when mate is forced within the given number of moves. */
+    public static final int PROVEN = 1;
+
+    /** The result when mate is not forced within the given number of moves. */
+    public static final int DISPROVEN = -1;
+
+    /** The result when the node limit ran out first. */
+    public static final int UNKNOWN = 0;
+
+    /** The longest mate the solver looks for, in moves of the side to mate. */
+    public static final int MAX_MOVES = 16;
+
+    private static final int INFINITE = Integer.MAX_VALUE / 2;  // Proof numbers are capped here
+    private static final int MAX_PLY = 2 * MAX_MOVES;
+    private static final int BUCKET = 4;  // Entries per hash bucket
+
+    private static final long[] PLY_KEYS = new long[MAX_PLY];  // Hashed in for the plies left
+
+    static {
+        SplittableRandom random = new SplittableRandom(0xDF_9A7EL);
+        for (int i = 0; i < MAX_PLY; i++) {
+            PLY_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private final int capacity;
+    private final long[] keys;  // Position and plies left, or 0 for an empty entry
+    private final int[] phis;  // Proof number at nodes of the side to mate, disproof number otherwise
+    private final int[] deltas;  // The other number
+    private final int[] work;  // Nodes searched below the entry, capped at Integer.MAX_VALUE
+    private int size;
+    private int collections;
+
+    private final int[] moves;  // Move lists for every ply, MAX_MOVES apart
+    private final long[] childKeys;  // Table key of the position after each move in moves
+    private final int[] childPhis;  // Numbers of the position after each move in moves
+    private final int[] childDeltas;
+    private int resultPhi;  // Numbers of the node the last call to search finished
+    private int resultDelta;
+    private Position position;
+    private long nodes;
+    private long nodeLimit;
+    private volatile boolean stopped;
+    private int bestMove;
+
+    /**
+     * Creates a solver whose table holds the given number of positions.
+     *
+     * @param tableSize the number of table entries, rounded up to a power of two of at least 1024;
+     *                  each takes 20 bytes
+     */
+    public MateSolver(int tableSize) {
+        int capacity = 1024;
+        while (capacity < tableSize) {
+            capacity *= 2;
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.phis = new int[capacity];
+        this.deltas = new int[capacity];
+        this.work = new int[capacity];
+        this.moves = new int[(MAX_PLY + 1) * Position.MAX_MOVES];
+        this.childKeys = new long[moves.length];
+        this.childPhis = new int[moves.length];
+        this.childDeltas = new int[moves.length];
+    }
+
+    /**
+     * Tries to prove that the side to move can mate within the given number of moves, whatever
+     * the defence. The position is left as it was. Entries from earlier calls stay in the table,
+     * so checking the same puzzle again at another length reuses the work.
+     *
+     * @param position the position
+     * @param mateIn the number of moves of the side to mate, the last of which gives mate
+     * @param maxNodes the number of nodes to stop after, or 0 for no limit
+     * @return PROVEN, DISPROVEN or UNKNOWN
+     * @throws IllegalArgumentException if mateIn is not between 1 and MAX_MOVES
+     */
+    public int solve(Position position, int mateIn, long maxNodes) {
+        if (mateIn < 1 || mateIn > MAX_MOVES) {
+            throw new IllegalArgumentException("Mate length must be between 1 and " + MAX_MOVES + ": " + mateIn);
+        }
+        this.position = position;
+        this.nodes = 0;
+        this.nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.stopped = false;
+        this.bestMove = Move.NONE;
+
+        int plies = 2 * mateIn - 1;
+        long key = tableKey(position.getKey(), plies);
+        search(0, plies, key, INFINITE, INFINITE);
+
+        if (resultPhi == 0) {
+            return PROVEN;
+        }
+        bestMove = Move.NONE;
+        return resultDelta == 0 ? DISPROVEN : UNKNOWN;
+    }
+
+    /**
+     * Asks a running solve to return as soon as possible. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the first move of the mate the last solve proved.
+     *
+     * @return the mating move, or Move.NONE if no mate was proved
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of positions in the table.
+     *
+     * @return the number of used entries
+     */
+    public int getTableSize() {
+        return size;
+    }
+
+    /**
+     * Returns how often the table has been thinned out to make room.
+     *
+     * @return the number of collections since the solver was created
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    // Expand a node until its proof or disproof number reaches its threshold, and leave the numbers
+    // in resultPhi and resultDelta. Even plies belong to the side to mate, where phi is the proof
+    // number; odd plies to the defender, where phi is the disproof number. Either way the side to
+    // move wants phi to reach 0.
+    private void search(int ply, int plies, long key, int thresholdPhi, int thresholdDelta) {
+        nodes++;
+        if (nodes >= nodeLimit) {
+            stopped = true;
+        }
+        long startNodes = nodes;
+
+        int offset = ply * Position.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if (count == 0) {
+            if (position.isInCheck() || ply % 2 == 0) {
+                finish(key, INFINITE, 0, 1);  // Mated, or the side to mate is stalemated
+            } else {
+                finish(key, 0, INFINITE, 1);  // The defender is stalemated
+            }
+            return;
+        }
+        if (plies == 0) {
+            finish(key, 0, INFINITE, 1);  // The defender survived every move
+            return;
+        }
+        if (plies == 1) {
+            // The last move must mate at once, which is settled here rather than one node per move
+            int mate = -1;
+            for (int i = offset; i < offset + count && mate < 0; i++) {
+                position.makeMove(moves[i]);
+                if (position.isInCheck() && position.generateMoves(moves, offset + Position.MAX_MOVES) == 0) {
+                    mate = i;
+                }
+                position.unmakeMove(moves[i]);
+            }
+            if (ply == 0 && mate >= 0) {
+                bestMove = moves[mate];
+            }
+            finish(key, mate >= 0 ? 0 : INFINITE, mate >= 0 ? INFINITE : 0, count);
+            return;
+        }
+
+        // Children start from the table, or as single unexplored leaves
+        for (int i = offset; i < offset + count; i++) {
+            position.makeMove(moves[i]);
+            childKeys[i] = tableKey(position.getKey(), plies - 1);
+            position.unmakeMove(moves[i]);
+            int slot = find(childKeys[i]);
+            childPhis[i] = slot >= 0 ? phis[slot] : 1;
+            childDeltas[i] = slot >= 0 ? deltas[slot] : 1;
+        }
+
+        int phi;
+        int delta;
+        while (true) {
+            // The side to move needs one child the opponent can not hold, and loses only if all hold
+            phi = INFINITE;
+            delta = 0;
+            int best = -1;
+            int secondDelta = INFINITE;
+            for (int i = offset; i < offset + count; i++) {
+                delta = Math.min(INFINITE, delta + childPhis[i]);
+                if (best < 0 || childDeltas[i] < phi) {
+                    secondDelta = phi;
+                    phi = childDeltas[i];
+                    best = i;
+                } else if (childDeltas[i] < secondDelta) {
+                    secondDelta = childDeltas[i];
+                }
+            }
+            if (ply == 0) {
+                bestMove = moves[best];
+            }
+            if (phi >= thresholdPhi || delta >= thresholdDelta || stopped) {
+                break;
+            }
+
+            // Search the most proving child until it is no longer the best or this node is done
+            int childPhi = (int) Math.min(INFINITE, (long) thresholdDelta - delta + childPhis[best]);
+            int childDelta = Math.min(thresholdPhi, Math.min(INFINITE, secondDelta + 1));
+            position.makeMove(moves[best]);
+            search(ply + 1, plies - 1, childKeys[best], childPhi, childDelta);
+            position.unmakeMove(moves[best]);
+            childPhis[best] = resultPhi;  // Kept here too, in case the table has let the entry go
+            childDeltas[best] = resultDelta;
+        }
+        finish(key, phi, delta, (int) Math.min(Integer.MAX_VALUE, nodes - startNodes + 1));
+    }
+
+    private void finish(long key, int phi, int delta, int nodesBelow) {
+        store(key, phi, delta, nodesBelow);
+        resultPhi = phi;
+        resultDelta = delta;
+    }
+
+    private static long tableKey(long positionKey, int plies) {
+        long key = positionKey ^ PLY_KEYS[plies];
+        return key == 0 ? 1 : key;  // 0 marks an empty entry
+    }
+
+    // The slot holding a key, or -1
+    private int find(long key) {
+        int bucket = (int) key & (capacity - BUCKET);
+        for (int slot = bucket; slot < bucket + BUCKET; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void store(long key, int phi, int delta, int nodesBelow) {
+        if (size >= capacity / 4 * 3) {
+            collect();
+        }
+        int bucket = (int) key & (capacity - BUCKET);
+        int target = -1;
+        for (int slot = bucket; slot < bucket + BUCKET; slot++) {
+            if (keys[slot] == key) {
+                target = slot;
+                nodesBelow = (int) Math.min(Integer.MAX_VALUE, (long) work[slot] + nodesBelow);
+                break;
+            }
+            if (keys[slot] == 0) {
+                if (target < 0 || keys[target] != 0) {
+                    target = slot;
+                }
+            } else if (target < 0 || keys[target] != 0 && work[slot] < work[target]) {
+                target = slot;  // The cheapest entry so far, in case there is no room
+            }
+        }
+        if (keys[target] == 0) {
+            size++;
+        }
+        keys[target] = key;
+        phis[target] = phi;
+        deltas[target] = delta;
+        work[target] = nodesBelow;
+    }
+
+    // Remove the entries that took the fewest nodes to compute until the table is half empty
+    private void collect() {
+        collections++;
+        for (long threshold = 1; size > capacity / 2; threshold *= 2) {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (keys[slot] != 0 && work[slot] <= threshold) {
+                    keys[slot] = 0;
+                    size--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package puzzle;
+
+import engine.Fen;
+import engine.Move;
+import engine.Position;
+import metrics.LatencyHistogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The PuzzleVerifier class checks a file of mate puzzles, one per line: a FEN, a tab and the
+ * number of moves the mate should take. Each puzzle is solved with a MateSolver on a pool of
+ * worker threads, and one result line per puzzle is written in input order: the FEN, the mate
+ * length, the verdict, the mating move, the nodes searched and the solve time in microseconds,
+ * separated by tabs.
+ *
+ * <p>The verdict is "mate" if the mate was proved, "no mate" if it was disproved, "unknown" if the
+ * node limit ran out and "ERR" with the reason for a line that is not a puzzle. When shorter mates
+ * are checked for, a proved puzzle that also has a mate one move shorter is reported as "shorter".
+ */
+public class PuzzleVerifier {
+    private final ExecutorService pool;
+    private final ThreadLocal<MateSolver> solvers;
+    private final long maxNodes;
+    private final boolean checkShorter;
+    private final LatencyHistogram solveTimes;
+
+    /**
+     * Creates a verifier.
+     *
+     * @param threads the number of worker threads
+     * @param tableSize the number of table entries of each thread's solver
+     * @param maxNodes the nodes to give up on a puzzle after, or 0 for no limit
+     * @param checkShorter whether to also look for a mate one move shorter than the puzzle's
+     */
+    public PuzzleVerifier(int threads, int tableSize, long maxNodes, boolean checkShorter) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.solvers = ThreadLocal.withInitial(() -> new MateSolver(tableSize));
+        this.maxNodes = maxNodes;
+        this.checkShorter = checkShorter;
+        this.solveTimes = new LatencyHistogram();
+    }
+
+    /**
+     * Verifies every puzzle and writes the results to the output.
+     *
+     * @param lines the puzzles
+     * @param output where to write the results
+     * @throws IOException if writing fails
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void verify(List<String> lines, Writer output) throws IOException, InterruptedException {
+        List<Future<String>> results = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            results.add(pool.submit(() -> verify(line)));
+        }
+        for (Future<String> result : results) {
+            try {
+                output.write(result.get());
+            } catch (ExecutionException ex) {
+                output.write("ERR " + ex.getCause());
+            }
+            output.write('\n');
+        }
+    }
+
+    /**
+     * Verifies one puzzle.
+     *
+     * @param line the FEN, a tab and the mate length
+     * @return the result line, without a trailing newline
+     */
+    public String verify(String line) {
+        StringBuilder sb = new StringBuilder(line.length() + 48);
+        int tab = line.lastIndexOf('\t');
+        Position position;
+        int mateIn;
+        try {
+            if (tab < 0) {
+                throw new IllegalArgumentException("Missing mate length");
+            }
+            position = Fen.parse(line.substring(0, tab));
+            mateIn = Integer.parseInt(line.substring(tab + 1).trim());
+        } catch (IllegalArgumentException ex) {
+            return sb.append(line).append("\tERR ").append(ex.getMessage()).toString();
+        }
+
+        MateSolver solver = solvers.get();
+        long start = System.nanoTime();
+        String verdict;
+        int move;
+        long nodes;
+        try {
+            int result = solver.solve(position, mateIn, maxNodes);
+            move = solver.getBestMove();
+            nodes = solver.getNodes();
+            if (result == MateSolver.PROVEN && checkShorter && mateIn > 1) {
+                boolean cooked = solver.solve(position, mateIn - 1, maxNodes) == MateSolver.PROVEN;
+                nodes += solver.getNodes();
+                verdict = cooked ? "shorter" : "mate";
+            } else {
+                verdict = result == MateSolver.PROVEN ? "mate" : result == MateSolver.DISPROVEN ? "no mate" : "unknown";
+            }
+        } catch (IllegalArgumentException ex) {
+            return sb.append(line).append("\tERR ").append(ex.getMessage()).toString();  // Mate length out of range
+        }
+        long nanos = System.nanoTime() - start;
+        solveTimes.record(nanos);
+
+        sb.append(line).append('\t').append(verdict).append('\t').append(move == Move.NONE ? "-" : Move.toString(move))
+                .append('\t').append(nodes).append('\t').append(nanos / 1000);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the solve times of every puzzle verified so far.
+     *
+     * @return the histogram of solve times in nanoseconds
+     */
+    public LatencyHistogram getSolveTimes() {
+        return solveTimes;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Verifies a puzzle file. Usage: java puzzle.PuzzleVerifier [options] input [output], where
+     * the results go to standard output if no output file is given. Options are "--threads n",
+     * "--nodes n" to give up on a puzzle after n nodes (10 million by default), "--table n" for
+     * the entries in each thread's table and "--shorter" to flag puzzles that have a shorter mate.
+     *
+     * @param args the options and files
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long nodes = 10_000_000;
+        int table = 1 << 18;
+        boolean shorter = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--nodes")) {
+                nodes = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--table")) {
+                table = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shorter")) {
+                shorter = true;
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(files.get(0)), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+
+        PuzzleVerifier verifier = new PuzzleVerifier(threads, table, nodes, shorter);
+        long start = System.nanoTime();
+        try (Writer output = files.size() > 1
+                ? Files.newBufferedWriter(Paths.get(files.get(1)), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            verifier.verify(lines, output);
+        } finally {
+            verifier.shutdown();
+        }
+
+        LatencyHistogram times = verifier.getSolveTimes();
+        System.err.printf("%d puzzles on %d threads in %.2f s; solve time mean %.2f ms, median %.2f ms, "
+                        + "99%% %.2f ms, max %.2f ms\n", lines.size(), threads, (System.nanoTime() - start) / 1e9,
+                times.getMean() / 1e6, times.getPercentile(0.5) / 1e6, times.getPercentile(0.99) / 1e6,
+                times.getMax() / 1e6);
+    }
+}
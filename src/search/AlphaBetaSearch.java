@@ -0,0 +1,163 @@
+package search;
+
+import game.SearchableGame;
+
+/**
+ * The AlphaBetaSearch class finds the best move in any SearchableGame with an iterative deepening
+ * negamax alpha-beta search. Each position's best move is remembered in a table keyed by the
+ * game's hash and tried first the next time the position is reached, which is where iterative
+ * deepening gets most of its cutoffs.
+ *
+ * <p>All buffers are allocated by the constructor, so searching does not allocate. A search is
+ * bound to one game and is not thread-safe, except for stop().
+ */
+public class AlphaBetaSearch {
+    /** The deepest line the search can follow. */
+    public static final int MAX_PLY = 64;
+
+    private static final int TABLE_SIZE = 1 << 16;  // Remembered best moves, a power of two
+    private static final int INFINITE = SearchableGame.WIN + 1;
+
+    private final SearchableGame game;
+    private final int maxMoves;
+    private final int[] moves;  // Move lists for every ply, maxMoves apart
+    private final long[] tableKeys;
+    private final int[] tableMoves;
+    private long nodes;
+    private long nodeLimit;
+    private volatile boolean stopped;
+    private int bestMove;
+    private int bestScore;
+    private int completedDepth;
+    private int rootBest;  // Best root move of the iteration in progress
+
+    /**
+     * Creates a search for a game.
+     *
+     * @param game the game to search; it is changed during a search and restored afterwards
+     */
+    public AlphaBetaSearch(SearchableGame game) {
+        this.game = game;
+        this.maxMoves = game.getMaxMoves();
+        this.moves = new int[(MAX_PLY + 1) * maxMoves];
+        this.tableKeys = new long[TABLE_SIZE];
+        this.tableMoves = new int[TABLE_SIZE];
+    }
+
+    /**
+     * Searches the game's current position to the given depth, or until the node limit runs out,
+     * and returns the best move of the last completed iteration.
+     *
+     * @param maxDepth the depth in plies to stop at
+     * @param maxNodes the number of nodes to stop after, or 0 for no limit
+     * @return the best move, or -1 if the game is over
+     */
+    public int search(int maxDepth, long maxNodes) {
+        nodes = 0;
+        nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        stopped = false;
+        bestMove = -1;
+        bestScore = 0;
+        completedDepth = 0;
+
+        for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            rootBest = -1;
+            int score = negamax(depth, 0, -INFINITE, INFINITE);
+            if (stopped && completedDepth > 0) {
+                break;  // An interrupted iteration is only trusted when there is nothing better
+            }
+            bestMove = rootBest;
+            bestScore = score;
+            completedDepth = depth;
+            if (stopped || rootBest < 0 || Math.abs(score) >= SearchableGame.WIN - MAX_PLY) {
+                break;  // Out of nodes, nothing to play, or the result is decided
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Asks a running search to return as soon as possible. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the score of the last completed iteration for the player to move. A win in n plies
+     * scores WIN - n.
+     *
+     * @return the score
+     */
+    public int getScore() {
+        return bestScore;
+    }
+
+    public int getDepth() {
+        return completedDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (nodes >= nodeLimit) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        nodes++;
+
+        int offset = ply * maxMoves;
+        int count = game.generateMoves(moves, offset);
+        if (count == 0) {
+            int result = game.getResult();
+            return result == SearchableGame.WIN ? result - ply : result == -SearchableGame.WIN ? result + ply : result;
+        }
+        if (depth == 0 || ply == MAX_PLY) {
+            return game.evaluate();
+        }
+
+        // Try the move that was best here last time first
+        long key = game.getKey();
+        int slot = (int) key & (TABLE_SIZE - 1);
+        if (tableKeys[slot] == key) {
+            for (int i = offset; i < offset + count; i++) {
+                if (moves[i] == tableMoves[slot]) {
+                    moves[i] = moves[offset];
+                    moves[offset] = tableMoves[slot];
+                    break;
+                }
+            }
+        }
+
+        int best = -1;
+        for (int i = offset; i < offset + count; i++) {
+            int move = moves[i];
+            game.makeMove(move);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            game.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score > alpha || best < 0) {
+                best = move;
+                if (ply == 0 && score > alpha) {
+                    rootBest = move;
+                }
+            }
+            if (score > alpha) {
+                alpha = score;
+                if (score >= beta) {
+                    break;
+                }
+            }
+        }
+
+        tableKeys[slot] = key;
+        tableMoves[slot] = best;
+        return alpha;
+    }
+}
@@ -0,0 +1,244 @@
+package search;
+
+import game.SearchableGame;
+
+/**
+ * The MonteCarloTreeSearch class finds a good move in any SearchableGame by Monte Carlo tree search
+ * with UCT selection. Each iteration walks down the tree picking the child with the best upper
+ * confidence bound, adds the children of the leaf it reaches, plays random moves from one of them
+ * and credits the outcome to every node on the way back up. The move played is the root child
+ * visited most often.
+ *
+ * <p>A playout that reaches the end of the game counts as a win, loss or draw; one cut off after
+ * PLAYOUT_LIMIT moves counts by the sign of the game's evaluation.
+ *
+ * <p>The tree is stored in parallel arrays with room for a fixed number of nodes, allocated by
+ * the constructor, so searching does not allocate. Once the tree is full it stops growing and
+ * further iterations only refine the statistics of the existing nodes. A search is bound to one
+ * game and is not thread-safe, except for stop().
+ */
+public class MonteCarloTreeSearch {
+    /** Random moves played at most from a new leaf before the evaluation decides. */
+    public static final int PLAYOUT_LIMIT = 200;
+
+    private static final double EXPLORATION = Math.sqrt(2);  // UCT exploration constant
+
+    private final SearchableGame game;
+    private final int capacity;
+    private final int[] moves;  // The move leading to each node
+    private final int[] firstChild;  // Index of each node's first child, or -1 if not expanded
+    private final int[] childCount;
+    private final int[] visits;
+    private final double[] wins;  // Playout results for the player who made the node's move
+    private final int[] path;  // Nodes from the root to the current leaf
+    private final int[] playout;  // Moves made during a playout, to take back afterwards
+    private final int[] buffer;  // Move generation scratch
+    private int size;
+    private long random;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a search for a game.
+     *
+     * @param game the game to search; it is changed during a search and restored afterwards
+     * @param capacity the most nodes the tree can hold
+     * @param seed the seed of the playouts' random moves
+     */
+    public MonteCarloTreeSearch(SearchableGame game, int capacity, long seed) {
+        this.game = game;
+        this.capacity = capacity;
+        this.moves = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.childCount = new int[capacity];
+        this.visits = new int[capacity];
+        this.wins = new double[capacity];
+        this.path = new int[capacity];
+        this.playout = new int[PLAYOUT_LIMIT];
+        this.buffer = new int[game.getMaxMoves()];
+        this.random = seed == 0 ? 1 : seed;
+    }
+
+    /**
+     * Searches the game's current position for the given number of iterations, or until stopped.
+     *
+     * @param iterations the number of playouts to run
+     * @return the most visited move, or -1 if the game is over
+     */
+    public int search(int iterations) {
+        stopped = false;
+        size = 1;
+        firstChild[0] = -1;
+        visits[0] = 0;
+        wins[0] = 0;
+
+        for (int i = 0; i < iterations && !stopped; i++) {
+            iterate();
+        }
+
+        int best = -1;
+        int first = firstChild[0];
+        for (int child = first; first >= 0 && child < first + childCount[0]; child++) {
+            if (best < 0 || visits[child] > visits[best]) {
+                best = child;
+            }
+        }
+        return best < 0 ? -1 : moves[best];
+    }
+
+    /**
+     * Asks a running search to return as soon as possible. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns how often the root has been visited, which is the number of iterations run.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return visits[0];
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return the tree size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the share of playouts through the most visited root move that the player to move
+     * won, counting draws as half.
+     *
+     * @return the win rate, from 0 to 1
+     */
+    public double getWinRate() {
+        int best = -1;
+        int first = firstChild[0];
+        for (int child = first; first >= 0 && child < first + childCount[0]; child++) {
+            if (best < 0 || visits[child] > visits[best]) {
+                best = child;
+            }
+        }
+        return best < 0 || visits[best] == 0 ? 0.5 : wins[best] / visits[best];
+    }
+
+    // One selection, expansion, playout and backup
+    private void iterate() {
+        int depth = 0;
+        int node = 0;
+        path[0] = 0;
+
+        // Selection: follow the best bound down to a node whose children are not known yet
+        while (firstChild[node] >= 0 && childCount[node] > 0) {
+            node = select(node);
+            game.makeMove(moves[node]);
+            path[++depth] = node;
+        }
+
+        // Expansion: add the children, then play out from the first of them
+        double result;
+        if (firstChild[node] < 0 && expand(node) && childCount[node] > 0) {
+            node = firstChild[node];
+            game.makeMove(moves[node]);
+            path[++depth] = node;
+            result = playout();
+        } else if (childCount[node] == 0 && firstChild[node] >= 0) {
+            result = toResult(game.getResult());  // The game is over here
+        } else {
+            result = playout();  // The tree is full
+        }
+
+        // Backup: result is for the player to move at the leaf, who did not make the leaf's move
+        for (int i = depth; i >= 0; i--) {
+            int n = path[i];
+            visits[n]++;
+            wins[n] += 1 - result;
+            result = 1 - result;
+            if (i > 0) {
+                game.unmakeMove(moves[n]);
+            }
+        }
+    }
+
+    // The child with the highest upper confidence bound, unvisited children first
+    private int select(int node) {
+        double logVisits = Math.log(visits[node]);
+        int best = -1;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            if (visits[child] == 0) {
+                return child;
+            }
+            double bound = wins[child] / visits[child] + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Add a node's children if there is room; a node without moves is expanded with no children
+    private boolean expand(int node) {
+        int count = game.generateMoves(buffer, 0);
+        if (size + count > capacity) {
+            return false;
+        }
+        firstChild[node] = size;
+        childCount[node] = count;
+        for (int i = 0; i < count; i++) {
+            moves[size] = buffer[i];
+            firstChild[size] = -1;
+            childCount[size] = 0;
+            visits[size] = 0;
+            wins[size] = 0;
+            size++;
+        }
+        return true;
+    }
+
+    // Play random moves to the end of the game or the playout limit, then take them back
+    private double playout() {
+        int played = 0;
+        double result;
+        while (true) {
+            int count = game.generateMoves(buffer, 0);
+            if (count == 0) {
+                result = toResult(game.getResult());
+                break;
+            }
+            if (played == PLAYOUT_LIMIT) {
+                result = toResult(game.evaluate());
+                break;
+            }
+            int move = buffer[nextInt(count)];
+            game.makeMove(move);
+            playout[played++] = move;
+        }
+
+        // Results flip with every move taken back, to stay with the player to move at the leaf
+        for (int i = played - 1; i >= 0; i--) {
+            game.unmakeMove(playout[i]);
+            result = 1 - result;
+        }
+        return result;
+    }
+
+    // A score for the player to move as a playout result: 1 for ahead, 0 for behind, half for level
+    private static double toResult(int score) {
+        return score > 0 ? 1 : score < 0 ? 0 : 0.5;
+    }
+
+    // A random number from 0 to bound - 1, from a xorshift generator
+    private int nextInt(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 33) % bound);
+    }
+}
@@ -0,0 +1,229 @@
+package server;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The Connection class is one client socket served by a Reactor. It splits incoming bytes into
+ * lines, runs each line as a protocol command, and buffers outgoing lines until the socket can
+ * take them. Lines may be sent from any thread; everything else runs on the owning reactor.
+ *
+ * <p>Commands: "NEW" opens a game, "JOIN id" joins one, "WATCH id" spectates one, "MOVE e2 e4"
+ * makes a move, "BOARD" prints the board, "STATS" prints the metrics snapshot and "QUIT"
+ * disconnects. Errors are answered with "ERR message".
+ */
+public class Connection {
+    private static final int INPUT_SIZE = 256;  // Longest command line accepted
+    private static final int OUTPUT_SIZE = 8192;  // Pending output allowed before a slow client is dropped
+
+    private final SocketChannel channel;
+    private final Reactor reactor;
+    private final SessionRegistry registry;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private SelectionKey key;
+    private volatile Session session;
+    private boolean closed;
+
+    /**
+     * Creates a connection for an accepted socket.
+     *
+     * @param channel the non-blocking socket channel
+     * @param reactor the reactor that serves the socket
+     * @param registry the registry of hosted games
+     */
+    public Connection(SocketChannel channel, Reactor reactor, SessionRegistry registry) {
+        this.channel = channel;
+        this.reactor = reactor;
+        this.registry = registry;
+        this.input = ByteBuffer.allocate(INPUT_SIZE);
+        this.output = ByteBuffer.allocate(OUTPUT_SIZE);
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    void setSession(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Reads whatever the client has sent and runs every complete line.
+     */
+    void read() {
+        int count;
+        try {
+            count = channel.read(input);
+        } catch (IOException ex) {
+            count = -1;
+        }
+        if (count < 0) {
+            close();
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < input.position(); i++) {
+            if (input.get(i) == '\n') {
+                int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+                String line = new String(input.array(), start, end - start, StandardCharsets.US_ASCII);
+                start = i + 1;
+                handle(line);
+                if (closed) {
+                    return;
+                }
+            }
+        }
+
+        input.limit(input.position());
+        input.position(start);
+        input.compact();
+        if (!input.hasRemaining()) {
+            send("ERR Line too long");
+            close();
+        }
+    }
+
+    private void handle(String line) {
+        try {
+            if (line.equals("NEW")) {
+                checkNotPlaying();
+                Session created = registry.create(this);
+                session = created;
+                send("GAME " + created.getId() + " 1");
+            } else if (line.startsWith("JOIN ")) {
+                checkNotPlaying();
+                registry.get(Integer.parseInt(line.substring(5).trim())).join(this);
+            } else if (line.startsWith("WATCH ")) {
+                checkNotPlaying();
+                registry.get(Integer.parseInt(line.substring(6).trim())).watch(this);
+            } else if (line.startsWith("MOVE ")) {
+                currentSession().move(this, line.substring(5));
+            } else if (line.equals("BOARD")) {
+                currentSession().sendBoard(this);
+            } else if (line.equals("STATS")) {
+                send(Metrics.snapshot() + "END");
+            } else if (line.equals("QUIT")) {
+                close();
+            } else {
+                send("ERR Unknown command");
+            }
+        } catch (IllegalArgumentException ex) {
+            send("ERR " + ex.getMessage());
+        }
+    }
+
+    private void checkNotPlaying() {
+        if (session != null) {
+            throw new IllegalArgumentException("Already in a game");
+        }
+    }
+
+    private Session currentSession() {
+        Session current = session;
+        if (current == null) {
+            throw new IllegalArgumentException("Not in a game");
+        }
+        return current;
+    }
+
+    /**
+     * Queues a line for the client and writes as much as the socket accepts right away.
+     * A client that falls more than OUTPUT_SIZE bytes behind is disconnected.
+     *
+     * @param line the line to send, without the trailing newline; it is copied before returning
+     */
+    public void send(CharSequence line) {
+        boolean overflow;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            overflow = !put(line) || !put("\n");
+            if (!overflow) {
+                flush();
+            }
+        }
+        if (overflow) {
+            reactor.execute(this::close);
+        }
+    }
+
+    // Append text to the output buffer as UTF-8, returning false if it does not fit
+    private boolean put(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (length > output.remaining()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                output.put((byte) c);
+            } else if (c < 0x800) {
+                output.put((byte) (0xC0 | (c >> 6)));
+                output.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                output.put((byte) (0xE0 | (c >> 12)));
+                output.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                output.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes buffered output and asks the reactor for a write event if some is left over.
+     */
+    synchronized void flush() {
+        output.flip();
+        try {
+            channel.write(output);
+        } catch (IOException ex) {
+            output.clear();
+            reactor.execute(this::close);
+            return;
+        }
+        output.compact();
+
+        int ops = output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key != null && key.isValid() && key.interestOps() != ops) {
+            key.interestOps(ops);
+            reactor.wakeup();
+        }
+    }
+
+    /**
+     * Closes the socket and leaves the current game. Runs on the owning reactor.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        Session current = session;
+        if (current != null) {
+            current.leave(this);
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // Nothing more to do for a socket that fails to close
+        }
+    }
+}
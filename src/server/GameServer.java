@@ -0,0 +1,81 @@
+package server;
+
+import game.GameMetrics;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GameServer class hosts many Chess games over a line-based TCP protocol (see Connection).
+ * The main thread accepts sockets and deals them out round-robin to one Reactor per core.
+ */
+public class GameServer {
+    public static final int DEFAULT_PORT = 7777;
+
+    private final SessionRegistry registry;
+    private final Reactor[] reactors;
+
+    /**
+     * Creates a server with the given number of reactor threads.
+     *
+     * @param threads the number of reactors
+     * @throws IOException if a selector cannot be opened
+     */
+    public GameServer(int threads) throws IOException {
+        this.registry = new SessionRegistry();
+        this.reactors = new Reactor[threads];
+        for (int i = 0; i < threads; i++) {
+            reactors[i] = new Reactor(registry);
+            Thread thread = new Thread(reactors[i], "reactor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public SessionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Accepts connections on the given port until the process is stopped.
+     *
+     * @param port the TCP port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public void serve(int port) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            int next = 0;
+            while (true) {
+                SocketChannel channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            }
+        }
+    }
+
+    /**
+     * Starts the server. Usage: java server.GameServer [port]. Rule-check metrics are published
+     * over JMX; run with -Dchess.metrics=true to record from the start, and with
+     * -Dchess.metrics.period=seconds to also print a snapshot periodically.
+     *
+     * @param args an optional port number
+     * @throws IOException if the server cannot start
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameMetrics.registerMBeans();
+        long period = Long.getLong("chess.metrics.period", 0);
+        if (period > 0) {
+            Metrics.startReporter(period, TimeUnit.SECONDS, System.out);
+        }
+        GameServer server = new GameServer(Runtime.getRuntime().availableProcessors());
+        System.out.printf("Hosting games on port %d.\n", port);
+        server.serve(port);
+    }
+}
@@ -0,0 +1,194 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The LoadGenerator class plays many games against a GameServer at once and reports the move
+ * round-trip time: from sending "MOVE" until the server pushes the accepted move back. Each game
+ * walks a knight around a loop on both sides, so every move is legal. The loops have different
+ * lengths, so the game only ends by threefold repetition after 48 moves.
+ */
+public class LoadGenerator {
+    // White's knight loops through four squares and Black's through six, so the starting
+    // position only comes back every 24 plies
+    private static final String[] MOVES = {
+            "b1 c3", "g8 f6", "c3 b5", "f6 d5", "b5 a3", "d5 e3", "a3 b1", "e3 f5",
+            "b1 c3", "f5 h6", "c3 b5", "h6 g8", "b5 a3", "g8 f6", "a3 b1", "f6 d5",
+            "b1 c3", "d5 e3", "c3 b5", "e3 f5", "b5 a3", "f5 h6", "a3 b1", "h6 g8",
+    };
+
+    private final Selector selector;
+    private final int movesPerGame;
+    private long[] samples;  // Round-trip times in nanoseconds
+    private int sampleCount;
+    private int gamesRunning;
+
+    private LoadGenerator(int movesPerGame) throws IOException {
+        this.selector = Selector.open();
+        this.movesPerGame = movesPerGame;
+        this.samples = new long[1024];
+    }
+
+    // One simulated game: the two players' sockets and how far the game has got
+    private class Game {
+        private final Player white;
+        private final Player black;
+        private int ply;
+        private long sentAt;
+
+        Game(InetSocketAddress address) throws IOException {
+            this.white = new Player(this, address);
+            this.black = new Player(this, address);
+        }
+
+        void onLine(Player player, String line) throws IOException {
+            if (player == white && line.startsWith("GAME ")) {
+                black.send("JOIN " + line.split(" ")[1]);
+            } else if (player == white && line.startsWith("START")) {
+                sendMove();
+            } else if (player == mover() && line.equals("MOVED " + MOVES[ply % MOVES.length])) {
+                record(System.nanoTime() - sentAt);
+                ply++;
+                if (ply < movesPerGame) {
+                    sendMove();
+                } else {
+                    white.close();
+                    black.close();
+                    gamesRunning--;
+                }
+            } else if (line.startsWith("OVER")) {
+                // Drawn by repetition before reaching movesPerGame; the next MOVE is already sent
+                white.close();
+                black.close();
+                gamesRunning--;
+            } else if (line.startsWith("ERR") || line.startsWith("LEFT")) {
+                System.out.println("**Game stopped: " + line);
+                white.close();
+                black.close();
+                gamesRunning--;
+            }
+        }
+
+        // The player to move; the echo of the previous move may still reach it after its own MOVE
+        private Player mover() {
+            return ply % 2 == 0 ? white : black;
+        }
+
+        private void sendMove() throws IOException {
+            sentAt = System.nanoTime();
+            mover().send("MOVE " + MOVES[ply % MOVES.length]);
+        }
+    }
+
+    // One client socket, read through the shared selector
+    private class Player {
+        private final Game game;
+        private final SocketChannel channel;
+        private final ByteBuffer input;
+
+        Player(Game game, InetSocketAddress address) throws IOException {
+            this.game = game;
+            this.channel = SocketChannel.open(address);
+            this.input = ByteBuffer.allocate(4096);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void send(String line) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                close();
+                return;
+            }
+            int start = 0;
+            for (int i = 0; i < input.position(); i++) {
+                if (input.get(i) == '\n') {
+                    game.onLine(this, new String(input.array(), start, i - start, StandardCharsets.UTF_8));
+                    start = i + 1;
+                }
+            }
+            input.limit(input.position());
+            input.position(start);
+            input.compact();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private void record(long nanos) {
+        if (sampleCount == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[sampleCount++] = nanos;
+    }
+
+    private void run(InetSocketAddress address, int games) throws IOException {
+        Game[] running = new Game[games];
+        for (int i = 0; i < games; i++) {
+            running[i] = new Game(address);
+        }
+        gamesRunning = games;
+
+        long start = System.nanoTime();
+        for (Game game : running) {
+            game.white.send("NEW");
+        }
+        while (gamesRunning > 0) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isReadable()) {
+                    ((Player) key.attachment()).read();
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(samples, 0, sampleCount);
+        System.out.printf("%d games, %d moves in %.2f s (%.0f moves/s)\n", games, sampleCount,
+                elapsed / 1e9, sampleCount / (elapsed / 1e9));
+        System.out.printf("round trip p50 %.3f ms, p99 %.3f ms, max %.3f ms\n",
+                percentile(0.50) / 1e6, percentile(0.99) / 1e6, percentile(1.0) / 1e6);
+    }
+
+    private long percentile(double fraction) {
+        if (sampleCount == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sampleCount) - 1;
+        return samples[Math.max(0, index)];
+    }
+
+    /**
+     * Runs the load test. Usage: java server.LoadGenerator [host] [port] [games] [moves per game].
+     *
+     * @param args optional host, port, number of concurrent games and moves per game
+     * @throws IOException if the server cannot be reached
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+        new LoadGenerator(moves).run(new InetSocketAddress(host, port), games);
+    }
+}
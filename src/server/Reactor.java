@@ -0,0 +1,92 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The Reactor class runs one selector loop that serves many connections on a single thread.
+ * The server starts one reactor per core and spreads accepted sockets across them, so a
+ * connection costs two small buffers rather than a thread.
+ */
+public class Reactor implements Runnable {
+    private final Selector selector;
+    private final SessionRegistry registry;
+    private final ConcurrentLinkedQueue<Runnable> tasks;  // Work handed over from other threads
+
+    /**
+     * Creates a reactor with its own selector.
+     *
+     * @param registry the registry of hosted games
+     * @throws IOException if the selector cannot be opened
+     */
+    public Reactor(SessionRegistry registry) throws IOException {
+        this.selector = Selector.open();
+        this.registry = registry;
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Hands an accepted socket to this reactor.
+     *
+     * @param channel the accepted socket
+     */
+    public void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel, this, registry);
+                connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException ex) {
+                System.out.println("**Could not register connection: " + ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the reactor thread.
+     *
+     * @param task the task to run
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+            } catch (IOException ex) {
+                System.out.println("**Selector failed: " + ex.getMessage());
+                return;
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.read();
+                }
+            }
+        }
+    }
+}
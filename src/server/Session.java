@@ -0,0 +1,183 @@
+package server;
+
+import game.BoardRenderer;
+import game.Chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Session class is one hosted game: a Chess instance and the connections of its two
+ * players. Moves are validated by the Chess rules and, once accepted, pushed to both players.
+ * Both players' connections may be served by different reactor threads, so all access to the
+ * game is synchronized on the session.
+ *
+ * <p>Spectators get the whole board when they start watching and after that one "DIFF" line per
+ * move listing only the changed squares. The line is rendered once and sent to every spectator.
+ */
+public class Session {
+    private final int id;
+    private final Chess game;
+    private final SessionRegistry registry;
+    private final List<Connection> spectators;
+    private final BoardRenderer renderer;  // Remembers the board as spectators last saw it
+    private final StringBuilder text;  // Reused for rendering boards and diffs
+    private Connection white;
+    private Connection black;
+
+    /**
+     * Creates a session waiting for its second player.
+     *
+     * @param id the session id
+     * @param registry the registry that hosts the session
+     * @param white the connection of the player who created the game
+     */
+    public Session(int id, SessionRegistry registry, Connection white) {
+        this.id = id;
+        this.game = new Chess();
+        this.registry = registry;
+        this.white = white;
+        this.spectators = new ArrayList<>();
+        this.renderer = new BoardRenderer();
+        this.text = new StringBuilder(BoardRenderer.RENDERED_LENGTH + 8);
+        renderDiff();  // Start from the initial board, so the first diff covers only the first move
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Seats the second player and tells both players the game has started.
+     *
+     * @param connection the joining player's connection
+     * @throws IllegalArgumentException if the game already has two players
+     */
+    public synchronized void join(Connection connection) {
+        if (black != null || white == null) {
+            throw new IllegalArgumentException("Game " + id + " is not open");
+        }
+        black = connection;
+        black.setSession(this);
+        black.send("GAME " + id + " 2");
+        white.send("START " + id);
+        black.send("START " + id);
+    }
+
+    /**
+     * Makes a move for the player on the given connection and pushes it to both players.
+     *
+     * @param connection the connection the move arrived on
+     * @param move the move text, such as "e2 e4"
+     * @throws IllegalArgumentException if it is not the player's turn or the move is illegal
+     */
+    public synchronized void move(Connection connection, String move) {
+        if (black == null) {
+            throw new IllegalArgumentException("Waiting for an opponent");
+        }
+        Connection mover = game.getNextPlayer() == 1 ? white : black;
+        if (connection != mover) {
+            throw new IllegalArgumentException("Not your turn");
+        }
+
+        game.makeMove(move);
+
+        String update = "MOVED " + move;
+        white.send(update);
+        black.send(update);
+
+        renderDiff();
+        for (Connection spectator : spectators) {
+            spectator.send(text);
+        }
+
+        if (game.isGameOver()) {
+            String result = "OVER " + game.getWinner();
+            white.send(result);
+            black.send(result);
+            for (Connection spectator : spectators) {
+                spectator.send(result);
+            }
+            end();
+        }
+    }
+
+    /**
+     * Sends the current board to a player, followed by a line reading "END".
+     *
+     * @param connection the connection to send the board to
+     */
+    public synchronized void sendBoard(Connection connection) {
+        text.setLength(0);
+        try {
+            BoardRenderer.render(game.getBoard(), text);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);  // A StringBuilder never throws IOException
+        }
+        connection.send(text.append("END"));
+    }
+
+    /**
+     * Adds a spectator and sends them the current board, followed by a line reading "END".
+     *
+     * @param connection the spectator's connection
+     * @throws IllegalArgumentException if the game has ended
+     */
+    public synchronized void watch(Connection connection) {
+        if (white == null) {
+            throw new IllegalArgumentException("Game " + id + " is not running");
+        }
+        spectators.add(connection);
+        connection.setSession(this);
+        sendBoard(connection);
+    }
+
+    // Render "DIFF" and the squares changed since the last diff into the shared text buffer
+    private void renderDiff() {
+        text.setLength(0);
+        text.append("DIFF");
+        try {
+            renderer.renderChanges(game.getBoard(), text);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);  // A StringBuilder never throws IOException
+        }
+    }
+
+    /**
+     * Removes a player who disconnected and tells the opponent and spectators, or removes a
+     * spectator.
+     *
+     * @param connection the connection that closed
+     */
+    public synchronized void leave(Connection connection) {
+        if (spectators.remove(connection)) {
+            connection.setSession(null);
+            return;
+        }
+        Connection other = connection == white ? black : white;
+        if (other != null) {
+            other.send("LEFT " + id);
+        }
+        for (Connection spectator : spectators) {
+            spectator.send("LEFT " + id);
+        }
+        end();
+    }
+
+    private void end() {
+        if (white != null) {
+            white.setSession(null);
+        }
+        if (black != null) {
+            black.setSession(null);
+        }
+        for (Connection spectator : spectators) {
+            spectator.setSession(null);
+        }
+        spectators.clear();
+        white = null;
+        black = null;
+        registry.remove(id);
+    }
+}
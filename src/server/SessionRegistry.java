@@ -0,0 +1,65 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SessionRegistry class keeps track of every game hosted by the server, keyed by id.
+ */
+public class SessionRegistry {
+    private final ConcurrentHashMap<Integer, Session> sessions;
+    private final AtomicInteger nextId;
+
+    /**
+     * Creates an empty registry.
+     */
+    public SessionRegistry() {
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextId = new AtomicInteger(1);
+    }
+
+    /**
+     * Opens a new game with the given connection playing White.
+     *
+     * @param white the connection of the player creating the game
+     * @return the new session
+     */
+    public Session create(Connection white) {
+        Session session = new Session(nextId.getAndIncrement(), this, white);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * Returns the game with the given id.
+     *
+     * @param id the session id
+     * @return the session
+     * @throws IllegalArgumentException if there is no such game
+     */
+    public Session get(int id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("No game " + id);
+        }
+        return session;
+    }
+
+    /**
+     * Forgets a finished game.
+     *
+     * @param id the session id
+     */
+    public void remove(int id) {
+        sessions.remove(id);
+    }
+
+    /**
+     * Returns the number of games currently hosted.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
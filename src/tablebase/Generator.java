@@ -0,0 +1,494 @@
+package tablebase;
+
+import engine.Attacks;
+import engine.Move;
+import engine.Position;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * The Generator class builds endgame tables by retrograde analysis. Every position is first
+ * classified by its own moves: mates, stalemates and moves that capture or promote into a smaller
+ * table are settled right away. The generator then works backwards one ply at a time: positions
+ * that can move into a loss become wins, and positions whose every move leads to a win for the
+ * opponent become losses. Each pass is split across a fork/join pool.
+ *
+ * <p>Positions are generated without castling or en passant rights. Tables of up to five pieces
+ * are supported; a five-piece table needs four bytes of heap per index while it is built.
+ */
+public class Generator {
+    public static final int MAX_PIECES = 5;
+
+    // Working values during generation; a mate in d plies is stored as MATE + d
+    private static final int UNKNOWN = 0;
+    private static final int BROKEN = 1;
+    private static final int DRAWN = 2;
+    private static final int MATE = 3;
+
+    // Each entry's state is packed into one int: the working value in bits 0-10, the number of
+    // children not yet known to lose in bits 11-18, and the best exit to another table in bits 19-29
+    private static final int VALUE_MASK = (1 << 11) - 1;
+    private static final int COUNTER_SHIFT = 11;
+    private static final int COUNTER_ONE = 1 << COUNTER_SHIFT;
+    private static final int COUNTER_MASK = 255 << COUNTER_SHIFT;
+    private static final int EXIT_SHIFT = 19;
+    private static final int MAX_PLIES = VALUE_MASK - MATE;
+
+    private static final int CHUNK = 4096;  // Indices handled by one fork/join leaf task
+
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Tablebases tablebases;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a generator that reads smaller tables from, and adds new tables to, the given set.
+     *
+     * @param tablebases the tables used for captures and promotions
+     * @param threads the number of worker threads
+     */
+    public Generator(Tablebases tablebases, int threads) {
+        this.tablebases = tablebases;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Generates the table for a material, after first generating any smaller table it captures
+     * or promotes into that is not available yet. Tables are written to the given directory.
+     *
+     * @param material the material to generate
+     * @param directory the directory to write table files to
+     * @return the generated table
+     * @throws IOException if a table file cannot be written
+     * @throws IllegalArgumentException if the material has more than MAX_PIECES pieces
+     */
+    public Tablebase generate(Material material, Path directory) throws IOException {
+        material = material.canonical();
+        if (material.pieceCount() > MAX_PIECES) {
+            throw new IllegalArgumentException("Tables are limited to " + MAX_PIECES + " pieces: " + material);
+        }
+
+        for (int piece = 0; piece < 16; piece++) {
+            if (material.count(piece) == 0) {
+                continue;
+            }
+            generateMissing(material.with(piece, -1), directory);
+            if (Position.typeOf(piece) == Position.PAWN) {
+                for (int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+                    int promoted = Position.piece(Position.colorOf(piece), type);
+                    generateMissing(material.with(piece, -1).with(promoted, 1), directory);
+                }
+            }
+        }
+
+        Run run = new Run(material);
+        run.solve();
+        Path file = directory.resolve(material + Tablebase.EXTENSION);
+        run.write(file);
+        Tablebase table = Tablebase.open(file);
+        tablebases.add(table);
+        return table;
+    }
+
+    private void generateMissing(Material material, Path directory) throws IOException {
+        if (!tablebases.contains(material)) {
+            generate(material, directory);
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // The state of one table while it is being generated
+    private class Run {
+        private final Material material;
+        private final long size;
+        private final int[] states;
+        private final ThreadLocal<Worker> workers;
+        private final LongAccumulator highest;  // Longest mate assigned so far
+        private final LongAccumulator longestExit;
+
+        Run(Material material) {
+            this.material = material;
+            this.size = new Indexer(material).size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Table too large to generate: " + material);
+            }
+            this.states = new int[(int) size];
+            this.workers = ThreadLocal.withInitial(() -> new Worker(material));
+            this.highest = new LongAccumulator(Math::max, -1);
+            this.longestExit = new LongAccumulator(Math::max, 0);
+        }
+
+        void solve() {
+            forEachIndex(this::classify);
+            for (int ply = 1; ply <= Math.max(highest.get() + 1, longestExit.get()); ply++) {
+                if (ply > MAX_PLIES) {
+                    throw new IllegalStateException("Mate too long to store in " + material);
+                }
+                int current = ply;
+                forEachIndex((worker, index) -> retract(worker, index, current));
+            }
+            for (int i = 0; i < states.length; i++) {
+                if ((states[i] & VALUE_MASK) == UNKNOWN) {
+                    states[i] = DRAWN;
+                }
+            }
+        }
+
+        // Settle what a position's own moves decide: mate, stalemate, and exits to other tables
+        private void classify(Worker worker, int index) {
+            Position position = worker.position;
+            if (!worker.indexer.decode(index, position)) {
+                states[index] = BROKEN;
+                return;
+            }
+
+            int count = position.generateMoves(worker.moves, 0);
+            if (count == 0) {
+                if (position.isInCheck()) {
+                    assign(index, 0);
+                } else {
+                    states[index] = DRAWN;
+                }
+                return;
+            }
+
+            int children = 0;
+            int winExit = 0;
+            int lossExit = 0;
+            boolean drawExit = false;
+            for (int i = 0; i < count; i++) {
+                int move = worker.moves[i];
+                if (!Move.isCapture(move) && Move.promotion(move) == 0) {
+                    position.makeMove(move);
+                    worker.indices[children++] = (int) worker.indexer.encode(position);
+                    position.unmakeMove(move);
+                    continue;
+                }
+
+                position.makeMove(move);
+                int value = tablebases.probe(position);
+                position.unmakeMove(move);
+                if (value == Tablebase.NOT_FOUND) {
+                    throw new IllegalStateException("Missing table below " + material);
+                } else if (Tablebase.isLoss(value)) {
+                    int plies = Tablebase.distanceToMate(value) + 1;
+                    winExit = winExit == 0 ? plies : Math.min(winExit, plies);
+                } else if (Tablebase.isWin(value)) {
+                    lossExit = Math.max(lossExit, Tablebase.distanceToMate(value) + 1);
+                } else {
+                    drawExit = true;
+                }
+            }
+
+            // Symmetric moves can lead to the same entry, which counts as one child
+            int inTable = distinct(worker.indices, children);
+            if (inTable == 0) {
+                if (winExit != 0) {
+                    assign(index, winExit);
+                } else if (drawExit) {
+                    states[index] = DRAWN;
+                } else {
+                    assign(index, lossExit);
+                }
+                return;
+            }
+
+            // The counter covers the children still open; a winning or drawing exit adds one that
+            // never closes, because such a position can never be lost
+            int counter = inTable + (winExit != 0 || drawExit ? 1 : 0);
+            int exit = winExit != 0 ? winExit : (drawExit ? 0 : lossExit);
+            states[index] = (counter << COUNTER_SHIFT) | (exit << EXIT_SHIFT);
+            longestExit.accumulate(exit);
+        }
+
+        // Pass for one ply: spread the results found on the previous ply to their predecessors
+        private void retract(Worker worker, int index, int ply) {
+            int state = states[index];
+            int value = state & VALUE_MASK;
+            if (value == UNKNOWN && ply % 2 == 1 && (state >>> EXIT_SHIFT) == ply) {
+                win(index, ply);
+                return;
+            }
+            if (value != MATE + ply - 1) {
+                return;
+            }
+
+            Position position = worker.position;
+            worker.indexer.decode(index, position);
+            worker.found = 0;
+            int mover = position.getSideToMove() ^ 1;
+            for (int sq = 0; sq < 64; sq++) {
+                int piece = position.pieceAt(sq);
+                if (piece == Position.EMPTY || Position.colorOf(piece) != mover) {
+                    continue;
+                }
+
+                switch (Position.typeOf(piece)) {
+                    case Position.PAWN:
+                        int back = mover == Position.WHITE ? 8 : -8;
+                        int from = sq + back;
+                        if ((from >> 3) == 0 || (from >> 3) == 7 || position.pieceAt(from) != Position.EMPTY) {
+                            break;
+                        }
+                        unmove(worker, from, sq);
+                        int doubleRow = mover == Position.WHITE ? 4 : 3;
+                        if ((sq >> 3) == doubleRow && position.pieceAt(from + back) == Position.EMPTY) {
+                            unmove(worker, from + back, sq);
+                        }
+                        break;
+                    case Position.KNIGHT:
+                        unmoveSteps(worker, Attacks.KNIGHT[sq], sq);
+                        break;
+                    case Position.KING:
+                        unmoveSteps(worker, Attacks.KING[sq], sq);
+                        break;
+                    case Position.BISHOP:
+                        unmoveSlides(worker, Attacks.NORTH_EAST, 8, sq);
+                        break;
+                    case Position.ROOK:
+                        unmoveSlides(worker, Attacks.NORTH, Attacks.NORTH_EAST, sq);
+                        break;
+                    default:
+                        unmoveSlides(worker, Attacks.NORTH, 8, sq);
+                        break;
+                }
+            }
+
+            // Update each predecessor entry once, however many symmetric moves lead here from it
+            int previous = distinct(worker.indices, worker.found);
+            for (int i = 0; i < previous; i++) {
+                update(worker.indices[i], ply);
+            }
+        }
+
+        private void unmoveSteps(Worker worker, int[] targets, int to) {
+            for (int from : targets) {
+                if (worker.position.pieceAt(from) == Position.EMPTY) {
+                    unmove(worker, from, to);
+                }
+            }
+        }
+
+        private void unmoveSlides(Worker worker, int firstDir, int endDir, int to) {
+            for (int dir = firstDir; dir < endDir; dir++) {
+                for (int from : Attacks.RAYS[to][dir]) {
+                    if (worker.position.pieceAt(from) != Position.EMPTY) {
+                        break;
+                    }
+                    unmove(worker, from, to);
+                }
+            }
+        }
+
+        // Take back the quiet move from -> to and record the entry of the position it came from
+        private void unmove(Worker worker, int from, int to) {
+            Position position = worker.position;
+            int piece = position.pieceAt(to);
+            int mover = Position.colorOf(piece);
+            position.setPiece(to, Position.EMPTY);
+            position.setPiece(from, piece);
+            position.setSideToMove(mover);
+            worker.indices[worker.found++] = (int) worker.indexer.encode(position);
+            position.setPiece(from, Position.EMPTY);
+            position.setPiece(to, piece);
+            position.setSideToMove(mover ^ 1);
+        }
+
+        private void update(int previous, int ply) {
+            if (ply % 2 == 1) {
+                // The move leads to a loss for the opponent, so the previous position is won
+                win(previous, ply);
+                return;
+            }
+
+            int state;
+            int next;
+            do {
+                state = (int) STATES.getVolatile(states, previous);
+                if ((state & VALUE_MASK) != UNKNOWN) {
+                    return;
+                }
+                next = state - COUNTER_ONE;
+                if ((next & COUNTER_MASK) == 0) {
+                    // Every move loses: the defender picks the longest line, exits included
+                    next = MATE + Math.max(ply, state >>> EXIT_SHIFT);
+                }
+            } while (!STATES.compareAndSet(states, previous, state, next));
+
+            if ((next & COUNTER_MASK) == 0) {
+                highest.accumulate(next - MATE);
+            }
+        }
+
+        private void win(int index, int ply) {
+            int state;
+            do {
+                state = (int) STATES.getVolatile(states, index);
+                if ((state & VALUE_MASK) != UNKNOWN) {
+                    return;
+                }
+            } while (!STATES.compareAndSet(states, index, state, MATE + ply));
+            highest.accumulate(ply);
+        }
+
+        // Sort the first count entries and move the distinct ones to the front
+        private int distinct(int[] indices, int count) {
+            Arrays.sort(indices, 0, count);
+            int result = 0;
+            for (int i = 0; i < count; i++) {
+                if (result == 0 || indices[result - 1] != indices[i]) {
+                    indices[result++] = indices[i];
+                }
+            }
+            return result;
+        }
+
+        private void assign(int index, int plies) {
+            states[index] = MATE + plies;
+            highest.accumulate(plies);
+        }
+
+        private void forEachIndex(IndexTask task) {
+            pool.invoke(new RangeTask(this, task, 0, states.length));
+        }
+
+        // Write the header followed by the entries packed to the smallest sufficient bit width
+        void write(Path file) throws IOException {
+            int maxDistance = (int) Math.max(highest.get(), 0);
+            int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxDistance + MATE - 1));
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+                buffer.putInt(Tablebase.MAGIC);
+                buffer.putInt(bits);
+                buffer.putLong(size);
+                buffer.putInt(maxDistance);
+                byte[] name = material.toString().getBytes(StandardCharsets.US_ASCII);
+                buffer.put(name);
+                buffer.put(new byte[Tablebase.HEADER_SIZE - Tablebase.NAME_OFFSET - name.length]);
+
+                long word = 0;
+                int used = 0;
+                for (int state : states) {
+                    long stored = state - 1;  // BROKEN becomes ILLEGAL, DRAWN becomes DRAW
+                    word |= stored << used;
+                    used += bits;
+                    if (used >= 64) {
+                        putLong(channel, buffer, word);
+                        used -= 64;
+                        word = stored >>> (bits - used);
+                    }
+                }
+                putLong(channel, buffer, word);
+                putLong(channel, buffer, 0);  // Padding so a probe can always read two words
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        private void putLong(FileChannel channel, ByteBuffer buffer, long word) throws IOException {
+            if (buffer.remaining() < 8) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            buffer.putLong(word);
+        }
+    }
+
+    // Per-thread scratch state
+    private static class Worker {
+        private final Position position;
+        private final Indexer indexer;
+        private final int[] moves;
+        private final int[] indices;  // Child or predecessor entries of the current position
+        private int found;
+
+        Worker(Material material) {
+            this.position = new Position();
+            this.indexer = new Indexer(material);
+            this.moves = new int[Position.MAX_MOVES];
+            this.indices = new int[Position.MAX_MOVES];
+        }
+    }
+
+    private interface IndexTask {
+        void run(Worker worker, int index);
+    }
+
+    // Splits an index range in halves until it is small enough to run directly
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Run run;
+        private final IndexTask task;
+        private final int start;
+        private final int end;
+
+        RangeTask(Run run, IndexTask task, int start, int end) {
+            this.run = run;
+            this.task = task;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK) {
+                Worker worker = run.workers.get();
+                for (int i = start; i < end; i++) {
+                    task.run(worker, i);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RangeTask(run, task, start, middle), new RangeTask(run, task, middle, end));
+            }
+        }
+    }
+
+    /**
+     * Generates the tables named on the command line, along with the smaller tables they need.
+     * Usage: java tablebase.Generator directory material... (e.g. "tables KQvK KRvK KPvK").
+     *
+     * @param args the output directory followed by one or more material names
+     * @throws IOException if a table file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args[0]);
+        Tablebases tablebases = new Tablebases();
+        tablebases.load(directory);
+        Generator generator = new Generator(tablebases, Runtime.getRuntime().availableProcessors());
+
+        for (int i = 1; i < args.length; i++) {
+            long start = System.nanoTime();
+            Tablebase table = generator.generate(Material.parse(args[i]), directory);
+            System.out.printf("%s: longest mate %d plies, %.1f s\n", table.getMaterial(),
+                    table.getMaxDistance(), (System.nanoTime() - start) / 1e9);
+        }
+        generator.shutdown();
+    }
+}
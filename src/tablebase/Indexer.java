@@ -0,0 +1,235 @@
+package tablebase;
+
+import engine.Attacks;
+import engine.Position;
+
+/**
+ * The Indexer class maps the positions of one material onto a dense range of table indices.
+ * Symmetry is used to shrink the table: without pawns the white king is kept in the a1-d1-d4
+ * triangle (8-fold reduction), and with pawns it is kept on files a to d (2-fold reduction).
+ * Positions that have several indices, such as swapped identical pieces, are only valid under
+ * their smallest index.
+ *
+ * <p>An Indexer keeps scratch arrays, so each thread needs its own instance.
+ */
+public class Indexer {
+    // TRANSFORMS[t][sq] maps a square through symmetry t: bit 0 mirrors files,
+    // bit 1 mirrors rows and bit 2 swaps rows with files
+    private static final int[][] TRANSFORMS = new int[8][64];
+
+    static {
+        for (int t = 0; t < 8; t++) {
+            for (int sq = 0; sq < 64; sq++) {
+                int row = sq >> 3;
+                int col = sq & 7;
+                if ((t & 1) != 0) {
+                    col = 7 - col;
+                }
+                if ((t & 2) != 0) {
+                    row = 7 - row;
+                }
+                if ((t & 4) != 0) {
+                    int swap = row;
+                    row = col;
+                    col = swap;
+                }
+                TRANSFORMS[t][sq] = row * 8 + col;
+            }
+        }
+    }
+
+    private final Material material;
+    private final int[] pieces;  // Non-king piece codes in index order, identical codes adjacent
+    private final int symmetries;  // Number of transforms to try: 8 without pawns, 2 with pawns
+    private final int[] kingSlot;  // Slot of each white king square, or -1 outside the region
+    private final int[] slotSquare;
+    private final int slots;
+    private final long size;
+
+    private final int[] found;  // Scratch: squares of each non-king piece during encoding
+    private final int[] mapped;
+
+    /**
+     * Creates an indexer for the given canonical material.
+     *
+     * @param material the material of the table
+     */
+    public Indexer(Material material) {
+        this.material = material;
+
+        int count = material.pieceCount() - 2;
+        this.pieces = new int[count];
+        int next = 0;
+        for (int code = 0; code < 16; code++) {
+            for (int n = 0; n < material.count(code); n++) {
+                pieces[next++] = code;
+            }
+        }
+
+        this.symmetries = material.hasPawns() ? 2 : 8;
+        this.kingSlot = new int[64];
+        this.slotSquare = new int[64];
+        int slots = 0;  // Number of squares the white king may stand on
+        for (int sq = 0; sq < 64; sq++) {
+            int rank = 7 - (sq >> 3);
+            int file = sq & 7;
+            boolean inRegion = material.hasPawns() ? file < 4 : (file < 4 && rank <= file);
+            kingSlot[sq] = inRegion ? slots : -1;
+            if (inRegion) {
+                slotSquare[slots++] = sq;
+            }
+        }
+
+        this.slots = slots;
+        long total = 2L * slots * 64;
+        for (int i = 0; i < count; i++) {
+            total *= 64;
+        }
+        this.size = total;
+        this.found = new int[count];
+        this.mapped = new int[count];
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * Returns the number of indices in the table.
+     *
+     * @return the table size
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Sets up the position for a table index. Returns false if the index does not describe a
+     * legal, canonical position, in which case the position contents are unspecified.
+     *
+     * @param index the table index
+     * @param position the position to overwrite
+     * @return true if the position is legal and this is its canonical index, false otherwise
+     */
+    public boolean decode(long index, Position position) {
+        position.clear();
+
+        long rest = index;
+        for (int i = pieces.length - 1; i >= 0; i--) {
+            mapped[i] = (int) (rest & 63);
+            rest >>>= 6;
+        }
+        int blackKing = (int) (rest & 63);
+        rest >>>= 6;
+        int whiteKing = slotSquare[(int) (rest % slots)];
+        int sideToMove = (int) (rest / slots);
+
+        if (whiteKing == blackKing || isAdjacent(whiteKing, blackKing)) {
+            return false;
+        }
+        position.setPiece(whiteKing, Position.piece(Position.WHITE, Position.KING));
+        position.setPiece(blackKing, Position.piece(Position.BLACK, Position.KING));
+        for (int i = 0; i < pieces.length; i++) {
+            int sq = mapped[i];
+            int row = sq >> 3;
+            if (position.pieceAt(sq) != Position.EMPTY
+                    || (Position.typeOf(pieces[i]) == Position.PAWN && (row == 0 || row == 7))) {
+                return false;
+            }
+            position.setPiece(sq, pieces[i]);
+        }
+        position.setSideToMove(sideToMove);
+
+        // The side that just moved cannot have left its king in check
+        if (position.isAttacked(position.getKingSquare(sideToMove ^ 1), sideToMove)) {
+            return false;
+        }
+        return encode(position) == index;
+    }
+
+    /**
+     * Returns the canonical index of a position with this indexer's material. Castling rights
+     * and en passant squares are ignored.
+     *
+     * @param position the position to index
+     * @return the table index
+     * @throws IllegalArgumentException if the position does not have this indexer's material
+     */
+    public long encode(Position position) {
+        int total = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (position.pieceAt(sq) != Position.EMPTY) {
+                total++;
+            }
+        }
+        if (total != pieces.length + 2) {
+            throw new IllegalArgumentException("Position does not match " + material);
+        }
+
+        // Collect the squares of the non-king pieces in index order
+        int filled = 0;
+        for (int i = 0; i < pieces.length; i = next(i)) {
+            int start = filled;
+            for (int sq = 0; sq < 64; sq++) {
+                if (position.pieceAt(sq) == pieces[i]) {
+                    if (filled == next(i)) {
+                        throw new IllegalArgumentException("Position does not match " + material);
+                    }
+                    found[filled++] = sq;
+                }
+            }
+            if (filled - start != next(i) - i) {
+                throw new IllegalArgumentException("Position does not match " + material);
+            }
+        }
+
+        int whiteKing = position.getKingSquare(Position.WHITE);
+        int blackKing = position.getKingSquare(Position.BLACK);
+        long best = Long.MAX_VALUE;
+        for (int t = 0; t < symmetries; t++) {
+            int[] transform = TRANSFORMS[t];
+            int slot = kingSlot[transform[whiteKing]];
+            if (slot < 0) {
+                continue;
+            }
+
+            long index = (long) position.getSideToMove() * slots + slot;
+            index = index * 64 + transform[blackKing];
+            for (int i = 0; i < pieces.length; i = next(i)) {
+                // Identical pieces are indexed in ascending square order
+                for (int j = i; j < next(i); j++) {
+                    int sq = transform[found[j]];
+                    int k = j;
+                    while (k > i && mapped[k - 1] > sq) {
+                        mapped[k] = mapped[k - 1];
+                        k--;
+                    }
+                    mapped[k] = sq;
+                }
+                for (int j = i; j < next(i); j++) {
+                    index = index * 64 + mapped[j];
+                }
+            }
+            best = Math.min(best, index);
+        }
+        return best;
+    }
+
+    // Index of the first piece after the run of identical pieces starting at i
+    private int next(int i) {
+        int j = i + 1;
+        while (j < pieces.length && pieces[j] == pieces[i]) {
+            j++;
+        }
+        return j;
+    }
+
+    private static boolean isAdjacent(int a, int b) {
+        for (int sq : Attacks.KING[a]) {
+            if (sq == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
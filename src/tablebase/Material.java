@@ -0,0 +1,223 @@
+package tablebase;
+
+import engine.Position;
+
+/**
+ * The Material class describes which pieces each side has in an endgame, such as "KQvKR".
+ * Tables are always stored with the stronger side as White; a position where Black holds the
+ * stronger material is probed through the color-flipped table.
+ */
+public class Material {
+    private static final String ORDER = "QRBNP";  // Order pieces are listed in a material name
+    private static final int[] VALUES = {0, 1, 3, 3, 5, 9, 0};  // Indexed by piece type
+
+    private final int[] counts;  // Number of pieces of each piece code, kings excluded
+
+    private Material(int[] counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Parses a material name such as "KQvK" or "KRPvKR".
+     *
+     * @param name the material name
+     * @return the material described by the name
+     * @throws IllegalArgumentException if the name is not a valid material name
+     */
+    public static Material parse(String name) {
+        String[] sides = name.toUpperCase().split("V");
+        if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K")) {
+            throw new IllegalArgumentException("Invalid material: " + name);
+        }
+
+        int[] counts = new int[16];
+        for (int color = 0; color < 2; color++) {
+            for (int i = 1; i < sides[color].length(); i++) {
+                int type = Position.TYPE_CHARS.indexOf(sides[color].charAt(i));
+                if (type < Position.PAWN || type == Position.KING) {
+                    throw new IllegalArgumentException("Invalid material: " + name);
+                }
+                counts[Position.piece(color, type)]++;
+            }
+        }
+        return new Material(counts);
+    }
+
+    /**
+     * Returns the material on the board of a position.
+     *
+     * @param position the position to count
+     * @return the material of the position
+     */
+    public static Material of(Position position) {
+        int[] counts = new int[16];
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.pieceAt(sq);
+            if (piece != Position.EMPTY && Position.typeOf(piece) != Position.KING) {
+                counts[piece]++;
+            }
+        }
+        return new Material(counts);
+    }
+
+    /**
+     * Returns a key that identifies this material, four bits per piece code. The same key can be
+     * computed straight from a position with keyOf, without allocating.
+     *
+     * @return the material key
+     */
+    public long key() {
+        long key = 0;
+        for (int code = 0; code < 16; code++) {
+            key += (long) counts[code] << (code * 4);
+        }
+        return key;
+    }
+
+    /**
+     * Computes the material key of a position.
+     *
+     * @param position the position to count
+     * @return the key that Material.of(position).key() would return
+     */
+    public static long keyOf(Position position) {
+        long key = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.pieceAt(sq);
+            if (piece != Position.EMPTY && Position.typeOf(piece) != Position.KING) {
+                key += 1L << (piece * 4);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Returns true if neither side can possibly deliver mate (KvK, KNvK or KBvK).
+     *
+     * @param key a material key
+     * @return true if the material is a dead draw, false otherwise
+     */
+    public static boolean isTrivialDraw(long key) {
+        for (int color = 0; color < 2; color++) {
+            for (int type : new int[]{Position.KNIGHT, Position.BISHOP}) {
+                if (key == 1L << (Position.piece(color, type) * 4)) {
+                    return true;
+                }
+            }
+        }
+        return key == 0;
+    }
+
+    /**
+     * Returns this material with the number of pieces of one code changed, as after a capture
+     * or a promotion.
+     *
+     * @param piece the piece code to change
+     * @param delta the change in the number of such pieces
+     * @return the changed material
+     */
+    Material with(int piece, int delta) {
+        int[] result = counts.clone();
+        result[piece] += delta;
+        return new Material(result);
+    }
+
+    public int count(int piece) {
+        return counts[piece];
+    }
+
+    /**
+     * Returns the number of pieces on the board, kings included.
+     *
+     * @return the total piece count
+     */
+    public int pieceCount() {
+        int total = 2;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean hasPawns() {
+        return counts[Position.piece(Position.WHITE, Position.PAWN)] > 0
+                || counts[Position.piece(Position.BLACK, Position.PAWN)] > 0;
+    }
+
+    /**
+     * Returns the same material with the colors swapped.
+     *
+     * @return the color-flipped material
+     */
+    public Material flipped() {
+        int[] result = new int[16];
+        for (int type = Position.PAWN; type < Position.KING; type++) {
+            result[Position.piece(Position.WHITE, type)] = counts[Position.piece(Position.BLACK, type)];
+            result[Position.piece(Position.BLACK, type)] = counts[Position.piece(Position.WHITE, type)];
+        }
+        return new Material(result);
+    }
+
+    /**
+     * Returns true if this is the form a table is stored in: White has at least as much material
+     * as Black, with ties broken by name.
+     *
+     * @return true if the material is canonical, false otherwise
+     */
+    public boolean isCanonical() {
+        int white = strength(Position.WHITE);
+        int black = strength(Position.BLACK);
+        if (white != black) {
+            return white > black;
+        }
+        return toString().compareTo(flipped().toString()) <= 0;
+    }
+
+    /**
+     * Returns the canonical form of this material.
+     *
+     * @return this material, or its color-flipped form if that is canonical
+     */
+    public Material canonical() {
+        return isCanonical() ? this : flipped();
+    }
+
+    private int strength(int color) {
+        int total = 0;
+        for (int type = Position.PAWN; type < Position.KING; type++) {
+            total += counts[Position.piece(color, type)] * VALUES[type];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the material name, listing each side's king first and then its pieces from the
+     * most to the least valuable (e.g. "KRPvKR").
+     *
+     * @return the material name
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int color = 0; color < 2; color++) {
+            result.append(color == Position.WHITE ? "K" : "vK");
+            for (int i = 0; i < ORDER.length(); i++) {
+                int type = Position.TYPE_CHARS.indexOf(ORDER.charAt(i));
+                for (int n = 0; n < counts[Position.piece(color, type)]; n++) {
+                    result.append(ORDER.charAt(i));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Material && ((Material) other).key() == key();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key());
+    }
+}
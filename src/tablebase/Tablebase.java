@@ -0,0 +1,148 @@
+package tablebase;
+
+import engine.Position;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The Tablebase class probes one endgame table file through a read-only memory mapping, so
+ * opening a table costs nothing and only the pages that are probed are read from disk.
+ *
+ * <p>Each entry holds the result for the side to move, bit-packed to the smallest width that
+ * fits the longest mate in the table: 0 for an illegal index, 1 for a draw, and 2 + d for a
+ * forced mate d plies away. An even d means the side to move gets mated, an odd d means it mates.
+ */
+public class Tablebase {
+    public static final int NOT_FOUND = -1;
+    public static final int ILLEGAL = 0;
+    public static final int DRAW = 1;
+
+    static final int MAGIC = 0x43544231;  // "CTB1"
+    static final int HEADER_SIZE = 64;
+    static final int NAME_OFFSET = 20;
+
+    /** The file name extension of table files. */
+    public static final String EXTENSION = ".ctb";
+
+    private final Material material;
+    private final MappedByteBuffer data;
+    private final int bits;
+    private final long entries;
+    private final int maxDistance;
+    private final ThreadLocal<Indexer> indexers;
+
+    private Tablebase(Material material, MappedByteBuffer data, int bits, long entries, int maxDistance) {
+        this.material = material;
+        this.data = data;
+        this.bits = bits;
+        this.entries = entries;
+        this.maxDistance = maxDistance;
+        this.indexers = ThreadLocal.withInitial(() -> new Indexer(material));
+    }
+
+    /**
+     * Maps a table file into memory.
+     *
+     * @param file the table file
+     * @return the opened table
+     * @throws IOException if the file cannot be read or is not a table file
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException("Not a table file: " + file);
+            }
+
+            byte[] name = new byte[HEADER_SIZE - NAME_OFFSET];
+            for (int i = 0; i < name.length; i++) {
+                name[i] = data.get(NAME_OFFSET + i);
+            }
+            Material material = Material.parse(new String(name, StandardCharsets.US_ASCII).trim());
+            long entries = data.getLong(8);
+            if (entries != new Indexer(material).size()) {
+                throw new IOException("Table size does not match its material: " + file);
+            }
+            return new Tablebase(material, data, data.getInt(4), entries, data.getInt(16));
+        }
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * Returns the longest forced mate in the table, in plies.
+     *
+     * @return the maximum distance to mate
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Reads the raw entry at a table index.
+     *
+     * @param index the table index (0 to size - 1)
+     * @return the entry value
+     */
+    public int get(long index) {
+        if (index < 0 || index >= entries) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+
+        long bit = index * bits;
+        int offset = HEADER_SIZE + (int) (bit >>> 6) * 8;
+        int shift = (int) (bit & 63);
+        long value = data.getLong(offset) >>> shift;
+        if (shift + bits > 64) {
+            value |= data.getLong(offset + 8) << (64 - shift);
+        }
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    /**
+     * Looks up a position whose material matches this table exactly (not color-flipped).
+     *
+     * @param position the position to look up
+     * @return the entry value for the position
+     */
+    public int probe(Position position) {
+        return get(indexers.get().encode(position));
+    }
+
+    /**
+     * Returns true if the entry value is a forced mate for the side to move.
+     *
+     * @param value an entry value
+     * @return true if the side to move wins, false otherwise
+     */
+    public static boolean isWin(int value) {
+        return value >= 2 && (value - 2) % 2 == 1;
+    }
+
+    /**
+     * Returns true if the entry value is a forced mate against the side to move.
+     *
+     * @param value an entry value
+     * @return true if the side to move loses, false otherwise
+     */
+    public static boolean isLoss(int value) {
+        return value >= 2 && (value - 2) % 2 == 0;
+    }
+
+    /**
+     * Returns the number of plies until mate for a win or loss entry value.
+     *
+     * @param value an entry value that is a win or a loss
+     * @return the distance to mate in plies
+     */
+    public static int distanceToMate(int value) {
+        return value - 2;
+    }
+}
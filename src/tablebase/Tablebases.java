@@ -0,0 +1,113 @@
+package tablebase;
+
+import engine.Position;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The Tablebases class is the set of endgame tables available to a program. It routes each
+ * probe to the table for the position's material, flipping colors when Black is the stronger
+ * side, and answers dead-drawn material (KvK, KNvK, KBvK) without a table.
+ */
+public class Tablebases {
+    private final CopyOnWriteArrayList<Tablebase> tables;
+    private final ThreadLocal<Position> flipped;  // Scratch position for color-flipped probes
+
+    /**
+     * Creates an empty set of tables.
+     */
+    public Tablebases() {
+        this.tables = new CopyOnWriteArrayList<>();
+        this.flipped = ThreadLocal.withInitial(Position::new);
+    }
+
+    /**
+     * Maps every table file found in a directory.
+     *
+     * @param directory the directory holding the table files
+     * @throws IOException if the directory or one of its table files cannot be read
+     */
+    public void load(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.EXTENSION)) {
+            for (Path file : files) {
+                add(Tablebase.open(file));
+            }
+        }
+    }
+
+    /**
+     * Adds a table, replacing any table already loaded for the same material.
+     *
+     * @param table the table to add
+     */
+    public void add(Tablebase table) {
+        tables.removeIf(existing -> existing.getMaterial().equals(table.getMaterial()));
+        tables.add(table);
+    }
+
+    /**
+     * Returns true if positions with the given material can be probed.
+     *
+     * @param material the material to look for, in either color orientation
+     * @return true if a table exists or the material is a dead draw, false otherwise
+     */
+    public boolean contains(Material material) {
+        long key = material.key();
+        if (Material.isTrivialDraw(key)) {
+            return true;
+        }
+        for (Tablebase table : tables) {
+            if (table.getMaterial().key() == key || table.getMaterial().flipped().key() == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the result of a position for the side to move. Positions with castling rights are
+     * not covered by the tables, and en passant rights are ignored.
+     *
+     * @param position the position to look up
+     * @return a Tablebase entry value, or Tablebase.NOT_FOUND if no table covers the position
+     */
+    public int probe(Position position) {
+        if (position.getCastling() != 0) {
+            return Tablebase.NOT_FOUND;
+        }
+
+        long key = Material.keyOf(position);
+        if (Material.isTrivialDraw(key)) {
+            return Tablebase.DRAW;
+        }
+
+        for (Tablebase table : tables) {
+            Material material = table.getMaterial();
+            if (material.key() == key) {
+                return table.probe(position);
+            }
+        }
+
+        // Black holds the stronger side: mirror the board vertically and swap the colors
+        Position mirror = flipped.get();
+        mirror.clear();
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.pieceAt(sq);
+            if (piece != Position.EMPTY) {
+                mirror.setPiece(sq ^ 56, piece ^ 8);
+            }
+        }
+        mirror.setSideToMove(position.getSideToMove() ^ 1);
+        long mirrorKey = Material.keyOf(mirror);
+        for (Tablebase table : tables) {
+            if (table.getMaterial().key() == mirrorKey) {
+                return table.probe(mirror);
+            }
+        }
+        return Tablebase.NOT_FOUND;
+    }
+}
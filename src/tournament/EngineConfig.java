@@ -0,0 +1,131 @@
+package tournament;
+
+import engine.MaterialEvaluator;
+import engine.Search;
+
+/**
+ * The EngineConfig class describes one tournament player: how deep or how long its search may
+ * run and which selective search techniques it uses. It is written on the command line as
+ * comma-separated settings, such as "d4" for a four-ply search or "d8,n20000" for up to eight
+ * plies but at most 20000 nodes per move. A "p" setting lists the selective techniques by letter:
+ * n for null-move pruning, l for late move reductions, f for futility pruning and r for
+ * razoring, so "d8,pnlfr" is an eight-ply search with all of them.
+ */
+public class EngineConfig {
+    private final String name;
+    private final int depth;
+    private final long nodes;
+    private final int selectivity;
+
+    /**
+     * Creates a configuration for a full-width search.
+     *
+     * @param name the name shown in results
+     * @param depth the search depth limit in plies
+     * @param nodes the node limit per move, or 0 for none
+     */
+    public EngineConfig(String name, int depth, long nodes) {
+        this(name, depth, nodes, 0);
+    }
+
+    /**
+     * Creates a configuration.
+     *
+     * @param name the name shown in results
+     * @param depth the search depth limit in plies
+     * @param nodes the node limit per move, or 0 for none
+     * @param selectivity the Search selective search flags
+     */
+    public EngineConfig(String name, int depth, long nodes, int selectivity) {
+        this.name = name;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.selectivity = selectivity;
+    }
+
+    /**
+     * Parses a configuration such as "d4", "d8,n20000" or "d8,pnl".
+     *
+     * @param spec the configuration text
+     * @return the configuration, named after the text
+     * @throws IllegalArgumentException if a setting is not recognized
+     */
+    public static EngineConfig parse(String spec) {
+        int depth = Search.MAX_PLY;
+        long nodes = 0;
+        int selectivity = 0;
+        for (String setting : spec.split(",")) {
+            try {
+                if (setting.startsWith("d")) {
+                    depth = Integer.parseInt(setting.substring(1));
+                } else if (setting.startsWith("n")) {
+                    nodes = Long.parseLong(setting.substring(1));
+                } else if (setting.startsWith("p")) {
+                    selectivity = parseSelectivity(setting);
+                } else {
+                    throw new IllegalArgumentException("Unknown engine setting: " + setting);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad engine setting: " + setting);
+            }
+        }
+        if (depth == Search.MAX_PLY && nodes == 0) {
+            throw new IllegalArgumentException("Engine needs a depth or node limit: " + spec);
+        }
+        return new EngineConfig(spec, depth, nodes, selectivity);
+    }
+
+    // The flags named by the letters of a "p" setting
+    private static int parseSelectivity(String setting) {
+        int flags = 0;
+        for (int i = 1; i < setting.length(); i++) {
+            switch (setting.charAt(i)) {
+                case 'n':
+                    flags |= Search.NULL_MOVE;
+                    break;
+                case 'l':
+                    flags |= Search.LATE_MOVE_REDUCTIONS;
+                    break;
+                case 'f':
+                    flags |= Search.FUTILITY;
+                    break;
+                case 'r':
+                    flags |= Search.RAZORING;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown selective search technique: " + setting.charAt(i));
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Creates a search for this player. Searches are reused for every game a thread plays.
+     *
+     * @return a new search
+     */
+    public Search newSearch() {
+        return new Search(new MaterialEvaluator(), selectivity);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getSelectivity() {
+        return selectivity;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,445 @@
+package tournament;
+
+import engine.Fen;
+import engine.Move;
+import engine.MoveParser;
+import engine.Position;
+import engine.Search;
+import metrics.LatencyHistogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The EpdRunner class runs a test suite of EPD positions, the standard gate for whether a change
+ * to the engine finds the right moves and how fast. An EPD line is the first four fields of a FEN
+ * followed by operations, each an opcode, its operands and a semicolon. The runner reads "bm",
+ * the best moves, one of which must be played, "am", the moves to avoid, and "id", the position's
+ * name; other operations are ignored. Moves are in SAN or any other notation MoveParser reads.
+ *
+ * <p>Positions are searched on a pool of worker threads, each with its own Search, under the
+ * engine's depth and node limits and a time limit per position. The search deepens one ply at a
+ * time, and after each completed depth the runner checks the best move. A position is solved if
+ * the move of the last completed depth is right; its time and nodes to solution are those at the
+ * end of the depth from which the move stayed right.
+ *
+ * <p>One result line per position is written in input order: the id, the verdict ("ok", "FAIL" or
+ * "ERR" with the reason for a line that is not a test), the expected moves as written, the move
+ * found, the depth reached, the nodes searched, the search time in milliseconds, and the nodes
+ * and milliseconds to solution or "-" if not solved, separated by tabs.
+ */
+public class EpdRunner {
+    private final EngineConfig engine;
+    private final long maxMillis;
+    private final ExecutorService pool;
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * A test position: what to search and which moves are right.
+     */
+    public static class Test {
+        private final String id;
+        private final Position position;
+        private final int[] bestMoves;
+        private final int[] avoidMoves;
+        private final String expected;  // The bm and am operations as written
+
+        private Test(String id, Position position, int[] bestMoves, int[] avoidMoves, String expected) {
+            this.id = id;
+            this.position = position;
+            this.bestMoves = bestMoves;
+            this.avoidMoves = avoidMoves;
+            this.expected = expected;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * Checks a move against the test's bm and am operations.
+         *
+         * @param move the packed move
+         * @return true if the move is one of the best moves, if any are given, and none of the
+         *         moves to avoid
+         */
+        public boolean isRight(int move) {
+            return (bestMoves.length == 0 || contains(bestMoves, move)) && !contains(avoidMoves, move);
+        }
+
+        private static boolean contains(int[] moves, int move) {
+            for (int m : moves) {
+                if (m == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // The outcome of one position, filled in as its search deepens
+    private static class Outcome {
+        final String line;  // The test's id, or the input line if it is not a test
+        final Test test;
+        final String error;
+        int move = Move.NONE;
+        int depth;
+        long nodes;
+        long nanos;
+        long solvedNodes = -1;  // Nodes and time when the move last became right, or -1
+        long solvedNanos = -1;
+
+        Outcome(String line, Test test, String error) {
+            this.line = line;
+            this.test = test;
+            this.error = error;
+        }
+
+        boolean isSolved() {
+            return test != null && move != Move.NONE && test.isRight(move);
+        }
+    }
+
+    /**
+     * Creates a runner.
+     *
+     * @param engine the engine settings: depth and node limits per position and selectivity
+     * @param maxMillis the time limit per position in milliseconds, or 0 for none
+     * @param threads the number of worker threads
+     */
+    public EpdRunner(EngineConfig engine, long maxMillis, int threads) {
+        this.engine = engine;
+        this.maxMillis = maxMillis;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.searches = ThreadLocal.withInitial(engine::newSearch);
+    }
+
+    /**
+     * Parses one EPD line.
+     *
+     * @param line the line
+     * @return the test
+     * @throws IllegalArgumentException if the line is not a position with a bm or am operation,
+     *                                  or names a move that is not legal
+     */
+    public static Test parse(String line) {
+        String[] fields = line.trim().split("\\s+", 5);
+        if (fields.length < 5) {
+            throw new IllegalArgumentException("Not an EPD test: " + line);
+        }
+        Position position = Fen.parse(fields[0] + ' ' + fields[1] + ' ' + fields[2] + ' ' + fields[3] + " 0 1");
+        int[] scratch = new int[Position.MAX_MOVES];
+        String id = null;
+        int[] bestMoves = new int[0];
+        int[] avoidMoves = new int[0];
+        StringBuilder expected = new StringBuilder();
+
+        // Operations end at semicolons outside quoted strings
+        String operations = fields[4];
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i <= operations.length(); i++) {
+            if (i < operations.length() && operations.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+            if (i < operations.length() && (quoted || operations.charAt(i) != ';')) {
+                continue;
+            }
+            String operation = operations.substring(start, i).trim();
+            start = i + 1;
+            if (operation.isEmpty()) {
+                continue;
+            }
+            String[] parts = operation.split("\\s+", 2);
+            String operands = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "bm":
+                    bestMoves = moves(position, operands, scratch);
+                    expected.append(expected.length() > 0 ? " " : "").append("bm ").append(operands);
+                    break;
+                case "am":
+                    avoidMoves = moves(position, operands, scratch);
+                    expected.append(expected.length() > 0 ? " " : "").append("am ").append(operands);
+                    break;
+                case "id":
+                    id = operands.replace("\"", "");
+                    break;
+                default:
+                    break;  // Opcodes the runner has no use for
+            }
+        }
+        if (bestMoves.length == 0 && avoidMoves.length == 0) {
+            throw new IllegalArgumentException("No bm or am operation: " + line);
+        }
+        return new Test(id != null ? id : fields[0], position, bestMoves, avoidMoves, expected.toString());
+    }
+
+    private static int[] moves(Position position, String operands, int[] scratch) {
+        String[] names = operands.trim().split("\\s+");
+        int[] moves = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            moves[i] = MoveParser.parse(position, names[i], scratch);
+        }
+        return moves;
+    }
+
+    /**
+     * Runs every test and writes the result lines to the output.
+     *
+     * @param lines the EPD lines
+     * @param output where to write the results
+     * @return the totals
+     * @throws IOException if writing fails
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public Summary run(List<String> lines, Writer output) throws IOException, InterruptedException {
+        List<Future<Outcome>> outcomes = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            outcomes.add(pool.submit(() -> run(line)));
+        }
+        Summary summary = new Summary();
+        for (Future<Outcome> future : outcomes) {
+            Outcome outcome;
+            try {
+                outcome = future.get();
+            } catch (ExecutionException ex) {
+                outcome = new Outcome("?", null, String.valueOf(ex.getCause()));
+            }
+            summary.add(outcome);
+            output.write(format(outcome));
+            output.write('\n');
+        }
+        return summary;
+    }
+
+    // Search one line's position, noting after each depth whether the best move is right
+    private Outcome run(String line) {
+        Test test;
+        try {
+            test = parse(line);
+        } catch (IllegalArgumentException ex) {
+            return new Outcome(line, null, ex.getMessage());
+        }
+        Outcome outcome = new Outcome(test.getId(), test, null);
+        Search search = searches.get();
+        long start = System.nanoTime();
+        search.searchLines(test.getPosition(), 1, engine.getDepth(), engine.getNodes(), maxMillis, () -> {
+            int move = search.getLine(0)[0];
+            boolean right = test.isRight(move);
+            if (!right) {
+                outcome.solvedNodes = -1;
+                outcome.solvedNanos = -1;
+            } else if (outcome.solvedNodes < 0) {
+                outcome.solvedNodes = search.getNodes();
+                outcome.solvedNanos = System.nanoTime() - start;
+            }
+            outcome.move = move;
+            outcome.depth = search.getDepth();
+            if (right && Math.abs(search.getLineScore(0)) >= Search.MATE - Search.MAX_PLY) {
+                search.stop();  // A mate found will not be found wrong by searching deeper
+            }
+        });
+        outcome.nodes = search.getNodes();
+        outcome.nanos = System.nanoTime() - start;
+        return outcome;
+    }
+
+    private static String format(Outcome outcome) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(outcome.line).append('\t');
+        if (outcome.test == null) {
+            return sb.append("ERR ").append(outcome.error).toString();
+        }
+        sb.append(outcome.isSolved() ? "ok" : "FAIL").append('\t').append(outcome.test.expected)
+                .append('\t').append(outcome.move == Move.NONE ? "-" : Move.toString(outcome.move))
+                .append('\t').append(outcome.depth).append('\t').append(outcome.nodes)
+                .append('\t').append(outcome.nanos / 1_000_000).append('\t');
+        if (outcome.isSolved()) {
+            sb.append(outcome.solvedNodes).append('\t').append(outcome.solvedNanos / 1_000_000);
+        } else {
+            sb.append("-\t-");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * The totals of a run.
+     */
+    public static class Summary {
+        private int positions;
+        private int solved;
+        private int errors;
+        private long nodes;
+        private long solvedNodes;
+        private final LatencyHistogram timesToSolution = new LatencyHistogram();
+
+        private void add(Outcome outcome) {
+            positions++;
+            if (outcome.test == null) {
+                errors++;
+                return;
+            }
+            nodes += outcome.nodes;
+            if (outcome.isSolved()) {
+                solved++;
+                solvedNodes += outcome.solvedNodes;
+                timesToSolution.record(outcome.solvedNanos);
+            }
+        }
+
+        public int getPositions() {
+            return positions;
+        }
+
+        public int getSolved() {
+            return solved;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the times to solution of the solved positions.
+         *
+         * @return the histogram, in nanoseconds
+         */
+        public LatencyHistogram getTimesToSolution() {
+            return timesToSolution;
+        }
+
+        /**
+         * Writes the totals as "key=value" lines, one per total in a fixed order, so that two
+         * runs can be compared with diff or read back with java.util.Properties.
+         *
+         * @param output where to write
+         * @param settings lines describing the run, written first as they are
+         * @throws IOException if writing fails
+         */
+        public void write(Writer output, String... settings) throws IOException {
+            for (String setting : settings) {
+                output.write(setting + "\n");
+            }
+            output.write("positions=" + positions + "\n");
+            output.write("solved=" + solved + "\n");
+            output.write("failed=" + (positions - solved - errors) + "\n");
+            output.write("errors=" + errors + "\n");
+            output.write("nodes=" + nodes + "\n");
+            output.write("meanNodesToSolution=" + (solved > 0 ? solvedNodes / solved : 0) + "\n");
+            output.write("meanMillisToSolution=" + String.format("%.1f", timesToSolution.getMean() / 1e6) + "\n");
+            output.write("medianMillisToSolution="
+                    + String.format("%.1f", timesToSolution.getPercentile(0.5) / 1e6) + "\n");
+            output.write("maxMillisToSolution=" + String.format("%.1f", timesToSolution.getMax() / 1e6) + "\n");
+        }
+    }
+
+    /**
+     * Runs a test suite. Usage: java tournament.EpdRunner [options] [suite.epd [results]], where
+     * the results go to standard output if no results file is given, and the built-in tactics of
+     * SearchBenchmark are run if no suite is given. Options are "--engine spec" for the engine
+     * settings, written as for Tournament, such as "d10,pnlfr" (by default all selective
+     * techniques and no depth or node limit), "--time ms" for the time limit per position (1000
+     * by default, 0 for none), "--threads n" (one per core by default) and "--summary file" to
+     * write the totals there as "key=value" lines for comparing runs. The totals are printed to
+     * standard error in any case.
+     *
+     * @param args the options and files
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        EngineConfig engine = new EngineConfig("pnlfr", Search.MAX_PLY, 0, Search.SELECTIVE);  // Only timed
+        long millis = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String summaryFile = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--engine")) {
+                engine = EngineConfig.parse(args[++i]);
+            } else if (args[i].equals("--time")) {
+                millis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--summary")) {
+                summaryFile = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (engine.getDepth() == Search.MAX_PLY && millis == 0) {
+            throw new IllegalArgumentException("The default engine needs a time limit");
+        }
+
+        List<String> lines = new ArrayList<>();
+        if (files.isEmpty()) {
+            for (int i = 0; i < SearchBenchmark.TACTICS.length; i++) {
+                String[] fields = SearchBenchmark.TACTICS[i].split("\t");
+                String[] fen = fields[0].split(" ");
+                lines.add(fen[0] + ' ' + fen[1] + ' ' + fen[2] + ' ' + fen[3] + " bm " + fields[1]
+                        + "; id \"tactics." + (i + 1) + "\";");
+            }
+        } else {
+            for (String line : Files.readAllLines(Paths.get(files.get(0)), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    lines.add(line.trim());
+                }
+            }
+        }
+
+        EpdRunner runner = new EpdRunner(engine, millis, threads);
+        long start = System.nanoTime();
+        Summary summary;
+        try (Writer output = files.size() > 1
+                ? Files.newBufferedWriter(Paths.get(files.get(1)), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            summary = runner.run(lines, output);
+        } finally {
+            runner.shutdown();
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+        String[] settings = {
+                "suite=" + (files.isEmpty() ? "built-in tactics" : files.get(0)),
+                "engine=" + engine,
+                "timeLimitMillis=" + millis,
+                "threads=" + threads,
+                "wallMillis=" + wallMillis,
+        };
+        if (summaryFile != null) {
+            try (Writer output = Files.newBufferedWriter(Paths.get(summaryFile), StandardCharsets.UTF_8)) {
+                summary.write(output, settings);
+            }
+        }
+        LatencyHistogram times = summary.getTimesToSolution();
+        System.err.printf("%s: solved %d of %d (%d errors) on %d threads in %.2f s; time to solution mean %.1f ms, "
+                        + "median %.1f ms, max %.1f ms; %d nodes\n", engine, summary.getSolved(),
+                summary.getPositions(), summary.getErrors(), threads, wallMillis / 1e3, times.getMean() / 1e6,
+                times.getPercentile(0.5) / 1e6, times.getMax() / 1e6, summary.getNodes());
+    }
+}
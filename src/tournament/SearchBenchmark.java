@@ -0,0 +1,160 @@
+package tournament;
+
+import engine.Fen;
+import engine.Move;
+import engine.MoveParser;
+import engine.Position;
+import engine.Search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SearchBenchmark class compares engine configurations on fixed positions, mainly to show
+ * what the selective search techniques gain and cost. The time-to-depth benchmark searches a set
+ * of opening, middlegame and endgame positions to each configuration's depth and reports nodes and
+ * time; the tactical suite searches positions with a known best move and counts how many each
+ * configuration finds. A selective configuration should reach the same depth in less time without
+ * solving fewer positions.
+ */
+public class SearchBenchmark {
+    /** Positions for the time-to-depth benchmark, as FEN. */
+    public static final String[] BENCH_POSITIONS = {
+            Fen.START,
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "2r2rk1/pp1bqpp1/2n1pn1p/3p4/2PP4/P1NBPN2/1PQ2PPP/3R1RK1 w - - 0 14",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+            "8/8/4kpp1/3p1b2/p6P/2B5/6P1/6K1 b - - 0 47",
+    };
+
+    /** The tactical suite: positions from Win at Chess, as FEN, a tab and the best move. */
+    public static final String[] TACTICS = {
+            "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1\tQg6",
+            "5rk1/1ppb3p/p1pb4/6q1/3P1p1r/2P1R2P/PP1BQ1P1/5RKN w - - 0 1\tRg3",
+            "r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - - 0 1\tQxh7+",
+            "5k2/6pp/p1qN4/1p1p4/3P4/2PKP2Q/PP3r2/3R4 b - - 0 1\tQc4+",
+            "7k/p7/1R5K/6r1/6p1/6P1/8/8 w - - 0 1\tRb7",
+            "r4q1k/p2bR1rp/2p2Q1N/5p2/5p2/2P5/PP3PPP/R5K1 w - - 0 1\tRf7",
+            "3q1rk1/p4pp1/2pb3p/3p4/6Pr/1PNQ4/P1PB1PP1/4RRK1 b - - 0 1\tBh2+",
+            "2br2k1/2q3rn/p2NppQ1/2p1P3/Pp5R/4P3/1P3PPP/3R2K1 w - - 0 1\tRh7",
+    };
+
+    private final Position position;
+    private final int[] moves;
+
+    /**
+     * Creates a benchmark.
+     */
+    public SearchBenchmark() {
+        this.position = new Position();
+        this.moves = new int[Position.MAX_MOVES];
+    }
+
+    /**
+     * Searches every benchmark position to the engine's depth, after a shallower pass over them to
+     * warm up the JIT, and writes a line per position and a total.
+     *
+     * @param engine the configuration to time
+     * @return the total search time in nanoseconds
+     */
+    public long timeToDepth(EngineConfig engine) {
+        Search search = engine.newSearch();
+        for (String fen : BENCH_POSITIONS) {
+            Fen.parse(fen, position);
+            search.search(position, Math.min(engine.getDepth(), 4));
+        }
+
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (String fen : BENCH_POSITIONS) {
+            Fen.parse(fen, position);
+            long start = System.nanoTime();
+            search.search(position, engine.getDepth(), engine.getNodes(), 0);
+            long nanos = System.nanoTime() - start;
+            totalNodes += search.getNodes();
+            totalNanos += nanos;
+            System.out.printf("%-12s depth %2d %10d nodes %9.1f ms  %s  %s\n", engine, search.getDepth(),
+                    search.getNodes(), nanos / 1e6, Move.toString(search.getPrincipalVariation()[0]), fen);
+        }
+        System.out.printf("%-12s total %10d nodes %9.1f ms %9.0f nodes/s\n\n", engine, totalNodes, totalNanos / 1e6,
+                totalNodes / (totalNanos / 1e9));
+        return totalNanos;
+    }
+
+    /**
+     * Searches every position of the tactical suite to the engine's depth and writes whether the
+     * best move was found.
+     *
+     * @param engine the configuration to test
+     * @return the number of positions solved
+     */
+    public int tactics(EngineConfig engine) {
+        Search search = engine.newSearch();
+        int solved = 0;
+        for (String line : TACTICS) {
+            int tab = line.indexOf('\t');
+            Fen.parse(line.substring(0, tab), position);
+            int bestMove = MoveParser.parse(position, line.substring(tab + 1), moves);
+            search.search(position, engine.getDepth(), engine.getNodes(), 0);
+            int found = search.getPrincipalVariation()[0];
+            if (found == bestMove) {
+                solved++;
+            }
+            System.out.printf("%-12s %-6s %-6s %-4s %10d nodes  %s\n", engine, line.substring(tab + 1),
+                    Move.toString(found), found == bestMove ? "ok" : "FAIL", search.getNodes(), line.substring(0, tab));
+        }
+        System.out.printf("%-12s solved %d of %d\n\n", engine, solved, TACTICS.length);
+        return solved;
+    }
+
+    /**
+     * Runs the benchmarks. Usage: java tournament.SearchBenchmark [--depth | --tactics] engine...,
+     * where each engine is written as for Tournament, such as "d6" and "d6,pnlfr". Both benchmarks
+     * run unless one is chosen, and a summary compares every engine with the first.
+     *
+     * @param args the benchmark and the engines
+     */
+    public static void main(String[] args) {
+        boolean depth = true;
+        boolean tactics = true;
+        List<EngineConfig> engines = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--depth")) {
+                tactics = false;
+            } else if (arg.equals("--tactics")) {
+                depth = false;
+            } else {
+                engines.add(EngineConfig.parse(arg));
+            }
+        }
+        if (engines.isEmpty()) {
+            engines.add(EngineConfig.parse("d6"));
+            engines.add(EngineConfig.parse("d6,pnlfr"));
+        }
+
+        SearchBenchmark benchmark = new SearchBenchmark();
+        long[] nanos = new long[engines.size()];
+        int[] solved = new int[engines.size()];
+        for (int i = 0; i < engines.size(); i++) {
+            if (depth) {
+                nanos[i] = benchmark.timeToDepth(engines.get(i));
+            }
+            if (tactics) {
+                solved[i] = benchmark.tactics(engines.get(i));
+            }
+        }
+        for (int i = 0; i < engines.size(); i++) {
+            System.out.printf("%-12s", engines.get(i));
+            if (depth) {
+                System.out.printf(" time to depth %9.1f ms (%.2fx)", nanos[i] / 1e6, (double) nanos[0] / nanos[i]);
+            }
+            if (tactics) {
+                System.out.printf(" tactics %d/%d", solved[i], TACTICS.length);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package tournament;
+
+/**
+ * The Sprt class runs a sequential probability ratio test on match results: is the Elo
+ * difference between two engines elo0 (H0) or elo1 (H1)? After each game the log-likelihood
+ * ratio is compared against bounds set by the allowed error rates, so a match can stop as soon
+ * as the evidence is clear instead of after a fixed number of games.
+ *
+ * <p>The ratio uses the usual normal approximation over win/draw/loss counts. The score and its
+ * variance are estimated with a prior of one extra game, half won and half lost, as if the
+ * engines were equal. Without it a run of equal results would have no variance, and the ratio
+ * would leap to a decision after a handful of games.
+ */
+public class Sprt {
+    /** Result of decide when the evidence favors H0. */
+    public static final int ACCEPT_H0 = -1;
+
+    /** Result of decide when more games are needed. */
+    public static final int CONTINUE = 0;
+
+    /** Result of decide when the evidence favors H1. */
+    public static final int ACCEPT_H1 = 1;
+
+    private static final double PRIOR_WINS = 0.5;  // The prior game, counted as half a win
+    private static final double PRIOR_LOSSES = 0.5;  // and half a loss
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * Creates a test of H0: Elo difference elo0 against H1: Elo difference elo1.
+     *
+     * @param elo0 the Elo difference under H0
+     * @param elo1 the Elo difference under H1, greater than elo0
+     * @param alpha the allowed rate of accepting H1 when H0 is true
+     * @param beta the allowed rate of accepting H0 when H1 is true
+     * @throws IllegalArgumentException if the bounds or error rates are out of range
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        if (elo1 <= elo0 || alpha <= 0 || alpha >= 1 || beta <= 0 || beta >= 1) {
+            throw new IllegalArgumentException("Invalid SPRT parameters");
+        }
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Computes the log-likelihood ratio of H1 against H0 for the given results.
+     *
+     * @param wins games won by the tested engine
+     * @param draws games drawn
+     * @param losses games lost by the tested engine
+     * @return the log-likelihood ratio
+     */
+    public double llr(int wins, int draws, int losses) {
+        if (wins + draws + losses == 0) {
+            return 0;
+        }
+        double w = wins + PRIOR_WINS;
+        double l = losses + PRIOR_LOSSES;
+        double games = w + draws + l;
+        double score = (w + 0.5 * draws) / games;
+        double variance = (w * square(1 - score) + draws * square(0.5 - score) + l * square(score)) / games;
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return (score1 - score0) * (2 * score - score0 - score1) / (2 * variance / games);
+    }
+
+    /**
+     * Decides whether the test can stop.
+     *
+     * @param wins games won by the tested engine
+     * @param draws games drawn
+     * @param losses games lost by the tested engine
+     * @return ACCEPT_H0, ACCEPT_H1 or CONTINUE
+     */
+    public int decide(int wins, int draws, int losses) {
+        double llr = llr(wins, draws, losses);
+        if (llr >= upperBound) {
+            return ACCEPT_H1;
+        }
+        if (llr <= lowerBound) {
+            return ACCEPT_H0;
+        }
+        return CONTINUE;
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Returns the expected score of a player who is the given number of Elo points stronger.
+     *
+     * @param elo the Elo difference
+     * @return the expected score between 0 and 1
+     */
+    public static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Returns the Elo difference that corresponds to a match score.
+     *
+     * @param score the score between 0 and 1
+     * @return the Elo difference, infinite for a score of 0 or 1
+     */
+    public static double eloFromScore(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static double square(double x) {
+        return x * x;
+    }
+}
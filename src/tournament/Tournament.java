@@ -0,0 +1,243 @@
+package tournament;
+
+import engine.Fen;
+import engine.Move;
+import engine.Position;
+import engine.Search;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Tournament class plays engine A against engine B on every core until an SPRT decides
+ * whether A is stronger or a game limit is reached. Each opening is played twice with colors
+ * reversed, so neither engine profits from a lopsided opening. A line is written for every game
+ * as soon as it finishes.
+ *
+ * <p>The engines search to fixed limits and choose their moves deterministically, so a pair of
+ * games from an opening would replay move for move if it came round again, and the test would
+ * count the copies as new evidence. A tournament therefore plays at most two games per opening.
+ *
+ * <p>Each thread keeps one Position and one Search per engine for all of its games.
+ */
+public class Tournament {
+    private static final int MAX_PLIES = 400;  // Games this long are adjudicated as draws
+
+    private final EngineConfig engineA;
+    private final EngineConfig engineB;
+    private final List<String> openings;
+    private final Sprt sprt;
+    private final int maxGames;
+    private final Writer output;
+    private final AtomicInteger nextGame;
+    private volatile boolean finished;
+
+    private int wins;  // Results from engine A's point of view
+    private int draws;
+    private int losses;
+    private int decision;
+
+    /**
+     * Creates a tournament.
+     *
+     * @param engineA the engine being tested
+     * @param engineB the reference engine
+     * @param openings the starting positions as FEN, each played once with each color
+     * @param sprt the test that decides when to stop
+     * @param maxGames the number of games to stop after if the test has not decided, at most two
+     *                 per opening
+     * @param output where to write a line per finished game
+     * @throws IllegalArgumentException if there are no openings, or too few for maxGames games
+     */
+    public Tournament(EngineConfig engineA, EngineConfig engineB, List<String> openings, Sprt sprt,
+                      int maxGames, Writer output) {
+        if (openings.isEmpty()) {
+            throw new IllegalArgumentException("No openings");
+        }
+        if (maxGames > 2 * openings.size()) {
+            throw new IllegalArgumentException("Too many games: " + maxGames + " would repeat games, as "
+                    + openings.size() + " openings allow " + 2 * openings.size());
+        }
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.openings = openings;
+        this.sprt = sprt;
+        this.maxGames = maxGames;
+        this.output = output;
+        this.nextGame = new AtomicInteger();
+        this.decision = Sprt.CONTINUE;
+    }
+
+    /**
+     * Plays games on the given number of threads until the test decides or maxGames are played.
+     *
+     * @param threads the number of games played at once
+     * @return the SPRT decision: Sprt.ACCEPT_H1, Sprt.ACCEPT_H0 or Sprt.CONTINUE
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public int run(int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Worker());
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return decision;
+    }
+
+    // One thread's reusable state; it plays games until the tournament is finished
+    private class Worker implements Runnable {
+        private final Position position = new Position();
+        private final Search searchA = engineA.newSearch();
+        private final Search searchB = engineB.newSearch();
+        private final int[] moves = new int[Position.MAX_MOVES];
+        private final long[] keys = new long[MAX_PLIES + 1];  // Position key after each ply of the game
+        private final StringBuilder record = new StringBuilder(4096);
+
+        @Override
+        public void run() {
+            int game;
+            while (!finished && (game = nextGame.getAndIncrement()) < maxGames) {
+                String opening = openings.get(game / 2);
+                boolean aIsWhite = game % 2 == 0;
+                record.setLength(0);
+                String reason = play(opening, aIsWhite);
+                finish(game, opening, aIsWhite, reason, record);
+            }
+        }
+
+        // Plays one game, appending its moves to record, and returns how it ended: "1-0 mate" etc
+        private String play(String opening, boolean aIsWhite) {
+            Fen.parse(opening, position);
+            keys[0] = position.getKey();
+            for (int ply = 0; ; ply++) {
+                if (position.generateMoves(moves, 0) == 0) {
+                    if (!position.isInCheck()) {
+                        return "1/2-1/2 stalemate";
+                    }
+                    return position.getSideToMove() == Position.WHITE ? "0-1 checkmate" : "1-0 checkmate";
+                }
+                if (position.getHalfmoveClock() >= 100) {
+                    return "1/2-1/2 fifty moves";
+                }
+                if (isThreefold(ply)) {
+                    return "1/2-1/2 repetition";
+                }
+                if (ply >= MAX_PLIES) {
+                    return "1/2-1/2 adjudicated";
+                }
+
+                boolean aToMove = (position.getSideToMove() == Position.WHITE) == aIsWhite;
+                EngineConfig config = aToMove ? engineA : engineB;
+                int move = (aToMove ? searchA : searchB).search(position, config.getDepth(), config.getNodes(), 0);
+                position.makeMove(move);
+                keys[ply + 1] = position.getKey();
+                record.append(Move.toString(move)).append(' ');
+            }
+        }
+
+        // Threefold repetition among the positions since the last capture or pawn move
+        private boolean isThreefold(int ply) {
+            int seen = 1;
+            int first = Math.max(0, ply - position.getHalfmoveClock());
+            for (int i = ply - 2; i >= first; i -= 2) {
+                if (keys[i] == keys[ply] && ++seen == 3) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Record a finished game, write its line and check whether the test has decided
+    private synchronized void finish(int game, String opening, boolean aIsWhite, String reason,
+                                     CharSequence moves) {
+        double whiteScore = reason.startsWith("1-0") ? 1 : reason.startsWith("0-1") ? 0 : 0.5;
+        double aScore = aIsWhite ? whiteScore : 1 - whiteScore;
+        if (aScore == 1) {
+            wins++;
+        } else if (aScore == 0) {
+            losses++;
+        } else {
+            draws++;
+        }
+
+        String white = aIsWhite ? engineA.getName() : engineB.getName();
+        String black = aIsWhite ? engineB.getName() : engineA.getName();
+        try {
+            output.write(String.format("%d\t%s\t%s\t%s\t%s\t%s\n", game + 1, white, black, reason, opening, moves));
+            output.flush();
+        } catch (IOException ex) {
+            System.out.println("**Could not write result: " + ex.getMessage());
+        }
+
+        if (!finished) {
+            decision = sprt.decide(wins, draws, losses);
+            if (decision != Sprt.CONTINUE) {
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the results so far.
+     *
+     * @return the summary
+     */
+    public synchronized String summary() {
+        int games = wins + draws + losses;
+        double score = games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+        return String.format("%s vs %s: %d games, +%d =%d -%d, score %.1f%%, Elo %+.0f, LLR %.2f [%.2f, %.2f]",
+                engineA, engineB, games, wins, draws, losses, score * 100, Sprt.eloFromScore(score),
+                sprt.llr(wins, draws, losses), sprt.getLowerBound(), sprt.getUpperBound());
+    }
+
+    /**
+     * Runs a match. Usage: java tournament.Tournament engineA engineB openings results [maxGames]
+     * [elo0 elo1], where an engine is written as in EngineConfig (e.g. "d4") and openings is a
+     * file of FEN lines, or "-" for the standard starting position. maxGames defaults to two games
+     * per opening, which is also its limit.
+     *
+     * @param args the command line arguments
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        EngineConfig engineA = EngineConfig.parse(args[0]);
+        EngineConfig engineB = EngineConfig.parse(args[1]);
+        List<String> openings = new ArrayList<>();
+        if (args[2].equals("-")) {
+            openings.add(Fen.START);
+        } else {
+            for (String line : Files.readAllLines(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    Fen.parse(line);  // Reject a bad opening before any game starts
+                    openings.add(line.trim());
+                }
+            }
+        }
+        int maxGames = args.length > 4 ? Integer.parseInt(args[4]) : 2 * openings.size();
+        double elo0 = args.length > 6 ? Double.parseDouble(args[5]) : 0;
+        double elo1 = args.length > 6 ? Double.parseDouble(args[6]) : 10;
+
+        try (BufferedWriter results = Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)) {
+            Tournament tournament = new Tournament(engineA, engineB, openings, new Sprt(elo0, elo1, 0.05, 0.05),
+                    maxGames, results);
+            int decision = tournament.run(Runtime.getRuntime().availableProcessors());
+            System.out.println(tournament.summary());
+            System.out.println(decision == Sprt.ACCEPT_H1 ? "H1 accepted: " + engineA + " is stronger"
+                    : decision == Sprt.ACCEPT_H0 ? "H0 accepted: no gain for " + engineA
+                    : "No decision within " + maxGames + " games");
+        }
+    }
+}